@@ -0,0 +1,13 @@
+package com.example.flightticketmanagement.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+
+/**
+ * This configuration class enables @Async methods. They run on the executor auto-configured by Spring Boot, which is sized through the spring.task.execution properties
+ */
+
+@Configuration
+@EnableAsync
+public class AsyncConfig {
+}
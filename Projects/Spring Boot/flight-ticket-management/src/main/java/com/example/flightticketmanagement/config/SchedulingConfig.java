@@ -0,0 +1,13 @@
+package com.example.flightticketmanagement.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * This configuration class enables @Scheduled methods, such as the release of expired seat holds. They run on the scheduler auto-configured by Spring Boot
+ */
+
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,36 @@
+package com.example.flightticketmanagement.config;
+
+import com.example.flightticketmanagement.services.LeasedTicketIdGenerator;
+import com.example.flightticketmanagement.services.TicketIdGenerator;
+import com.example.flightticketmanagement.services.TimeOrderedTicketIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+
+/**
+ * This configuration class creates the ticket id generator. Every application instance needs its own node number, it is taken from the
+ * ticket.id.node property when set, otherwise one of the free node numbers of the ticket_id_node table is leased at startup and kept
+ * while the instance runs (see LeasedTicketIdGenerator)
+ */
+
+@Slf4j
+@Configuration
+public class TicketIdConfig {
+
+    @Bean
+    public TicketIdGenerator ticketIdGenerator(@Value("${ticket.id.node:-1}") int configuredNode,
+                                               @Value("${ticket.id.lease-seconds:300}") long leaseSeconds,
+                                               JdbcTemplate jdbcTemplate) {
+        if (configuredNode >= 0) {
+            log.info("Ticket ids are generated with node number {}", configuredNode);
+            return new TimeOrderedTicketIdGenerator(configuredNode);
+        }
+        LeasedTicketIdGenerator generator = new LeasedTicketIdGenerator(jdbcTemplate, Duration.ofSeconds(leaseSeconds));
+        log.info("Ticket ids are generated with leased node number {}", generator.getNode());
+        return generator;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.flightticketmanagement.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+
+/**
+ * This configuration class reports on the virtual thread mode (virtual-threads profile). Spring Boot only switches Tomcat and @Async to
+ * virtual threads on JDK 21 or newer and silently keeps platform threads otherwise, so the effective mode is logged at startup together
+ * with whether carrier thread pinning is traced (-Djdk.tracePinnedThreads, set by the virtual-threads Maven profile)
+ */
+
+@Slf4j
+@Configuration
+@Profile("virtual-threads")
+public class VirtualThreadsConfig {
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reportThreadingMode() {
+        int javaVersion = Runtime.version().feature();
+        if (javaVersion < 21) {
+            log.warn("The virtual-threads profile is active but Java {} has no virtual threads, requests are served by platform threads", javaVersion);
+            return;
+        }
+        String pinnedThreads = System.getProperty("jdk.tracePinnedThreads");
+        log.info("Requests and @Async tasks run on virtual threads (Java {}), pinned thread tracing is {}",
+                javaVersion, pinnedThreads == null ? "off, start with -Djdk.tracePinnedThreads=short to enable it" : pinnedThreads);
+    }
+}
@@ -2,8 +2,28 @@ package com.example.flightticketmanagement.controllers;
 
 import com.example.flightticketmanagement.models.*;
 import com.example.flightticketmanagement.repositories.*;
+import com.example.flightticketmanagement.security.PrincipalCache;
+import com.example.flightticketmanagement.security.SecurityConfig;
+import com.example.flightticketmanagement.services.AirportAutocompleteIndex;
+import com.example.flightticketmanagement.services.AirportGeoIndex;
+import com.example.flightticketmanagement.services.ConnectionPlanner;
+import com.example.flightticketmanagement.services.DataExportService;
+import com.example.flightticketmanagement.services.FlightCancellationService;
+import com.example.flightticketmanagement.services.ReferenceDataCache;
+import com.example.flightticketmanagement.services.SeatHoldService;
+import com.example.flightticketmanagement.services.SeatInventoryService;
+import com.example.flightticketmanagement.services.SeatMapService;
+import com.example.flightticketmanagement.services.TicketIdGenerator;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -12,16 +32,26 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 // This class serves as a controller in a Spring MVC application, handling HTTP requests related to the admin. It maps URLs to methods that interact with the all data for admin control
 @Controller
 public class AdministratorController {
 
+    // Number of rows shown per page on each tab of the admin page
+    private static final int PAGE_SIZE = 20;
+
     @Autowired
     private final AdministratorRepository administratorRepository;
     @Autowired
@@ -35,6 +65,28 @@ public class AdministratorController {
     @Autowired
     private final TicketRepository ticketRepository;
     @Autowired
+    private final SeatInventoryService seatInventoryService;
+    @Autowired
+    private final SeatMapService seatMapService;
+    @Autowired
+    private final SeatHoldService seatHoldService;
+    @Autowired
+    private final FlightCancellationService flightCancellationService;
+    @Autowired
+    private final ReferenceDataCache referenceDataCache;
+    @Autowired
+    private final PrincipalCache principalCache;
+    @Autowired
+    private final TicketIdGenerator ticketIdGenerator;
+    @Autowired
+    private final AirportGeoIndex airportGeoIndex;
+    @Autowired
+    private final AirportAutocompleteIndex airportAutocompleteIndex;
+    @Autowired
+    private final ConnectionPlanner connectionPlanner;
+    @Autowired
+    private final DataExportService dataExportService;
+    @Autowired
     private PasswordEncoder passwordEncoder;
 
     public AdministratorController(AdministratorRepository administratorRepository,
@@ -42,13 +94,35 @@ public class AdministratorController {
                                    AirlineRepository airlineRepository,
                                    AirportRepository airportRepository,
                                    CustomerRepository customerRepository,
-                                   TicketRepository ticketRepository){
+                                   TicketRepository ticketRepository,
+                                   SeatInventoryService seatInventoryService,
+                                   SeatMapService seatMapService,
+                                   SeatHoldService seatHoldService,
+                                   FlightCancellationService flightCancellationService,
+                                   ReferenceDataCache referenceDataCache,
+                                   PrincipalCache principalCache,
+                                   TicketIdGenerator ticketIdGenerator,
+                                   AirportGeoIndex airportGeoIndex,
+                                   AirportAutocompleteIndex airportAutocompleteIndex,
+                                   ConnectionPlanner connectionPlanner,
+                                   DataExportService dataExportService){
         this.administratorRepository = administratorRepository;
         this.flightRepository = flightRepository;
         this.airlineRepository = airlineRepository;
         this.airportRepository = airportRepository;
         this.customerRepository = customerRepository;
         this.ticketRepository = ticketRepository;
+        this.seatInventoryService = seatInventoryService;
+        this.seatMapService = seatMapService;
+        this.seatHoldService = seatHoldService;
+        this.flightCancellationService = flightCancellationService;
+        this.referenceDataCache = referenceDataCache;
+        this.principalCache = principalCache;
+        this.ticketIdGenerator = ticketIdGenerator;
+        this.airportGeoIndex = airportGeoIndex;
+        this.airportAutocompleteIndex = airportAutocompleteIndex;
+        this.connectionPlanner = connectionPlanner;
+        this.dataExportService = dataExportService;
     }
 
     // Handle GET requests to /admin-login, shows the admin login form
@@ -58,24 +132,141 @@ public class AdministratorController {
         return "admin-login";
     }
 
-    // Handle GET requests to the admin-page, shows the admin page with various entities
+    // Handle GET requests to the admin-page, shows the admin page with the number of rows of each entity. The tabs load their rows on demand
     @GetMapping("/admin-page")
     public String showAirlineFlights(Model model, Principal principal) {
-        String username = principal.getName(); // Retrieve the authenticated user's details
-        Optional<Administrator> administratorOptional = administratorRepository.findByUsername(username);
+        Long adminId = SecurityConfig.CustomUserDetails.of(principal).getAdminId(); // The administrator's id is kept in the security context
+        Optional<Administrator> administratorOptional = administratorRepository.findById(adminId);
         if (administratorOptional.isPresent()) {
             Administrator administrator = administratorOptional.get(); // Retrieve the admin object
             model.addAttribute("administrator", administrator);
-            model.addAttribute("airlines", airlineRepository.findAll());
-            model.addAttribute("airports", airportRepository.findAll());
-            model.addAttribute("flights", flightRepository.findAll());
-            model.addAttribute("customers", customerRepository.findAll());
-            model.addAttribute("tickets", ticketRepository.findAll());
+            // COUNT queries instead of loading the tables
+            model.addAttribute("airlineCount", airlineRepository.count());
+            model.addAttribute("airportCount", airportRepository.count());
+            model.addAttribute("flightCount", flightRepository.count());
+            model.addAttribute("customerCount", customerRepository.count());
+            model.addAttribute("ticketCount", ticketRepository.count());
             return "admin-page";
         }
         return "redirect:/admin-login"; // Redirect to the admin login page if the admin is not found
     }
 
+    // Returns one page of the airlines tab, filtered by name or iata code
+    @GetMapping("/admin-page/airlines")
+    public String showAirlinesTab(@RequestParam(value = "q", defaultValue = "") String query,
+                                  @RequestParam(value = "page", defaultValue = "0") int page,
+                                  @RequestParam(value = "sort", defaultValue = "iataCode") String sort,
+                                  @RequestParam(value = "dir", defaultValue = "asc") String direction,
+                                  Model model) {
+        PageRequest pageRequest = pageRequest(page, sort, direction, Set.of("iataCode", "airlineName", "airportBase"), "iataCode");
+        Page<Airline> airlines = airlineRepository.findByAirlineNameContainingIgnoreCaseOrIataCodeContainingIgnoreCase(query, query, pageRequest);
+        addTabAttributes(model, airlines, query, pageRequest, null);
+        return "admin-control/admin-tabs :: airlines";
+    }
+
+    // Returns one page of the airports tab, filtered by code, name or city
+    @GetMapping("/admin-page/airports")
+    public String showAirportsTab(@RequestParam(value = "q", defaultValue = "") String query,
+                                  @RequestParam(value = "page", defaultValue = "0") int page,
+                                  @RequestParam(value = "sort", defaultValue = "airportCode") String sort,
+                                  @RequestParam(value = "dir", defaultValue = "asc") String direction,
+                                  Model model) {
+        PageRequest pageRequest = pageRequest(page, sort, direction, Set.of("airportCode", "airportName", "city", "country"), "airportCode");
+        Page<Airport> airports = airportRepository.findByAirportCodeContainingIgnoreCaseOrAirportNameContainingIgnoreCaseOrCityContainingIgnoreCase(query, query, query, pageRequest);
+        addTabAttributes(model, airports, query, pageRequest, null);
+        return "admin-control/admin-tabs :: airports";
+    }
+
+    // Returns one page of the flights tab, filtered by flight number and status
+    @GetMapping("/admin-page/flights")
+    public String showFlightsTab(@RequestParam(value = "q", defaultValue = "") String query,
+                                 @RequestParam(value = "status", required = false) Flight.FlightStatus status,
+                                 @RequestParam(value = "page", defaultValue = "0") int page,
+                                 @RequestParam(value = "sort", defaultValue = "date") String sort,
+                                 @RequestParam(value = "dir", defaultValue = "desc") String direction,
+                                 Model model) {
+        PageRequest pageRequest = pageRequest(page, sort, direction, Set.of("date", "flightNumber", "departureTimeLocal", "remainingTickets", "flightStatus"), "date");
+        Page<Flight> flights = status == null
+                ? flightRepository.findByFlightNumberContainingIgnoreCase(query, pageRequest)
+                : flightRepository.findByFlightNumberContainingIgnoreCaseAndFlightStatus(query, status, pageRequest);
+        addTabAttributes(model, flights, query, pageRequest, status);
+        model.addAttribute("statuses", Flight.FlightStatus.values());
+        return "admin-control/admin-tabs :: flights";
+    }
+
+    // Returns one page of the customers tab, filtered by username or name
+    @GetMapping("/admin-page/customers")
+    public String showCustomersTab(@RequestParam(value = "q", defaultValue = "") String query,
+                                   @RequestParam(value = "page", defaultValue = "0") int page,
+                                   @RequestParam(value = "sort", defaultValue = "customerId") String sort,
+                                   @RequestParam(value = "dir", defaultValue = "asc") String direction,
+                                   Model model) {
+        PageRequest pageRequest = pageRequest(page, sort, direction, Set.of("customerId", "firstName", "lastName", "username"), "customerId");
+        Page<Customer> customers = customerRepository.findByUsernameContainingIgnoreCaseOrFirstNameContainingIgnoreCaseOrLastNameContainingIgnoreCase(query, query, query, pageRequest);
+        addTabAttributes(model, customers, query, pageRequest, null);
+        return "admin-control/admin-tabs :: customers";
+    }
+
+    // Returns one page of the tickets tab, filtered by ticket id and booking status
+    @GetMapping("/admin-page/tickets")
+    public String showTicketsTab(@RequestParam(value = "q", defaultValue = "") String query,
+                                 @RequestParam(value = "status", required = false) Ticket.BookingStatus status,
+                                 @RequestParam(value = "page", defaultValue = "0") int page,
+                                 @RequestParam(value = "sort", defaultValue = "ticketId") String sort,
+                                 @RequestParam(value = "dir", defaultValue = "asc") String direction,
+                                 Model model) {
+        PageRequest pageRequest = pageRequest(page, sort, direction, Set.of("ticketId", "classType", "seatNumber", "bookingStatus", "price"), "ticketId");
+        Page<Ticket> tickets = status == null
+                ? ticketRepository.findByTicketIdContainingIgnoreCase(query, pageRequest)
+                : ticketRepository.findByTicketIdContainingIgnoreCaseAndBookingStatus(query, status, pageRequest);
+        addTabAttributes(model, tickets, query, pageRequest, status);
+        model.addAttribute("statuses", Ticket.BookingStatus.values());
+        return "admin-control/admin-tabs :: tickets";
+    }
+
+    // Builds the page request of a tab. Only whitelisted properties can be sorted on, anything else falls back to the default sort
+    private static PageRequest pageRequest(int page, String sort, String direction, Set<String> sortableProperties, String defaultSort) {
+        String property = sortableProperties.contains(sort) ? sort : defaultSort;
+        Sort.Direction sortDirection = "desc".equalsIgnoreCase(direction) ? Sort.Direction.DESC : Sort.Direction.ASC;
+        return PageRequest.of(Math.max(page, 0), PAGE_SIZE, Sort.by(sortDirection, property));
+    }
+
+    // Adds the rows of the page and the current filter, sort and paging state used by the tab fragments
+    private static void addTabAttributes(Model model, Page<?> page, String query, PageRequest pageRequest, Enum<?> status) {
+        Sort.Order order = pageRequest.getSort().iterator().next();
+        model.addAttribute("page", page);
+        model.addAttribute("q", query);
+        model.addAttribute("sort", order.getProperty());
+        model.addAttribute("dir", order.getDirection().isAscending() ? "asc" : "desc");
+        model.addAttribute("status", status == null ? "" : status.name());
+    }
+
+    // Streams an export of the tickets, flights or customers as CSV or JSON. The rows are written from a database cursor as they are read,
+    // on the MVC async executor, so large exports neither load the table into memory nor hold a request thread
+    @GetMapping("/admin-page/export/{dataset}")
+    public ResponseEntity<StreamingResponseBody> export(@PathVariable String dataset,
+                                                        @RequestParam(value = "format", defaultValue = "csv") String format,
+                                                        @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                        @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                        @RequestParam(value = "airline", required = false) String airline,
+                                                        @RequestParam(value = "status", required = false) String status) {
+        DataExportService.Export export;
+        try {
+            // Empty form fields mean no filter
+            DataExportService.Filter filter = new DataExportService.Filter(from, to, airline == null || airline.isBlank() ? null : airline.trim(),
+                    status == null || status.isBlank() ? null : status);
+            export = dataExportService.prepare(DataExportService.Dataset.of(dataset), filter, DataExportService.Format.valueOf(format.toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            // Checked before the response is started, afterwards a failure can only cut the file short
+            byte[] message = e.getMessage().getBytes(StandardCharsets.UTF_8);
+            return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body(out -> out.write(message));
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(export.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + export.getFileName() + "\"")
+                .body(export::writeTo);
+    }
+
     ///////// Airlines //////////
     // Controller method to display the edit airline form
     @GetMapping("/admin-page/edit-airline/{iataCode}")
@@ -99,6 +290,7 @@ public class AdministratorController {
             // Handle airline not found
             return "error"; // You can define an error page for this
         }
+        principalCache.removeUserFromCache(existingAirline.getUsername()); // The login may change, drop the cached one
         // Update the existing airline with the updated details
         existingAirline.setAirlineName(updatedAirline.getAirlineName());
         existingAirline.setAirportBase(updatedAirline.getAirportBase());
@@ -106,6 +298,7 @@ public class AdministratorController {
         existingAirline.setPassword(updatedAirline.getPassword());
         // Save the updated airline details to the database
         airlineRepository.save(existingAirline);
+        referenceDataCache.evictAirline(iataCode); // Make sure flight pages and forms pick up the new details
         // Redirect to the admin airlines page with a success message
         redirectAttributes.addFlashAttribute("message", "Airline details updated successfully.");
         return "redirect:/admin-page";
@@ -134,6 +327,11 @@ public class AdministratorController {
             // Handle airport not found
             return "error"; // You can define an error page for this
         }
+        boolean moved = existingAirport.getLatitude() != updatedAirport.getLatitude() || existingAirport.getLongitude() != updatedAirport.getLongitude();
+        boolean timeZoneChanged = !Objects.equals(existingAirport.getTimeZone(), updatedAirport.getTimeZone());
+        boolean renamed = !Objects.equals(existingAirport.getAirportName(), updatedAirport.getAirportName())
+                || !Objects.equals(existingAirport.getCity(), updatedAirport.getCity())
+                || !Objects.equals(existingAirport.getCountry(), updatedAirport.getCountry());
         // Update the existing airport with the updated details
         existingAirport.setAirportName(updatedAirport.getAirportName());
         existingAirport.setCity(updatedAirport.getCity());
@@ -143,6 +341,16 @@ public class AdministratorController {
         existingAirport.setTimeZone(updatedAirport.getTimeZone());
         // Save the updated airport details to the database
         airportRepository.save(existingAirport);
+        referenceDataCache.evictAirport(airportCode); // Make sure flight pages and forms pick up the new details
+        if (moved) {
+            airportGeoIndex.rebuild(); // Nearby airport searches use the new coordinates
+        }
+        if (timeZoneChanged) {
+            connectionPlanner.rebuild(); // Leg times of the airport's flights depend on its time zone
+        }
+        if (renamed) {
+            airportAutocompleteIndex.rebuild(); // Suggestions of the search form find the airport by its new name
+        }
         // Redirect to the admin page with a success message
         redirectAttributes.addFlashAttribute("message", "Airport details updated successfully.");
         return "redirect:/admin-page";
@@ -194,33 +402,14 @@ public class AdministratorController {
     public String updateFlightDetails(@PathVariable Long flightId,
                                       @ModelAttribute Flight updatedFlight,
                                       RedirectAttributes redirectAttributes) {
-        Flight existingFlight = flightRepository.findById(flightId).orElse(null);
-        if (existingFlight == null) {
+        // Update the flight and, when it is being cancelled, all of its tickets in one transaction. Refunds and notifications run in the
+        // background. The remaining tickets are left to the seat inventory
+        try {
+            flightCancellationService.updateFlight(flightId, updatedFlight);
+        } catch (NoSuchElementException e) {
             // Handle flight not found
             return "error"; // You can define an error page for this
         }
-
-        // Check if the flight status is being changed from SCHEDULED to CANCELLED
-        if (existingFlight.getFlightStatus() == Flight.FlightStatus.SCHEDULED && updatedFlight.getFlightStatus() == Flight.FlightStatus.CANCELLED) {
-            // Fetch all tickets associated with this flight
-            List<Ticket> tickets = ticketRepository.findByFlight(existingFlight);
-            // Update the booking status of each ticket to CANCELLED
-            for (Ticket ticket : tickets) {
-                ticket.setBookingStatus(Ticket.BookingStatus.CANCELLED);
-                ticketRepository.save(ticket);
-            }
-        }
-        // Update the existing flight with the updated details
-        existingFlight.setFlightNumber(updatedFlight.getFlightNumber());
-        existingFlight.setOriginAirport(updatedFlight.getOriginAirport());
-        existingFlight.setDestinationAirport(updatedFlight.getDestinationAirport());
-        existingFlight.setDate(updatedFlight.getDate());
-        existingFlight.setDepartureTimeLocal(updatedFlight.getDepartureTimeLocal());
-        existingFlight.setLandingTimeLocal(updatedFlight.getLandingTimeLocal());
-        existingFlight.setRemainingTickets(updatedFlight.getRemainingTickets());
-        existingFlight.setFlightStatus(updatedFlight.getFlightStatus());
-        // Save the updated flight details to the database
-        flightRepository.save(existingFlight);
         // Redirect to the airline flights page with a success message
         redirectAttributes.addFlashAttribute("message", "Flight details updated successfully.");
         return "redirect:/admin-page";
@@ -260,6 +449,7 @@ public class AdministratorController {
             // Handle customer not found
             return "error"; // You can define an error page for this
         }
+        principalCache.removeUserFromCache(existingCustomer.getUsername()); // The login may change, drop the cached one
         // Update the existing customer with the updated details
         existingCustomer.setFirstName(updatedCustomer.getFirstName());
         existingCustomer.setLastName(updatedCustomer.getLastName());
@@ -296,15 +486,41 @@ public class AdministratorController {
             return "admin-control/admin-add-ticket";
         }
         // Generate a ticket ID
-        String ticketId = CustomerController.TicketIdGenerator.generateTicketId();
+        String ticketId = ticketIdGenerator.nextTicketId();
         ticket.setTicketId(ticketId);
-        // Get the flight associated with the ticket
-        Flight flight = ticket.getFlight();
-        // Decrement the remaining tickets
-        flight.setRemainingTickets(flight.getRemainingTickets() - 1);
-        flightRepository.save(flight); // Save the updated flight
-        // Save the new ticket
-        ticketRepository.save(ticket);
+        Long flightId = ticket.getFlight().getId();
+        // Claim the seat on the flight's seat map, or the next free seat of the class if none was given
+        String assignedSeat;
+        try {
+            assignedSeat = seatMapService.assignSeat(flightId, ticket.getClassType(), ticket.getSeatNumber());
+        } catch (IllegalArgumentException e) {
+            redirectAttributes.addFlashAttribute("error", e.getMessage());
+            return "redirect:/admin-page";
+        }
+        if (assignedSeat == null) {
+            redirectAttributes.addFlashAttribute("error", "The requested seat is not available.");
+            return "redirect:/admin-page";
+        }
+        ticket.setSeatNumber(assignedSeat);
+        // Take a seat out of the flight's inventory with a single conditional update, which fails when the flight is sold out, and save
+        // the new ticket in the same transaction
+        boolean sold;
+        try {
+            sold = seatInventoryService.sellTicket(ticket);
+        } catch (DataIntegrityViolationException e) {
+            // Another application instance sold the same seat first, reload this flight's seat map from the ticket table
+            seatMapService.evict(flightId);
+            redirectAttributes.addFlashAttribute("error", "The requested seat is not available.");
+            return "redirect:/admin-page";
+        } catch (RuntimeException e) {
+            seatMapService.releaseSeat(flightId, ticket.getClassType(), assignedSeat);
+            throw e;
+        }
+        if (!sold) {
+            seatMapService.releaseSeat(flightId, ticket.getClassType(), assignedSeat);
+            redirectAttributes.addFlashAttribute("error", "Flight is sold out.");
+            return "redirect:/admin-page";
+        }
         // Redirect to the admin page with a success message
         redirectAttributes.addFlashAttribute("message", "Ticket added successfully.");
         return "redirect:/admin-page";
@@ -332,6 +548,37 @@ public class AdministratorController {
             // Handle flight not found
             return "error"; // You can define an error page for this
         }
+        // Keep the seat maps in line with the new flight, class, seat and status of the ticket
+        boolean wasActive = existingTicket.getBookingStatus() != Ticket.BookingStatus.CANCELLED;
+        boolean staysActive = updatedTicket.getBookingStatus() != Ticket.BookingStatus.CANCELLED;
+        if (staysActive) {
+            String assignedSeat;
+            try {
+                assignedSeat = wasActive
+                        ? seatMapService.reassignSeat(existingTicket.getFlight().getId(), existingTicket.getClassType(), existingTicket.getSeatNumber(),
+                                updatedTicket.getFlight().getId(), updatedTicket.getClassType(), updatedTicket.getSeatNumber())
+                        : seatMapService.assignSeat(updatedTicket.getFlight().getId(), updatedTicket.getClassType(), updatedTicket.getSeatNumber());
+            } catch (IllegalArgumentException e) {
+                redirectAttributes.addFlashAttribute("error", e.getMessage());
+                return "redirect:/admin-page";
+            }
+            if (assignedSeat == null) {
+                redirectAttributes.addFlashAttribute("error", "The requested seat is not available.");
+                return "redirect:/admin-page";
+            }
+            updatedTicket.setSeatNumber(assignedSeat);
+        } else if (wasActive) {
+            seatMapService.releaseSeat(existingTicket.getFlight().getId(), existingTicket.getClassType(), existingTicket.getSeatNumber());
+        }
+        // A pending ticket leaving the cart hands its seat hold over, back to the inventory when cancelled or to the ticket when booked.
+        // The expiry sweep only scans pending tickets, it would never release a hold left on them
+        if (existingTicket.getBookingStatus() == Ticket.BookingStatus.PENDING && updatedTicket.getBookingStatus() != Ticket.BookingStatus.PENDING) {
+            if (updatedTicket.getBookingStatus() == Ticket.BookingStatus.CANCELLED) {
+                seatHoldService.release(existingTicket);
+            } else {
+                seatHoldService.claim(existingTicket);
+            }
+        }
         // Update the existing flight with the updated details
         existingTicket.setTicketId(updatedTicket.getTicketId());
         existingTicket.setCustomer(updatedTicket.getCustomer());
@@ -350,6 +597,13 @@ public class AdministratorController {
     // POST request to handle ticket deletion
     @PostMapping("/admin-page/delete-ticket/{ticketId}")
     public String deleteTicket(@PathVariable String ticketId, RedirectAttributes redirectAttributes) {
+        // Free the ticket's seat on the flight's seat map, and the seat held by a pending ticket in the flight's inventory
+        ticketRepository.findByTicketId(ticketId).ifPresent(ticket -> {
+            if (ticket.getBookingStatus() != Ticket.BookingStatus.CANCELLED && ticket.getFlight() != null) {
+                seatMapService.releaseSeat(ticket.getFlight().getId(), ticket.getClassType(), ticket.getSeatNumber());
+                seatHoldService.release(ticket);
+            }
+        });
         // Delete the flight from the database
         ticketRepository.deleteById(ticketId);
 
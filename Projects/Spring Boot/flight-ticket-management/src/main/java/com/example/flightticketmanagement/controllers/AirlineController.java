@@ -2,11 +2,16 @@ package com.example.flightticketmanagement.controllers;
 
 import com.example.flightticketmanagement.models.Airline;
 import com.example.flightticketmanagement.models.Flight;
-import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.models.FlightSchedule;
 import com.example.flightticketmanagement.repositories.AirlineRepository;
 import com.example.flightticketmanagement.repositories.AirportRepository;
 import com.example.flightticketmanagement.repositories.FlightRepository;
 import com.example.flightticketmanagement.repositories.TicketRepository;
+import com.example.flightticketmanagement.security.SecurityConfig;
+import com.example.flightticketmanagement.services.FlightCancellationService;
+import com.example.flightticketmanagement.services.FlightScheduleService;
+import com.example.flightticketmanagement.services.TimetableImportService;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,11 +23,19 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.Principal;
+import java.time.DayOfWeek;
 import java.util.List;
-import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.NoSuchElementException;
 
 // This class serves as a controller in a Spring MVC application, handling HTTP requests related to airlines. It maps URLs to methods that interact with the airline data
 @Slf4j
@@ -37,16 +50,28 @@ public class AirlineController {
     @Autowired
     private final TicketRepository ticketRepository;
     @Autowired
+    private final FlightCancellationService flightCancellationService;
+    @Autowired
+    private final TimetableImportService timetableImportService;
+    @Autowired
+    private final FlightScheduleService flightScheduleService;
+    @Autowired
     private PasswordEncoder passwordEncoder;
 
     public AirlineController(AirlineRepository airlineRepository,
                              FlightRepository flightRepository,
                              AirportRepository airportRepository,
-                             TicketRepository ticketRepository) {
+                             TicketRepository ticketRepository,
+                             FlightCancellationService flightCancellationService,
+                             TimetableImportService timetableImportService,
+                             FlightScheduleService flightScheduleService) {
         this.airlineRepository = airlineRepository;
         this.flightRepository = flightRepository;
         this.airportRepository = airportRepository;
         this.ticketRepository = ticketRepository;
+        this.flightCancellationService = flightCancellationService;
+        this.timetableImportService = timetableImportService;
+        this.flightScheduleService = flightScheduleService;
     }
 
     // Method to handle get requests to /airline-login, displays the airline login form
@@ -59,22 +84,18 @@ public class AirlineController {
     // Method to handle get requests to /airline-flights, shows flights for the logged-in airline
     @GetMapping("/airline-flights")
     public String showAirlineFlights(Model model, Principal principal) { // The Principal object represents the currently authenticated user
-        String username = principal.getName(); // Retrieve the authenticated user's details
-        Optional<Airline> airlineOptional = airlineRepository.findByUsername(username);
-        if (airlineOptional.isPresent()) {
-            List<Flight> flights = flightRepository.findByAirline(airlineOptional.get()); // Finds flights for the airline
-            model.addAttribute("flights", flights); // Adds the list of flights to the model
-            return "airline-flights";
-        }
-        return "redirect:/airline-login"; // Redirects to the airline login page if the airline is not found
+        String iataCode = SecurityConfig.CustomUserDetails.of(principal).getIataCode(); // The airline's id is kept in the security context
+        List<Flight> flights = flightRepository.findByAirline(airlineRepository.getReferenceById(iataCode)); // Finds flights for the airline
+        model.addAttribute("flights", flights); // Adds the list of flights to the model
+        return "airline-flights";
     }
 
     // Method to handle get requests to /airline-flights/add, displays the add flight form
     @GetMapping("/airline-flights/add")
     public String showAddFlightForm(Model model, Principal principal) {
-        String loggedInAirlineUsername = principal.getName();
-        Airline loggedInAirline = airlineRepository.findByUsername(loggedInAirlineUsername)
-                .orElseThrow(() -> new IllegalArgumentException("Logged-in airline not found")); // Finds the airline by username or throws an exception if not found
+        String iataCode = SecurityConfig.CustomUserDetails.of(principal).getIataCode();
+        Airline loggedInAirline = airlineRepository.findById(iataCode)
+                .orElseThrow(() -> new IllegalArgumentException("Logged-in airline not found")); // Finds the airline by its id (usually from the second-level cache) or throws an exception if not found
 
         model.addAttribute("loggedInAirline", loggedInAirline); // Adds the logged-in airline to the model
         model.addAttribute("airports", airportRepository.findAll());
@@ -93,10 +114,8 @@ public class AirlineController {
             return "add-flight";
         }
         // Set the airline for the flight
-        String loggedInAirlineUsername = principal.getName();
-        Airline loggedInAirline = airlineRepository.findByUsername(loggedInAirlineUsername)
-                .orElseThrow(() -> new IllegalArgumentException("Logged-in airline not found"));
-        flight.setAirline(loggedInAirline); // Sets the logged airline for the flight
+        String iataCode = SecurityConfig.CustomUserDetails.of(principal).getIataCode();
+        flight.setAirline(airlineRepository.getReferenceById(iataCode)); // Sets the logged airline for the flight without loading it
         flightRepository.save(flight); // Save the new flight
         // Redirect to the airline flights page with a success message
         redirectAttributes.addFlashAttribute("message", "Flight added successfully.");
@@ -122,21 +141,12 @@ public class AirlineController {
     public String updateFlightDetails(@PathVariable Long flightId,
                                       @ModelAttribute Flight updatedFlight,
                                       RedirectAttributes redirectAttributes) {
-        Flight existingFlight = flightRepository.findById(flightId).orElse(null);
-        if (existingFlight == null) {
+        // Update the flight and, when it is being cancelled, all of its tickets in one transaction. The remaining tickets are left to the seat inventory
+        try {
+            flightCancellationService.updateFlight(flightId, updatedFlight);
+        } catch (NoSuchElementException e) {
             return "error";
         }
-        // Update the existing flight with the updated details
-        existingFlight.setFlightNumber(updatedFlight.getFlightNumber());
-        existingFlight.setOriginAirport(updatedFlight.getOriginAirport());
-        existingFlight.setDestinationAirport(updatedFlight.getDestinationAirport());
-        existingFlight.setDate(updatedFlight.getDate());
-        existingFlight.setDepartureTimeLocal(updatedFlight.getDepartureTimeLocal());
-        existingFlight.setLandingTimeLocal(updatedFlight.getLandingTimeLocal());
-        existingFlight.setRemainingTickets(updatedFlight.getRemainingTickets());
-        existingFlight.setFlightStatus(updatedFlight.getFlightStatus());
-        // Save the updated flight details to the database
-        flightRepository.save(existingFlight);
         // Redirect to the airline flights page with a success message
         redirectAttributes.addFlashAttribute("message", "Flight details updated successfully.");
         return "redirect:/airline-flights";
@@ -146,26 +156,89 @@ public class AirlineController {
     @PostMapping("/airline-flights/cancel/{flightId}")
     public String cancelFlight(@PathVariable Long flightId,
                                RedirectAttributes redirectAttributes) {
-        // Retrieve the flight from the database
-        Flight flight = flightRepository.findById(flightId).orElse(null);
-        if (flight == null) {
+        // Set the flight status to CANCELED and cancel all of its tickets in one set-based update. Refunds and notifications run in the background
+        int cancelledTickets;
+        try {
+            cancelledTickets = flightCancellationService.cancelFlight(flightId);
+        } catch (NoSuchElementException e) {
             // Handle flight not found. If the flight is not found, add an error message to the redirect attributes
             redirectAttributes.addFlashAttribute("error", "Flight not found.");
             return "redirect:/airline-flights";
         }
-        // Set the flight status to CANCELED
-        flight.setFlightStatus(Flight.FlightStatus.CANCELLED);
-        flightRepository.save(flight); // Save the updated flight
-        // Retrieve all tickets associated with this flight
-        List<Ticket> tickets = ticketRepository.findByFlight(flight);
-        for (Ticket ticket : tickets) {
-            // Set each ticket's booking status to CANCELED
-            ticket.setBookingStatus(Ticket.BookingStatus.CANCELLED);
-            // Save the updated ticket
-            ticketRepository.save(ticket);
-        }
         // Redirect to the airline flights page with a success message
-        redirectAttributes.addFlashAttribute("message", "Flight canceled successfully.");
+        redirectAttributes.addFlashAttribute("message", "Flight canceled successfully, " + cancelledTickets + " tickets were cancelled.");
         return "redirect:/airline-flights";
     }
-}
\ No newline at end of file
+
+    // Method to handle get requests to /airline-flights/import, displays the timetable import form, or the progress of an import when its id is given
+    @GetMapping("/airline-flights/import")
+    public String showImportForm(@RequestParam(value = "jobId", required = false) String jobId, Model model) {
+        model.addAttribute("jobId", jobId);
+        model.addAttribute("requiredColumns", String.join(",", TimetableImportService.REQUIRED_COLUMNS));
+        return "import-flights";
+    }
+
+    // Method to handle post requests to /airline-flights/import, starts importing the uploaded timetable in the background
+    @PostMapping("/airline-flights/import")
+    public String importFlights(@RequestParam("file") MultipartFile file,
+                                Principal principal,
+                                RedirectAttributes redirectAttributes) throws IOException {
+        if (file.isEmpty()) {
+            redirectAttributes.addFlashAttribute("error", "Please choose a CSV file to import.");
+            return "redirect:/airline-flights/import";
+        }
+        String iataCode = SecurityConfig.CustomUserDetails.of(principal).getIataCode();
+        // The upload only lives as long as the request, the import reads its own copy (a move when the upload is already on disk)
+        Path upload = Files.createTempFile("timetable-", ".csv");
+        file.transferTo(upload);
+        String jobId = timetableImportService.start(iataCode, upload);
+        return "redirect:/airline-flights/import?jobId=" + jobId;
+    }
+
+    // Progress of a timetable import of the logged-in airline, polled by the import page
+    @GetMapping("/airline-flights/import/progress")
+    @ResponseBody
+    public TimetableImportService.ImportProgress importProgress(@RequestParam("jobId") String jobId, Principal principal) {
+        return timetableImportService.progress(jobId, SecurityConfig.CustomUserDetails.of(principal).getIataCode());
+    }
+
+    // Downloads the rows rejected by a finished timetable import of the logged-in airline, as a CSV file
+    @GetMapping("/airline-flights/import/errors")
+    public void downloadImportErrors(@RequestParam("jobId") String jobId,
+                                     Principal principal,
+                                     HttpServletResponse response) throws IOException {
+        String iataCode = SecurityConfig.CustomUserDetails.of(principal).getIataCode();
+        timetableImportService.progress(jobId, iataCode); // Fails before the response is started if the import is not the airline's
+        response.setContentType("text/csv");
+        response.setHeader("Content-Disposition", "attachment; filename=\"import-errors.csv\"");
+        timetableImportService.writeErrorReport(jobId, iataCode, response.getOutputStream());
+    }
+
+    // Method to handle get requests to /airline-flights/schedules, lists the recurring schedules of the logged-in airline with the form adding one
+    @GetMapping("/airline-flights/schedules")
+    public String showSchedules(Model model, Principal principal) {
+        String iataCode = SecurityConfig.CustomUserDetails.of(principal).getIataCode();
+        model.addAttribute("schedules", flightScheduleService.findByAirline(airlineRepository.getReferenceById(iataCode)));
+        model.addAttribute("airports", airportRepository.findAll());
+        model.addAttribute("daysOfWeek", DayOfWeek.values());
+        return "airline-schedules";
+    }
+
+    // Method to handle post requests to /airline-flights/schedules, adds a recurring schedule and creates its flights up to the horizon
+    @PostMapping("/airline-flights/schedules")
+    public String addSchedule(@ModelAttribute FlightSchedule schedule,
+                              @RequestParam(value = "days", required = false) List<Integer> days, // ISO numbers of the ticked days of the week
+                              Principal principal,
+                              RedirectAttributes redirectAttributes) {
+        String iataCode = SecurityConfig.CustomUserDetails.of(principal).getIataCode();
+        schedule.setAirline(airlineRepository.getReferenceById(iataCode));
+        schedule.setDaysOfWeek(days == null ? "" : days.stream().map(String::valueOf).collect(Collectors.joining()));
+        try {
+            int createdFlights = flightScheduleService.create(schedule);
+            redirectAttributes.addFlashAttribute("message", "Schedule added successfully, " + createdFlights + " flights were created.");
+        } catch (IllegalArgumentException e) {
+            redirectAttributes.addFlashAttribute("error", e.getMessage());
+        }
+        return "redirect:/airline-flights/schedules";
+    }
+}
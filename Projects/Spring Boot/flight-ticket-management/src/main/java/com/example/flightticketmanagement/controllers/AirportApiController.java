@@ -0,0 +1,53 @@
+package com.example.flightticketmanagement.controllers;
+
+import com.example.flightticketmanagement.services.AirportAutocompleteIndex;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+// This class serves as a REST controller for the airport fields of the search form, suggesting airports as the user types
+@RestController
+@RequestMapping("/api/airports")
+@Tag(name = "Airports", description = "Find airports by code, city, name or country")
+public class AirportApiController {
+    // Airports rarely change, browsers may reuse the suggestions for a repeated prefix for this long
+    private static final Duration SUGGESTIONS_MAX_AGE = Duration.ofMinutes(1);
+
+    @Autowired
+    private final AirportAutocompleteIndex airportAutocompleteIndex;
+
+    public AirportApiController(AirportAutocompleteIndex airportAutocompleteIndex) {
+        this.airportAutocompleteIndex = airportAutocompleteIndex;
+    }
+
+    // Method to handle get requests to /api/airports/autocomplete, answered from the in-memory index without any query
+    @GetMapping("/autocomplete")
+    @Operation(summary = "Suggest airports",
+            description = "Returns the airports having a word starting with each word typed, best matches first: code, then city, name and country. "
+                    + "Case and accents are ignored.")
+    public ResponseEntity<List<AirportAutocompleteIndex.Suggestion>> autocomplete(
+            @Parameter(description = "What was typed, such as \"lon\" or \"new york\"") @RequestParam(value = "q", defaultValue = "") String text,
+            @Parameter(description = "Number of suggestions, at most " + AirportAutocompleteIndex.MAX_SUGGESTIONS) @RequestParam(value = "limit", defaultValue = "" + AirportAutocompleteIndex.DEFAULT_SUGGESTIONS) int limit) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(SUGGESTIONS_MAX_AGE).cachePublic())
+                .body(airportAutocompleteIndex.suggest(text, limit));
+    }
+
+    // Invalid numbers of suggestions are the client's mistake
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+}
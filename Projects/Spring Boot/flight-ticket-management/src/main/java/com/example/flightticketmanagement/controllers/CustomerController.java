@@ -6,25 +6,34 @@ import com.example.flightticketmanagement.models.Ticket;
 import com.example.flightticketmanagement.repositories.CustomerRepository;
 import com.example.flightticketmanagement.repositories.FlightRepository;
 import com.example.flightticketmanagement.repositories.TicketRepository;
+import com.example.flightticketmanagement.security.SecurityConfig;
 import com.example.flightticketmanagement.models.Ticket.BookingStatus;
+import com.example.flightticketmanagement.services.FareCalculator;
+import com.example.flightticketmanagement.services.PaymentService;
+import com.example.flightticketmanagement.services.SeatHoldService;
+import com.example.flightticketmanagement.services.SeatInventoryService;
+import com.example.flightticketmanagement.services.SeatMapService;
+import com.example.flightticketmanagement.services.TicketCancellationService;
+import com.example.flightticketmanagement.services.TicketIdGenerator;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.core.Authentication;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.Errors;
 import org.springframework.validation.BindingResult;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.bind.support.SessionStatus;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import lombok.extern.slf4j.Slf4j;
 
 import java.security.Principal;
+import java.time.Instant;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Random;
 
 // This class serves as a controller in a Spring MVC application, handling HTTP requests related to customers. It maps URLs to methods that interact with the customer data
 @Slf4j
@@ -39,15 +48,42 @@ public class CustomerController {
     @Autowired
     private final TicketRepository ticketRepository;
     @Autowired
+    private final SeatInventoryService seatInventoryService;
+    @Autowired
+    private final SeatMapService seatMapService;
+    @Autowired
+    private final TicketIdGenerator ticketIdGenerator;
+    @Autowired
+    private final FareCalculator fareCalculator;
+    @Autowired
+    private final SeatHoldService seatHoldService;
+    @Autowired
+    private final PaymentService paymentService;
+    @Autowired
+    private final TicketCancellationService ticketCancellationService;
+    @Autowired
     private PasswordEncoder passwordEncoder;
 
     public CustomerController(CustomerRepository customerRepository,
                               FlightRepository flightRepository,
-                              TicketRepository ticketRepository) {
+                              TicketRepository ticketRepository,
+                              SeatInventoryService seatInventoryService,
+                              SeatMapService seatMapService,
+                              TicketIdGenerator ticketIdGenerator,
+                              FareCalculator fareCalculator,
+                              SeatHoldService seatHoldService,
+                              PaymentService paymentService,
+                              TicketCancellationService ticketCancellationService) {
         this.customerRepository = customerRepository;
         this.flightRepository = flightRepository;
         this.ticketRepository = ticketRepository;
-
+        this.seatInventoryService = seatInventoryService;
+        this.seatMapService = seatMapService;
+        this.ticketIdGenerator = ticketIdGenerator;
+        this.fareCalculator = fareCalculator;
+        this.seatHoldService = seatHoldService;
+        this.paymentService = paymentService;
+        this.ticketCancellationService = ticketCancellationService;
     }
 
     // Show the registration form
@@ -90,9 +126,9 @@ public class CustomerController {
     // Show account page to customer
     @GetMapping("/account")
     public String showAccountPage(Model model, Principal principal) {
-        String username = principal.getName(); // Retrieve the authenticated user's details
-        Customer customer = customerRepository.findByUsername(username);
-        List<Ticket> tickets = ticketRepository.findByCustomer(customer);
+        Customer customer = currentCustomer(principal); // Retrieve the authenticated user's details
+        // Tickets are read as flat summaries joined with their flight, so the page costs one query no matter how many tickets there are
+        List<TicketRepository.TicketSummary> tickets = ticketRepository.findSummariesByCustomerId(customer.getCustomerId());
         model.addAttribute("customer", customer);
         model.addAttribute("tickets", tickets);
         return "account";
@@ -101,7 +137,7 @@ public class CustomerController {
     // Show edit customer details form
     @GetMapping("/account/edit")
     public String showEditCustomerForm(Model model, Principal principal) {
-        Customer customer = customerRepository.findByUsername(principal.getName());
+        Customer customer = currentCustomer(principal);
         model.addAttribute("customer", customer);
         return "edit-customer";
     }
@@ -115,7 +151,7 @@ public class CustomerController {
         if (errors.hasErrors()) {
             return "edit-customer";
         }
-        Customer currentCustomer = customerRepository.findByUsername(principal.getName());        // Update only the fields that can be changed
+        Customer currentCustomer = currentCustomer(principal);        // Update only the fields that can be changed
         currentCustomer.setAddress(updatedCustomer.getAddress());
         currentCustomer.setPhoneNumber(updatedCustomer.getPhoneNumber());
         currentCustomer.setCreditCardNumber(updatedCustomer.getCreditCardNumber());
@@ -143,9 +179,25 @@ public class CustomerController {
                                RedirectAttributes redirectAttributes) {
         Ticket existingTicket = ticketRepository.findById(ticketId)
                 .orElseThrow(() -> new IllegalArgumentException("Ticket not found"));
+        String seatNumber = updatedTicket.getSeatNumber();
+        if (existingTicket.getBookingStatus() != BookingStatus.CANCELLED) {
+            // Move the ticket on the flight's seat map, the old seat is freed only if the new one could be claimed
+            Long flightId = existingTicket.getFlight().getId();
+            try {
+                seatNumber = seatMapService.reassignSeat(flightId, existingTicket.getClassType(), existingTicket.getSeatNumber(),
+                        flightId, updatedTicket.getClassType(), updatedTicket.getSeatNumber());
+            } catch (IllegalArgumentException e) {
+                redirectAttributes.addFlashAttribute("error", e.getMessage());
+                return "redirect:/account";
+            }
+            if (seatNumber == null) {
+                redirectAttributes.addFlashAttribute("error", "The requested seat is not available.");
+                return "redirect:/account";
+            }
+        }
         // Update the existing ticket with the new details
         existingTicket.setClassType(updatedTicket.getClassType());
-        existingTicket.setSeatNumber(updatedTicket.getSeatNumber());
+        existingTicket.setSeatNumber(seatNumber);
         ticketRepository.save(existingTicket);
 
         redirectAttributes.addFlashAttribute("message", "Ticket updated successfully.");
@@ -159,15 +211,12 @@ public class CustomerController {
         Ticket ticket = ticketRepository.findById(ticketId).orElse(null);
 
         if (ticket != null) {
-            // Update the booking status to CANCELED
-            ticket.setBookingStatus(BookingStatus.CANCELLED);
-            // Increment the remainingTickets for the flight
-            Flight flight = ticket.getFlight();
-            flight.setRemainingTickets(flight.getRemainingTickets() + 1);
-            flightRepository.save(flight);
-            // Save the updated ticket
-            ticketRepository.save(ticket);
-            redirectAttributes.addFlashAttribute("message", "Ticket canceled successfully.");
+            // Cancels the ticket only if its status did not change since it was read, and gives its seat back once
+            if (ticket.getBookingStatus() == BookingStatus.CANCELLED || ticketCancellationService.cancel(ticket)) {
+                redirectAttributes.addFlashAttribute("message", "Ticket canceled successfully.");
+            } else {
+                redirectAttributes.addFlashAttribute("error", "The ticket changed while it was being canceled, please try again.");
+            }
         } else {
             // Add a flash attribute to be shown after the redirect if the ticket was not found
             redirectAttributes.addFlashAttribute("error", "Ticket not found.");
@@ -185,16 +234,23 @@ public class CustomerController {
         Flight flight = flightRepository.findById(id)
                 .orElseThrow(() -> new NoSuchElementException("Flight not found"));
         // Retrieve the customer details
-        String username = authentication.getName();
-        Customer customer = customerRepository.findByUsername(username);
+        Customer customer = currentCustomer(authentication);
         // Generate a random ticket ID
-        // String ticketId = TicketIdGenerator.generateTicketId();
+        // String ticketId = ticketIdGenerator.nextTicketId();
         // Add flight and customer details to the model
         model.addAttribute("flight", flight);
         model.addAttribute("customer", customer);
         // model.addAttribute("ticketId", ticketId);
         // Add class types to the model
         model.addAttribute("classTypes", Ticket.ClassType.values());
+        // Current fare of every class, quoted from the flight's cached fare curve
+        Map<Ticket.ClassType, Double> fares = new EnumMap<>(Ticket.ClassType.class);
+        for (Ticket.ClassType classType : Ticket.ClassType.values()) {
+            fares.put(classType, fareCalculator.fareFor(flight, classType));
+        }
+        model.addAttribute("fares", fares);
+        // Free seats and seats held in other customers' carts
+        model.addAttribute("availability", seatHoldService.availability(List.of(id)).get(id));
         return "purchase";
     }
 
@@ -202,32 +258,70 @@ public class CustomerController {
     @PostMapping("/purchase")
     public String processPurchaseForm(@RequestParam("flightId") Long flightId,
                                       @RequestParam("classType") String classType,
-                                      @RequestParam("seatNumber") String seatNumber,
+                                      @RequestParam(value = "seatNumber", required = false) String seatNumber, // When left empty, the next free seat of the class is assigned
                                       Model model,
-                                      Authentication authentication) {
+                                      Authentication authentication,
+                                      RedirectAttributes redirectAttributes) {
         // Retrieve the flight details from the database
         Flight flight = flightRepository.findById(flightId)
                 .orElseThrow(() -> new NoSuchElementException("Flight not found"));
+        Ticket.ClassType cabin = Ticket.ClassType.valueOf(classType);
+
+        // Claim the seat on the flight's seat map, which rejects seats that are already taken without scanning the ticket table
+        String assignedSeat;
+        try {
+            assignedSeat = seatMapService.assignSeat(flightId, cabin, seatNumber);
+        } catch (IllegalArgumentException e) {
+            redirectAttributes.addFlashAttribute("error", e.getMessage());
+            return "redirect:/purchase/" + flightId;
+        }
+        if (assignedSeat == null) {
+            redirectAttributes.addFlashAttribute("error", seatNumber == null || seatNumber.isBlank()
+                    ? "There are no free seats left in " + cabin + " class."
+                    : "Seat " + seatNumber + " is already taken, please choose another one.");
+            return "redirect:/purchase/" + flightId;
+        }
+        // Hold a seat of the flight's inventory while the ticket waits in the cart, so nobody else can pay for it in the meantime
+        Instant heldUntil = seatHoldService.hold(flightId);
+        if (heldUntil == null) {
+            seatMapService.releaseSeat(flightId, cabin, assignedSeat);
+            redirectAttributes.addFlashAttribute("error", "Sorry, this flight is sold out.");
+            return "redirect:/purchase/" + flightId;
+        }
 
-        // Retrieve the authenticated customer from the database
-        String username = authentication.getName();
-        Customer customer = customerRepository.findByUsername(username);
-        // Generate a ticket ID
-        String ticketId = TicketIdGenerator.generateTicketId();
-        // Create a new ticket with the provided details
-        Ticket ticket = new Ticket();
-        ticket.setTicketId(ticketId);
-        ticket.setFlight(flight);
-        ticket.setCustomer(customer);
-        ticket.setClassType(Ticket.ClassType.valueOf(classType));
-        ticket.setSeatNumber(seatNumber);
-        ticket.setPrice(500); // Assuming a fixed price for now
-        ticket.setBookingStatus(Ticket.BookingStatus.PENDING);
-
-        // Save the ticket to the model attribute (session attribute)
-        // model.addAttribute("ticket", ticket);
-        // Save the ticket to the database (or perform any other necessary actions)
-        ticketRepository.save(ticket);
+        // Until the ticket is saved nothing refers to the held seat, so any failure below hands the seat back to the inventory and the seat map
+        String ticketId;
+        try {
+            // Reference the authenticated customer by the id kept in the security context, without loading it from the database
+            Customer customer = customerRepository.getReferenceById(SecurityConfig.CustomUserDetails.of(authentication).getCustomerId());
+            // Generate a ticket ID
+            ticketId = ticketIdGenerator.nextTicketId();
+            // Create a new ticket with the provided details
+            Ticket ticket = new Ticket();
+            ticket.setTicketId(ticketId);
+            ticket.setFlight(flight);
+            ticket.setCustomer(customer);
+            ticket.setClassType(cabin);
+            ticket.setSeatNumber(assignedSeat);
+            ticket.setPrice(fareCalculator.fareFor(flight, cabin));
+            ticket.setBookingStatus(Ticket.BookingStatus.PENDING);
+            ticket.setHoldExpiresAt(heldUntil);
+
+            // Save the ticket to the model attribute (session attribute)
+            // model.addAttribute("ticket", ticket);
+            // Save the ticket to the database (or perform any other necessary actions)
+            ticketRepository.save(ticket);
+        } catch (DataIntegrityViolationException e) {
+            // Another application instance sold the same seat first, reload this flight's seat map from the ticket table
+            seatMapService.evict(flightId);
+            seatInventoryService.releaseSeat(flightId);
+            redirectAttributes.addFlashAttribute("error", "Seat " + assignedSeat + " is already taken, please choose another one.");
+            return "redirect:/purchase/" + flightId;
+        } catch (RuntimeException e) {
+            seatMapService.releaseSeat(flightId, cabin, assignedSeat);
+            seatInventoryService.releaseSeat(flightId);
+            throw e;
+        }
         System.out.println("Ticket saved with ID: " + ticketId);
         // Redirect to the payment page
         return "redirect:/payment?ticketId=" + ticketId;
@@ -238,8 +332,7 @@ public class CustomerController {
     public String showPaymentPage(@RequestParam("ticketId") String ticketId,
                                   Model model,
                                   Authentication authentication) {
-        String username = authentication.getName();
-        Customer customer = customerRepository.findByUsername(username);
+        Customer customer = currentCustomer(authentication);
         System.out.println("Received ticketId: " + ticketId);
         Ticket ticket = ticketRepository.findById(ticketId)
                 .orElseThrow(() -> new NoSuchElementException("Ticket not found"));
@@ -249,56 +342,65 @@ public class CustomerController {
         return "payment";
     }
 
-    // Handle the form submission for confirming a purchase
-    @Transactional // Indicates that this method should be executed within a transactional context. This means that the payment processing and related operations (like updating the booking status and remaining tickets) are executed as a single transaction
+    // Handle the form submission for confirming a purchase. The payment is sent to the payment provider in the background, the customer
+    // waits on the processing page, which polls its status, instead of holding this request open
     @PostMapping("/confirm-purchase")
     public String processPayment(@RequestParam("expiryDate") String expiryDate,
                                  @RequestParam("cvv") String cvv,
                                  @RequestParam("ticketId") String ticketId,
                                  Model model,
-                                 SessionStatus sessionStatus) {
-
-        Ticket ticket = ticketRepository.findById(ticketId)
-                .orElseThrow(() -> new NoSuchElementException("Ticket not found"));
-
-        // Perform payment validation and processing (this is a placeholder for actual payment logic)
-        boolean paymentSuccessful = validateAndProcessPayment(expiryDate, cvv);
-        System.out.println("Received ticketId: " + ticket.getTicketId());
-        if (paymentSuccessful) {
-            // Update the booking status to BOOKED
-            ticket.setBookingStatus(Ticket.BookingStatus.BOOKED);
-            // Update the remainingTickets for the flight
-            Flight flight = ticket.getFlight();
-            flight.setRemainingTickets(flight.getRemainingTickets() - 1);
-            flightRepository.save(flight);
-
-            ticketRepository.save(ticket);
-
-            // Add flight and ticket details to the model
-            model.addAttribute("flight", ticket.getFlight());
+                                 Authentication authentication) {
+        Long customerId = SecurityConfig.CustomUserDetails.of(authentication).getCustomerId();
+        PaymentService.PaymentStatus status = paymentService.submit(ticketId, customerId, expiryDate, cvv);
+        if (status.state() == PaymentService.State.DECLINED) {
+            Ticket ticket = ticketRepository.findById(ticketId)
+                    .orElseThrow(() -> new NoSuchElementException("Ticket not found"));
+            model.addAttribute("error", status.message());
             model.addAttribute("customer", ticket.getCustomer());
             model.addAttribute("ticket", ticket);
+            model.addAttribute("ticketId", ticketId);
+            return "payment";
+        }
+        return "redirect:/payment/processing?ticketId=" + ticketId;
+    }
 
-            // Clear the session attributes after successful payment
-            // sessionStatus.setComplete();
+    // Show the page waiting for the answer of the payment provider
+    @GetMapping("/payment/processing")
+    public String showPaymentProcessingPage(@RequestParam("ticketId") String ticketId, Model model) {
+        model.addAttribute("ticketId", ticketId);
+        return "payment-processing";
+    }
 
-            // Redirect to the confirmation page
-            return "confirmation";
-        } else {
-            // Handle payment failure (e.g., show an error message)
-            model.addAttribute("error", "Payment failed. Please try again.");
-            model.addAttribute("ticket", ticket); // Add ticket to model to display on payment page
-            return "payment";
+    // Status of the payment of a ticket, polled by the processing page
+    @GetMapping("/payment/status")
+    @ResponseBody
+    public PaymentService.PaymentStatus paymentStatus(@RequestParam("ticketId") String ticketId, Authentication authentication) {
+        return paymentService.status(ticketId, SecurityConfig.CustomUserDetails.of(authentication).getCustomerId());
+    }
+
+    // Show the confirmation of a paid ticket
+    @GetMapping("/confirmation")
+    public String showConfirmationPage(@RequestParam("ticketId") String ticketId, Model model, Authentication authentication) {
+        Customer customer = currentCustomer(authentication);
+        Ticket ticket = ticketRepository.findById(ticketId)
+                .filter(found -> found.getCustomer() != null && customer.getCustomerId().equals(found.getCustomer().getCustomerId()))
+                .orElseThrow(() -> new NoSuchElementException("Ticket not found"));
+        if (ticket.getBookingStatus() == Ticket.BookingStatus.PENDING || ticket.getBookingStatus() == Ticket.BookingStatus.PAYMENT_PROCESSING) {
+            return "redirect:/payment/processing?ticketId=" + ticketId;
         }
+        // Add flight and ticket details to the model
+        model.addAttribute("flight", ticket.getFlight());
+        model.addAttribute("customer", customer);
+        model.addAttribute("ticket", ticket);
+        return "confirmation";
     }
 
     // Show the my-cart page
     @GetMapping("/mycart")
     public String showMyCart(Model model, Authentication authentication) {
-        String username = authentication.getName();
-        Customer customer = customerRepository.findByUsername(username);
-        // Retrieve tickets that are in the cart (e.g., with status PENDING)
-        List<Ticket> tickets = ticketRepository.findByCustomerAndBookingStatus(customer, Ticket.BookingStatus.PENDING);
+        Long customerId = SecurityConfig.CustomUserDetails.of(authentication).getCustomerId();
+        // Retrieve tickets that are in the cart (e.g., with status PENDING) as flat summaries, filtered by the customer id so the customer is not loaded
+        List<TicketRepository.TicketSummary> tickets = ticketRepository.findSummariesByCustomerIdAndBookingStatus(customerId, Ticket.BookingStatus.PENDING);
         model.addAttribute("tickets", tickets);
         return "mycart";
     }
@@ -306,38 +408,23 @@ public class CustomerController {
     // Remove ticket from my-cart
     @PostMapping("/mycart/remove/{ticketId}")
     public String removeTicketFromCart(@PathVariable String ticketId, Model model, Authentication authentication) {
-        String username = authentication.getName();
-        Customer customer = customerRepository.findByUsername(username);
+        Long customerId = SecurityConfig.CustomUserDetails.of(authentication).getCustomerId();
 
         Ticket ticket = ticketRepository.findById(ticketId)
                 .orElseThrow(() -> new NoSuchElementException("Ticket not found"));
         // Checks if the ticket belongs to the authenticated customer and has a PENDING booking status
-        if (ticket.getCustomer().equals(customer) && ticket.getBookingStatus() == Ticket.BookingStatus.PENDING) {
+        if (ticket.getCustomer() != null && customerId.equals(ticket.getCustomer().getCustomerId()) && ticket.getBookingStatus() == Ticket.BookingStatus.PENDING) {
+            seatHoldService.release(ticket); // Gives the held seat back to the inventory, unless the expiry sweep already did
             ticketRepository.delete(ticket); // Deletes the ticket from the repository if conditions are met
+            seatMapService.releaseSeat(ticket.getFlight().getId(), ticket.getClassType(), ticket.getSeatNumber());
         }
 
         return "redirect:/mycart";
     }
 
-    // Class to generate a random ticket ID
-    public class TicketIdGenerator {
-        public static String generateTicketId() {
-            StringBuilder ticketId = new StringBuilder("TCKT");
-            Random random = new Random();
-            for (int i = 0; i < 8; i++) {
-                if (i % 2 == 0) {
-                    ticketId.append(random.nextInt(10)); // Add a random digit
-                } else {
-                    char randomChar = (char) (random.nextInt(26) + 'A'); // Add a random capital letter
-                    ticketId.append(randomChar);
-                }
-            }
-            return ticketId.toString();
-        }
-    }
-
-    // Placeholder method for payment validation and processing
-    private boolean validateAndProcessPayment(String expiryDate, String cvv) {
-        return true; // Assuming payment is always successful for this example
+    // Loads the authenticated customer by the id kept in the security context
+    private Customer currentCustomer(Principal principal) {
+        return customerRepository.findById(SecurityConfig.CustomUserDetails.of(principal).getCustomerId())
+                .orElseThrow(() -> new NoSuchElementException("Customer not found"));
     }
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+package com.example.flightticketmanagement.controllers;
+
+import com.example.flightticketmanagement.services.FlightQueryService;
+import com.example.flightticketmanagement.services.FlightScheduleService;
+import com.example.flightticketmanagement.services.RouteCalendar;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// This class serves as a REST controller for the mobile and partner clients, answering flight searches as JSON one page at a time
+@RestController
+@RequestMapping("/api/flights")
+@Tag(name = "Flights", description = "Search scheduled flights")
+public class FlightApiController {
+    @Autowired
+    private final FlightQueryService flightQueryService;
+    @Autowired
+    private final FlightScheduleService flightScheduleService;
+    @Autowired
+    private final RouteCalendar routeCalendar;
+
+    public FlightApiController(FlightQueryService flightQueryService,
+                               FlightScheduleService flightScheduleService,
+                               RouteCalendar routeCalendar) {
+        this.flightQueryService = flightQueryService;
+        this.flightScheduleService = flightScheduleService;
+        this.routeCalendar = routeCalendar;
+    }
+
+    // Method to handle get requests to /api/flights, returns one page of scheduled flights and the cursor of the next one
+    @GetMapping
+    @Operation(summary = "Search scheduled flights",
+            description = "Returns one page of scheduled flights matching the filters, and nextCursor to pass as cursor for the next page (null on the last page). "
+                    + "Sorting by duration or price needs an origin, a destination and a date range of at most " + FlightQueryService.MAX_WINDOW_DAYS + " days.")
+    public FlightQueryService.Page searchFlights(
+            @Parameter(description = "IATA code of the origin airport") @RequestParam(value = "origin", required = false) String origin,
+            @Parameter(description = "IATA code of the destination airport") @RequestParam(value = "destination", required = false) String destination,
+            @Parameter(description = "Flight date, same as from and to set to that date") @RequestParam(value = "date", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @Parameter(description = "First flight date, included") @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @Parameter(description = "Last flight date, included") @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @Parameter(description = "departure, duration or price") @RequestParam(value = "sort", defaultValue = "departure") String sort,
+            @Parameter(description = "Flights per page, at most " + FlightQueryService.MAX_PAGE_SIZE) @RequestParam(value = "limit", defaultValue = "" + FlightQueryService.DEFAULT_PAGE_SIZE) int limit,
+            @Parameter(description = "nextCursor of the previous page") @RequestParam(value = "cursor", required = false) String cursor) {
+        if (date != null) {
+            from = date;
+            to = date;
+        }
+        FlightQueryService.Query query = new FlightQueryService.Query(upperCase(origin), upperCase(destination), from, to, FlightQueryService.SortOrder.of(sort));
+        if (query.originAirportCode() != null && query.destinationAirportCode() != null && from != null) {
+            // Creates the flights of recurring schedules on the searched dates first when they lie beyond the rolling horizon
+            flightScheduleService.materializeForSearch(List.of(query.originAirportCode()), List.of(query.destinationAirportCode()), from, to == null ? from : to);
+        }
+        return flightQueryService.search(query, cursor, limit);
+    }
+
+    // Method to handle get requests to /api/flights/calendar, returns the availability of every day of a month of a route
+    @GetMapping("/calendar")
+    @Operation(summary = "Availability calendar of a route",
+            description = "Returns every day of the month with its number of scheduled flights, their remaining tickets and the lowest economy fare "
+                    + "among the flights with seats left (null when there is none).")
+    public RouteCalendar.MonthCalendar calendar(
+            @Parameter(description = "IATA code of the origin airport") @RequestParam("origin") String origin,
+            @Parameter(description = "IATA code of the destination airport") @RequestParam("destination") String destination,
+            @Parameter(description = "Month, such as 2024-07") @RequestParam("month") @DateTimeFormat(pattern = "yyyy-MM") YearMonth month) {
+        String originAirportCode = upperCase(origin);
+        String destinationAirportCode = upperCase(destination);
+        if (originAirportCode == null || destinationAirportCode == null) {
+            throw new IllegalArgumentException("The calendar needs an origin and a destination");
+        }
+        // Creates the flights of recurring schedules in the month first when it lies beyond the rolling horizon
+        flightScheduleService.materializeForSearch(List.of(originAirportCode), List.of(destinationAirportCode), month.atDay(1), month.atEndOfMonth());
+        return routeCalendar.month(originAirportCode, destinationAirportCode, month);
+    }
+
+    // Invalid filters, sort orders and cursors are the client's mistake
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+
+    private static String upperCase(String airportCode) {
+        return airportCode == null || airportCode.isBlank() ? null : airportCode.trim().toUpperCase(Locale.ROOT);
+    }
+}
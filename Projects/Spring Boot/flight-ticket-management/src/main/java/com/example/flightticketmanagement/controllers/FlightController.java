@@ -1,14 +1,32 @@
 package com.example.flightticketmanagement.controllers;
 
 import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.services.AirportGeoIndex;
+import com.example.flightticketmanagement.services.ConnectionPlanner;
+import com.example.flightticketmanagement.services.FareCalculator;
+import com.example.flightticketmanagement.services.FlexibleDateSearchService;
+import com.example.flightticketmanagement.services.FlightScheduleService;
+import com.example.flightticketmanagement.services.FlightSearchIndex;
+import com.example.flightticketmanagement.services.RouteCalendar;
+import com.example.flightticketmanagement.services.SearchResultCache;
+import com.example.flightticketmanagement.services.SeatHoldService;
+import com.example.flightticketmanagement.services.TimetableVersion;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.ui.Model;
+import org.springframework.web.context.request.ServletWebRequest;
 import com.example.flightticketmanagement.repositories.FlightRepository;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 // This class serves as a controller in a Spring MVC application, handling HTTP requests related to flights. It maps URLs to methods that interact with the flight data
 @Controller // Indicates that this class serves as a controller in a Spring MVC application
@@ -16,16 +34,61 @@ import java.util.List;
 public class FlightController {
     @Autowired
     private final FlightRepository flightRepository;
+    @Autowired
+    private final FlightSearchIndex flightSearchIndex;
+    @Autowired
+    private final FlexibleDateSearchService flexibleDateSearchService;
+    @Autowired
+    private final ConnectionPlanner connectionPlanner;
+    @Autowired
+    private final AirportGeoIndex airportGeoIndex;
+    @Autowired
+    private final FareCalculator fareCalculator;
+    @Autowired
+    private final SeatHoldService seatHoldService;
+    @Autowired
+    private final FlightScheduleService flightScheduleService;
+    @Autowired
+    private final SearchResultCache searchResultCache;
+    @Autowired
+    private final TimetableVersion timetableVersion;
+    @Autowired
+    private final RouteCalendar routeCalendar;
 
-    public FlightController(FlightRepository flightRepository) {
+    public FlightController(FlightRepository flightRepository,
+                            FlightSearchIndex flightSearchIndex,
+                            FlexibleDateSearchService flexibleDateSearchService,
+                            ConnectionPlanner connectionPlanner,
+                            AirportGeoIndex airportGeoIndex,
+                            FareCalculator fareCalculator,
+                            SeatHoldService seatHoldService,
+                            FlightScheduleService flightScheduleService,
+                            SearchResultCache searchResultCache,
+                            TimetableVersion timetableVersion,
+                            RouteCalendar routeCalendar) {
         this.flightRepository = flightRepository;
+        this.flightSearchIndex = flightSearchIndex;
+        this.flexibleDateSearchService = flexibleDateSearchService;
+        this.connectionPlanner = connectionPlanner;
+        this.airportGeoIndex = airportGeoIndex;
+        this.fareCalculator = fareCalculator;
+        this.seatHoldService = seatHoldService;
+        this.flightScheduleService = flightScheduleService;
+        this.searchResultCache = searchResultCache;
+        this.timetableVersion = timetableVersion;
+        this.routeCalendar = routeCalendar;
     }
 
     // Method to handle get requests to /flights, displays scheduled flights
     @GetMapping
-    public String flights(Model model) { // The Model object is used to pass data from the controller to the view
+    public String flights(Model model, ServletWebRequest request, Authentication authentication) { // The Model object is used to pass data from the controller to the view
+        if (notModified(request, authentication)) {
+            return null; // The browser's copy is still current, 304 Not Modified without reading the flights
+        }
         List<Flight> flightList = flightRepository.findByFlightStatus(Flight.FlightStatus.SCHEDULED);
         model.addAttribute("flights", flightList);
+        model.addAttribute("fares", economyFares(flightList));
+        model.addAttribute("availability", seatAvailability(flightList));
         return "flights";
     }
 
@@ -34,22 +97,114 @@ public class FlightController {
     public String searchFlights(@RequestParam(value = "originAirport", required = false) String originAirportCode, // Binds the originAirport request parameter to the originAirportCode method parameter. This parameter is optional (required = false)
                                 @RequestParam(value = "destinationAirport", required = false) String destinationAirportCode,
                                 @RequestParam(value = "date", required = false) String date,
-                                Model model) {
+                                @RequestParam(value = "flexDays", defaultValue = "0") int flexDays, // Days searched on each side of the date, 0 for the exact date only
+                                @RequestParam(value = "maxStops", defaultValue = "0") int maxStops, // Connecting itineraries with up to this many stops, 0 for direct flights only
+                                @RequestParam(value = "nearby", defaultValue = "false") boolean nearby, // Also searches the airports near the origin and the destination
+                                Model model,
+                                ServletWebRequest request,
+                                Authentication authentication) {
+        if (notModified(request, authentication)) {
+            return null;
+        }
         if (originAirportCode != null && destinationAirportCode != null && date != null) { // Checks if all search parameters are provided
             LocalDate flightDate = LocalDate.parse(date);
-            // Finds flights matching the search criteria
-            List<Flight> flights = flightRepository.findFlights(originAirportCode, destinationAirportCode, flightDate);
-            model.addAttribute("flights", flights); // Adds the list of flights to the model
+            List<String> originAirportCodes = List.of(originAirportCode);
+            List<String> destinationAirportCodes = List.of(destinationAirportCode);
+            if (nearby) {
+                // Searches every pair of nearby origin and destination airports together, the requested airports come first
+                List<AirportGeoIndex.NearbyAirport> nearbyOrigins = airportGeoIndex.nearby(originAirportCode);
+                List<AirportGeoIndex.NearbyAirport> nearbyDestinations = airportGeoIndex.nearby(destinationAirportCode);
+                if (!nearbyOrigins.isEmpty()) {
+                    originAirportCodes = nearbyOrigins.stream().map(nearbyAirport -> nearbyAirport.airport().getAirportCode()).toList();
+                }
+                if (!nearbyDestinations.isEmpty()) {
+                    destinationAirportCodes = nearbyDestinations.stream().map(nearbyAirport -> nearbyAirport.airport().getAirportCode()).toList();
+                }
+                model.addAttribute("nearbyOrigins", nearbyOrigins.stream().skip(1).toList());
+                model.addAttribute("nearbyDestinations", nearbyDestinations.stream().skip(1).toList());
+            }
+            YearMonth month = YearMonth.from(flightDate);
+            // Routes of recurring schedules whose first flights are not created yet are served too
+            boolean served = flightSearchIndex.servesAnyRoute(originAirportCodes, destinationAirportCodes)
+                    || flightScheduleService.servesAnyRoute(originAirportCodes, destinationAirportCodes);
+            if (served) {
+                // Creates the flights of recurring schedules on the searched dates and in the month shown by the calendar first when they
+                // lie beyond the rolling horizon
+                LocalDate firstDate = flightDate.minusDays(flexDays).isBefore(month.atDay(1)) ? flightDate.minusDays(flexDays) : month.atDay(1);
+                LocalDate lastDate = flightDate.plusDays(flexDays).isAfter(month.atEndOfMonth()) ? flightDate.plusDays(flexDays) : month.atEndOfMonth();
+                flightScheduleService.materializeForSearch(originAirportCodes, destinationAirportCodes, firstDate, lastDate);
+            }
+            if (!served) {
+                // No airline flies between these airports on any date, so there are no dates, fares or seats to look up
+                model.addAttribute("flights", List.of());
+                model.addAttribute("fares", Map.of());
+                model.addAttribute("availability", Map.of());
+                model.addAttribute("noService", true);
+            } else if (flexDays > 0) {
+                // Searches the whole date window at once and adds the cheapest and earliest flight of every day
+                FlexibleDateSearchService.FlexibleDateResult result =
+                        flexibleDateSearchService.search(originAirportCodes, destinationAirportCodes, flightDate, flexDays);
+                model.addAttribute("flights", result.flights());
+                model.addAttribute("fares", economyFares(result.flights()));
+                model.addAttribute("availability", searchResultCache.availability(result.flights()));
+                model.addAttribute("daySummaries", result.days());
+            } else {
+                // Finds flights matching the search criteria in the in-memory timetable index instead of querying the database
+                List<Flight> flights = flightSearchIndex.findFlights(originAirportCodes, destinationAirportCodes, flightDate, flightDate).get(flightDate);
+                model.addAttribute("flights", flights); // Adds the list of flights to the model
+                model.addAttribute("fares", economyFares(flights));
+                model.addAttribute("availability", searchResultCache.availability(flights)); // Seats of hot routes come from the search result cache
+            }
+            if (served) {
+                // Adds the month of the requested date, every day with its flights, seats and lowest fare, read from the precomputed route calendar
+                model.addAttribute("calendar", routeCalendar.month(originAirportCode, destinationAirportCode, month));
+            }
+            if (maxStops > 0) {
+                // Adds itineraries with connections on the requested date, planned in memory from the timetable
+                ConnectionPlanner.Plan plan = connectionPlanner.plan(originAirportCode, destinationAirportCode, flightDate, maxStops);
+                model.addAttribute("itineraries", plan.itineraries());
+            }
         }
         model.addAttribute("showSearchForm", true);
         return "flights"; // Returns the view name "flights" to be rendered
     }
 
     @GetMapping("/showAll")
-    public String showAllFlights(Model model) {
+    public String showAllFlights(Model model, ServletWebRequest request, Authentication authentication) {
+        if (notModified(request, authentication)) {
+            return null;
+        }
         List<Flight> flightList = flightRepository.findByFlightStatus(Flight.FlightStatus.SCHEDULED);
         model.addAttribute("flights", flightList);
+        model.addAttribute("fares", economyFares(flightList));
+        model.addAttribute("availability", seatAvailability(flightList));
         model.addAttribute("showSearchForm", true); // Search form is visible after showing all flights
         return "flights";
     }
+
+    // Answers 304 Not Modified when the If-None-Match or If-Modified-Since of the request still matches the timetable version, before
+    // any query or rendering. The navbar depends on the viewer's roles, so they are part of the ETag, and the page must be revalidated
+    // on every visit and only kept by the browser
+    private boolean notModified(ServletWebRequest request, Authentication authentication) {
+        String viewer = authentication == null ? "anonymous" : authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority).sorted().reduce((first, second) -> first + "+" + second).orElse("authenticated");
+        request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        request.getResponse().setHeader(HttpHeaders.VARY, HttpHeaders.COOKIE);
+        return request.checkNotModified(timetableVersion.etag(viewer), timetableVersion.lastModified());
+    }
+
+    // Current economy fare of each flight by flight id, quoted from the cached fare curves
+    private Map<Long, Double> economyFares(List<Flight> flights) {
+        Map<Long, Double> fares = new HashMap<>();
+        for (Flight flight : flights) {
+            fares.put(flight.getId(), fareCalculator.fareFor(flight, Ticket.ClassType.ECONOMY));
+        }
+        return fares;
+    }
+
+    // Free seats and seats held in customers' carts of each flight by flight id, read from the database in one query since the
+    // in-memory timetable does not follow every sale
+    private Map<Long, SeatHoldService.SeatAvailability> seatAvailability(List<Flight> flights) {
+        return seatHoldService.availability(flights.stream().map(Flight::getId).toList());
+    }
 }
\ No newline at end of file
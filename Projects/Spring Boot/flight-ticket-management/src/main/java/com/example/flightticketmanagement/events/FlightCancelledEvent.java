@@ -0,0 +1,39 @@
+package com.example.flightticketmanagement.events;
+
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+
+// This class represents an event that occurs when a flight is cancelled together with all of its tickets. It carries what the customer-facing follow-up work needs
+public class FlightCancelledEvent extends ApplicationEvent {
+    private final Long flightId;
+    private final List<String> cancelledTicketIds;
+    private final List<String> paidTicketIds;
+    private final int releasedSeats;
+
+    public FlightCancelledEvent(Object source, Long flightId, List<String> cancelledTicketIds, List<String> paidTicketIds, int releasedSeats) {
+        super(source);
+        this.flightId = flightId;
+        this.cancelledTicketIds = List.copyOf(cancelledTicketIds);
+        this.paidTicketIds = List.copyOf(paidTicketIds);
+        this.releasedSeats = releasedSeats;
+    }
+
+    public Long getFlightId() {
+        return flightId;
+    }
+
+    public List<String> getCancelledTicketIds() {
+        return cancelledTicketIds;
+    }
+
+    // Cancelled tickets that were paid for, and are refunded
+    public List<String> getPaidTicketIds() {
+        return paidTicketIds;
+    }
+
+    // Number of cancelled tickets that were paid for, and therefore held a seat of the flight's inventory
+    public int getReleasedSeats() {
+        return releasedSeats;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.flightticketmanagement.events;
+
+import com.example.flightticketmanagement.models.Flight;
+import org.springframework.context.ApplicationEvent;
+
+// This class represents an event that occurs whenever a flight row is inserted, updated or deleted. In-memory views of the flight table listen to it to stay current
+public class FlightChangedEvent extends ApplicationEvent {
+    private final Flight flight;
+    private final boolean removed;
+
+    public FlightChangedEvent(Object source, Flight flight, boolean removed) {
+        super(source);
+        this.flight = flight;
+        this.removed = removed;
+    }
+
+    public Flight getFlight() {
+        return flight;
+    }
+
+    public Long getFlightId() {
+        return flight.getId();
+    }
+
+    // True when the flight was deleted from the database, false when it was saved
+    public boolean isRemoved() {
+        return removed;
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.flightticketmanagement.events;
+
+import com.example.flightticketmanagement.models.Flight;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA entity listener registered on the Flight entity. Hibernate resolves it through the Spring bean container, so every flight write
+ * (from any controller) is turned into a FlightChangedEvent without the callers having to remember to notify anybody
+ */
+
+@Component
+public class FlightEntityListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public FlightEntityListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    // Called by Hibernate after a flight is inserted or updated
+    @PostPersist
+    @PostUpdate
+    public void afterSave(Flight flight) {
+        eventPublisher.publishEvent(new FlightChangedEvent(this, flight, false));
+    }
+
+    // Called by Hibernate after a flight is deleted
+    @PostRemove
+    public void afterRemove(Flight flight) {
+        eventPublisher.publishEvent(new FlightChangedEvent(this, flight, true));
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.flightticketmanagement.events;
+
+import org.springframework.context.ApplicationEvent;
+
+// This class represents an event that occurs when a timetable import has written flights. The flights are inserted in JDBC batches that bypass the flight entity, so no FlightChangedEvent is published for them and the in-memory views of the flight table rebuild instead
+public class FlightsImportedEvent extends ApplicationEvent {
+    private final String airlineIataCode;
+    private final long importedFlights;
+
+    public FlightsImportedEvent(Object source, String airlineIataCode, long importedFlights) {
+        super(source);
+        this.airlineIataCode = airlineIataCode;
+        this.importedFlights = importedFlights;
+    }
+
+    public String getAirlineIataCode() {
+        return airlineIataCode;
+    }
+
+    public long getImportedFlights() {
+        return importedFlights;
+    }
+}
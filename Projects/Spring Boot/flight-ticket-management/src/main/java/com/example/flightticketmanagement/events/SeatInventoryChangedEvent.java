@@ -0,0 +1,24 @@
+package com.example.flightticketmanagement.events;
+
+import org.springframework.context.ApplicationEvent;
+
+// This class represents an event that occurs when seats are taken out of or put back into a flight's inventory. The inventory is changed by bulk updates that bypass the flight entity, so no FlightChangedEvent is published for them. Also published with a delta of 0 when a held seat is claimed by a payment, which only changes the seats on hold
+public class SeatInventoryChangedEvent extends ApplicationEvent {
+    private final Long flightId;
+    private final int delta;
+
+    public SeatInventoryChangedEvent(Object source, Long flightId, int delta) {
+        super(source);
+        this.flightId = flightId;
+        this.delta = delta;
+    }
+
+    public Long getFlightId() {
+        return flightId;
+    }
+
+    // Change of the flight's remaining tickets, negative when seats were reserved and positive when they were released
+    public int getDelta() {
+        return delta;
+    }
+}
@@ -4,11 +4,14 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Data // Lombok annotation to generate getters and setters methods
 @Entity // Specifies that this class is a JPA entity and will be mapped to a database table
 @AllArgsConstructor // Lombok annotation to generate a constructor with all fields as parameters
 @NoArgsConstructor // Lombok annotation to generate a no-arguments constructor
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "airports") // Reference data, kept in the second-level cache so flights and forms do not reload it
 public class Airport {
     @Id // Specifies the primary key of the entity
     private String airportCode;
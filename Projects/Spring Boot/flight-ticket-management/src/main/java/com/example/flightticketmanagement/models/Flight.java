@@ -1,5 +1,6 @@
 package com.example.flightticketmanagement.models;
 
+import com.example.flightticketmanagement.events.FlightEntityListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -12,6 +13,7 @@ import java.time.LocalTime;
 @Entity
 @AllArgsConstructor
 @NoArgsConstructor
+@EntityListeners(FlightEntityListener.class) // Publishes a FlightChangedEvent after every insert, update or delete of a flight
 public class Flight {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY) // Specifies the generation strategy for the primary key
@@ -30,8 +32,24 @@ public class Flight {
     private LocalTime departureTimeLocal;
     private LocalTime landingTimeLocal;
     private int remainingTickets;
+    // Seats the flight was put on sale with, the size of its seat map. Set from the remaining tickets when the flight is created
+    private int seatCapacity;
     @Enumerated(EnumType.STRING) // Specifies that the enum will be persisted as a string
     private FlightStatus flightStatus;
+    // Id of the FlightSchedule the flight was created from, null for flights added one by one
+    private Long scheduleId;
+
+    public Flight(Long id, String flightNumber, Airline airline, Airport originAirport, Airport destinationAirport, LocalDate date,
+                  LocalTime departureTimeLocal, LocalTime landingTimeLocal, int remainingTickets, FlightStatus flightStatus) {
+        this(id, flightNumber, airline, originAirport, destinationAirport, date, departureTimeLocal, landingTimeLocal, remainingTickets, remainingTickets, flightStatus, null);
+    }
+
+    // Flights added through the forms only give their remaining tickets, and a flight can never have more seats left than it has
+    @PrePersist
+    @PreUpdate
+    void fitSeatCapacity() {
+        seatCapacity = Math.max(seatCapacity, remainingTickets);
+    }
 
     public enum FlightStatus {
         SCHEDULED, CANCELLED, COMPLETED
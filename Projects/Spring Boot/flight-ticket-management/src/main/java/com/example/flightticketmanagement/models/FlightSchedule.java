@@ -0,0 +1,70 @@
+package com.example.flightticketmanagement.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashSet;
+import java.util.Set;
+
+// A recurring flight: one route flown at the same times on some days of the week over a validity period. Dated Flight rows are created
+// from it ahead of time (see FlightScheduleService), each of them can then be changed or cancelled on its own
+@Data
+@Entity
+@AllArgsConstructor
+@NoArgsConstructor
+public class FlightSchedule {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    private String flightNumber;
+    @ManyToOne
+    @JoinColumn(name = "airline_iata_code")
+    private Airline airline;
+    @ManyToOne
+    @JoinColumn(name = "origin_airport_code")
+    private Airport originAirport;
+    @ManyToOne
+    @JoinColumn(name = "destination_airport_code")
+    private Airport destinationAirport;
+    // Days of the week the flight operates, as ISO day numbers from 1 (Monday) to 7 (Sunday), for example "135" for Monday, Wednesday and Friday
+    private String daysOfWeek;
+    private LocalDate validFrom;
+    private LocalDate validTo;
+    private LocalTime departureTimeLocal;
+    private LocalTime landingTimeLocal;
+    // Remaining tickets of every flight created from the schedule
+    private int seatsPerFlight;
+    // Last date up to which the flights of the schedule have been created, null before the first ones
+    private LocalDate materializedThrough;
+    // Dates after materializedThrough whose flights were created early for a search, so they are not created again when the horizon
+    // reaches them. Dates are dropped once materializedThrough passes them
+    @ElementCollection
+    @CollectionTable(name = "flight_schedule_date", joinColumns = @JoinColumn(name = "schedule_id"))
+    @Column(name = "flight_date")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Set<LocalDate> materializedDates = new HashSet<>();
+
+    public FlightSchedule(Long id, String flightNumber, Airline airline, Airport originAirport, Airport destinationAirport, String daysOfWeek,
+                          LocalDate validFrom, LocalDate validTo, LocalTime departureTimeLocal, LocalTime landingTimeLocal, int seatsPerFlight,
+                          LocalDate materializedThrough) {
+        this(id, flightNumber, airline, originAirport, destinationAirport, daysOfWeek, validFrom, validTo, departureTimeLocal, landingTimeLocal,
+                seatsPerFlight, materializedThrough, new HashSet<>());
+    }
+
+    // True if the schedule has a flight on the date
+    public boolean operatesOn(LocalDate date) {
+        return !date.isBefore(validFrom) && !date.isAfter(validTo) && operatesOn(date.getDayOfWeek());
+    }
+
+    public boolean operatesOn(DayOfWeek dayOfWeek) {
+        return daysOfWeek != null && daysOfWeek.indexOf((char) ('0' + dayOfWeek.getValue())) >= 0;
+    }
+}
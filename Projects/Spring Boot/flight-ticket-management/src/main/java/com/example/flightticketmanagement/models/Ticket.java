@@ -5,6 +5,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
+
 @Data
 @Entity
 @AllArgsConstructor
@@ -24,9 +26,21 @@ public class Ticket {
     @Enumerated(EnumType.STRING)
     private BookingStatus bookingStatus;
     private double price;
+    // End of the seat hold of a PENDING ticket, its seat is taken out of the flight's inventory until then (see SeatHoldService).
+    // Null once the ticket is paid for, or for pending tickets that hold no seat
+    private Instant holdExpiresAt;
+    // When the payment of a PAYMENT_PROCESSING ticket was sent to the provider, so payments left without an outcome are found and
+    // reconciled (see PaymentService). Null otherwise
+    private Instant paymentStartedAt;
+
+    public Ticket(String ticketId, Customer customer, Flight flight, ClassType classType, String seatNumber, BookingStatus bookingStatus, double price) {
+        this(ticketId, customer, flight, classType, seatNumber, bookingStatus, price, null, null);
+    }
 
     public enum BookingStatus {
-        BOOKED, CANCELLED, CONFIRMED, CHECKED_IN, COMPLETED, PENDING
+        BOOKED, CANCELLED, CONFIRMED, CHECKED_IN, COMPLETED, PENDING,
+        // Paid for, waiting for the answer of the payment provider (see PaymentService). The ticket keeps its seat meanwhile
+        PAYMENT_PROCESSING
     }
     public enum ClassType {
         ECONOMY, FIRST, BUSINESS
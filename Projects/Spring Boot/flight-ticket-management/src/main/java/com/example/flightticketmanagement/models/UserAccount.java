@@ -0,0 +1,37 @@
+package com.example.flightticketmanagement.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Subselect;
+import org.hibernate.annotations.Synchronize;
+
+// Read-only union of the customer, airline and administrator logins, so any username is resolved to its role and id in one query.
+// Each branch is served by the username index of its table. When the same username exists in several tables, precedence keeps the
+// customer, airline, administrator order the login always had
+@Data
+@Entity
+@Immutable
+@Subselect("SELECT 'USER:' || c.customer_id AS account_key, c.username, c.password, 'ROLE_USER' AS role, " +
+        "CAST(c.customer_id AS VARCHAR) AS principal_id, 1 AS precedence FROM customer c " +
+        "UNION ALL SELECT 'AIRLINE:' || a.iata_code, a.username, a.password, 'ROLE_AIRLINE', a.iata_code, 2 FROM airline a " +
+        "UNION ALL SELECT 'ADMIN:' || ad.admin_id, ad.username, ad.password, 'ROLE_ADMIN', " +
+        "CAST(ad.admin_id AS VARCHAR), 3 FROM administrator ad")
+@Synchronize({"customer", "airline", "administrator"}) // Pending changes to these tables are flushed before the union is queried
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserAccount {
+    @Id
+    @Column(name = "account_key")
+    private String accountKey; // Role prefix plus id, usernames alone are not unique across the three tables
+    private String username;
+    private String password;
+    private String role;
+    @Column(name = "principal_id")
+    private String principalId; // customer_id, iata_code or admin_id depending on the role
+    private int precedence;
+}
@@ -1,16 +1,34 @@
 package com.example.flightticketmanagement.repositories;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import com.example.flightticketmanagement.models.Airline;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface AirlineRepository extends JpaRepository<Airline, String> {
+    // Query cache region holding the result of findAll, evicted by ReferenceDataCache when airlines are edited
+    String LIST_REGION = "airline-lists";
+
+    // Finds all airlines, served from the query cache after the first call since the add and edit flight forms list them every time
+    @Override
+    @QueryHints({@QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = AvailableHints.HINT_CACHE_REGION, value = LIST_REGION)})
+    List<Airline> findAll();
+
     // Finds an airline by its iata code
     Optional<Airline> findByIataCode(String iataCode);
 
     // Finds an airline by its username
     Optional<Airline> findByUsername(String username);
+
+    // Finds one page of airlines whose name or iata code contains the given text
+    Page<Airline> findByAirlineNameContainingIgnoreCaseOrIataCodeContainingIgnoreCase(String airlineName, String iataCode, Pageable pageable);
 }
\ No newline at end of file
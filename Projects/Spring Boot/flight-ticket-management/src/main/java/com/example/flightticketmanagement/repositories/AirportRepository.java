@@ -1,13 +1,30 @@
 package com.example.flightticketmanagement.repositories;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import com.example.flightticketmanagement.models.Airport;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository // Marks this interface as a Spring Data repository, it extends JpaRepository to provide CRUD operations
 public interface AirportRepository extends JpaRepository<Airport, String> {
+    // Query cache region holding the result of findAll, evicted by ReferenceDataCache when airports are edited
+    String LIST_REGION = "airport-lists";
+
+    // Finds all airports, served from the query cache after the first call since the add and edit flight forms list them every time
+    @Override
+    @QueryHints({@QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = AvailableHints.HINT_CACHE_REGION, value = LIST_REGION)})
+    List<Airport> findAll();
+
     // Query method to find an airport by its code. It returns an Optional containing the found airport, or empty if not found
     Optional<Airport> findByAirportCode(String airportCode);
+    // Finds one page of airports whose code, name or city contains the given text
+    Page<Airport> findByAirportCodeContainingIgnoreCaseOrAirportNameContainingIgnoreCaseOrCityContainingIgnoreCase(String airportCode, String airportName, String city, Pageable pageable);
 }
\ No newline at end of file
@@ -1,15 +1,19 @@
 package com.example.flightticketmanagement.repositories;
 
 import com.example.flightticketmanagement.models.Customer;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
 
 @Repository
-public interface CustomerRepository extends JpaRepository<Customer, String> {
+public interface CustomerRepository extends JpaRepository<Customer, Long> {
     // Finds a customer by its username
     Customer findByUsername(String username);
     // Finds a customer by its customer id
     Optional<Customer> findByCustomerId(Long customerId);
+    // Finds one page of customers whose username, first name or last name contains the given text
+    Page<Customer> findByUsernameContainingIgnoreCaseOrFirstNameContainingIgnoreCaseOrLastNameContainingIgnoreCase(String username, String firstName, String lastName, Pageable pageable);
 }
\ No newline at end of file
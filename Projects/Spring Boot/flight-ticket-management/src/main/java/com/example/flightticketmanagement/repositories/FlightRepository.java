@@ -1,18 +1,28 @@
 package com.example.flightticketmanagement.repositories;
 
 import com.example.flightticketmanagement.models.Airline;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.repository.query.Param;
 import com.example.flightticketmanagement.models.Flight;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface FlightRepository extends JpaRepository<Flight, Long> {
+// Specifications serve the filtered, keyset-paginated searches of the JSON API (see FlightQueryService)
+public interface FlightRepository extends JpaRepository<Flight, Long>, JpaSpecificationExecutor<Flight> {
     // Query method to find scheduled flights between specified airports on a given date
     @Query("SELECT f FROM Flight f WHERE f.originAirport.airportCode = :originAirportCode " +
             "AND f.destinationAirport.airportCode = :destinationAirportCode " +
@@ -25,6 +35,54 @@ public interface FlightRepository extends JpaRepository<Flight, Long> {
     Optional<Flight> findByFlightNumberAndDate(String flightNumber, LocalDate date);
     // Finds flights operated by a specific airline
     List<Flight> findByAirline(Airline airline);
-    // Finds flights with a specific flight status
+    // Finds flights with a specific flight status, loading the airline and airports in the same query since the flights page shows them
+    @EntityGraph(attributePaths = {"airline", "originAirport", "destinationAirport"})
     List<Flight> findByFlightStatus(Flight.FlightStatus flightStatus);
+    // Finds flights with a specific flight status together with their airline and airports in a single query
+    @Query("SELECT f FROM Flight f LEFT JOIN FETCH f.airline LEFT JOIN FETCH f.originAirport " +
+            "LEFT JOIN FETCH f.destinationAirport WHERE f.flightStatus = :flightStatus")
+    List<Flight> findWithRouteByFlightStatus(@Param("flightStatus") Flight.FlightStatus flightStatus);
+
+    // Finds one page of flights whose flight number contains the given text, loading the airline and airports in the same query
+    @EntityGraph(attributePaths = {"airline", "originAirport", "destinationAirport"})
+    Page<Flight> findByFlightNumberContainingIgnoreCase(String flightNumber, Pageable pageable);
+    // Same as above, restricted to one flight status
+    @EntityGraph(attributePaths = {"airline", "originAirport", "destinationAirport"})
+    Page<Flight> findByFlightNumberContainingIgnoreCaseAndFlightStatus(String flightNumber, Flight.FlightStatus flightStatus, Pageable pageable);
+
+    // Takes seats out of a flight's inventory in a single conditional update. Returns 0 when fewer than the requested seats remain, so it can never go below zero
+    @Transactional
+    @Modifying
+    @Query("UPDATE Flight f SET f.remainingTickets = f.remainingTickets - :quantity " +
+            "WHERE f.id = :flightId AND f.remainingTickets >= :quantity")
+    int decrementRemainingTickets(@Param("flightId") Long flightId, @Param("quantity") int quantity);
+
+    // Puts seats back into a flight's inventory in a single update. Returns 0 when the flight does not exist
+    @Transactional
+    @Modifying
+    @Query("UPDATE Flight f SET f.remainingTickets = f.remainingTickets + :quantity WHERE f.id = :flightId")
+    int incrementRemainingTickets(@Param("flightId") Long flightId, @Param("quantity") int quantity);
+
+    // Loads a flight and locks its row until the transaction ends, so the seats sold or released meanwhile wait for its update instead of
+    // being overwritten by the remaining tickets it was read with
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT f FROM Flight f WHERE f.id = :flightId")
+    Optional<Flight> lockById(@Param("flightId") Long flightId);
+
+    // Seat capacity of a flight, empty when the flight does not exist
+    @Query("SELECT f.seatCapacity FROM Flight f WHERE f.id = :flightId")
+    Optional<Integer> findSeatCapacity(@Param("flightId") Long flightId);
+
+    // Remaining tickets of the given flights together with the number of seats held by pending tickets in customers' carts, in one query
+    @Query("SELECT f.id AS flightId, f.remainingTickets AS remainingTickets, COUNT(t) AS heldTickets FROM Flight f " +
+            "LEFT JOIN Ticket t ON t.flight = f AND t.bookingStatus = 'PENDING' AND t.holdExpiresAt IS NOT NULL " +
+            "WHERE f.id IN :flightIds GROUP BY f.id, f.remainingTickets")
+    List<SeatAvailability> findSeatAvailability(@Param("flightIds") Collection<Long> flightIds);
+
+    // Projection holding the free and held seats of a flight
+    interface SeatAvailability {
+        Long getFlightId();
+        int getRemainingTickets();
+        long getHeldTickets();
+    }
 }
\ No newline at end of file
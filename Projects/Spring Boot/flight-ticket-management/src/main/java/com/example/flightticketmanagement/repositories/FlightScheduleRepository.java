@@ -0,0 +1,40 @@
+package com.example.flightticketmanagement.repositories;
+
+import com.example.flightticketmanagement.models.Airline;
+import com.example.flightticketmanagement.models.FlightSchedule;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FlightScheduleRepository extends JpaRepository<FlightSchedule, Long> {
+    // Finds the schedules of an airline, the ones still running first
+    List<FlightSchedule> findByAirlineOrderByValidToDescFlightNumberAsc(Airline airline);
+
+    // Loads a schedule and locks its row until the end of the transaction, so only one transaction at a time creates its flights
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM FlightSchedule s WHERE s.id = :id")
+    Optional<FlightSchedule> lockById(@Param("id") Long id);
+
+    // Ids of the schedules still running whose flights have not been created up to the horizon yet
+    @Query("SELECT s.id FROM FlightSchedule s WHERE s.validTo >= :today " +
+            "AND (s.materializedThrough IS NULL OR (s.materializedThrough < :horizon AND s.materializedThrough < s.validTo))")
+    List<Long> findIdsBehindHorizon(@Param("today") LocalDate today, @Param("horizon") LocalDate horizon);
+
+    // Finds the dates of every schedule whose flights were created early for a search
+    @Query("SELECT s.id AS scheduleId, d AS date FROM FlightSchedule s JOIN s.materializedDates d")
+    List<MaterializedDate> findMaterializedDates();
+
+    // Projection holding a schedule id and one of its dates created early
+    interface MaterializedDate {
+        Long getScheduleId();
+        LocalDate getDate();
+    }
+}
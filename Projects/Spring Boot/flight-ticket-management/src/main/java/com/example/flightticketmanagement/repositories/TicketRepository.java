@@ -3,14 +3,32 @@ package com.example.flightticketmanagement.repositories;
 import com.example.flightticketmanagement.models.Flight;
 import com.example.flightticketmanagement.models.Ticket;
 import com.example.flightticketmanagement.models.Customer;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface TicketRepository extends JpaRepository<Ticket, String> {
+    // Select list of the TicketSummary projection. The flight and its relations are outer joined so tickets without a flight are kept
+    String TICKET_SUMMARY_SELECT = "SELECT t.ticketId AS ticketId, f.flightNumber AS flightNumber, a.airlineName AS airlineName, " +
+            "o.airportCode AS originAirportCode, d.airportCode AS destinationAirportCode, f.date AS flightDate, " +
+            "f.departureTimeLocal AS departureTimeLocal, t.classType AS classType, t.seatNumber AS seatNumber, " +
+            "t.bookingStatus AS bookingStatus, t.price AS price, t.holdExpiresAt AS holdExpiresAt " +
+            "FROM Ticket t LEFT JOIN t.flight f LEFT JOIN f.airline a " +
+            "LEFT JOIN f.originAirport o LEFT JOIN f.destinationAirport d ";
+
     // Finds tickets for a specific customer
     List<Ticket> findByCustomer(Customer customer);
     // Finds tickets for a specific flight
@@ -19,5 +37,142 @@ public interface TicketRepository extends JpaRepository<Ticket, String> {
     Optional<Ticket> findByTicketId(String ticketId);
     // Finds tickets by user and booking status
     List<Ticket> findByCustomerAndBookingStatus(Customer customer, Ticket.BookingStatus bookingStatus);
+    // Finds the tickets of a customer as flat rows holding only what the account page shows, in a single query
+    @Query(TICKET_SUMMARY_SELECT + "WHERE t.customer.customerId = :customerId ORDER BY f.date, f.departureTimeLocal")
+    List<TicketSummary> findSummariesByCustomerId(@Param("customerId") Long customerId);
+    // Same as above, restricted to one booking status (used by the cart for PENDING tickets)
+    @Query(TICKET_SUMMARY_SELECT + "WHERE t.customer.customerId = :customerId AND t.bookingStatus = :bookingStatus ORDER BY f.date, f.departureTimeLocal")
+    List<TicketSummary> findSummariesByCustomerIdAndBookingStatus(@Param("customerId") Long customerId,
+                                                                  @Param("bookingStatus") Ticket.BookingStatus bookingStatus);
+    // Finds one page of tickets whose ticket id contains the given text, loading the customer and flight in the same query
+    @EntityGraph(attributePaths = {"customer", "flight", "flight.airline", "flight.originAirport", "flight.destinationAirport"})
+    Page<Ticket> findByTicketIdContainingIgnoreCase(String ticketId, Pageable pageable);
+    // Same as above, restricted to one booking status
+    @EntityGraph(attributePaths = {"customer", "flight", "flight.airline", "flight.originAirport", "flight.destinationAirport"})
+    Page<Ticket> findByTicketIdContainingIgnoreCaseAndBookingStatus(String ticketId, Ticket.BookingStatus bookingStatus, Pageable pageable);
+    // Finds the seats held by the active (not cancelled) tickets of a flight, used to rebuild the flight's seat map
+    @Query("SELECT t.classType AS classType, t.seatNumber AS seatNumber FROM Ticket t " +
+            "WHERE t.flight.id = :flightId AND t.bookingStatus <> 'CANCELLED' AND t.seatNumber IS NOT NULL")
+    List<OccupiedSeat> findOccupiedSeats(@Param("flightId") Long flightId);
+    // Locks the active (not cancelled) tickets of a flight and reads their booking statuses and whether they hold a seat, so none of them
+    // is paid for, put back in the cart or released by the expiry sweep until the locking transaction ends
+    @Query(value = "SELECT t.ticket_id AS ticketId, t.booking_status AS bookingStatus, t.hold_expires_at IS NOT NULL AS held " +
+            "FROM ticket t WHERE t.flight_id = :flightId AND t.booking_status <> 'CANCELLED' FOR UPDATE", nativeQuery = true)
+    List<ActiveTicket> lockActiveTickets(@Param("flightId") Long flightId);
+
+    // Cancels all active tickets of a flight in one set-based update and returns the number of cancelled tickets
+    @Transactional
+    @Modifying
+    @Query("UPDATE Ticket t SET t.bookingStatus = 'CANCELLED' WHERE t.flight.id = :flightId AND t.bookingStatus <> 'CANCELLED'")
+    int cancelTicketsOfFlight(@Param("flightId") Long flightId);
+
+    // Cancels a ticket if it still has the status it was read with. Returns 0 when its status changed meanwhile, for instance because a
+    // payment started or another cancellation won, so the seat of a ticket is given back once
+    @Transactional
+    @Modifying
+    @Query("UPDATE Ticket t SET t.bookingStatus = 'CANCELLED' WHERE t.ticketId = :ticketId AND t.bookingStatus = :seen")
+    int cancelTicket(@Param("ticketId") String ticketId, @Param("seen") Ticket.BookingStatus seen);
+
+    // Ends the seat hold of a ticket whatever its status. Returns 0 when the ticket held no seat
+    @Transactional
+    @Modifying
+    @Query("UPDATE Ticket t SET t.holdExpiresAt = NULL WHERE t.ticketId = :ticketId AND t.holdExpiresAt IS NOT NULL")
+    int endHold(@Param("ticketId") String ticketId);
+
+    // Locks a batch of pending tickets whose seat hold ended, oldest first, through the partial index on the hold expiry. Rows locked by
+    // another transaction (a payment in progress or another instance's sweep) are skipped instead of waited for
+    @Query(value = "SELECT t.ticket_id AS ticketId, t.flight_id AS flightId, t.class_type AS classType, t.seat_number AS seatNumber " +
+            "FROM ticket t WHERE t.booking_status = 'PENDING' AND t.hold_expires_at IS NOT NULL AND t.hold_expires_at <= :now " +
+            "ORDER BY t.hold_expires_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<ExpiredHold> lockExpiredHolds(@Param("now") Instant now, @Param("limit") int limit);
+
+    // Cancels the given pending tickets and ends their seat holds in one statement
+    @Transactional
+    @Modifying
+    @Query("UPDATE Ticket t SET t.bookingStatus = 'CANCELLED', t.holdExpiresAt = NULL WHERE t.ticketId IN :ticketIds")
+    int cancelHolds(@Param("ticketIds") List<String> ticketIds);
+
+    // Ends the seat hold of a pending ticket. Returns 0 when the ticket holds no seat anymore, for instance because the expiry sweep
+    // already cancelled it, so a hold is handed over (to a payment or back to the inventory) exactly once
+    @Transactional
+    @Modifying
+    @Query("UPDATE Ticket t SET t.holdExpiresAt = NULL " +
+            "WHERE t.ticketId = :ticketId AND t.bookingStatus = 'PENDING' AND t.holdExpiresAt IS NOT NULL")
+    int clearHold(@Param("ticketId") String ticketId);
+
+    // Marks a pending ticket as waiting for its payment since startedAt. Returns 0 when the ticket is not pending anymore, so a ticket is
+    // paid for once
+    @Transactional
+    @Modifying
+    @Query("UPDATE Ticket t SET t.bookingStatus = 'PAYMENT_PROCESSING', t.paymentStartedAt = :startedAt " +
+            "WHERE t.ticketId = :ticketId AND t.bookingStatus = 'PENDING'")
+    int startPayment(@Param("ticketId") String ticketId, @Param("startedAt") Instant startedAt);
+
+    // Sets the outcome of a payment, booked or back to pending with the given seat hold. Returns 0 when the ticket is not waiting for a
+    // payment anymore, for instance because it was cancelled meanwhile
+    @Transactional
+    @Modifying
+    @Query("UPDATE Ticket t SET t.bookingStatus = :bookingStatus, t.holdExpiresAt = :holdExpiresAt, t.paymentStartedAt = NULL " +
+            "WHERE t.ticketId = :ticketId AND t.bookingStatus = 'PAYMENT_PROCESSING'")
+    int completePayment(@Param("ticketId") String ticketId,
+                        @Param("bookingStatus") Ticket.BookingStatus bookingStatus,
+                        @Param("holdExpiresAt") Instant holdExpiresAt);
+
+    // Finds the tickets whose payment started before the given time and still has no outcome, and the tickets cancelled during their
+    // payment whose authorization was not voided yet, oldest first, through the partial index on the payment start. Tickets of databases
+    // created before the payment start was recorded have none and come first
+    @Query("SELECT t.ticketId AS ticketId, t.flight.id AS flightId, t.bookingStatus AS bookingStatus FROM Ticket t " +
+            "WHERE (t.bookingStatus = 'PAYMENT_PROCESSING' OR t.paymentStartedAt IS NOT NULL) " +
+            "AND (t.paymentStartedAt IS NULL OR t.paymentStartedAt <= :startedBefore) ORDER BY t.paymentStartedAt NULLS FIRST")
+    List<StalePayment> findStalePayments(@Param("startedBefore") Instant startedBefore, Pageable pageable);
+
+    // Forgets the payment of a ticket cancelled during it, once its authorization is voided, so the reconciliation stops reading it
+    @Transactional
+    @Modifying
+    @Query("UPDATE Ticket t SET t.paymentStartedAt = NULL WHERE t.ticketId = :ticketId AND t.bookingStatus = 'CANCELLED'")
+    int clearPaymentStart(@Param("ticketId") String ticketId);
+
+    // Projection holding only the cabin and seat number of a ticket
+    interface OccupiedSeat {
+        Ticket.ClassType getClassType();
+        String getSeatNumber();
+    }
+
+    // Read model of a ticket for the account and cart pages, one flat row per ticket with the flight details it is displayed with
+    interface TicketSummary {
+        String getTicketId();
+        String getFlightNumber();
+        String getAirlineName();
+        String getOriginAirportCode();
+        String getDestinationAirportCode();
+        LocalDate getFlightDate();
+        LocalTime getDepartureTimeLocal();
+        Ticket.ClassType getClassType();
+        String getSeatNumber();
+        Ticket.BookingStatus getBookingStatus();
+        double getPrice();
+        Instant getHoldExpiresAt();
+    }
+
+    // Active ticket of a flight with its booking status and whether it holds a seat. Read by a native query, hence the plain booking status
+    interface ActiveTicket {
+        String getTicketId();
+        String getBookingStatus();
+        boolean isHeld();
+    }
+
+    // Ticket whose payment has had no outcome for too long, with the flight whose seat it took
+    interface StalePayment {
+        String getTicketId();
+        Long getFlightId();
+        Ticket.BookingStatus getBookingStatus();
+    }
 
+    // Pending ticket whose seat hold expired, with what is needed to give its seat back. Read by a native query, hence the plain class type
+    interface ExpiredHold {
+        String getTicketId();
+        Long getFlightId();
+        String getClassType();
+        String getSeatNumber();
+    }
 }
\ No newline at end of file
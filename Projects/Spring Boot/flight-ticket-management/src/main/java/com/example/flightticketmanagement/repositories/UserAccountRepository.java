@@ -0,0 +1,13 @@
+package com.example.flightticketmanagement.repositories;
+
+import com.example.flightticketmanagement.models.UserAccount;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface UserAccountRepository extends JpaRepository<UserAccount, String> {
+    // Finds the login with the given username in any of the user tables, in a single query
+    Optional<UserAccount> findFirstByUsernameOrderByPrecedence(String username);
+}
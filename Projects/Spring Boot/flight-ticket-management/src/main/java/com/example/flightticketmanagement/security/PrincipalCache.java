@@ -0,0 +1,48 @@
+package com.example.flightticketmanagement.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Short-lived cache of resolved logins, used by the authentication provider so repeated logins of the same user do not query the
+ * database each time. A cached entry whose password does not match is reloaded by the provider, and entries of users whose username
+ * or password is edited are removed right away, so the short time to live only bounds how long a deleted user stays cached.
+ * Copies are stored and handed out since the authentication manager erases the password of the principal it returns
+ */
+
+@Component
+public class PrincipalCache implements UserCache {
+
+    private static final Duration TIME_TO_LIVE = Duration.ofSeconds(60);
+    private static final long MAXIMUM_SIZE = 10_000;
+
+    private final Cache<String, SecurityConfig.CustomUserDetails> users = Caffeine.newBuilder()
+            .expireAfterWrite(TIME_TO_LIVE)
+            .maximumSize(MAXIMUM_SIZE)
+            .build();
+
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        SecurityConfig.CustomUserDetails user = users.getIfPresent(username);
+        return user == null ? null : user.copy();
+    }
+
+    @Override
+    public void putUserInCache(UserDetails user) {
+        if (user instanceof SecurityConfig.CustomUserDetails customUserDetails) {
+            users.put(user.getUsername(), customUserDetails.copy());
+        }
+    }
+
+    @Override
+    public void removeUserFromCache(String username) {
+        if (username != null) {
+            users.invalidate(username);
+        }
+    }
+}
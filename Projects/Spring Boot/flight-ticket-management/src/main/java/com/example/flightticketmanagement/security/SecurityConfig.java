@@ -1,17 +1,14 @@
 package com.example.flightticketmanagement.security;
 
-import com.example.flightticketmanagement.models.Administrator;
-import com.example.flightticketmanagement.models.Airline;
-import com.example.flightticketmanagement.models.Customer;
-import com.example.flightticketmanagement.repositories.AdministratorRepository;
-import com.example.flightticketmanagement.repositories.CustomerRepository;
-import com.example.flightticketmanagement.repositories.AirlineRepository;
+import com.example.flightticketmanagement.models.UserAccount;
+import com.example.flightticketmanagement.repositories.UserAccountRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.AuthorityUtils;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -19,6 +16,8 @@ import org.springframework.security.crypto.password.NoOpPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 
+import java.security.Principal;
+
 /**
  * This class configures Spring Security settings for the application, including authentication, authorization, and password encoding
  */
@@ -27,11 +26,9 @@ import org.springframework.security.web.SecurityFilterChain;
 public class SecurityConfig {
 
     @Autowired
-    private CustomerRepository customerRepository;
-    @Autowired
-    private AirlineRepository airlineRepository;
+    private UserAccountRepository userAccountRepository;
     @Autowired
-    private AdministratorRepository administratorRepository;
+    private PrincipalCache principalCache;
     @Autowired
     private CustomAuthenticationSuccessHandler successHandler;
 
@@ -47,9 +44,10 @@ public class SecurityConfig {
         http
                 .csrf(csrf -> csrf.disable())  // Disable CSRF protection
                 .authorizeRequests(authorize -> authorize
-                        .requestMatchers("/account", "/purchase/**", "/payment").hasRole("USER")  // Restrict access to the account and payment pages to user role
-                        .requestMatchers("/airline-flights").hasRole("AIRLINE") // Restrict access to the airline flights page to airline role
-                        .requestMatchers("/admin-page").hasRole("ADMIN") // Restrict access to the admin page to admin role
+                        .requestMatchers("/account", "/purchase/**", "/payment", "/payment/**", "/confirmation").hasRole("USER")  // Restrict access to the account, payment and confirmation pages to user role
+                        .requestMatchers("/airline-flights", "/airline-flights/import", "/airline-flights/import/**", "/airline-flights/schedules").hasRole("AIRLINE") // Restrict access to the airline flights page, the timetable import and the schedules to airline role
+                        .requestMatchers("/admin-page", "/admin-page/**").hasRole("ADMIN") // Restrict access to the admin page, its tabs and its actions to admin role
+                        .requestMatchers("/actuator/**").hasRole("ADMIN") // Restrict access to the health and metrics endpoints to admin role
                         .anyRequest().permitAll())  // Allow unrestricted access to other URLs
                 .formLogin(formLogin -> formLogin
                         .loginPage("/login")  // Custom login page URL
@@ -64,46 +62,73 @@ public class SecurityConfig {
     }
 
     @Bean
-    // Provides user-specific details based on username during authentication
+    // Provides user-specific details based on username during authentication. The customer, airline and administrator tables are
+    // searched with one query on the UserAccount union instead of one query per table
     public UserDetailsService userDetailsService() {
-        return username -> {
-            // Lookup customer by username
-            Customer customer = customerRepository.findByUsername(username);
-            if (customer != null) {
-                // Create UserDetails object with ROLE_USER authority
-                return new org.springframework.security.core.userdetails.User(
-                        customer.getUsername(), customer.getPassword(), AuthorityUtils.createAuthorityList("ROLE_USER"));
-            }
-            // Lookup airline by username
-            Airline airline = airlineRepository.findByUsername(username).orElse(null);
-            if (airline != null) {
-                // Create UserDetails object with ROLE_AIRLINE authority
-                return new org.springframework.security.core.userdetails.User(
-                        airline.getUsername(), airline.getPassword(), AuthorityUtils.createAuthorityList("ROLE_AIRLINE"));
-            }
-            // Lookup administrator by username
-            Administrator administrator = administratorRepository.findByUsername(username).orElse(null);
-            if (administrator != null) {
-                // Create UserDetails object with ROLE_ADMIN authority
-                return new org.springframework.security.core.userdetails.User(
-                        administrator.getUsername(), administrator.getPassword(), AuthorityUtils.createAuthorityList("ROLE_ADMIN"));
-            }
-            // Throw exception if no user found with the given username
-            throw new UsernameNotFoundException("User '" + username + "' not found");
-        };
+        return username -> userAccountRepository.findFirstByUsernameOrderByPrecedence(username)
+                .map(CustomUserDetails::new)
+                // Throw exception if no user found with the given username
+                .orElseThrow(() -> new UsernameNotFoundException("User '" + username + "' not found"));
+    }
+
+    @Bean
+    // Authenticates form logins against the user details service, keeping resolved users in the principal cache for a short while
+    public DaoAuthenticationProvider authenticationProvider(UserDetailsService userDetailsService, PasswordEncoder passwordEncoder) {
+        DaoAuthenticationProvider authenticationProvider = new DaoAuthenticationProvider(passwordEncoder);
+        authenticationProvider.setUserDetailsService(userDetailsService);
+        authenticationProvider.setUserCache(principalCache);
+        return authenticationProvider;
     }
 
+    // The logged-in user as kept in the security context, holding the role and id of the customer, airline or administrator so
+    // controllers do not have to look the user up again on every request
     public static class CustomUserDetails extends org.springframework.security.core.userdetails.User {
-        private final Object user;
+        private final String role;
+        private final String principalId;
+
+        public CustomUserDetails(UserAccount account) {
+            this(account.getUsername(), account.getPassword(), account.getRole(), account.getPrincipalId());
+        }
+
+        private CustomUserDetails(String username, String password, String role, String principalId) {
+            super(username, password, AuthorityUtils.createAuthorityList(role));
+            this.role = role;
+            this.principalId = principalId;
+        }
 
-        public CustomUserDetails(Object user, String role) {
-            super(((UserDetails) user).getUsername(), ((UserDetails) user).getPassword(),
-                    AuthorityUtils.createAuthorityList(role));
-            this.user = user;
+        // Returns the logged-in user of the given principal, which is the Authentication of the current request
+        public static CustomUserDetails of(Principal principal) {
+            if (principal instanceof Authentication authentication && authentication.getPrincipal() instanceof CustomUserDetails user) {
+                return user;
+            }
+            throw new IllegalStateException("Principal was not authenticated through the login form");
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        public Long getCustomerId() {
+            return Long.valueOf(principalId("ROLE_USER"));
+        }
+
+        public String getIataCode() {
+            return principalId("ROLE_AIRLINE");
+        }
+
+        public Long getAdminId() {
+            return Long.valueOf(principalId("ROLE_ADMIN"));
         }
 
-        public Object getUser() {
-            return user;
+        CustomUserDetails copy() {
+            return new CustomUserDetails(getUsername(), getPassword(), role, principalId);
+        }
+
+        private String principalId(String expectedRole) {
+            if (!role.equals(expectedRole)) {
+                throw new IllegalStateException("User '" + getUsername() + "' has " + role + ", not " + expectedRole);
+            }
+            return principalId;
         }
     }
-}
\ No newline at end of file
+}
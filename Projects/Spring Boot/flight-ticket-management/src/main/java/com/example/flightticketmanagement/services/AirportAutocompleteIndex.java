@@ -0,0 +1,170 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.repositories.AirportRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Prefix index of airports for the autocomplete of the search form, by code, city, name and country. Every word of these fields is
+ * folded to lower case without accents ("São Paulo" is found as "sao") and kept in one sorted array, so the words starting with what
+ * was typed are a contiguous range found by binary search, without a query per keystroke. Every word typed must start a word of the
+ * airport, and airports are ranked by where the words matched: the code first, then the city, the name and the country, whole words
+ * before partial ones. The index is immutable and rebuilt as a whole when airports change, like the geo index
+ */
+
+@Slf4j
+@Service
+public class AirportAutocompleteIndex {
+
+    public static final int DEFAULT_SUGGESTIONS = 8;
+    public static final int MAX_SUGGESTIONS = 20;
+
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final AirportRepository airportRepository;
+
+    private volatile Words words = new Words(List.of());
+
+    public AirportAutocompleteIndex(AirportRepository airportRepository) {
+        this.airportRepository = airportRepository;
+    }
+
+    // An airport offered by the autocomplete
+    public record Suggestion(String airportCode, String airportName, String city, String country) {
+    }
+
+    // Where a word typed matched, best first
+    private enum Field {
+        CODE, CITY, NAME, COUNTRY
+    }
+
+    // Loads all airports and swaps in a freshly built index. Called at startup and after an airport is edited
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        words = new Words(airportRepository.findAll());
+        log.info("Airport autocomplete index built with {} words", words.size());
+    }
+
+    // The best matching airports for what was typed, at most limit of them. Empty when nothing was typed
+    public List<Suggestion> suggest(String text, int limit) {
+        if (limit < 1 || limit > MAX_SUGGESTIONS) {
+            throw new IllegalArgumentException("The number of suggestions must be between 1 and " + MAX_SUGGESTIONS);
+        }
+        String[] typed = split(text);
+        return typed.length == 0 ? List.of() : words.suggest(typed, limit);
+    }
+
+    // Lower case words of a text without accents, "Zürich-Kloten" gives "zurich" and "kloten"
+    static String[] split(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        String folded = ACCENTS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+        return Arrays.stream(SEPARATORS.split(folded)).filter(word -> !word.isEmpty()).toArray(String[]::new);
+    }
+
+    // Words of every airport in sorted order, with the airport and the field of each word in parallel arrays
+    private static final class Words {
+        private final Suggestion[] suggestions;
+        private final String[] words;
+        private final int[] airportOf;
+        private final Field[] fieldOf;
+
+        Words(List<Airport> airports) {
+            suggestions = new Suggestion[airports.size()];
+            List<Entry> entries = new ArrayList<>();
+            for (int i = 0; i < airports.size(); i++) {
+                Airport airport = airports.get(i);
+                suggestions[i] = new Suggestion(airport.getAirportCode(), airport.getAirportName(), airport.getCity(), airport.getCountry());
+                add(entries, airport.getAirportCode(), i, Field.CODE);
+                add(entries, airport.getCity(), i, Field.CITY);
+                add(entries, airport.getAirportName(), i, Field.NAME);
+                add(entries, airport.getCountry(), i, Field.COUNTRY);
+            }
+            entries.sort(Comparator.comparing(Entry::word));
+            words = new String[entries.size()];
+            airportOf = new int[entries.size()];
+            fieldOf = new Field[entries.size()];
+            for (int i = 0; i < entries.size(); i++) {
+                words[i] = entries.get(i).word();
+                airportOf[i] = entries.get(i).airport();
+                fieldOf[i] = entries.get(i).field();
+            }
+        }
+
+        private record Entry(String word, int airport, Field field) {
+        }
+
+        private static void add(List<Entry> entries, String text, int airport, Field field) {
+            for (String word : split(text)) {
+                entries.add(new Entry(word, airport, field));
+            }
+        }
+
+        int size() {
+            return words.length;
+        }
+
+        // Airports with a word starting with each typed word, by the sum of the best score of each typed word: twice the rank of the
+        // field, plus one when the typed word is only the start of the airport's word. Ties by airport code
+        List<Suggestion> suggest(String[] typed, int limit) {
+            // Number of typed words matched so far by each airport, and its score
+            int[] matched = new int[suggestions.length];
+            int[] wordScores = new int[suggestions.length];
+            int[] scores = new int[suggestions.length];
+            List<Integer> candidates = new ArrayList<>();
+            for (int w = 0; w < typed.length; w++) {
+                String prefix = typed[w];
+                for (int i = firstAtLeast(prefix); i < words.length && words[i].startsWith(prefix); i++) {
+                    int airport = airportOf[i];
+                    int score = fieldOf[i].ordinal() * 2 + (words[i].length() == prefix.length() ? 0 : 1);
+                    if (matched[airport] == w) {
+                        // First word of the airport matching this typed word, the airport matched all the previous ones
+                        matched[airport] = w + 1;
+                        wordScores[airport] = score;
+                        if (w == 0) {
+                            candidates.add(airport);
+                        }
+                    } else if (matched[airport] == w + 1) {
+                        wordScores[airport] = Math.min(wordScores[airport], score);
+                    }
+                }
+                int typedWords = w + 1;
+                candidates.removeIf(airport -> matched[airport] != typedWords);
+                candidates.forEach(airport -> scores[airport] += wordScores[airport]);
+            }
+            return candidates.stream()
+                    .sorted(Comparator.comparingInt((Integer airport) -> scores[airport]).thenComparing(airport -> suggestions[airport].airportCode()))
+                    .limit(limit)
+                    .map(airport -> suggestions[airport])
+                    .toList();
+        }
+
+        // Index of the first word not before the prefix, which is the first word starting with it if any does
+        private int firstAtLeast(String prefix) {
+            int low = 0;
+            int high = words.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (words[middle].compareTo(prefix) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
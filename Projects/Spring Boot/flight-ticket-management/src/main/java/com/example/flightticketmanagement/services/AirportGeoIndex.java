@@ -0,0 +1,241 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.repositories.AirportRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Spatial index of airports by latitude and longitude, answering "airports within N km of a point" and "k nearest airports" without
+ * scanning every airport. Airports are stored as points on the unit sphere in a k-d tree over their x, y, z coordinates: the straight
+ * line (chord) distance between two such points grows with their great-circle distance, so the tree can prune by chord distance and
+ * still return exact great-circle results, including across the antimeridian and near the poles. The tree is immutable and rebuilt as
+ * a whole when airports change, which takes a few milliseconds even for every airport in the world
+ */
+
+@Slf4j
+@Service
+public class AirportGeoIndex {
+
+    // Mean radius of the Earth
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private final AirportRepository airportRepository;
+    private final double nearbyRadiusKm;
+
+    private volatile Tree tree = new Tree(List.of());
+
+    public AirportGeoIndex(AirportRepository airportRepository,
+                           @Value("${airports.nearby-radius-km:150}") double nearbyRadiusKm) {
+        this.airportRepository = airportRepository;
+        this.nearbyRadiusKm = nearbyRadiusKm;
+    }
+
+    // An airport found by a search, with its great-circle distance from the searched point
+    public record NearbyAirport(Airport airport, double distanceKm) {
+    }
+
+    // Loads all airports and swaps in a freshly built tree. Called at startup and after an airport is added, moved or deleted
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        tree = new Tree(airportRepository.findAll());
+        log.info("Airport geo index built with {} airports", tree.size());
+    }
+
+    // Airports within the given distance of a point, nearest first
+    public List<NearbyAirport> withinRadius(double latitude, double longitude, double radiusKm) {
+        return tree.withinRadius(unitVector(latitude, longitude), radiusKm);
+    }
+
+    // The k airports nearest to a point, nearest first
+    public List<NearbyAirport> nearest(double latitude, double longitude, int k) {
+        return tree.nearest(unitVector(latitude, longitude), k);
+    }
+
+    // The airport itself followed by the other airports within the nearby radius (airports.nearby-radius-km), nearest first.
+    // Empty if the airport is not known
+    public List<NearbyAirport> nearby(String airportCode) {
+        return nearby(airportCode, nearbyRadiusKm);
+    }
+
+    // The airport itself followed by the other airports within the given distance, nearest first. Empty if the airport is not known
+    public List<NearbyAirport> nearby(String airportCode, double radiusKm) {
+        Tree current = tree;
+        Airport airport = current.airport(airportCode);
+        if (airport == null) {
+            return List.of();
+        }
+        List<NearbyAirport> airports = new ArrayList<>(current.withinRadius(unitVector(airport.getLatitude(), airport.getLongitude()), radiusKm));
+        // The airport is at distance zero, but another airport at the same coordinates could be listed first
+        airports.removeIf(nearby -> nearby.airport().getAirportCode().equals(airportCode));
+        airports.add(0, new NearbyAirport(airport, 0));
+        return airports;
+    }
+
+    // Number of airports currently held by the index
+    public int size() {
+        return tree.size();
+    }
+
+    // Great-circle distance between two points, by the haversine formula
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double deltaLatitude = Math.toRadians(latitude2 - latitude1);
+        double deltaLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.pow(Math.sin(deltaLatitude / 2), 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * Math.pow(Math.sin(deltaLongitude / 2), 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static double[] unitVector(double latitude, double longitude) {
+        double latitudeRadians = Math.toRadians(latitude);
+        double longitudeRadians = Math.toRadians(longitude);
+        return new double[]{Math.cos(latitudeRadians) * Math.cos(longitudeRadians),
+                Math.cos(latitudeRadians) * Math.sin(longitudeRadians),
+                Math.sin(latitudeRadians)};
+    }
+
+    // Great-circle distance of two points of the unit sphere from the square of their chord distance
+    private static double chordSquaredToKm(double chordSquared) {
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(chordSquared) / 2));
+    }
+
+    // Square of the chord distance of two points of the unit sphere that are the given great-circle distance apart
+    private static double kmToChordSquared(double km) {
+        double angle = Math.min(km / EARTH_RADIUS_KM, Math.PI);
+        double chord = 2 * Math.sin(angle / 2);
+        return chord * chord;
+    }
+
+    // Implicit k-d tree: the points of [low, high) are split on axis depth % 3 around the median at (low + high) / 2, the left half
+    // holding the smaller coordinates. No node objects, the tree is the order of the arrays
+    private static final class Tree {
+        private final Airport[] airports;
+        private final double[][] points;
+        private final Map<String, Airport> airportsByCode = new HashMap<>();
+
+        Tree(List<Airport> airportList) {
+            int size = airportList.size();
+            Integer[] order = new Integer[size];
+            double[][] vectors = new double[size][];
+            for (int i = 0; i < size; i++) {
+                Airport airport = airportList.get(i);
+                order[i] = i;
+                vectors[i] = unitVector(airport.getLatitude(), airport.getLongitude());
+                airportsByCode.put(airport.getAirportCode(), airport);
+            }
+            build(order, vectors, 0, size, 0);
+            airports = new Airport[size];
+            points = new double[size][];
+            for (int i = 0; i < size; i++) {
+                airports[i] = airportList.get(order[i]);
+                points[i] = vectors[order[i]];
+            }
+        }
+
+        private static void build(Integer[] order, double[][] vectors, int low, int high, int depth) {
+            if (high - low <= 1) {
+                return;
+            }
+            int axis = depth % 3;
+            // Sorting each range is O(n log² n) overall, plenty fast for a few thousand airports and simpler than a median selection
+            Arrays.sort(order, low, high, Comparator.comparingDouble(i -> vectors[i][axis]));
+            int middle = (low + high) >>> 1;
+            build(order, vectors, low, middle, depth + 1);
+            build(order, vectors, middle + 1, high, depth + 1);
+        }
+
+        int size() {
+            return airports.length;
+        }
+
+        Airport airport(String airportCode) {
+            return airportsByCode.get(airportCode);
+        }
+
+        List<NearbyAirport> withinRadius(double[] target, double radiusKm) {
+            List<Integer> found = new ArrayList<>();
+            collectWithin(target, kmToChordSquared(radiusKm), 0, airports.length, 0, found);
+            List<NearbyAirport> result = new ArrayList<>(found.size());
+            for (int i : found) {
+                result.add(new NearbyAirport(airports[i], chordSquaredToKm(chordSquared(target, points[i]))));
+            }
+            result.sort(Comparator.comparingDouble(NearbyAirport::distanceKm));
+            return result;
+        }
+
+        private void collectWithin(double[] target, double maxChordSquared, int low, int high, int depth, List<Integer> found) {
+            if (low >= high) {
+                return;
+            }
+            int middle = (low + high) >>> 1;
+            if (chordSquared(target, points[middle]) <= maxChordSquared) {
+                found.add(middle);
+            }
+            int axis = depth % 3;
+            double difference = target[axis] - points[middle][axis];
+            // The half on the target's side first, the other half only if the splitting plane is within the radius
+            if (difference <= 0 || difference * difference <= maxChordSquared) {
+                collectWithin(target, maxChordSquared, low, middle, depth + 1, found);
+            }
+            if (difference >= 0 || difference * difference <= maxChordSquared) {
+                collectWithin(target, maxChordSquared, middle + 1, high, depth + 1, found);
+            }
+        }
+
+        List<NearbyAirport> nearest(double[] target, int k) {
+            if (k <= 0) {
+                return List.of();
+            }
+            // Farthest of the best k on top, so it is the one replaced by a nearer airport
+            PriorityQueue<double[]> best = new PriorityQueue<>(Comparator.comparingDouble((double[] entry) -> entry[1]).reversed());
+            collectNearest(target, k, 0, airports.length, 0, best);
+            List<NearbyAirport> result = new ArrayList<>(best.size());
+            for (double[] entry : best) {
+                result.add(new NearbyAirport(airports[(int) entry[0]], chordSquaredToKm(entry[1])));
+            }
+            result.sort(Comparator.comparingDouble(NearbyAirport::distanceKm));
+            return result;
+        }
+
+        private void collectNearest(double[] target, int k, int low, int high, int depth, PriorityQueue<double[]> best) {
+            if (low >= high) {
+                return;
+            }
+            int middle = (low + high) >>> 1;
+            double distance = chordSquared(target, points[middle]);
+            if (best.size() < k) {
+                best.add(new double[]{middle, distance});
+            } else if (distance < best.peek()[1]) {
+                best.poll();
+                best.add(new double[]{middle, distance});
+            }
+            int axis = depth % 3;
+            double difference = target[axis] - points[middle][axis];
+            int nearLow = difference <= 0 ? low : middle + 1;
+            int nearHigh = difference <= 0 ? middle : high;
+            collectNearest(target, k, nearLow, nearHigh, depth + 1, best);
+            // The far half can only hold a nearer airport if the splitting plane is nearer than the farthest kept one
+            if (best.size() < k || difference * difference < best.peek()[1]) {
+                collectNearest(target, k, difference <= 0 ? middle + 1 : low, difference <= 0 ? high : middle, depth + 1, best);
+            }
+        }
+
+        private static double chordSquared(double[] a, double[] b) {
+            double dx = a[0] - b[0];
+            double dy = a[1] - b[1];
+            double dz = a[2] - b[2];
+            return dx * dx + dy * dy + dz * dz;
+        }
+    }
+}
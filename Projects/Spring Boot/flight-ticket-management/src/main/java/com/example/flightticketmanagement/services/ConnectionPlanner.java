@@ -0,0 +1,350 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.FlightChangedEvent;
+import com.example.flightticketmanagement.events.FlightsImportedEvent;
+import com.example.flightticketmanagement.events.SeatInventoryChangedEvent;
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory connection planner. Finds itineraries of two or three flights between airports that have no convenient direct flight,
+ * without SQL self-joins. Every scheduled flight is a leg with absolute departure and arrival instants, computed from its local times
+ * and the time zone of each airport, and legs are kept per departure airport ordered by departure instant. A search expands the
+ * legs leaving the origin on the requested date, then for each arrival only the legs leaving within the allowed layover, so its cost
+ * depends on the flights around the route and not on the size of the timetable. Sold-out legs are skipped, so every itinerary offered
+ * can be booked. Kept current from FlightChangedEvent and SeatInventoryChangedEvent once the changes are committed, like
+ * FlightSearchIndex
+ */
+
+@Slf4j
+@Service
+public class ConnectionPlanner {
+
+    // Orders legs leaving an airport by departure instant, the flight id breaks ties so every leg has one position
+    private static final Comparator<Leg> BY_DEPARTURE =
+            Comparator.comparing((Leg leg) -> leg.departure().toInstant()).thenComparing(leg -> leg.flight().getId());
+    // Best itineraries first: earliest arrival, then shortest travel time, then fewest stops
+    private static final Comparator<Itinerary> BEST_FIRST = Comparator.comparing((Itinerary itinerary) -> itinerary.arrival().toInstant())
+            .thenComparing(Itinerary::duration).thenComparingInt(Itinerary::stops);
+    // Offsets written as in the airport table: UTC+0, UTC-5, UTC+5:30
+    private static final Pattern UTC_OFFSET = Pattern.compile("(?:UTC|GMT)?\\s*([+-])(\\d{1,2})(?::?(\\d{2}))?");
+
+    public static final int MAX_STOPS = 2;
+
+    private final FlightRepository flightRepository;
+    private final Duration minimumConnectionTime;
+    private final Duration maximumLayover;
+    private final Duration searchBudget;
+    private final int maxResults;
+
+    // Legs by departure airport code, each list is immutable and replaced as a whole on change
+    private volatile Map<String, List<Leg>> legsByOrigin = new ConcurrentHashMap<>();
+    // Remembers the leg of each flight, so an edited flight can be taken out of its old departure airport
+    private volatile Map<Long, Leg> legsByFlightId = new ConcurrentHashMap<>();
+    // Serializes writers, readers work on the immutable lists without locking
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public ConnectionPlanner(FlightRepository flightRepository,
+                             @Value("${connections.minimum-connection-minutes:45}") long minimumConnectionMinutes,
+                             @Value("${connections.maximum-layover-hours:12}") long maximumLayoverHours,
+                             @Value("${connections.search-budget-millis:50}") long searchBudgetMillis,
+                             @Value("${connections.max-results:10}") int maxResults) {
+        this.flightRepository = flightRepository;
+        this.minimumConnectionTime = Duration.ofMinutes(minimumConnectionMinutes);
+        this.maximumLayover = Duration.ofHours(maximumLayoverHours);
+        this.searchBudget = Duration.ofMillis(searchBudgetMillis);
+        this.maxResults = maxResults;
+    }
+
+    // One flight of an itinerary, with its departure and arrival in the local time of each airport
+    public record Leg(Flight flight, String originAirportCode, String destinationAirportCode, OffsetDateTime departure, OffsetDateTime arrival) {
+
+        boolean soldOut() {
+            return flight.getRemainingTickets() <= 0;
+        }
+    }
+
+    // Two or three legs, each leaving at least the minimum connection time after the previous one lands
+    public record Itinerary(List<Leg> legs) {
+
+        public OffsetDateTime departure() {
+            return legs.get(0).departure();
+        }
+
+        public OffsetDateTime arrival() {
+            return legs.get(legs.size() - 1).arrival();
+        }
+
+        // Total travel time, from the first departure to the last arrival
+        public Duration duration() {
+            return Duration.between(departure(), arrival());
+        }
+
+        public int stops() {
+            return legs.size() - 1;
+        }
+
+        // Time spent at each connecting airport, in the order of the stops
+        public List<Duration> layovers() {
+            List<Duration> layovers = new ArrayList<>(stops());
+            for (int i = 1; i < legs.size(); i++) {
+                layovers.add(Duration.between(legs.get(i - 1).arrival(), legs.get(i).departure()));
+            }
+            return layovers;
+        }
+    }
+
+    // Itineraries found by a search, best first. Truncated when the search ran out of its time budget before expanding every first leg
+    public record Plan(List<Itinerary> itineraries, boolean truncated) {
+    }
+
+    // Loads all scheduled flights and swaps in a freshly built timetable, at startup and after a timetable import
+    @EventListener({ApplicationReadyEvent.class, FlightsImportedEvent.class})
+    public void rebuild() {
+        lock.lock();
+        try {
+            Map<String, List<Leg>> newLegs = new ConcurrentHashMap<>();
+            Map<Long, Leg> newLegsByFlightId = new ConcurrentHashMap<>();
+            for (Flight flight : flightRepository.findWithRouteByFlightStatus(Flight.FlightStatus.SCHEDULED)) {
+                Leg leg = legOf(flight);
+                if (leg != null) {
+                    newLegs.computeIfAbsent(leg.originAirportCode(), k -> new ArrayList<>()).add(leg);
+                    newLegsByFlightId.put(flight.getId(), leg);
+                }
+            }
+            newLegs.replaceAll((airportCode, legs) -> sortedCopy(legs));
+            legsByOrigin = newLegs;
+            legsByFlightId = newLegsByFlightId;
+            log.info("Connection planner built with {} legs from {} airports", newLegsByFlightId.size(), newLegs.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Applies a single flight change to the timetable, once it is committed
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFlightChanged(FlightChangedEvent event) {
+        Long flightId = event.getFlightId();
+        if (flightId == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            Leg oldLeg = legsByFlightId.remove(flightId);
+            if (oldLeg != null) {
+                legsByOrigin.computeIfPresent(oldLeg.originAirportCode(), (k, legs) -> {
+                    List<Leg> updated = new ArrayList<>(legs);
+                    updated.removeIf(leg -> flightId.equals(leg.flight().getId()));
+                    return updated.isEmpty() ? null : List.copyOf(updated); // Returning null removes the empty list
+                });
+            }
+            Leg newLeg = event.isRemoved() || event.getFlight().getFlightStatus() != Flight.FlightStatus.SCHEDULED ? null : legOf(event.getFlight());
+            if (newLeg != null) {
+                legsByOrigin.compute(newLeg.originAirportCode(), (k, legs) -> {
+                    List<Leg> updated = legs == null ? new ArrayList<>() : new ArrayList<>(legs);
+                    updated.add(newLeg);
+                    return sortedCopy(updated);
+                });
+                legsByFlightId.put(flightId, newLeg);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Moves the remaining tickets of the flight's leg by the seats sold or released, once the sale is committed. A sold-out leg stays in
+    // the timetable and is skipped by the searches until seats are released
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSeatInventoryChanged(SeatInventoryChangedEvent event) {
+        if (event.getDelta() == 0) {
+            return; // A held seat claimed by a payment, the inventory did not change
+        }
+        lock.lock();
+        try {
+            Leg oldLeg = legsByFlightId.get(event.getFlightId());
+            if (oldLeg == null) {
+                return;
+            }
+            Leg newLeg = new Leg(snapshot(oldLeg.flight(), Math.max(0, oldLeg.flight().getRemainingTickets() + event.getDelta())),
+                    oldLeg.originAirportCode(), oldLeg.destinationAirportCode(), oldLeg.departure(), oldLeg.arrival());
+            // The departure does not change, so the leg keeps its position in the ordered list
+            legsByOrigin.computeIfPresent(oldLeg.originAirportCode(), (k, legs) -> legs.stream().map(leg -> leg == oldLeg ? newLeg : leg).toList());
+            legsByFlightId.put(event.getFlightId(), newLeg);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Finds the best itineraries with one stop, or up to maxStops stops, whose first leg leaves the origin on the given local date.
+    // Direct flights are left to FlightSearchIndex
+    public Plan plan(String originAirportCode, String destinationAirportCode, LocalDate date, int maxStops) {
+        int stops = Math.max(1, Math.min(maxStops, MAX_STOPS));
+        long deadline = System.nanoTime() + searchBudget.toNanos();
+        Map<String, List<Leg>> legs = legsByOrigin; // One snapshot for the whole search
+        PriorityQueue<Itinerary> best = new PriorityQueue<>(BEST_FIRST.reversed()); // Worst kept itinerary on top
+        boolean truncated = false;
+
+        List<Leg> fromOrigin = legs.getOrDefault(originAirportCode, List.of());
+        for (Leg first : departingOn(fromOrigin, date)) {
+            if (System.nanoTime() > deadline) {
+                truncated = true;
+                break;
+            }
+            String hub = first.destinationAirportCode();
+            if (first.soldOut() || hub.equals(destinationAirportCode) || hub.equals(originAirportCode) || !canStillRank(best, first.arrival())) {
+                continue; // Sold out, direct flight, or lands too late to improve on the kept itineraries
+            }
+            for (Leg second : connectingFrom(legs.getOrDefault(hub, List.of()), first)) {
+                if (second.soldOut() || !canStillRank(best, second.arrival())) {
+                    continue; // Sold out, or lands after every kept itinerary arrives, no itinerary through it can make the list
+                }
+                String secondHub = second.destinationAirportCode();
+                if (secondHub.equals(destinationAirportCode)) {
+                    offer(best, new Itinerary(List.of(first, second)));
+                } else if (stops >= 2 && !secondHub.equals(originAirportCode)) {
+                    for (Leg third : connectingFrom(legs.getOrDefault(secondHub, List.of()), second)) {
+                        if (!third.soldOut() && third.destinationAirportCode().equals(destinationAirportCode)) {
+                            offer(best, new Itinerary(List.of(first, second, third)));
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Itinerary> itineraries = new ArrayList<>(best);
+        itineraries.sort(BEST_FIRST);
+        return new Plan(itineraries, truncated);
+    }
+
+    // Number of legs currently held by the planner
+    public int size() {
+        return legsByFlightId.size();
+    }
+
+    private void offer(PriorityQueue<Itinerary> best, Itinerary itinerary) {
+        best.add(itinerary);
+        if (best.size() > maxResults) {
+            best.poll();
+        }
+    }
+
+    // False when enough itineraries are kept and all of them arrive before the given time
+    private boolean canStillRank(PriorityQueue<Itinerary> best, OffsetDateTime arrival) {
+        return best.size() < maxResults || !arrival.toInstant().isAfter(best.peek().arrival().toInstant());
+    }
+
+    // Legs leaving on the given local date. The legs of an airport all share its time zone, so they form one run of the ordered list
+    private static List<Leg> departingOn(List<Leg> legs, LocalDate date) {
+        if (legs.isEmpty()) {
+            return legs;
+        }
+        ZoneId zone = zoneOf(legs.get(0).flight().getOriginAirport());
+        return between(legs, date.atStartOfDay(zone).toInstant(), date.plusDays(1).atStartOfDay(zone).toInstant());
+    }
+
+    // Legs that can be boarded after the given leg lands: from the minimum connection time to the maximum layover after its arrival
+    private List<Leg> connectingFrom(List<Leg> legs, Leg arriving) {
+        Instant landing = arriving.arrival().toInstant();
+        return between(legs, landing.plus(minimumConnectionTime), landing.plus(maximumLayover).plusNanos(1));
+    }
+
+    // Legs departing in [from, to), found by binary search on the ordered list
+    private static List<Leg> between(List<Leg> legs, Instant from, Instant to) {
+        return legs.subList(firstDepartingAtOrAfter(legs, from), firstDepartingAtOrAfter(legs, to));
+    }
+
+    private static int firstDepartingAtOrAfter(List<Leg> legs, Instant instant) {
+        int low = 0;
+        int high = legs.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (legs.get(middle).departure().toInstant().isBefore(instant)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Builds the leg of a flight, or returns null if its route, date, times or airport time zones are missing or unreadable
+    private static Leg legOf(Flight flight) {
+        if (flight.getId() == null || flight.getOriginAirport() == null || flight.getDestinationAirport() == null || flight.getDate() == null
+                || flight.getDepartureTimeLocal() == null || flight.getLandingTimeLocal() == null) {
+            return null;
+        }
+        ZoneId originZone = zoneOf(flight.getOriginAirport());
+        ZoneId destinationZone = zoneOf(flight.getDestinationAirport());
+        if (originZone == null || destinationZone == null) {
+            log.warn("Flight {} is left out of connections, the time zone of one of its airports cannot be read", flight.getFlightNumber());
+            return null;
+        }
+        ZonedDateTime departure = flight.getDate().atTime(flight.getDepartureTimeLocal()).atZone(originZone);
+        // Only the landing time is stored, the flight lands on the first day that puts it after the departure
+        ZonedDateTime arrival = flight.getDate().atTime(flight.getLandingTimeLocal()).atZone(destinationZone);
+        while (!arrival.isAfter(departure)) {
+            arrival = arrival.plusDays(1);
+        }
+        return new Leg(snapshot(flight, flight.getRemainingTickets()), flight.getOriginAirport().getAirportCode(), flight.getDestinationAirport().getAirportCode(),
+                departure.toOffsetDateTime(), arrival.toOffsetDateTime());
+    }
+
+    // Detached copy of the flight with the given remaining tickets, so a leg never holds an entity that a persistence context may still modify
+    private static Flight snapshot(Flight flight, int remainingTickets) {
+        return new Flight(flight.getId(), flight.getFlightNumber(), flight.getAirline(), flight.getOriginAirport(), flight.getDestinationAirport(),
+                flight.getDate(), flight.getDepartureTimeLocal(), flight.getLandingTimeLocal(), remainingTickets, flight.getSeatCapacity(),
+                flight.getFlightStatus(), flight.getScheduleId());
+    }
+
+    // Reads the time zone of an airport, either a fixed offset such as UTC+5:30 or a region such as Europe/London
+    static ZoneId zoneOf(Airport airport) {
+        String timeZone = airport.getTimeZone();
+        if (timeZone == null || timeZone.isBlank()) {
+            return null;
+        }
+        Matcher offset = UTC_OFFSET.matcher(timeZone.trim());
+        try {
+            if (offset.matches()) {
+                int hours = Integer.parseInt(offset.group(2));
+                int minutes = offset.group(3) == null ? 0 : Integer.parseInt(offset.group(3));
+                int sign = offset.group(1).equals("-") ? -1 : 1;
+                return ZoneOffset.ofHoursMinutes(sign * hours, sign * minutes);
+            }
+            String region = timeZone.trim();
+            return region.equals("UTC") || region.equals("GMT") ? ZoneOffset.UTC : ZoneId.of(region);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static List<Leg> sortedCopy(List<Leg> legs) {
+        List<Leg> sorted = new ArrayList<>(legs);
+        sorted.sort(BY_DEPARTURE);
+        return List.copyOf(sorted);
+    }
+}
@@ -0,0 +1,319 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exports of the tickets, flights and customers tables for the administrators, as CSV or JSON. Rows are read through a forward-only
+ * JDBC cursor (a fetch size inside a transaction, which makes the Postgres driver fetch exports.fetch-size rows at a time instead of the
+ * whole result) and written to the response as they arrive, so the memory used by an export does not depend on its size and no entity
+ * is loaded. Tickets and flights can be filtered by flight date range, airline and status. Customer exports leave out the passwords and
+ * the credit card numbers
+ */
+
+@Slf4j
+@Service
+public class DataExportService {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionOperations transactionOperations;
+    private final int fetchSize;
+
+    public DataExportService(JdbcTemplate jdbcTemplate,
+                             TransactionOperations transactionOperations,
+                             @Value("${exports.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionOperations = transactionOperations;
+        this.fetchSize = fetchSize;
+    }
+
+    public enum Dataset {
+        TICKETS, FLIGHTS, CUSTOMERS;
+
+        // Dataset named in a URL, such as "tickets"
+        public static Dataset of(String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public enum Format {
+        CSV("text/csv", "csv"), JSON("application/json", "json");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    // Filters of an export, null when not set. The dates are those of the flights, both ends included
+    public record Filter(LocalDate from, LocalDate to, String airlineIataCode, String status) {
+    }
+
+    // An export ready to be written, the query is built and its filters checked
+    public class Export {
+
+        private final Dataset dataset;
+        private final Format format;
+        private final String sql;
+        private final List<Object> arguments;
+        private final List<String> columns;
+
+        private Export(Dataset dataset, Format format, String sql, List<Object> arguments, List<String> columns) {
+            this.dataset = dataset;
+            this.format = format;
+            this.sql = sql;
+            this.arguments = arguments;
+            this.columns = columns;
+        }
+
+        public String getContentType() {
+            return format.getContentType();
+        }
+
+        public String getFileName() {
+            return dataset.name().toLowerCase(Locale.ROOT) + "." + format.getExtension();
+        }
+
+        // Runs the query and writes every row to the stream as it is read. The stream is flushed but not closed
+        public void writeTo(OutputStream out) throws IOException {
+            RowWriter writer = format == Format.CSV ? new CsvRowWriter(out) : new JsonRowWriter(out);
+            writer.start(columns);
+            AtomicLong rows = new AtomicLong();
+            Object[] values = new Object[columns.size()];
+            try {
+                // The transaction turns autocommit off, without it the driver reads the whole result before returning the first row
+                transactionOperations.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    statement.setFetchSize(fetchSize);
+                    for (int i = 0; i < arguments.size(); i++) {
+                        statement.setObject(i + 1, arguments.get(i));
+                    }
+                    return statement;
+                }, (ResultSet resultSet) -> {
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = plain(resultSet.getObject(i + 1));
+                    }
+                    try {
+                        writer.row(values);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e); // The client went away, stop reading
+                    }
+                    rows.incrementAndGet();
+                }));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.finish();
+            log.info("Exported {} {} rows as {}", rows.get(), dataset, format);
+        }
+    }
+
+    // Builds an export of the dataset. Throws IllegalArgumentException if a filter does not apply to the dataset or has no valid value
+    public Export prepare(Dataset dataset, Filter filter, Format format) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> arguments = new ArrayList<>();
+        return switch (dataset) {
+            case TICKETS -> {
+                flightConditions(filter, "f.", conditions, arguments);
+                if (filter.status() != null) {
+                    conditions.add("t.booking_status = ?");
+                    arguments.add(status(Ticket.BookingStatus.class, filter.status()).name());
+                }
+                yield export(dataset, format, "SELECT t.ticket_id, t.customer_id, c.username, t.flight_id, f.flight_number, f.airline_iata_code, f.date, " +
+                                "t.class_type, t.seat_number, t.booking_status, t.price, t.hold_expires_at " +
+                                "FROM ticket t LEFT JOIN flight f ON f.id = t.flight_id LEFT JOIN customer c ON c.customer_id = t.customer_id",
+                        conditions, "t.ticket_id", arguments,
+                        List.of("ticket_id", "customer_id", "username", "flight_id", "flight_number", "airline", "date",
+                                "class_type", "seat_number", "booking_status", "price", "hold_expires_at"));
+            }
+            case FLIGHTS -> {
+                flightConditions(filter, "", conditions, arguments);
+                if (filter.status() != null) {
+                    conditions.add("flight_status = ?");
+                    arguments.add(status(Flight.FlightStatus.class, filter.status()).name());
+                }
+                yield export(dataset, format, "SELECT id, flight_number, airline_iata_code, origin_airport_code, destination_airport_code, date, " +
+                                "departure_time_local, landing_time_local, remaining_tickets, flight_status FROM flight",
+                        conditions, "id", arguments,
+                        List.of("id", "flight_number", "airline", "origin", "destination", "date",
+                                "departure_time", "landing_time", "remaining_tickets", "flight_status"));
+            }
+            case CUSTOMERS -> {
+                if (filter.from() != null || filter.to() != null || filter.airlineIataCode() != null || filter.status() != null) {
+                    throw new IllegalArgumentException("Customer exports have no filters");
+                }
+                yield export(dataset, format, "SELECT customer_id, first_name, last_name, address, phone_number, username FROM customer",
+                        conditions, "customer_id", arguments,
+                        List.of("customer_id", "first_name", "last_name", "address", "phone_number", "username"));
+            }
+        };
+    }
+
+    private Export export(Dataset dataset, Format format, String select, List<String> conditions, String orderBy,
+                          List<Object> arguments, List<String> columns) {
+        String sql = select + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions)) + " ORDER BY " + orderBy;
+        return new Export(dataset, format, sql, List.copyOf(arguments), columns);
+    }
+
+    private static void flightConditions(Filter filter, String alias, List<String> conditions, List<Object> arguments) {
+        if (filter.from() != null && filter.to() != null && filter.to().isBefore(filter.from())) {
+            throw new IllegalArgumentException("The end of the date range is before its start");
+        }
+        if (filter.from() != null) {
+            conditions.add(alias + "date >= ?");
+            arguments.add(filter.from());
+        }
+        if (filter.to() != null) {
+            conditions.add(alias + "date <= ?");
+            arguments.add(filter.to());
+        }
+        if (filter.airlineIataCode() != null) {
+            conditions.add(alias + "airline_iata_code = ?");
+            arguments.add(filter.airlineIataCode().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static <E extends Enum<E>> E status(Class<E> type, String status) {
+        try {
+            return Enum.valueOf(type, status.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown status " + status);
+        }
+    }
+
+    // Dates, times and timestamps as their ISO form, numbers and text as they are
+    private static Object plain(Object value) {
+        if (value instanceof java.sql.Date date) {
+            return date.toLocalDate().toString();
+        }
+        if (value instanceof java.sql.Time time) {
+            return time.toLocalTime().toString();
+        }
+        if (value instanceof java.sql.Timestamp timestamp) {
+            return timestamp.toInstant().toString();
+        }
+        return value;
+    }
+
+    private interface RowWriter {
+
+        void start(List<String> columns) throws IOException;
+
+        void row(Object[] values) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    // One line per row after a header line, fields quoted when they contain a comma, a quote or a line break
+    private static class CsvRowWriter implements RowWriter {
+
+        private final Writer writer;
+
+        CsvRowWriter(OutputStream out) {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        }
+
+        @Override
+        public void start(List<String> columns) throws IOException {
+            write(columns.toArray());
+        }
+
+        @Override
+        public void row(Object[] values) throws IOException {
+            write(values);
+        }
+
+        private void write(Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                if (values[i] != null) {
+                    String field = values[i] instanceof String text ? neutralized(text) : values[i].toString();
+                    boolean quoted = field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0;
+                    writer.write(quoted ? '"' + field.replace("\"", "\"\"") + '"' : field);
+                }
+            }
+            writer.write('\n');
+        }
+
+        // Text a spreadsheet would run as a formula, such as a name typed as =HYPERLINK(...), is written with a leading ' so it is shown
+        // as text. Numbers are not text values, so negative amounts are left alone
+        private static String neutralized(String text) {
+            return !text.isEmpty() && "=+-@\t\r".indexOf(text.charAt(0)) >= 0 ? "'" + text : text;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+    }
+
+    // A JSON array with one object per row, keyed by column name
+    private static class JsonRowWriter implements RowWriter {
+
+        private final JsonGenerator generator;
+        private List<String> columns;
+
+        JsonRowWriter(OutputStream out) throws IOException {
+            this.generator = JSON_FACTORY.createGenerator(out);
+        }
+
+        @Override
+        public void start(List<String> columns) throws IOException {
+            this.columns = columns;
+            generator.writeStartArray();
+        }
+
+        @Override
+        public void row(Object[] values) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < values.length; i++) {
+                generator.writeFieldName(columns.get(i));
+                generator.writeObject(values[i]); // Text, numbers and null need no object mapper
+            }
+            generator.writeEndObject();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.writeEndArray();
+            generator.flush();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.FlightChangedEvent;
+import com.example.flightticketmanagement.events.SeatInventoryChangedEvent;
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dynamic fares, computed from the route distance (great-circle distance between the airports), the class, the share of the flight's
+ * seat capacity already sold and the days left before departure. The fare curve of a flight, its fare for every class at every load
+ * step, is computed once and cached together with the flight's remaining tickets. Committed seat sales and releases move that count
+ * with an atomic add, so a quote is a couple of array lookups and never waits for a lock, whatever the booking traffic on the flight.
+ * Entries expire after a while, the next quote then starts again from the remaining tickets of the flight it prices, which picks up
+ * the seats sold by other application instances
+ */
+
+@Service
+public class DynamicFareCalculator implements FareCalculator {
+
+    // Fixed part of every fare, and price per kilometre of the route, for an economy seat
+    static final double BASE_FARE = 60;
+    static final double FARE_PER_KM = 0.085;
+    // Fare used when an airport has no usable coordinates
+    static final double DEFAULT_DISTANCE_FARE = 500;
+    // Fare of each class relative to economy
+    private static final Map<Ticket.ClassType, Double> CLASS_MULTIPLIERS =
+            Map.of(Ticket.ClassType.ECONOMY, 1.0, Ticket.ClassType.BUSINESS, 2.8, Ticket.ClassType.FIRST, 4.5);
+    // Number of load steps of a fare curve, the fare changes every 5% of the flight sold
+    static final int LOAD_STEPS = 21;
+    // Days-before-departure multipliers: late bookings pay more, early ones a little less. Index is the number of days left
+    private static final double[] ADVANCE_MULTIPLIERS = advanceMultipliers(60);
+
+    // Order of the listeners below. Other views quote fares from their own after-commit listeners, such as RouteCalendar, and run after
+    // these so they never price a flight from the seats it had before the change
+    static final int LISTENER_ORDER = Ordered.HIGHEST_PRECEDENCE;
+
+    private static final Duration TIME_TO_LIVE = Duration.ofMinutes(10);
+    private static final long MAXIMUM_SIZE = 100_000;
+
+    private final Clock clock;
+
+    private final Cache<Long, FareCurve> curves = Caffeine.newBuilder()
+            .expireAfterWrite(TIME_TO_LIVE)
+            .maximumSize(MAXIMUM_SIZE)
+            .build();
+
+    @Autowired
+    public DynamicFareCalculator() {
+        this(Clock.systemDefaultZone());
+    }
+
+    // Clock used to count the days left before departure, replaced by tests
+    DynamicFareCalculator(Clock clock) {
+        this.clock = clock;
+    }
+
+    // Fares of one flight for every class and load step, and the flight's remaining tickets as last seen
+    static final class FareCurve {
+        private final double[][] fares; // [class ordinal][load step]
+        private final int capacity;
+        private final LocalDate departureDate;
+        private final AtomicInteger remainingTickets;
+
+        FareCurve(double[][] fares, int capacity, LocalDate departureDate, int remainingTickets) {
+            this.fares = fares;
+            this.capacity = capacity;
+            this.departureDate = departureDate;
+            this.remainingTickets = new AtomicInteger(remainingTickets);
+        }
+
+        double fareAt(Ticket.ClassType classType, int remaining) {
+            double sold = 1 - (double) Math.max(0, Math.min(remaining, capacity)) / capacity;
+            return fares[classType.ordinal()][(int) Math.round(sold * (LOAD_STEPS - 1))];
+        }
+    }
+
+    @Override
+    public double fareFor(Flight flight, Ticket.ClassType classType) {
+        FareCurve curve = flight.getId() == null ? curveOf(flight) : curves.get(flight.getId(), id -> curveOf(flight));
+        double fare = curve.fareAt(classType, curve.remainingTickets.get()) * advanceMultiplier(curve.departureDate);
+        return Math.round(fare * 100) / 100.0;
+    }
+
+    // Moves the cached remaining tickets of the flight along with its inventory once the sale is committed, without recomputing its curve
+    @Order(LISTENER_ORDER)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSeatInventoryChanged(SeatInventoryChangedEvent event) {
+        FareCurve curve = curves.getIfPresent(event.getFlightId());
+        if (curve != null) {
+            curve.remainingTickets.addAndGet(event.getDelta());
+        }
+    }
+
+    // The route, date or inventory of the flight may have changed, its curve is recomputed on the next quote once the change is committed
+    @Order(LISTENER_ORDER)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFlightChanged(FlightChangedEvent event) {
+        if (event.getFlightId() != null) {
+            curves.invalidate(event.getFlightId());
+        }
+    }
+
+    private double advanceMultiplier(LocalDate departureDate) {
+        if (departureDate == null) {
+            return 1;
+        }
+        long daysLeft = ChronoUnit.DAYS.between(LocalDate.now(clock), departureDate);
+        return ADVANCE_MULTIPLIERS[(int) Math.max(0, Math.min(daysLeft, ADVANCE_MULTIPLIERS.length - 1))];
+    }
+
+    // Computes the fare of every class at every load step of a flight
+    static FareCurve curveOf(Flight flight) {
+        double distanceFare = distanceFare(flight.getOriginAirport(), flight.getDestinationAirport());
+        // A flight edited to more seats left than it was put on sale with counts as empty
+        int capacity = Math.max(1, Math.max(flight.getSeatCapacity(), flight.getRemainingTickets()));
+        double[][] fares = new double[Ticket.ClassType.values().length][LOAD_STEPS];
+        for (Ticket.ClassType classType : Ticket.ClassType.values()) {
+            for (int step = 0; step < LOAD_STEPS; step++) {
+                fares[classType.ordinal()][step] = distanceFare * CLASS_MULTIPLIERS.get(classType) * loadMultiplier((double) step / (LOAD_STEPS - 1));
+            }
+        }
+        return new FareCurve(fares, capacity, flight.getDate(), flight.getRemainingTickets());
+    }
+
+    // Economy fare of the route before the load and booking date adjustments, from the distance between the airports
+    static double distanceFare(Airport origin, Airport destination) {
+        if (origin == null || destination == null || (origin.getLatitude() == 0 && origin.getLongitude() == 0)
+                || (destination.getLatitude() == 0 && destination.getLongitude() == 0)) {
+            return DEFAULT_DISTANCE_FARE;
+        }
+        double distanceKm = AirportGeoIndex.distanceKm(origin.getLatitude(), origin.getLongitude(), destination.getLatitude(), destination.getLongitude());
+        return BASE_FARE + FARE_PER_KM * distanceKm;
+    }
+
+    // From 15% off on an empty flight to 75% more on a full one, rising faster as the last seats sell
+    static double loadMultiplier(double soldShare) {
+        return 0.85 + 0.9 * soldShare * soldShare;
+    }
+
+    private static double[] advanceMultipliers(int days) {
+        double[] multipliers = new double[days + 1];
+        for (int daysLeft = 0; daysLeft <= days; daysLeft++) {
+            multipliers[daysLeft] = daysLeft < 3 ? 1.5 : daysLeft < 7 ? 1.3 : daysLeft < 21 ? 1.15 : daysLeft < days ? 1.0 : 0.9;
+        }
+        return multipliers;
+    }
+}
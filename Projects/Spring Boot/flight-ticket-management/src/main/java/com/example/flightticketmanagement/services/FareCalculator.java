@@ -0,0 +1,10 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+
+// Prices a seat on a flight. Used when a ticket is created and when fares are quoted in search results and on the purchase page. The
+// default implementation is DynamicFareCalculator, declare a @Primary bean of this type to replace it
+public interface FareCalculator {
+    double fareFor(Flight flight, Ticket.ClassType classType);
+}
@@ -0,0 +1,74 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flexible-date flight search. Answers a route for a window of days around the requested date in one request, instead of one search
+ * per day, and summarizes every day of the window with its cheapest and earliest flight so the customer can pick a day at a glance
+ */
+
+@Service
+public class FlexibleDateSearchService {
+
+    // Widest window, in days on each side of the requested date
+    public static final int MAX_FLEX_DAYS = 3;
+
+    private final FlightSearchIndex flightSearchIndex;
+    private final FareCalculator fareCalculator;
+
+    public FlexibleDateSearchService(FlightSearchIndex flightSearchIndex,
+                                     FareCalculator fareCalculator) {
+        this.flightSearchIndex = flightSearchIndex;
+        this.fareCalculator = fareCalculator;
+    }
+
+    // Summary of one day of the window. Cheapest and earliest flight are null when there is no flight that day. Fares are economy fares
+    public record DaySummary(LocalDate date, int flightCount, Flight cheapestFlight, Double lowestFare, Flight earliestFlight) {
+    }
+
+    // Flights of the whole window ordered by date then departure time, and one summary per day of the window
+    public record FlexibleDateResult(List<Flight> flights, List<DaySummary> days) {
+    }
+
+    // Searches a route from flexDays before to flexDays after the given date, flexDays is clamped to 0..MAX_FLEX_DAYS
+    public FlexibleDateResult search(String originAirportCode, String destinationAirportCode, LocalDate date, int flexDays) {
+        return search(List.of(originAirportCode), List.of(destinationAirportCode), date, flexDays);
+    }
+
+    // Same search from any of the origin airports to any of the destination airports
+    public FlexibleDateResult search(Collection<String> originAirportCodes, Collection<String> destinationAirportCodes, LocalDate date, int flexDays) {
+        int days = Math.max(0, Math.min(flexDays, MAX_FLEX_DAYS));
+        Map<LocalDate, List<Flight>> flightsByDate =
+                flightSearchIndex.findFlights(originAirportCodes, destinationAirportCodes, date.minusDays(days), date.plusDays(days));
+
+        List<Flight> flights = new ArrayList<>();
+        List<DaySummary> summaries = new ArrayList<>(flightsByDate.size());
+        flightsByDate.forEach((day, dayFlights) -> {
+            flights.addAll(dayFlights);
+            summaries.add(summarize(day, dayFlights));
+        });
+        return new FlexibleDateResult(flights, summaries);
+    }
+
+    private DaySummary summarize(LocalDate day, List<Flight> dayFlights) {
+        Flight cheapest = null;
+        double lowestFare = Double.MAX_VALUE;
+        // Flights of a day are ordered by departure time, so the first one is the earliest and fare ties go to the earlier flight
+        for (Flight flight : dayFlights) {
+            double fare = fareCalculator.fareFor(flight, Ticket.ClassType.ECONOMY);
+            if (fare < lowestFare) {
+                cheapest = flight;
+                lowestFare = fare;
+            }
+        }
+        return new DaySummary(day, dayFlights.size(), cheapest, cheapest == null ? null : lowestFare, dayFlights.isEmpty() ? null : dayFlights.get(0));
+    }
+}
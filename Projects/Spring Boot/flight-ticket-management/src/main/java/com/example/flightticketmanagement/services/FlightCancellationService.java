@@ -0,0 +1,125 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.FlightCancelledEvent;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import com.example.flightticketmanagement.repositories.TicketRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Cancels flights. All tickets of the flight are flipped to CANCELLED with one set-based UPDATE inside the cancelling transaction, and the
+ * customer-facing follow-up work (notifications, refunds, inventory release) runs asynchronously once that transaction has committed
+ */
+
+@Slf4j
+@Service
+public class FlightCancellationService {
+
+    // Statuses of the tickets whose payment went through
+    private static final Set<Ticket.BookingStatus> PAID = EnumSet.of(Ticket.BookingStatus.BOOKED, Ticket.BookingStatus.CONFIRMED,
+            Ticket.BookingStatus.CHECKED_IN, Ticket.BookingStatus.COMPLETED);
+
+    private final FlightRepository flightRepository;
+    private final TicketRepository ticketRepository;
+    private final SeatInventoryService seatInventoryService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public FlightCancellationService(FlightRepository flightRepository,
+                                     TicketRepository ticketRepository,
+                                     SeatInventoryService seatInventoryService,
+                                     ApplicationEventPublisher eventPublisher) {
+        this.flightRepository = flightRepository;
+        this.ticketRepository = ticketRepository;
+        this.seatInventoryService = seatInventoryService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    // Sets the flight to CANCELLED and cancels all of its tickets. Returns the number of cancelled tickets
+    @Transactional
+    public int cancelFlight(Long flightId) {
+        Flight flight = flightRepository.lockById(flightId)
+                .orElseThrow(() -> new NoSuchElementException("Flight not found"));
+        flight.setFlightStatus(Flight.FlightStatus.CANCELLED);
+        flightRepository.save(flight);
+        return cancelTicketsOfFlight(flightId);
+    }
+
+    // Updates the number, route, times and status of a flight from the edit forms, and cancels its tickets in the same transaction when a
+    // scheduled flight is cancelled. The remaining tickets are only ever changed by the seat inventory, the locked row keeps the ones
+    // sold meanwhile. Throws NoSuchElementException if the flight does not exist
+    @Transactional
+    public void updateFlight(Long flightId, Flight details) {
+        Flight flight = flightRepository.lockById(flightId)
+                .orElseThrow(() -> new NoSuchElementException("Flight not found"));
+        boolean cancelled = flight.getFlightStatus() == Flight.FlightStatus.SCHEDULED && details.getFlightStatus() == Flight.FlightStatus.CANCELLED;
+        flight.setFlightNumber(details.getFlightNumber());
+        flight.setOriginAirport(details.getOriginAirport());
+        flight.setDestinationAirport(details.getDestinationAirport());
+        flight.setDate(details.getDate());
+        flight.setDepartureTimeLocal(details.getDepartureTimeLocal());
+        flight.setLandingTimeLocal(details.getLandingTimeLocal());
+        flight.setFlightStatus(details.getFlightStatus());
+        flightRepository.save(flight);
+        if (cancelled) {
+            cancelTicketsOfFlight(flightId);
+        }
+    }
+
+    // Cancels all active tickets of a flight in one statement and schedules the follow-up work. Returns the number of cancelled tickets.
+    // The tickets are locked first, so the statuses the seats and refunds are counted from are still theirs when they are cancelled
+    @Transactional
+    public int cancelTicketsOfFlight(Long flightId) {
+        List<TicketRepository.ActiveTicket> activeTickets = ticketRepository.lockActiveTickets(flightId);
+        int cancelled = ticketRepository.cancelTicketsOfFlight(flightId);
+        // Pending tickets were never paid for, so only the other ones and the pending ones still holding a seat gave up a seat of the inventory
+        int releasedSeats = (int) activeTickets.stream()
+                .filter(ticket -> !Ticket.BookingStatus.PENDING.name().equals(ticket.getBookingStatus()) || ticket.isHeld())
+                .count();
+        List<String> ticketIds = activeTickets.stream().map(TicketRepository.ActiveTicket::getTicketId).toList();
+        // Payments still waiting for the provider are refunded by the payment pipeline when their approval finds the ticket cancelled
+        List<String> paidTicketIds = activeTickets.stream()
+                .filter(ticket -> PAID.contains(Ticket.BookingStatus.valueOf(ticket.getBookingStatus())))
+                .map(TicketRepository.ActiveTicket::getTicketId)
+                .toList();
+        eventPublisher.publishEvent(new FlightCancelledEvent(this, flightId, ticketIds, paidTicketIds, releasedSeats));
+        log.info("Cancelled {} tickets of flight {}", cancelled, flightId);
+        return cancelled;
+    }
+
+    // Runs on the async executor after the cancelling transaction has committed, so the request thread does not wait for it
+    @Async
+    @TransactionalEventListener
+    public void onFlightCancelled(FlightCancelledEvent event) {
+        // Give the seats back to the flight's inventory in one update
+        if (event.getReleasedSeats() > 0) {
+            seatInventoryService.releaseSeats(event.getFlightId(), event.getReleasedSeats());
+        }
+        for (String ticketId : event.getPaidTicketIds()) {
+            refundTicket(ticketId);
+        }
+        for (String ticketId : event.getCancelledTicketIds()) {
+            notifyCustomer(ticketId);
+        }
+    }
+
+    // Placeholder method for refunding a cancelled ticket (there is no payment provider yet)
+    private void refundTicket(String ticketId) {
+        log.info("Refund issued for cancelled ticket {}", ticketId);
+    }
+
+    // Placeholder method for notifying the customer about the cancellation (there is no mail or SMS provider yet)
+    private void notifyCustomer(String ticketId) {
+        log.info("Customer notified about cancelled ticket {}", ticketId);
+    }
+}
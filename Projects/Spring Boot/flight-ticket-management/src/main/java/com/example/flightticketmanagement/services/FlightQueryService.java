@@ -0,0 +1,261 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Flight search for the JSON API, one page at a time with keyset (cursor) pagination. A page ends with a cursor holding the sort key
+ * and id of its last flight, and the next page starts after that key instead of skipping a number of rows, so reading page 500 costs
+ * the same as reading page 1. Flights sorted by departure are read from the flight table with Spring Data's keyset scrolling, which
+ * turns the cursor into a WHERE condition on (date, departure_time_local, id) served by an index, with any combination of the route
+ * and date filters. Duration and price are not columns (the duration depends on the time zones of both airports, the price on the
+ * dynamic fare engine), so these sorts need a route and a bounded date window: the flights of the window are read from the flight
+ * table in one query and sorted in memory, where the cursor is found by binary search. Every sort order reads the same rows, so a
+ * flight shows the same seats and fare whatever the order. Prices move with sales, so a flight whose fare changes between two pages
+ * may show up twice or not at all, never does the reading stop or loop. A search on a route that no flight serves on any date returns
+ * an empty page without reading the flight table
+ */
+
+@Service
+public class FlightQueryService {
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+    // Widest date window of a search sorted by duration or price, in days
+    public static final int MAX_WINDOW_DAYS = 31;
+
+    private static final Sort BY_DEPARTURE = Sort.by("date", "departureTimeLocal", "id");
+
+    private final FlightRepository flightRepository;
+    private final FlightSearchIndex flightSearchIndex;
+    private final FareCalculator fareCalculator;
+
+    public FlightQueryService(FlightRepository flightRepository,
+                              FlightSearchIndex flightSearchIndex,
+                              FareCalculator fareCalculator) {
+        this.flightRepository = flightRepository;
+        this.flightSearchIndex = flightSearchIndex;
+        this.fareCalculator = fareCalculator;
+    }
+
+    public enum SortOrder {
+        DEPARTURE, DURATION, PRICE;
+
+        // Sort order named in a URL, such as "price"
+        public static SortOrder of(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown sort order " + name);
+            }
+        }
+    }
+
+    // Filters of a search, null when not set. The dates are those of the flights, both ends included
+    public record Query(String originAirportCode, String destinationAirportCode, LocalDate from, LocalDate to, SortOrder sort) {
+    }
+
+    // A scheduled flight as returned by the API. Duration is null when the time zone of one of the airports cannot be read
+    public record FlightSummary(Long id, String flightNumber, String airline, String originAirport, String destinationAirport,
+                                LocalDate date, LocalTime departureTimeLocal, LocalTime landingTimeLocal, Long durationMinutes,
+                                double economyFare, int remainingTickets) {
+    }
+
+    // One page of results, and the cursor of the next page, null on the last one
+    public record Page(List<FlightSummary> flights, String nextCursor) {
+    }
+
+    // Returns the page of flights following the cursor, or the first page when the cursor is null. Throws IllegalArgumentException when
+    // the filters do not fit the sort order or the cursor was not returned by a search with the same sort order
+    public Page search(Query query, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("The page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        if (query.from() != null && query.to() != null && query.to().isBefore(query.from())) {
+            throw new IllegalArgumentException("The end of the date range is before its start");
+        }
+        Cursor after = cursor == null ? null : Cursor.decode(cursor, query.sort());
+        return query.sort() == SortOrder.DEPARTURE ? searchByDeparture(query, after, limit) : searchByComputedKey(query, after, limit);
+    }
+
+    private Page searchByDeparture(Query query, Cursor after, int limit) {
+        if (!served(query)) {
+            return new Page(List.of(), null);
+        }
+        ScrollPosition position = after == null ? ScrollPosition.keyset()
+                : ScrollPosition.forward(Map.of("date", after.date(), "departureTimeLocal", after.time(), "id", after.id()));
+        Window<Flight> window = flightRepository.findBy(filters(query), fluentQuery -> fluentQuery
+                .project("airline", "originAirport", "destinationAirport") // Loaded in the same query
+                .sortBy(BY_DEPARTURE)
+                .limit(limit)
+                .scroll(position));
+        List<FlightSummary> flights = window.getContent().stream().map(this::summarize).toList();
+        String nextCursor = null;
+        if (window.hasNext() && !flights.isEmpty()) {
+            KeysetScrollPosition last = (KeysetScrollPosition) window.positionAt(flights.size() - 1);
+            nextCursor = new Cursor(SortOrder.DEPARTURE, 0, (LocalDate) last.getKeys().get("date"),
+                    (LocalTime) last.getKeys().get("departureTimeLocal"), (Long) last.getKeys().get("id")).encode();
+        }
+        return new Page(flights, nextCursor);
+    }
+
+    private Page searchByComputedKey(Query query, Cursor after, int limit) {
+        if (query.originAirportCode() == null || query.destinationAirportCode() == null || query.from() == null) {
+            throw new IllegalArgumentException("Sorting by " + query.sort().name().toLowerCase(Locale.ROOT) + " needs an origin, a destination and a date");
+        }
+        LocalDate to = query.to() == null ? query.from() : query.to();
+        if (to.isAfter(query.from().plusDays(MAX_WINDOW_DAYS - 1))) {
+            throw new IllegalArgumentException("The date range is longer than " + MAX_WINDOW_DAYS + " days");
+        }
+        if (!served(query)) {
+            return new Page(List.of(), null);
+        }
+        // A route over at most a month, a few hundred rows read through the route index
+        Query window = new Query(query.originAirportCode(), query.destinationAirportCode(), query.from(), to, query.sort());
+        List<Flight> flights = flightRepository.findBy(filters(window), fluentQuery -> fluentQuery
+                .project("airline", "originAirport", "destinationAirport") // Loaded in the same query
+                .all());
+        List<FlightSummary> candidates = new ArrayList<>(flights.size());
+        flights.forEach(flight -> candidates.add(summarize(flight)));
+        Comparator<FlightSummary> order = query.sort() == SortOrder.PRICE
+                ? Comparator.comparingDouble(FlightSummary::economyFare).thenComparing(FlightSummary::id)
+                : Comparator.comparingLong(FlightQueryService::durationKey).thenComparing(FlightSummary::id);
+        candidates.sort(order);
+
+        int start = 0;
+        if (after != null) {
+            // First flight after the cursor, the cursor's own flight may be gone by now
+            int low = 0;
+            int high = candidates.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                FlightSummary flight = candidates.get(middle);
+                int comparison = Double.compare(sortKey(query.sort(), flight), after.key());
+                if (comparison < 0 || comparison == 0 && flight.id() <= after.id()) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            start = low;
+        }
+        int end = Math.min(start + limit, candidates.size());
+        List<FlightSummary> page = List.copyOf(candidates.subList(start, end));
+        String nextCursor = null;
+        if (end < candidates.size() && !page.isEmpty()) {
+            FlightSummary last = page.get(page.size() - 1);
+            nextCursor = new Cursor(query.sort(), sortKey(query.sort(), last), null, null, last.id()).encode();
+        }
+        return new Page(page, nextCursor);
+    }
+
+    // False only when the search names both airports and no scheduled flight links them on any date
+    private boolean served(Query query) {
+        return query.originAirportCode() == null || query.destinationAirportCode() == null
+                || flightSearchIndex.servesRoute(query.originAirportCode(), query.destinationAirportCode());
+    }
+
+    private static Specification<Flight> filters(Query query) {
+        return (root, criteriaQuery, builder) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(builder.equal(root.get("flightStatus"), Flight.FlightStatus.SCHEDULED));
+            predicates.add(builder.isNotNull(root.get("departureTimeLocal"))); // Keyset pagination cannot order nulls
+            if (query.originAirportCode() != null) {
+                predicates.add(builder.equal(root.get("originAirport").get("airportCode"), query.originAirportCode()));
+            }
+            if (query.destinationAirportCode() != null) {
+                predicates.add(builder.equal(root.get("destinationAirport").get("airportCode"), query.destinationAirportCode()));
+            }
+            if (query.from() != null) {
+                predicates.add(builder.greaterThanOrEqualTo(root.get("date"), query.from()));
+            }
+            if (query.to() != null) {
+                predicates.add(builder.lessThanOrEqualTo(root.get("date"), query.to()));
+            }
+            return builder.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+
+    private FlightSummary summarize(Flight flight) {
+        Duration duration = durationOf(flight);
+        return new FlightSummary(flight.getId(), flight.getFlightNumber(), flight.getAirline() == null ? null : flight.getAirline().getIataCode(),
+                flight.getOriginAirport().getAirportCode(), flight.getDestinationAirport().getAirportCode(), flight.getDate(),
+                flight.getDepartureTimeLocal(), flight.getLandingTimeLocal(), duration == null ? null : duration.toMinutes(),
+                fareCalculator.fareFor(flight, Ticket.ClassType.ECONOMY), flight.getRemainingTickets());
+    }
+
+    // Time from departure to landing, the flight lands on the first day that puts the landing after the departure
+    static Duration durationOf(Flight flight) {
+        if (flight.getDate() == null || flight.getDepartureTimeLocal() == null || flight.getLandingTimeLocal() == null) {
+            return null;
+        }
+        ZoneId originZone = ConnectionPlanner.zoneOf(flight.getOriginAirport());
+        ZoneId destinationZone = ConnectionPlanner.zoneOf(flight.getDestinationAirport());
+        if (originZone == null || destinationZone == null) {
+            return null;
+        }
+        ZonedDateTime departure = flight.getDate().atTime(flight.getDepartureTimeLocal()).atZone(originZone);
+        ZonedDateTime arrival = flight.getDate().atTime(flight.getLandingTimeLocal()).atZone(destinationZone);
+        while (!arrival.isAfter(departure)) {
+            arrival = arrival.plusDays(1);
+        }
+        return Duration.between(departure, arrival);
+    }
+
+    // Flights without a known duration come last
+    private static long durationKey(FlightSummary flight) {
+        return flight.durationMinutes() == null ? Long.MAX_VALUE : flight.durationMinutes();
+    }
+
+    private static double sortKey(SortOrder sort, FlightSummary flight) {
+        return sort == SortOrder.PRICE ? flight.economyFare() : durationKey(flight);
+    }
+
+    // Position after the last flight of a page: its departure date and time for the departure order, its duration or fare otherwise,
+    // and its id to break ties. Sent to clients as an opaque URL-safe string
+    private record Cursor(SortOrder sort, double key, LocalDate date, LocalTime time, Long id) {
+
+        String encode() {
+            String value = sort == SortOrder.DEPARTURE ? sort + "|" + date + "|" + time + "|" + id : sort + "|" + key + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor, SortOrder expectedSort) {
+            Cursor decoded;
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+                SortOrder sort = SortOrder.valueOf(parts[0]);
+                decoded = sort == SortOrder.DEPARTURE
+                        ? new Cursor(sort, 0, LocalDate.parse(parts[1]), LocalTime.parse(parts[2]), Long.parseLong(parts[3]))
+                        : new Cursor(sort, Double.parseDouble(parts[1]), null, null, Long.parseLong(parts[2]));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            if (decoded.sort() != expectedSort) {
+                throw new IllegalArgumentException("The cursor belongs to a search sorted by " + decoded.sort().name().toLowerCase(Locale.ROOT));
+            }
+            return decoded;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Airline;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.FlightSchedule;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import com.example.flightticketmanagement.repositories.FlightScheduleRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Recurring flight schedules. A schedule is a template (route, days of the week, validity period, times), and its dated Flight rows are
+ * created lazily: up to a rolling horizon (schedules.horizon-days) by a periodic job, and further out only on the dates a search asks for
+ * beyond the horizon, up to schedules.max-advance-days and at most schedules.max-search-days dates per search. The flight table therefore
+ * holds the next weeks of every schedule instead of its whole validity period. Each schedule remembers the date it has been created up to,
+ * and the dates beyond it that searches created, so flights are created once, and a flight that was changed, cancelled or deleted
+ * afterwards stays that way: the dated rows are the exceptions to the template. Created flights are saved
+ * through the Flight entity, so the in-memory timetables pick them up from FlightChangedEvent. Searches check an in-memory view of the
+ * schedules, so a search within the horizon costs no database access
+ */
+
+@Slf4j
+@Service
+public class FlightScheduleService {
+
+    private final FlightScheduleRepository flightScheduleRepository;
+    private final FlightRepository flightRepository;
+    private final TransactionOperations transactionOperations;
+    private final int horizonDays;
+    private final int maxAdvanceDays;
+    private final int maxSearchDays;
+    private final Clock clock;
+
+    // Validity period of every schedule by route, the date each schedule has been created up to and the dates beyond it created for
+    // searches. Lists and sets are replaced as a whole
+    private final Map<Route, List<ScheduleWindow>> windowsByRoute = new ConcurrentHashMap<>();
+    private final Map<Long, LocalDate> materializedThrough = new ConcurrentHashMap<>();
+    private final Map<Long, Set<LocalDate>> materializedDates = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @Autowired
+    public FlightScheduleService(FlightScheduleRepository flightScheduleRepository,
+                                 FlightRepository flightRepository,
+                                 TransactionOperations transactionOperations,
+                                 @Value("${schedules.horizon-days:60}") int horizonDays,
+                                 @Value("${schedules.max-advance-days:365}") int maxAdvanceDays,
+                                 @Value("${schedules.max-search-days:31}") int maxSearchDays) {
+        this(flightScheduleRepository, flightRepository, transactionOperations, horizonDays, maxAdvanceDays, maxSearchDays, Clock.systemDefaultZone());
+    }
+
+    // Clock deciding which dates are in the past and where the horizon is, replaced by tests
+    FlightScheduleService(FlightScheduleRepository flightScheduleRepository,
+                          FlightRepository flightRepository,
+                          TransactionOperations transactionOperations,
+                          int horizonDays,
+                          int maxAdvanceDays,
+                          int maxSearchDays,
+                          Clock clock) {
+        this.flightScheduleRepository = flightScheduleRepository;
+        this.flightRepository = flightRepository;
+        this.transactionOperations = transactionOperations;
+        this.horizonDays = horizonDays;
+        this.maxAdvanceDays = maxAdvanceDays;
+        this.maxSearchDays = maxSearchDays;
+        this.clock = clock;
+    }
+
+    private record Route(String originAirportCode, String destinationAirportCode) {
+    }
+
+    private record ScheduleWindow(Long scheduleId, LocalDate validFrom, LocalDate validTo, String daysOfWeek) {
+
+        boolean operatesOn(LocalDate date) {
+            return daysOfWeek != null && daysOfWeek.indexOf((char) ('0' + date.getDayOfWeek().getValue())) >= 0;
+        }
+    }
+
+    // Loads the validity period of every schedule
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        lock.lock();
+        try {
+            windowsByRoute.clear();
+            materializedThrough.clear();
+            materializedDates.clear();
+            for (FlightSchedule schedule : flightScheduleRepository.findAll()) {
+                register(schedule);
+            }
+            Map<Long, Set<LocalDate>> datesBySchedule = new HashMap<>();
+            for (FlightScheduleRepository.MaterializedDate date : flightScheduleRepository.findMaterializedDates()) {
+                datesBySchedule.computeIfAbsent(date.getScheduleId(), id -> new HashSet<>()).add(date.getDate());
+            }
+            datesBySchedule.forEach((scheduleId, dates) -> materializedDates.put(scheduleId, Set.copyOf(dates)));
+            log.info("Flight schedules loaded for {} routes", windowsByRoute.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Finds the schedules of an airline
+    public List<FlightSchedule> findByAirline(Airline airline) {
+        return flightScheduleRepository.findByAirlineOrderByValidToDescFlightNumberAsc(airline);
+    }
+
+    // Saves a new schedule and creates its flights up to the horizon. Returns the number of flights created. Throws
+    // IllegalArgumentException if the schedule is incomplete
+    public int create(FlightSchedule schedule) {
+        validate(schedule);
+        schedule.setId(null);
+        schedule.setMaterializedThrough(null);
+        FlightSchedule saved = flightScheduleRepository.save(schedule);
+        lock.lock();
+        try {
+            register(saved);
+        } finally {
+            lock.unlock();
+        }
+        return materialize(saved.getId(), LocalDate.now(clock).plusDays(horizonDays));
+    }
+
+    // Moves the horizon forward: creates the flights of every running schedule up to schedules.horizon-days from today, one schedule per
+    // transaction. Returns the number of flights created
+    @Scheduled(fixedDelayString = "${schedules.horizon-check-minutes:360}", initialDelay = 1, timeUnit = TimeUnit.MINUTES)
+    public int extendHorizon() {
+        LocalDate today = LocalDate.now(clock);
+        LocalDate horizon = today.plusDays(horizonDays);
+        int created = 0;
+        for (Long scheduleId : flightScheduleRepository.findIdsBehindHorizon(today, horizon)) {
+            created += materialize(scheduleId, horizon);
+        }
+        if (created > 0) {
+            log.info("Created {} scheduled flights up to {}", created, horizon);
+        }
+        return created;
+    }
+
+    // True when a running schedule flies from any of the origin airports to any of the destination airports, also before its first
+    // flight is created
+    public boolean servesAnyRoute(Collection<String> originAirportCodes, Collection<String> destinationAirportCodes) {
+        LocalDate today = LocalDate.now(clock);
+        for (String originAirportCode : originAirportCodes) {
+            for (String destinationAirportCode : destinationAirportCodes) {
+                for (ScheduleWindow window : windowsByRoute.getOrDefault(new Route(originAirportCode, destinationAirportCode), List.of())) {
+                    if (!window.validTo().isBefore(today)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // Creates the flights a search between the airports and dates needs but that lie beyond the horizon, on the searched dates only and on
+    // at most schedules.max-search-days of them from the first one. Searches within the horizon, on dates already created or on routes
+    // without schedules only read the in-memory view. Dates further than schedules.max-advance-days ahead are not created
+    public void materializeForSearch(Collection<String> originAirportCodes, Collection<String> destinationAirportCodes, LocalDate from, LocalDate to) {
+        LocalDate today = LocalDate.now(clock);
+        LocalDate first = max(from, today);
+        LocalDate last = min(min(to, today.plusDays(maxAdvanceDays)), first.plusDays(maxSearchDays - 1));
+        if (last.isBefore(first)) {
+            return;
+        }
+        for (String originAirportCode : originAirportCodes) {
+            for (String destinationAirportCode : destinationAirportCodes) {
+                for (ScheduleWindow window : windowsByRoute.getOrDefault(new Route(originAirportCode, destinationAirportCode), List.of())) {
+                    if (missing(window, first, last)) {
+                        materializeDates(window.scheduleId(), first, last);
+                    }
+                }
+            }
+        }
+    }
+
+    // Creates the flights of a schedule from the day after the last created one up to the given date, skipping past dates, the days
+    // the schedule does not operate and the dates a search created already. The schedule row is locked meanwhile, so concurrent calls
+    // create each flight once. Returns the number of flights created
+    public int materialize(Long scheduleId, LocalDate through) {
+        Materialized materialized = transactionOperations.execute(status -> {
+            FlightSchedule schedule = flightScheduleRepository.lockById(scheduleId)
+                    .orElseThrow(() -> new NoSuchElementException("Schedule not found"));
+            LocalDate start = max(schedule.getValidFrom(), LocalDate.now(clock));
+            if (schedule.getMaterializedThrough() != null) {
+                start = max(start, schedule.getMaterializedThrough().plusDays(1));
+            }
+            LocalDate end = min(through, schedule.getValidTo());
+            List<Flight> flights = new ArrayList<>();
+            for (LocalDate date = start; !date.isAfter(end); date = date.plusDays(1)) {
+                if (schedule.operatesOn(date) && !schedule.getMaterializedDates().contains(date)) {
+                    flights.add(flightOn(schedule, date));
+                }
+            }
+            if (!flights.isEmpty()) {
+                flightRepository.saveAll(flights);
+            }
+            if (schedule.getMaterializedThrough() == null || end.isAfter(schedule.getMaterializedThrough())) {
+                schedule.setMaterializedThrough(end);
+                // The dates created early up to the new end are covered by it now
+                schedule.getMaterializedDates().removeIf(date -> !date.isAfter(end));
+                flightScheduleRepository.save(schedule);
+            }
+            return new Materialized(flights.size(), schedule.getMaterializedThrough(), Set.copyOf(schedule.getMaterializedDates()));
+        });
+        remember(scheduleId, materialized);
+        log.debug("Created {} flights of schedule {} up to {}", materialized.created(), scheduleId, materialized.through());
+        return materialized.created();
+    }
+
+    // Creates the flights of a schedule on the dates from first to last beyond the date it has been created up to, and records each of
+    // them so the horizon does not create it again. The schedule row is locked meanwhile. Returns the number of flights created
+    private int materializeDates(Long scheduleId, LocalDate first, LocalDate last) {
+        Materialized materialized = transactionOperations.execute(status -> {
+            FlightSchedule schedule = flightScheduleRepository.lockById(scheduleId)
+                    .orElseThrow(() -> new NoSuchElementException("Schedule not found"));
+            LocalDate start = max(max(schedule.getValidFrom(), LocalDate.now(clock)), first);
+            if (schedule.getMaterializedThrough() != null) {
+                start = max(start, schedule.getMaterializedThrough().plusDays(1));
+            }
+            LocalDate end = min(last, schedule.getValidTo());
+            List<Flight> flights = new ArrayList<>();
+            for (LocalDate date = start; !date.isAfter(end); date = date.plusDays(1)) {
+                if (schedule.operatesOn(date) && schedule.getMaterializedDates().add(date)) {
+                    flights.add(flightOn(schedule, date));
+                }
+            }
+            if (!flights.isEmpty()) {
+                flightRepository.saveAll(flights);
+                flightScheduleRepository.save(schedule);
+            }
+            return new Materialized(flights.size(), schedule.getMaterializedThrough(), Set.copyOf(schedule.getMaterializedDates()));
+        });
+        remember(scheduleId, materialized);
+        log.debug("Created {} flights of schedule {} from {} to {}", materialized.created(), scheduleId, first, last);
+        return materialized.created();
+    }
+
+    // True when the schedule operates on a date from first to last whose flight has been created neither up to the horizon nor for a search
+    private boolean missing(ScheduleWindow window, LocalDate first, LocalDate last) {
+        LocalDate start = max(first, window.validFrom());
+        LocalDate done = materializedThrough.get(window.scheduleId());
+        if (done != null) {
+            start = max(start, done.plusDays(1));
+        }
+        Set<LocalDate> created = materializedDates.getOrDefault(window.scheduleId(), Set.of());
+        for (LocalDate date = start; !date.isAfter(min(last, window.validTo())); date = date.plusDays(1)) {
+            if (window.operatesOn(date) && !created.contains(date)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Flight flightOn(FlightSchedule schedule, LocalDate date) {
+        return new Flight(null, schedule.getFlightNumber(), schedule.getAirline(), schedule.getOriginAirport(),
+                schedule.getDestinationAirport(), date, schedule.getDepartureTimeLocal(), schedule.getLandingTimeLocal(),
+                schedule.getSeatsPerFlight(), schedule.getSeatsPerFlight(), Flight.FlightStatus.SCHEDULED, schedule.getId());
+    }
+
+    private void remember(Long scheduleId, Materialized materialized) {
+        if (materialized.through() != null) {
+            materializedThrough.put(scheduleId, materialized.through());
+        }
+        materializedDates.put(scheduleId, materialized.dates());
+    }
+
+    private record Materialized(int created, LocalDate through, Set<LocalDate> dates) {
+    }
+
+    private void register(FlightSchedule schedule) {
+        if (schedule.getOriginAirport() == null || schedule.getDestinationAirport() == null) {
+            return;
+        }
+        Route route = new Route(schedule.getOriginAirport().getAirportCode(), schedule.getDestinationAirport().getAirportCode());
+        ScheduleWindow window = new ScheduleWindow(schedule.getId(), schedule.getValidFrom(), schedule.getValidTo(), schedule.getDaysOfWeek());
+        windowsByRoute.compute(route, (k, windows) -> {
+            List<ScheduleWindow> updated = windows == null ? new ArrayList<>() : new ArrayList<>(windows);
+            updated.removeIf(existing -> existing.scheduleId().equals(schedule.getId()));
+            updated.add(window);
+            return List.copyOf(updated);
+        });
+        if (schedule.getMaterializedThrough() != null) {
+            materializedThrough.put(schedule.getId(), schedule.getMaterializedThrough());
+        }
+    }
+
+    // Checks a new schedule and keeps its days of the week as sorted ISO day numbers without repeats
+    private static void validate(FlightSchedule schedule) {
+        if (schedule.getFlightNumber() == null || schedule.getFlightNumber().isBlank()) {
+            throw new IllegalArgumentException("The flight number is required");
+        }
+        if (schedule.getAirline() == null || schedule.getOriginAirport() == null || schedule.getDestinationAirport() == null) {
+            throw new IllegalArgumentException("The airline and both airports are required");
+        }
+        if (schedule.getOriginAirport().getAirportCode().equals(schedule.getDestinationAirport().getAirportCode())) {
+            throw new IllegalArgumentException("The origin and the destination are the same airport");
+        }
+        if (schedule.getValidFrom() == null || schedule.getValidTo() == null || schedule.getValidTo().isBefore(schedule.getValidFrom())) {
+            throw new IllegalArgumentException("The validity period must have a start and an end after it");
+        }
+        if (schedule.getDepartureTimeLocal() == null || schedule.getLandingTimeLocal() == null) {
+            throw new IllegalArgumentException("The departure and landing times are required");
+        }
+        if (schedule.getSeatsPerFlight() < 0) {
+            throw new IllegalArgumentException("The seats per flight cannot be negative");
+        }
+        StringBuilder days = new StringBuilder();
+        for (char day = '1'; day <= '7'; day++) {
+            if (schedule.getDaysOfWeek() != null && schedule.getDaysOfWeek().indexOf(day) >= 0) {
+                days.append(day);
+            }
+        }
+        if (days.isEmpty()) {
+            throw new IllegalArgumentException("The schedule must operate on at least one day of the week");
+        }
+        schedule.setDaysOfWeek(days.toString());
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.FlightChangedEvent;
+import com.example.flightticketmanagement.events.FlightsImportedEvent;
+import com.example.flightticketmanagement.events.SeatInventoryChangedEvent;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory timetable of scheduled flights keyed by (origin airport code, destination airport code, date). It answers flight searches
+ * without a database round-trip. The index is built once the application is ready and kept current from FlightChangedEvent and
+ * SeatInventoryChangedEvent, applied once the change is committed so a rolled back change never reaches it. It also
+ * counts the flights of every route whatever their date, so a direct search on a route no airline serves stops at once, before any
+ * date or seat lookup. The counts are exact: the served routes are few compared to all airport pairs, so a probabilistic filter
+ * would save little memory and would need rebuilding when flights are removed
+ */
+
+@Slf4j
+@Service
+public class FlightSearchIndex {
+
+    // Orders flights inside a bucket by departure time, flights without a departure time go last
+    private static final Comparator<Flight> BY_DEPARTURE_TIME =
+            Comparator.comparing(Flight::getDepartureTimeLocal, Comparator.nullsLast(LocalTime::compareTo));
+
+    private final FlightRepository flightRepository;
+
+    // Each bucket is an immutable list that is replaced as a whole on change, so readers never see a half-updated bucket
+    private volatile Map<RouteDateKey, List<Flight>> flightsByRouteAndDate = new ConcurrentHashMap<>();
+    // Remembers the bucket each flight is stored in, so an edited flight can be moved out of its old route or date
+    private volatile Map<Long, RouteDateKey> keysByFlightId = new ConcurrentHashMap<>();
+    // Number of scheduled flights of each route on any date, routes without flights are absent
+    private volatile Map<Route, Integer> flightCountsByRoute = new ConcurrentHashMap<>();
+    // Serializes writers. A lock rather than synchronized, since the rebuild queries the database while holding it and a virtual
+    // thread blocking inside a synchronized block would pin its carrier thread
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public FlightSearchIndex(FlightRepository flightRepository) {
+        this.flightRepository = flightRepository;
+    }
+
+    // Key of a bucket of the index
+    public record RouteDateKey(String originAirportCode, String destinationAirportCode, LocalDate date) {
+
+        private Route route() {
+            return new Route(originAirportCode, destinationAirportCode);
+        }
+    }
+
+    private record Route(String originAirportCode, String destinationAirportCode) {
+    }
+
+    // Loads all scheduled flights and swaps in a freshly built index, at startup and after a timetable import
+    @EventListener({ApplicationReadyEvent.class, FlightsImportedEvent.class})
+    public void rebuild() {
+        lock.lock();
+        try {
+            rebuildLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void rebuildLocked() {
+        Map<RouteDateKey, List<Flight>> newFlights = new ConcurrentHashMap<>();
+        Map<Long, RouteDateKey> newKeys = new ConcurrentHashMap<>();
+        Map<Route, Integer> newCounts = new ConcurrentHashMap<>();
+        List<Flight> scheduledFlights = flightRepository.findWithRouteByFlightStatus(Flight.FlightStatus.SCHEDULED);
+        for (Flight flight : scheduledFlights) {
+            RouteDateKey key = keyOf(flight);
+            if (key != null) {
+                newFlights.computeIfAbsent(key, k -> new ArrayList<>()).add(snapshot(flight));
+                newKeys.put(flight.getId(), key);
+                newCounts.merge(key.route(), 1, Integer::sum);
+            }
+        }
+        newFlights.replaceAll((key, flights) -> sortedCopy(flights));
+        flightsByRouteAndDate = newFlights;
+        keysByFlightId = newKeys;
+        flightCountsByRoute = newCounts;
+        log.info("Flight search index built with {} scheduled flights on {} route-days", newKeys.size(), newFlights.size());
+    }
+
+    // Returns the scheduled flights between two airports on a given date, ordered by departure time
+    public List<Flight> findFlights(String originAirportCode, String destinationAirportCode, LocalDate date) {
+        return flightsByRouteAndDate.getOrDefault(new RouteDateKey(originAirportCode, destinationAirportCode, date), List.of());
+    }
+
+    // Returns the scheduled flights between two airports for every date of a window (both ends included), in date order. Every date is
+    // a map lookup, so a window of a week costs about as much as a single date
+    public Map<LocalDate, List<Flight>> findFlights(String originAirportCode, String destinationAirportCode, LocalDate from, LocalDate to) {
+        return findFlights(List.of(originAirportCode), List.of(destinationAirportCode), from, to);
+    }
+
+    // Returns the scheduled flights from any of the origin airports to any of the destination airports for every date of a window, in
+    // date order, the flights of each date ordered by departure time. Used to search nearby airports together with the requested ones
+    public Map<LocalDate, List<Flight>> findFlights(Collection<String> originAirportCodes, Collection<String> destinationAirportCodes,
+                                                    LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("The end of the date window is before its start");
+        }
+        Map<RouteDateKey, List<Flight>> flights = flightsByRouteAndDate; // One snapshot for the whole window
+        Map<LocalDate, List<Flight>> flightsByDate = new LinkedHashMap<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            List<Flight> dateFlights = new ArrayList<>();
+            for (String originAirportCode : originAirportCodes) {
+                for (String destinationAirportCode : destinationAirportCodes) {
+                    dateFlights.addAll(flights.getOrDefault(new RouteDateKey(originAirportCode, destinationAirportCode, date), List.of()));
+                }
+            }
+            // A single route is already ordered, several routes have to be merged
+            flightsByDate.put(date, originAirportCodes.size() * destinationAirportCodes.size() > 1 ? sortedCopy(dateFlights) : List.copyOf(dateFlights));
+        }
+        return flightsByDate;
+    }
+
+    // True when at least one scheduled flight goes from the origin to the destination airport, on any date
+    public boolean servesRoute(String originAirportCode, String destinationAirportCode) {
+        return flightCountsByRoute.containsKey(new Route(originAirportCode, destinationAirportCode));
+    }
+
+    // True when at least one scheduled flight goes from any of the origin airports to any of the destination airports, on any date
+    public boolean servesAnyRoute(Collection<String> originAirportCodes, Collection<String> destinationAirportCodes) {
+        Map<Route, Integer> counts = flightCountsByRoute;
+        for (String originAirportCode : originAirportCodes) {
+            for (String destinationAirportCode : destinationAirportCodes) {
+                if (counts.containsKey(new Route(originAirportCode, destinationAirportCode))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Applies a single flight change to the index, once it is committed
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFlightChanged(FlightChangedEvent event) {
+        if (event.isRemoved()) {
+            remove(event.getFlightId());
+        } else {
+            refresh(event.getFlight());
+        }
+    }
+
+    // Moves the remaining tickets of the flight's copy by the seats sold or released, once the sale is committed. The inventory is
+    // changed by bulk updates that bypass the flight entity, so no FlightChangedEvent brings the new count
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSeatInventoryChanged(SeatInventoryChangedEvent event) {
+        if (event.getDelta() == 0) {
+            return; // A held seat claimed by a payment, the inventory did not change
+        }
+        lock.lock();
+        try {
+            RouteDateKey key = keysByFlightId.get(event.getFlightId());
+            if (key == null) {
+                return;
+            }
+            flightsByRouteAndDate.computeIfPresent(key, (k, flights) -> flights.stream()
+                    .map(flight -> flight.getId().equals(event.getFlightId())
+                            ? snapshot(flight, Math.max(0, flight.getRemainingTickets() + event.getDelta())) : flight)
+                    .toList());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Inserts, moves or drops a flight depending on its current route, date and status
+    public void refresh(Flight flight) {
+        if (flight.getId() == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            refreshLocked(flight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refreshLocked(Flight flight) {
+        removeLocked(flight.getId());
+        RouteDateKey key = flight.getFlightStatus() == Flight.FlightStatus.SCHEDULED ? keyOf(flight) : null;
+        if (key == null) {
+            return; // Cancelled, completed or incomplete flights are not searchable
+        }
+        Flight copy = snapshot(flight);
+        flightsByRouteAndDate.compute(key, (k, flights) -> {
+            List<Flight> updated = flights == null ? new ArrayList<>() : new ArrayList<>(flights);
+            updated.add(copy);
+            return sortedCopy(updated);
+        });
+        keysByFlightId.put(flight.getId(), key);
+        flightCountsByRoute.merge(key.route(), 1, Integer::sum);
+    }
+
+    // Drops a flight from the index, if it is present
+    public void remove(Long flightId) {
+        lock.lock();
+        try {
+            removeLocked(flightId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void removeLocked(Long flightId) {
+        RouteDateKey key = keysByFlightId.remove(flightId);
+        if (key == null) {
+            return;
+        }
+        flightsByRouteAndDate.computeIfPresent(key, (k, flights) -> {
+            List<Flight> updated = new ArrayList<>(flights);
+            updated.removeIf(f -> flightId.equals(f.getId()));
+            return updated.isEmpty() ? null : List.copyOf(updated); // Returning null removes the empty bucket
+        });
+        flightCountsByRoute.computeIfPresent(key.route(), (route, count) -> count == 1 ? null : count - 1);
+    }
+
+    // Bucket the flight is currently stored in, null if the flight is not in the index
+    public RouteDateKey findKey(Long flightId) {
+        return keysByFlightId.get(flightId);
+    }
+
+    // Number of flights currently held by the index
+    public int size() {
+        return keysByFlightId.size();
+    }
+
+    // Bucket of a flight, null when its route or date is missing
+    static RouteDateKey keyOf(Flight flight) {
+        if (flight.getOriginAirport() == null || flight.getDestinationAirport() == null || flight.getDate() == null) {
+            return null;
+        }
+        return new RouteDateKey(flight.getOriginAirport().getAirportCode(), flight.getDestinationAirport().getAirportCode(), flight.getDate());
+    }
+
+    // Detached copy of the flight, so the index never holds an entity that a persistence context may still modify
+    private static Flight snapshot(Flight flight) {
+        return snapshot(flight, flight.getRemainingTickets());
+    }
+
+    // Same as above with the given remaining tickets
+    private static Flight snapshot(Flight flight, int remainingTickets) {
+        return new Flight(flight.getId(), flight.getFlightNumber(), flight.getAirline(), flight.getOriginAirport(), flight.getDestinationAirport(),
+                flight.getDate(), flight.getDepartureTimeLocal(), flight.getLandingTimeLocal(), remainingTickets, flight.getSeatCapacity(), flight.getFlightStatus(),
+                flight.getScheduleId());
+    }
+
+    private static List<Flight> sortedCopy(List<Flight> flights) {
+        List<Flight> sorted = new ArrayList<>(flights);
+        sorted.sort(BY_DEPARTURE_TIME);
+        return List.copyOf(sorted);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.flightticketmanagement.services;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Time ordered ticket ids whose node number is leased from the ticket_id_node table, one row per node number. At startup the lowest node
+ * whose lease ran out is taken with a single UPDATE over a SKIP LOCKED subquery, so instances starting together get different nodes, and
+ * startup fails when all of them are leased. A heartbeat renews the lease (ticket.id.lease-renewal-seconds), which lasts
+ * ticket.id.lease-seconds by the database clock, and ids are refused once the lease may have run out, since another instance may hold the
+ * node by then. Every renewal records the last millisecond this instance may issue ids in, and the next holder of the node waits until its
+ * clock passes it, so two holders of the same node never issue ids in the same millisecond
+ */
+
+@Slf4j
+public class LeasedTicketIdGenerator implements TicketIdGenerator {
+
+    private static final String ACQUIRE = "UPDATE ticket_id_node SET holder = ?, lease_expires_at = now() + make_interval(secs => ?) " +
+            "WHERE node = (SELECT node FROM ticket_id_node WHERE lease_expires_at < now() ORDER BY node LIMIT 1 FOR UPDATE SKIP LOCKED) " +
+            "RETURNING node, last_millis";
+    private static final String RENEW = "UPDATE ticket_id_node SET lease_expires_at = now() + make_interval(secs => ?), " +
+            "last_millis = GREATEST(last_millis, ?) WHERE node = ? AND holder = ?";
+    private static final String RELEASE = "UPDATE ticket_id_node SET holder = NULL, lease_expires_at = now(), " +
+            "last_millis = GREATEST(last_millis, ?) WHERE node = ? AND holder = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String holder;
+    private final Duration leaseDuration;
+    private final LongSupplier clock;
+    private final int node;
+    private final TimeOrderedTicketIdGenerator generator;
+    // Millisecond of this instance's clock from which the lease may have run out
+    private volatile long leaseValidUntil;
+
+    public LeasedTicketIdGenerator(JdbcTemplate jdbcTemplate, Duration leaseDuration) {
+        this(jdbcTemplate, ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID(), leaseDuration, System::currentTimeMillis);
+    }
+
+    // Clock of the ids and of the lease, replaced by tests
+    LeasedTicketIdGenerator(JdbcTemplate jdbcTemplate, String holder, Duration leaseDuration, LongSupplier clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.holder = holder;
+        this.leaseDuration = leaseDuration;
+        this.clock = clock;
+        long requestedAt = clock.getAsLong();
+        List<Map<String, Object>> leased = jdbcTemplate.queryForList(ACQUIRE, holder, leaseDuration.toSeconds());
+        if (leased.isEmpty()) {
+            throw new IllegalStateException("All " + (TimeOrderedTicketIdGenerator.MAX_NODE + 1)
+                    + " ticket id node numbers are leased by running instances");
+        }
+        this.node = ((Number) leased.get(0).get("node")).intValue();
+        this.leaseValidUntil = requestedAt + leaseDuration.toMillis();
+        awaitClockPast(((Number) leased.get(0).get("last_millis")).longValue());
+        this.generator = new TimeOrderedTicketIdGenerator(node, clock);
+    }
+
+    public int getNode() {
+        return node;
+    }
+
+    // Throws IllegalStateException when the lease of the node may have run out
+    @Override
+    public String nextTicketId() {
+        if (clock.getAsLong() >= leaseValidUntil) {
+            throw new IllegalStateException("The lease of ticket id node " + node + " ran out, no ticket id can be issued until it is renewed");
+        }
+        return generator.nextTicketId();
+    }
+
+    // Extends the lease and records the last millisecond ids may be issued in until the extended lease runs out. A failed renewal is
+    // tried again by the next heartbeat, the ids stop once the lease may have run out
+    @Scheduled(fixedDelayString = "${ticket.id.lease-renewal-seconds:60}", initialDelayString = "${ticket.id.lease-renewal-seconds:60}", timeUnit = TimeUnit.SECONDS)
+    public void renew() {
+        long requestedAt = clock.getAsLong();
+        long validUntil = requestedAt + leaseDuration.toMillis();
+        try {
+            if (jdbcTemplate.update(RENEW, leaseDuration.toSeconds(), Math.max(validUntil, generator.lastMillis()), node, holder) == 1) {
+                leaseValidUntil = validUntil;
+            } else {
+                log.error("The lease of ticket id node {} was taken over, no ticket id can be issued once it ran out", node);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not renew the lease of ticket id node {}: {}", node, e.toString());
+        }
+    }
+
+    // Hands the node back at shutdown, with the last millisecond an id was issued in
+    @PreDestroy
+    public void release() {
+        leaseValidUntil = 0;
+        try {
+            jdbcTemplate.update(RELEASE, Math.max(clock.getAsLong(), generator.lastMillis()), node, holder);
+        } catch (DataAccessException e) {
+            log.warn("Could not release ticket id node {}, it is free again once its lease runs out: {}", node, e.toString());
+        }
+    }
+
+    // Waits until the clock is past the last millisecond the previous holder of the node may have issued ids in
+    private void awaitClockPast(long lastMillis) {
+        long wait = lastMillis - clock.getAsLong() + 1;
+        if (wait > 0) {
+            log.info("Waiting {} ms for the clock to pass the last ticket id of node {}", wait, node);
+        }
+        while (clock.getAsLong() <= lastMillis) {
+            try {
+                Thread.sleep(Math.max(1, Math.min(lastMillis - clock.getAsLong() + 1, 100)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting to issue ticket ids with node " + node, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.flightticketmanagement.services;
+
+import java.util.concurrent.CompletableFuture;
+
+// Card payment provider. No method may block the calling thread: results are futures completed by the provider client once the
+// provider answers, so slow authorizations hold neither a request thread nor a database transaction. The default implementation is
+// SimulatedPaymentGateway, declare a @Primary bean of this type to replace it
+public interface PaymentGateway {
+
+    CompletableFuture<PaymentResult> authorize(PaymentRequest request);
+
+    // Voids the authorization of the reference, approved already or still to come, so the card is never charged for it. Completes once
+    // the provider confirmed, also when it never received the authorization
+    CompletableFuture<Void> voidAuthorization(String reference);
+
+    // Outcome of the authorization of the reference as recorded by the provider: approved with its authorization code, or declined when
+    // it was refused, voided or never received
+    CompletableFuture<PaymentResult> lookup(String reference);
+
+    // Payment of one ticket, the reference is the ticket id
+    record PaymentRequest(String reference, double amount, String cardNumber, String expiryDate, String cvv) {
+    }
+
+    // Answer of the provider, with its authorization code when approved and the reason when declined
+    record PaymentResult(boolean approved, String authorizationCode, String declineReason) {
+
+        public static PaymentResult approved(String authorizationCode) {
+            return new PaymentResult(true, authorizationCode, null);
+        }
+
+        public static PaymentResult declined(String declineReason) {
+            return new PaymentResult(false, null, declineReason);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.repositories.TicketRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Payment pipeline. A payment is taken in three steps so that neither a request thread nor a database transaction waits for the payment
+ * provider: a short transaction takes over the ticket's seat and marks the ticket PAYMENT_PROCESSING, the provider is called without
+ * blocking, and a second short transaction books the ticket, or puts it back in the cart with its seat, when the answer arrives. Answers
+ * are finalized by a small bounded pool of workers, and the number of payments waiting for the provider is capped
+ * (payments.max-in-flight), so a slow or stuck provider makes new payments fail fast instead of piling up. A payment without an answer
+ * is voided with the provider before its seat is given back, so a late approval charges nobody, and so is an approval arriving for a
+ * ticket cancelled during its payment. Payments whose outcome is unknown (the void failed, the finalizing transaction failed or the
+ * application stopped meanwhile) stay PAYMENT_PROCESSING, cancelled tickets keep their payment start until their authorization is
+ * voided, and a periodic reconciliation settles both with the provider. The state of every payment is kept for a while so the payment
+ * status page can poll it
+ */
+
+@Slf4j
+@Service
+public class PaymentService {
+
+    private static final Duration STATUS_TIME_TO_LIVE = Duration.ofMinutes(30);
+
+    private final TicketRepository ticketRepository;
+    private final SeatHoldService seatHoldService;
+    private final SeatInventoryService seatInventoryService;
+    private final PaymentGateway paymentGateway;
+    private final TransactionOperations transactionOperations;
+    private final Duration timeout;
+    private final Duration reconcileAfter;
+    private final int reconcileBatchSize;
+    private final Clock clock;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final ThreadPoolExecutor finalizer;
+
+    private final Cache<String, Payment> payments = Caffeine.newBuilder()
+            .expireAfterWrite(STATUS_TIME_TO_LIVE)
+            .build();
+
+    @Autowired
+    public PaymentService(TicketRepository ticketRepository,
+                          SeatHoldService seatHoldService,
+                          SeatInventoryService seatInventoryService,
+                          PaymentGateway paymentGateway,
+                          TransactionOperations transactionOperations,
+                          @Value("${payments.max-in-flight:1000}") int maxInFlight,
+                          @Value("${payments.workers:4}") int workers,
+                          @Value("${payments.timeout-seconds:30}") long timeoutSeconds,
+                          @Value("${payments.reconcile-after-seconds:300}") long reconcileAfterSeconds,
+                          @Value("${payments.reconcile-batch-size:100}") int reconcileBatchSize) {
+        this(ticketRepository, seatHoldService, seatInventoryService, paymentGateway, transactionOperations, maxInFlight, workers,
+                Duration.ofSeconds(timeoutSeconds), Duration.ofSeconds(reconcileAfterSeconds), reconcileBatchSize, Clock.systemUTC());
+    }
+
+    // Clock of the payment starts and of the reconciliation, replaced by tests
+    PaymentService(TicketRepository ticketRepository,
+                   SeatHoldService seatHoldService,
+                   SeatInventoryService seatInventoryService,
+                   PaymentGateway paymentGateway,
+                   TransactionOperations transactionOperations,
+                   int maxInFlight,
+                   int workers,
+                   Duration timeout,
+                   Duration reconcileAfter,
+                   int reconcileBatchSize,
+                   Clock clock) {
+        this.ticketRepository = ticketRepository;
+        this.seatHoldService = seatHoldService;
+        this.seatInventoryService = seatInventoryService;
+        this.paymentGateway = paymentGateway;
+        this.transactionOperations = transactionOperations;
+        this.timeout = timeout;
+        this.reconcileAfter = reconcileAfter;
+        this.reconcileBatchSize = reconcileBatchSize;
+        this.clock = clock;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        // Every payment holding a permit has at most one answer to finalize, so the queue never overflows
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.finalizer = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(maxInFlight),
+                runnable -> new Thread(runnable, "payment-" + threadNumber.incrementAndGet()));
+    }
+
+    public enum State {
+        PROCESSING, APPROVED, DECLINED
+    }
+
+    // State of a payment as shown to the customer, with the reason when declined
+    public record PaymentStatus(State state, String message) {
+
+        static PaymentStatus declined(String message) {
+            return new PaymentStatus(State.DECLINED, message);
+        }
+    }
+
+    // A payment of this instance, with what is needed to finalize it. The request is null if the payment was not sent to the provider
+    private record Payment(String ticketId, Long customerId, Long flightId, boolean held, Instant heldUntil,
+                           PaymentGateway.PaymentRequest request, PaymentStatus status) {
+
+        static Payment declined(Ticket ticket, Long customerId, String message) {
+            return new Payment(ticket.getTicketId(), customerId, ticket.getFlight().getId(), false, null, null, PaymentStatus.declined(message));
+        }
+
+        Payment withStatus(PaymentStatus status) {
+            return new Payment(ticketId, customerId, flightId, held, heldUntil, request, status);
+        }
+    }
+
+    // Starts the payment of a pending ticket of the customer and returns at once, PROCESSING if the payment was sent to the provider or
+    // DECLINED with the reason if it could not be started. Throws NoSuchElementException if the customer has no such ticket
+    public PaymentStatus submit(String ticketId, Long customerId, String expiryDate, String cvv) {
+        if (!inFlight.tryAcquire()) {
+            return PaymentStatus.declined("Payments are busy right now, please try again in a moment.");
+        }
+        Payment payment;
+        try {
+            payment = transactionOperations.execute(status -> {
+                Ticket ticket = ticketRepository.findById(ticketId)
+                        .filter(found -> found.getCustomer() != null && customerId.equals(found.getCustomer().getCustomerId()))
+                        .orElseThrow(() -> new NoSuchElementException("Ticket not found"));
+                Payment started = start(ticket, customerId, expiryDate, cvv);
+                if (started.request() == null) {
+                    status.setRollbackOnly();
+                }
+                return started;
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+        if (payment.request() == null) {
+            inFlight.release();
+            return payment.status();
+        }
+        payments.put(ticketId, payment);
+
+        CompletableFuture<PaymentGateway.PaymentResult> answer;
+        try {
+            answer = paymentGateway.authorize(payment.request());
+        } catch (RuntimeException e) {
+            answer = CompletableFuture.failedFuture(e);
+        }
+        answer.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenCompleteAsync((result, error) -> finish(payment, result, error), finalizer);
+        return payment.status();
+    }
+
+    // State of a payment of the customer. Payments unknown to this instance are read from the ticket. Throws NoSuchElementException if
+    // the customer has no such ticket
+    public PaymentStatus status(String ticketId, Long customerId) {
+        Payment payment = payments.getIfPresent(ticketId);
+        if (payment != null && customerId.equals(payment.customerId())) {
+            return payment.status();
+        }
+        Ticket ticket = ticketRepository.findById(ticketId)
+                .filter(found -> found.getCustomer() != null && customerId.equals(found.getCustomer().getCustomerId()))
+                .orElseThrow(() -> new NoSuchElementException("Ticket not found"));
+        return switch (ticket.getBookingStatus()) {
+            case PAYMENT_PROCESSING -> new PaymentStatus(State.PROCESSING, null);
+            case BOOKED, CONFIRMED, CHECKED_IN, COMPLETED -> new PaymentStatus(State.APPROVED, null);
+            case PENDING, CANCELLED -> PaymentStatus.declined("This ticket has not been paid for.");
+        };
+    }
+
+    // Number of payments waiting for the provider or for their finalization
+    public int inFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    // Takes over the ticket's seat and marks it as waiting for its payment, in the submitting transaction
+    private Payment start(Ticket ticket, Long customerId, String expiryDate, String cvv) {
+        String ticketId = ticket.getTicketId();
+        Long flightId = ticket.getFlight().getId();
+        if (ticket.getBookingStatus() == Ticket.BookingStatus.PAYMENT_PROCESSING) {
+            // Paid for already, the customer is sent to the status of that payment
+            return new Payment(ticketId, customerId, flightId, false, null, null, new PaymentStatus(State.PROCESSING, null));
+        }
+        if (ticket.getBookingStatus() != Ticket.BookingStatus.PENDING && ticket.getBookingStatus() != Ticket.BookingStatus.CANCELLED) {
+            return Payment.declined(ticket, customerId, "This ticket has already been paid for.");
+        }
+        // Take over the seat held since the ticket was put in the cart. A ticket whose hold ran out was cancelled by the expiry sweep
+        Instant heldUntil = ticket.getHoldExpiresAt();
+        boolean held = seatHoldService.claim(ticket);
+        if (!held && (heldUntil != null || ticket.getBookingStatus() == Ticket.BookingStatus.CANCELLED)) {
+            return Payment.declined(ticket, customerId, "This ticket was cancelled, its seat may have been held for too long. Please purchase the ticket again.");
+        }
+        // Only one payment of the ticket gets past this update, a second click on the payment button finds it already processing
+        if (ticketRepository.startPayment(ticketId, clock.instant()) != 1) {
+            return Payment.declined(ticket, customerId, "This ticket is not waiting for payment anymore.");
+        }
+        // The ticket is managed by this transaction, it must not flush its old status over the update
+        ticket.setBookingStatus(Ticket.BookingStatus.PAYMENT_PROCESSING);
+        // Tickets holding no seat take one out of the flight's inventory before charging. The conditional update fails instead of overselling when the flight is sold out
+        if (!held && !seatInventoryService.reserveSeat(flightId)) {
+            return Payment.declined(ticket, customerId, "Sorry, this flight is sold out.");
+        }
+        PaymentGateway.PaymentRequest request =
+                new PaymentGateway.PaymentRequest(ticketId, ticket.getPrice(), ticket.getCustomer().getCreditCardNumber(), expiryDate, cvv);
+        return new Payment(ticketId, customerId, flightId, held, heldUntil, request, new PaymentStatus(State.PROCESSING, null));
+    }
+
+    // Settles the payments left PAYMENT_PROCESSING for longer than payments.reconcile-after-seconds with the outcome the provider
+    // recorded: approved ones are booked, the others are voided so nothing arrives later, and go back to the cart without a seat. The
+    // authorizations of tickets cancelled during their payment are voided. Returns the number of settled payments, the others are tried
+    // again on the next run
+    @Scheduled(fixedDelayString = "${payments.reconcile-interval-seconds:60}", initialDelayString = "${payments.reconcile-interval-seconds:60}", timeUnit = TimeUnit.SECONDS)
+    public int reconcileStalePayments() {
+        List<TicketRepository.StalePayment> stale = ticketRepository.findStalePayments(clock.instant().minus(reconcileAfter),
+                PageRequest.of(0, reconcileBatchSize));
+        int settled = 0;
+        for (TicketRepository.StalePayment ticket : stale) {
+            String ticketId = ticket.getTicketId();
+            try {
+                boolean cancelled = ticket.getBookingStatus() == Ticket.BookingStatus.CANCELLED;
+                if (!cancelled) {
+                    PaymentGateway.PaymentResult result = paymentGateway.lookup(ticketId).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+                    if (!result.approved()) {
+                        paymentGateway.voidAuthorization(ticketId).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+                    }
+                    // The seat the payment took, from its hold or from the inventory, goes back to the inventory when it is declined
+                    Payment payment = new Payment(ticketId, null, ticket.getFlightId(), false, null, null, null);
+                    PaymentStatus status = transactionOperations.execute(transaction -> complete(payment, result));
+                    payments.invalidate(ticketId);
+                    log.info("Reconciled the payment of ticket {}: {}", ticketId, status.state());
+                    cancelled = result.approved() && status.state() != State.APPROVED;
+                }
+                if (cancelled) {
+                    paymentGateway.voidAuthorization(ticketId).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+                    ticketRepository.clearPaymentStart(ticketId);
+                    log.info("Voided the payment of cancelled ticket {}", ticketId);
+                }
+                settled++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException | TimeoutException | RuntimeException e) {
+                log.warn("Could not reconcile the payment of ticket {}, trying again later: {}", ticketId, e.toString());
+            }
+        }
+        return settled;
+    }
+
+    // Runs on a finalizer worker once the provider answered, failed or timed out
+    private void finish(Payment payment, PaymentGateway.PaymentResult result, Throwable error) {
+        if (error == null) {
+            settle(payment, result);
+            return;
+        }
+        // Without an answer the provider may still approve the authorization later, it is voided before the seat is given back
+        log.warn("Payment of ticket {} failed: {}", payment.ticketId(), error.toString());
+        CompletableFuture<Void> voided;
+        try {
+            voided = paymentGateway.voidAuthorization(payment.request().reference());
+        } catch (RuntimeException e) {
+            voided = CompletableFuture.failedFuture(e);
+        }
+        voided.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenCompleteAsync((ignored, voidError) -> {
+                    if (voidError == null) {
+                        settle(payment, PaymentGateway.PaymentResult.declined("The payment could not be confirmed, please try again."));
+                    } else {
+                        log.warn("Could not void the payment of ticket {}, it is left to the reconciliation: {}", payment.ticketId(), voidError.toString());
+                        settle(payment, null);
+                    }
+                }, finalizer);
+    }
+
+    // Books the ticket or puts it back in the cart as the provider answered, and frees the payment's place. Without an outcome (null),
+    // or when the finalizing transaction fails, the ticket stays PAYMENT_PROCESSING for the reconciliation and its status is read from it
+    private void settle(Payment payment, PaymentGateway.PaymentResult result) {
+        boolean voiding = false;
+        try {
+            if (result == null) {
+                payments.invalidate(payment.ticketId());
+                return;
+            }
+            PaymentStatus status = transactionOperations.execute(transaction -> complete(payment, result));
+            payments.put(payment.ticketId(), payment.withStatus(status));
+            // An approval for a ticket cancelled during the payment is voided, the payment keeps its place until that is done
+            voiding = result.approved() && status.state() != State.APPROVED;
+            if (voiding) {
+                voidCancelled(payment.ticketId());
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not finalize the payment of ticket {}, it is left to the reconciliation", payment.ticketId(), e);
+            payments.invalidate(payment.ticketId());
+        } finally {
+            if (!voiding) {
+                inFlight.release();
+            }
+        }
+    }
+
+    // Voids the approved authorization of a ticket cancelled during its payment, so the customer is not charged, then frees the
+    // payment's place. The ticket keeps its payment start until the void is confirmed, so the reconciliation voids it if this fails
+    private void voidCancelled(String ticketId) {
+        CompletableFuture<Void> voided;
+        try {
+            voided = paymentGateway.voidAuthorization(ticketId);
+        } catch (RuntimeException e) {
+            voided = CompletableFuture.failedFuture(e);
+        }
+        voided.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenCompleteAsync((ignored, voidError) -> {
+                    try {
+                        if (voidError == null) {
+                            ticketRepository.clearPaymentStart(ticketId);
+                            log.info("Voided the payment of cancelled ticket {}", ticketId);
+                        } else {
+                            log.warn("Could not void the payment of cancelled ticket {}, it is left to the reconciliation: {}", ticketId, voidError.toString());
+                        }
+                    } catch (RuntimeException e) {
+                        log.warn("Could not record the void of the payment of cancelled ticket {}, it is left to the reconciliation: {}", ticketId, e.toString());
+                    } finally {
+                        inFlight.release();
+                    }
+                }, finalizer);
+    }
+
+    // Books the ticket, or puts it back in the cart with the seat it held, in the finalizing transaction
+    private PaymentStatus complete(Payment payment, PaymentGateway.PaymentResult result) {
+        if (result.approved()) {
+            if (ticketRepository.completePayment(payment.ticketId(), Ticket.BookingStatus.BOOKED, null) == 1) {
+                return new PaymentStatus(State.APPROVED, null);
+            }
+            // The ticket was cancelled while the provider answered, its seat is already back in the inventory. The caller voids the
+            // authorization, the ticket keeps its payment start until then
+            return PaymentStatus.declined("This ticket was cancelled during the payment, the payment is being cancelled and will not be charged.");
+        }
+        // Keep the seat held until the end of the original hold so the customer can try again, or give back the seat taken for the payment
+        if (ticketRepository.completePayment(payment.ticketId(), Ticket.BookingStatus.PENDING, payment.held() ? payment.heldUntil() : null) == 1) {
+            if (!payment.held()) {
+                seatInventoryService.releaseSeat(payment.flightId());
+            }
+        } else {
+            // The ticket was cancelled while the provider answered, nothing was charged
+            ticketRepository.clearPaymentStart(payment.ticketId());
+        }
+        return PaymentStatus.declined(result.declineReason());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        finalizer.shutdown();
+    }
+}
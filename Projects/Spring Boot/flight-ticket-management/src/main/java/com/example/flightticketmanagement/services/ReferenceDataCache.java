@@ -0,0 +1,48 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Airline;
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.repositories.AirlineRepository;
+import com.example.flightticketmanagement.repositories.AirportRepository;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Cache;
+import org.springframework.stereotype.Service;
+
+/**
+ * Explicit invalidation of the airport and airline reference data held in the Hibernate second-level cache. Hibernate already updates
+ * the cached entity when it is saved through JPA, evicting it as well makes sure edits are never served stale, including changes made
+ * outside of Hibernate (SQL scripts, bulk updates). Cache sizes are configured in application.conf, hit and miss counts are published as
+ * hibernate.second.level.cache.requests and hibernate.cache.query.requests on /actuator/metrics
+ */
+
+@Slf4j
+@Service
+public class ReferenceDataCache {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    public ReferenceDataCache(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    // Drops one airport and the cached airport lists
+    public void evictAirport(String airportCode) {
+        Cache cache = cache();
+        cache.evictEntityData(Airport.class, airportCode);
+        cache.evictQueryRegion(AirportRepository.LIST_REGION);
+        log.debug("Evicted airport {} from the reference data cache", airportCode);
+    }
+
+    // Drops one airline and the cached airline lists
+    public void evictAirline(String iataCode) {
+        Cache cache = cache();
+        cache.evictEntityData(Airline.class, iataCode);
+        cache.evictQueryRegion(AirlineRepository.LIST_REGION);
+        log.debug("Evicted airline {} from the reference data cache", iataCode);
+    }
+
+    private Cache cache() {
+        return entityManagerFactory.getCache().unwrap(Cache.class);
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.FlightChangedEvent;
+import com.example.flightticketmanagement.events.FlightsImportedEvent;
+import com.example.flightticketmanagement.events.SeatInventoryChangedEvent;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Availability calendar of routes: for every route and day, the number of scheduled flights, their remaining tickets and the lowest
+ * economy fare among the flights that still have seats. The aggregates are kept in memory and maintained incrementally: a flight
+ * change, or a seat sold or released, recomputes the aggregate of that flight's route and day only, from the few flights of that day,
+ * once the change is committed. A month of a route is then one map lookup per day, with no query. Fares also move with the days left
+ * before departure, so an aggregate priced on an earlier day is priced again when it is read. Built from the database once the
+ * application is ready and after a timetable import
+ */
+
+@Slf4j
+@Service
+public class RouteCalendar {
+
+    private final FlightRepository flightRepository;
+    private final FareCalculator fareCalculator;
+    private final Clock clock;
+
+    // Each day is immutable and replaced as a whole on change, like the buckets of FlightSearchIndex
+    private volatile Map<FlightSearchIndex.RouteDateKey, Day> days = new ConcurrentHashMap<>();
+    private volatile Map<Long, FlightSearchIndex.RouteDateKey> keysByFlightId = new ConcurrentHashMap<>();
+    // Serializes writers, readers only replace a day they priced again if no writer changed it meanwhile
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @Autowired
+    public RouteCalendar(FlightRepository flightRepository,
+                         FareCalculator fareCalculator) {
+        this(flightRepository, fareCalculator, Clock.systemDefaultZone());
+    }
+
+    // Clock of the day the fares are priced on, replaced by tests
+    RouteCalendar(FlightRepository flightRepository,
+                  FareCalculator fareCalculator,
+                  Clock clock) {
+        this.flightRepository = flightRepository;
+        this.fareCalculator = fareCalculator;
+        this.clock = clock;
+    }
+
+    // Scheduled flights of a route on one day, their remaining tickets and the lowest economy fare, null when no flight has seats left
+    public record DayAvailability(LocalDate date, int flightCount, int remainingTickets, Double lowestFare) {
+    }
+
+    // Every day of a month of a route, days without flights included
+    public record MonthCalendar(String originAirportCode, String destinationAirportCode, YearMonth month, List<DayAvailability> days) {
+
+        // Days by week from Monday to Sunday, the first and last weeks padded with null outside the month
+        public List<List<DayAvailability>> weeks() {
+            List<DayAvailability> padded = new ArrayList<>(Collections.nCopies(month.atDay(1).getDayOfWeek().getValue() - 1, null));
+            padded.addAll(days);
+            while (padded.size() % 7 != 0) {
+                padded.add(null);
+            }
+            List<List<DayAvailability>> weeks = new ArrayList<>();
+            for (int i = 0; i < padded.size(); i += 7) {
+                weeks.add(Collections.unmodifiableList(padded.subList(i, i + 7)));
+            }
+            return weeks;
+        }
+    }
+
+    // The flights of a route and day with their remaining tickets, and their aggregate as priced on pricedOn
+    private record Day(List<Flight> flights, DayAvailability availability, LocalDate pricedOn) {
+    }
+
+    // Loads all scheduled flights and swaps in freshly computed aggregates, at startup and after a timetable import
+    @EventListener({ApplicationReadyEvent.class, FlightsImportedEvent.class})
+    public void rebuild() {
+        lock.lock();
+        try {
+            Map<FlightSearchIndex.RouteDateKey, List<Flight>> flightsByKey = new HashMap<>();
+            Map<Long, FlightSearchIndex.RouteDateKey> newKeys = new ConcurrentHashMap<>();
+            for (Flight flight : flightRepository.findWithRouteByFlightStatus(Flight.FlightStatus.SCHEDULED)) {
+                FlightSearchIndex.RouteDateKey key = FlightSearchIndex.keyOf(flight);
+                if (key != null) {
+                    flightsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(snapshot(flight, flight.getRemainingTickets()));
+                    newKeys.put(flight.getId(), key);
+                }
+            }
+            LocalDate today = LocalDate.now(clock);
+            Map<FlightSearchIndex.RouteDateKey, Day> newDays = new ConcurrentHashMap<>();
+            flightsByKey.forEach((key, flights) -> newDays.put(key, day(key.date(), flights, today)));
+            days = newDays;
+            keysByFlightId = newKeys;
+            log.info("Route calendar built with {} route-days", newDays.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Availability of every day of a month of a route, one lookup per day
+    public MonthCalendar month(String originAirportCode, String destinationAirportCode, YearMonth month) {
+        LocalDate today = LocalDate.now(clock);
+        Map<FlightSearchIndex.RouteDateKey, Day> current = days;
+        List<DayAvailability> monthDays = new ArrayList<>(month.lengthOfMonth());
+        for (LocalDate date = month.atDay(1); !date.isAfter(month.atEndOfMonth()); date = date.plusDays(1)) {
+            FlightSearchIndex.RouteDateKey key = new FlightSearchIndex.RouteDateKey(originAirportCode, destinationAirportCode, date);
+            Day day = current.get(key);
+            if (day == null) {
+                monthDays.add(new DayAvailability(date, 0, 0, null));
+                continue;
+            }
+            if (!day.pricedOn().equals(today)) {
+                Day repriced = day(date, day.flights(), today);
+                current.replace(key, day, repriced);
+                day = repriced;
+            }
+            monthDays.add(day.availability());
+        }
+        return new MonthCalendar(originAirportCode, destinationAirportCode, month, List.copyOf(monthDays));
+    }
+
+    // Moves a changed flight out of its old day and into its new one, and recomputes both, once the change is committed. Runs after the
+    // fare calculator has dropped the flight's fare curve, so the new day is priced from the changed flight
+    @Order(DynamicFareCalculator.LISTENER_ORDER + 1)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFlightChanged(FlightChangedEvent event) {
+        lock.lock();
+        try {
+            removeLocked(event.getFlightId());
+            Flight flight = event.getFlight();
+            FlightSearchIndex.RouteDateKey key = event.isRemoved() || flight.getId() == null || flight.getFlightStatus() != Flight.FlightStatus.SCHEDULED
+                    ? null : FlightSearchIndex.keyOf(flight);
+            if (key != null) {
+                Day day = days.get(key);
+                List<Flight> flights = day == null ? new ArrayList<>() : new ArrayList<>(day.flights());
+                flights.add(snapshot(flight, flight.getRemainingTickets()));
+                days.put(key, day(key.date(), flights, LocalDate.now(clock)));
+                keysByFlightId.put(flight.getId(), key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Moves the remaining tickets of the flight's day by the seats sold or released, once the sale is committed. Runs after the fare
+    // calculator has moved its own count of the flight's seats, so the day is priced from the seats left after the sale
+    @Order(DynamicFareCalculator.LISTENER_ORDER + 1)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSeatInventoryChanged(SeatInventoryChangedEvent event) {
+        if (event.getDelta() == 0) {
+            return; // A held seat claimed by a payment, the inventory did not change
+        }
+        lock.lock();
+        try {
+            FlightSearchIndex.RouteDateKey key = keysByFlightId.get(event.getFlightId());
+            Day day = key == null ? null : days.get(key);
+            if (day == null) {
+                return;
+            }
+            List<Flight> flights = new ArrayList<>(day.flights().size());
+            for (Flight flight : day.flights()) {
+                flights.add(flight.getId().equals(event.getFlightId())
+                        ? snapshot(flight, Math.max(0, flight.getRemainingTickets() + event.getDelta())) : flight);
+            }
+            days.put(key, day(key.date(), flights, LocalDate.now(clock)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void removeLocked(Long flightId) {
+        FlightSearchIndex.RouteDateKey key = flightId == null ? null : keysByFlightId.remove(flightId);
+        Day day = key == null ? null : days.get(key);
+        if (day == null) {
+            return;
+        }
+        List<Flight> flights = new ArrayList<>(day.flights());
+        flights.removeIf(flight -> flightId.equals(flight.getId()));
+        if (flights.isEmpty()) {
+            days.remove(key);
+        } else {
+            days.put(key, day(key.date(), flights, LocalDate.now(clock)));
+        }
+    }
+
+    // Aggregates the flights of a day, quoting the fares of the flights with seats left as of today
+    private Day day(LocalDate date, List<Flight> flights, LocalDate today) {
+        int remainingTickets = 0;
+        Double lowestFare = null;
+        for (Flight flight : flights) {
+            remainingTickets += flight.getRemainingTickets();
+            if (flight.getRemainingTickets() > 0) {
+                double fare = fareCalculator.fareFor(flight, Ticket.ClassType.ECONOMY);
+                lowestFare = lowestFare == null ? fare : Math.min(lowestFare, fare);
+            }
+        }
+        return new Day(List.copyOf(flights), new DayAvailability(date, flights.size(), remainingTickets, lowestFare), today);
+    }
+
+    // Detached copy of the flight with the given remaining tickets, so the calendar never holds an entity that a persistence context
+    // may still modify
+    private static Flight snapshot(Flight flight, int remainingTickets) {
+        return new Flight(flight.getId(), flight.getFlightNumber(), flight.getAirline(), flight.getOriginAirport(), flight.getDestinationAirport(),
+                flight.getDate(), flight.getDepartureTimeLocal(), flight.getLandingTimeLocal(), remainingTickets, flight.getSeatCapacity(), flight.getFlightStatus(),
+                flight.getScheduleId());
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.FlightChangedEvent;
+import com.example.flightticketmanagement.events.FlightsImportedEvent;
+import com.example.flightticketmanagement.events.SeatInventoryChangedEvent;
+import com.example.flightticketmanagement.models.Flight;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of the seat availability shown with flight search results, by (origin, destination, date). The flights of a search come from
+ * the in-memory FlightSearchIndex, so the free and held seats are the only part of a search that still needs the database, and a
+ * popular route searched thousands of times a minute would send the same query every time. Entries live for search-cache.ttl-seconds
+ * and are dropped as soon as a flight of the route and date changes or a seat of it is sold or released, once the change is committed.
+ * Misses are single-flight: the first search missing a route and date claims it with an unfinished future and loads it, concurrent
+ * searches of the same route and date wait for that future instead of sending their own query, so an expiry on a hot route costs one
+ * query rather than a stampede. The routes and dates missing from one search are loaded together in one query. Hits, misses and
+ * coalesced misses are counted per route in the flight.search.cache metric
+ */
+
+@Service
+public class SearchResultCache {
+
+    // Routes beyond search-cache.max-tagged-routes are counted together under this tag, to bound the number of metrics
+    static final String OTHER_ROUTES = "other";
+
+    private final FlightSearchIndex flightSearchIndex;
+    private final SeatHoldService seatHoldService;
+    private final MeterRegistry meterRegistry;
+    private final int maxTaggedRoutes;
+
+    private final AsyncCache<FlightSearchIndex.RouteDateKey, Map<Long, SeatHoldService.SeatAvailability>> cache;
+    private final Map<String, RouteCounters> countersByRoute = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SearchResultCache(FlightSearchIndex flightSearchIndex,
+                             SeatHoldService seatHoldService,
+                             MeterRegistry meterRegistry,
+                             @Value("${search-cache.ttl-seconds:5}") int ttlSeconds,
+                             @Value("${search-cache.maximum-size:10000}") long maximumSize,
+                             @Value("${search-cache.max-tagged-routes:1000}") int maxTaggedRoutes) {
+        this(flightSearchIndex, seatHoldService, meterRegistry, Duration.ofSeconds(ttlSeconds), maximumSize, maxTaggedRoutes, Ticker.systemTicker());
+    }
+
+    // Ticker measuring the time to live, replaced by tests
+    SearchResultCache(FlightSearchIndex flightSearchIndex,
+                      SeatHoldService seatHoldService,
+                      MeterRegistry meterRegistry,
+                      Duration timeToLive,
+                      long maximumSize,
+                      int maxTaggedRoutes,
+                      Ticker ticker) {
+        this.flightSearchIndex = flightSearchIndex;
+        this.seatHoldService = seatHoldService;
+        this.meterRegistry = meterRegistry;
+        this.maxTaggedRoutes = maxTaggedRoutes;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(timeToLive)
+                .maximumSize(maximumSize)
+                .ticker(ticker)
+                .buildAsync();
+        Gauge.builder("flight.search.cache.size", cache, c -> c.synchronous().estimatedSize())
+                .description("Routes and dates whose search results are cached")
+                .register(meterRegistry);
+    }
+
+    // Hit, miss and coalesced miss counters of one route
+    private record RouteCounters(Counter hits, Counter misses, Counter coalesced) {
+    }
+
+    // Free and held seats of the flights by flight id, from the cache for the routes and dates already searched recently and from one
+    // query for the others
+    public Map<Long, SeatHoldService.SeatAvailability> availability(Collection<Flight> flights) {
+        Map<FlightSearchIndex.RouteDateKey, Set<Long>> flightIdsByKey = new LinkedHashMap<>();
+        for (Flight flight : flights) {
+            FlightSearchIndex.RouteDateKey key = FlightSearchIndex.keyOf(flight);
+            if (key != null && flight.getId() != null) {
+                flightIdsByKey.computeIfAbsent(key, k -> new HashSet<>()).add(flight.getId());
+            }
+        }
+        Map<Long, SeatHoldService.SeatAvailability> availability = new HashMap<>();
+        Map<FlightSearchIndex.RouteDateKey, Set<Long>> stale = lookup(flightIdsByKey, availability);
+        if (!stale.isEmpty()) {
+            // Cached before some of the flights were added to the route and date, these are loaded again once
+            lookup(stale, availability);
+        }
+        return availability;
+    }
+
+    // Adds the cached availability of every route and date to the result, loading the missing ones. Returns the routes and dates whose
+    // cached entry lacks some of the flights, after dropping these entries
+    private Map<FlightSearchIndex.RouteDateKey, Set<Long>> lookup(Map<FlightSearchIndex.RouteDateKey, Set<Long>> flightIdsByKey,
+                                                                  Map<Long, SeatHoldService.SeatAvailability> availability) {
+        Map<FlightSearchIndex.RouteDateKey, CompletableFuture<Map<Long, SeatHoldService.SeatAvailability>>> futures = new LinkedHashMap<>();
+        Map<FlightSearchIndex.RouteDateKey, CompletableFuture<Map<Long, SeatHoldService.SeatAvailability>>> claimed = new LinkedHashMap<>();
+        flightIdsByKey.forEach((key, flightIds) -> {
+            CompletableFuture<Map<Long, SeatHoldService.SeatAvailability>> claim = new CompletableFuture<>();
+            CompletableFuture<Map<Long, SeatHoldService.SeatAvailability>> existing = cache.asMap().putIfAbsent(key, claim);
+            RouteCounters counters = counters(key);
+            if (existing == null) {
+                counters.misses().increment();
+                claimed.put(key, claim);
+                futures.put(key, claim);
+            } else {
+                (existing.isDone() ? counters.hits() : counters.coalesced()).increment();
+                futures.put(key, existing);
+            }
+        });
+        if (!claimed.isEmpty()) {
+            load(claimed, flightIdsByKey);
+        }
+
+        Map<FlightSearchIndex.RouteDateKey, Set<Long>> stale = new LinkedHashMap<>();
+        futures.forEach((key, future) -> {
+            Map<Long, SeatHoldService.SeatAvailability> cached = join(future);
+            if (cached.keySet().containsAll(flightIdsByKey.get(key))) {
+                availability.putAll(cached);
+            } else {
+                cache.asMap().remove(key, future);
+                stale.put(key, flightIdsByKey.get(key));
+            }
+        });
+        return stale;
+    }
+
+    // Reads the availability of every flight of the claimed routes and dates in one query and completes their futures. On failure the
+    // claims are withdrawn, so the searches waiting for them fail with the same error and the next search tries again
+    private void load(Map<FlightSearchIndex.RouteDateKey, CompletableFuture<Map<Long, SeatHoldService.SeatAvailability>>> claimed,
+                      Map<FlightSearchIndex.RouteDateKey, Set<Long>> requestedFlightIds) {
+        Map<FlightSearchIndex.RouteDateKey, Set<Long>> flightIdsByKey = new HashMap<>();
+        Set<Long> allFlightIds = new HashSet<>();
+        claimed.keySet().forEach(key -> {
+            Set<Long> flightIds = new HashSet<>(requestedFlightIds.get(key));
+            flightSearchIndex.findFlights(key.originAirportCode(), key.destinationAirportCode(), key.date()).forEach(flight -> flightIds.add(flight.getId()));
+            flightIdsByKey.put(key, flightIds);
+            allFlightIds.addAll(flightIds);
+        });
+        Map<Long, SeatHoldService.SeatAvailability> loaded;
+        try {
+            loaded = seatHoldService.availability(allFlightIds);
+        } catch (RuntimeException e) {
+            claimed.forEach((key, claim) -> {
+                cache.asMap().remove(key, claim);
+                claim.completeExceptionally(e);
+            });
+            throw e;
+        }
+        claimed.forEach((key, claim) -> {
+            Map<Long, SeatHoldService.SeatAvailability> keyAvailability = new HashMap<>();
+            flightIdsByKey.get(key).forEach(flightId -> {
+                SeatHoldService.SeatAvailability seats = loaded.get(flightId);
+                if (seats != null) {
+                    keyAvailability.put(flightId, seats);
+                }
+            });
+            claim.complete(Map.copyOf(keyAvailability));
+        });
+    }
+
+    private static Map<Long, SeatHoldService.SeatAvailability> join(CompletableFuture<Map<Long, SeatHoldService.SeatAvailability>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    // Drops the route and date of a changed flight once the change is committed, or at once outside of a transaction. A flight moved to
+    // another route or date leaves an entry that still lists it under the old one, which is harmless since searches only look up the
+    // flights they show
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFlightChanged(FlightChangedEvent event) {
+        invalidate(FlightSearchIndex.keyOf(event.getFlight()));
+    }
+
+    // Drops the route and date of a flight whose seats were sold or released
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSeatInventoryChanged(SeatInventoryChangedEvent event) {
+        invalidate(flightSearchIndex.findKey(event.getFlightId()));
+    }
+
+    // A timetable import inserts flights without FlightChangedEvent
+    @EventListener(FlightsImportedEvent.class)
+    public void onFlightsImported() {
+        cache.synchronous().invalidateAll();
+    }
+
+    private void invalidate(FlightSearchIndex.RouteDateKey key) {
+        if (key != null) {
+            cache.synchronous().invalidate(key);
+        }
+    }
+
+    private RouteCounters counters(FlightSearchIndex.RouteDateKey key) {
+        String route = key.originAirportCode() + "-" + key.destinationAirportCode();
+        RouteCounters counters = countersByRoute.get(route);
+        if (counters != null) {
+            return counters;
+        }
+        if (countersByRoute.size() >= maxTaggedRoutes) {
+            route = OTHER_ROUTES;
+        }
+        return countersByRoute.computeIfAbsent(route, this::registerCounters);
+    }
+
+    private RouteCounters registerCounters(String route) {
+        return new RouteCounters(counter(route, "hit"), counter(route, "miss"), counter(route, "coalesced"));
+    }
+
+    private Counter counter(String route, String result) {
+        return Counter.builder("flight.search.cache")
+                .description("Flight search availability lookups by route: hit, miss, or coalesced into a load already running")
+                .tag("route", route)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
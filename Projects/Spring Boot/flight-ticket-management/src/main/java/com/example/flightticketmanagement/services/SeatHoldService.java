@@ -0,0 +1,154 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import com.example.flightticketmanagement.repositories.TicketRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Seat holds of the pending tickets in customers' carts. Putting a ticket in the cart takes its seat out of the flight's inventory right
+ * away, for a limited time (holds.time-to-live-minutes), so two customers can no longer both reach the payment page for the last seat.
+ * A hold is only a timestamp on the ticket row, nothing stays locked while the customer checks out. Expired holds are released in
+ * batches by a periodic sweep reading the partial index on the hold expiry: a batch of expired tickets is locked with SKIP LOCKED,
+ * cancelled in one update, and their seats go back to the inventory with one update per flight, so several application instances can
+ * sweep at the same time without releasing a seat twice
+ */
+
+@Slf4j
+@Service
+public class SeatHoldService {
+
+    private final TicketRepository ticketRepository;
+    private final FlightRepository flightRepository;
+    private final SeatInventoryService seatInventoryService;
+    private final SeatMapService seatMapService;
+    private final TransactionOperations transactionOperations;
+    private final Duration timeToLive;
+    private final int sweepBatchSize;
+    private final Clock clock;
+
+    @Autowired
+    public SeatHoldService(TicketRepository ticketRepository,
+                           FlightRepository flightRepository,
+                           SeatInventoryService seatInventoryService,
+                           SeatMapService seatMapService,
+                           TransactionOperations transactionOperations,
+                           @Value("${holds.time-to-live-minutes:15}") long timeToLiveMinutes,
+                           @Value("${holds.sweep-batch-size:500}") int sweepBatchSize) {
+        this(ticketRepository, flightRepository, seatInventoryService, seatMapService, transactionOperations,
+                Duration.ofMinutes(timeToLiveMinutes), sweepBatchSize, Clock.systemUTC());
+    }
+
+    // Clock deciding when holds expire, replaced by tests
+    SeatHoldService(TicketRepository ticketRepository,
+                    FlightRepository flightRepository,
+                    SeatInventoryService seatInventoryService,
+                    SeatMapService seatMapService,
+                    TransactionOperations transactionOperations,
+                    Duration timeToLive,
+                    int sweepBatchSize,
+                    Clock clock) {
+        this.ticketRepository = ticketRepository;
+        this.flightRepository = flightRepository;
+        this.seatInventoryService = seatInventoryService;
+        this.seatMapService = seatMapService;
+        this.transactionOperations = transactionOperations;
+        this.timeToLive = timeToLive;
+        this.sweepBatchSize = sweepBatchSize;
+        this.clock = clock;
+    }
+
+    // Free seats of a flight and seats held in carts, which come back to the free seats if their holds expire
+    public record SeatAvailability(int remainingTickets, long heldTickets) {
+    }
+
+    // Takes a seat of the flight out of its inventory for a new pending ticket. Returns the end of the hold, or null if the flight is sold out
+    public Instant hold(Long flightId) {
+        if (!seatInventoryService.reserveSeat(flightId)) {
+            return null;
+        }
+        return clock.instant().plus(timeToLive);
+    }
+
+    // Hands the seat held by a pending ticket over to its payment. Returns false if the ticket holds no seat, either because it never did
+    // or because its hold already went back to the inventory. The caller must run in a transaction, so the sweep skips the ticket until
+    // the payment is done and finds no hold to release afterwards
+    public boolean claim(Ticket ticket) {
+        if (ticket.getHoldExpiresAt() == null || ticketRepository.clearHold(ticket.getTicketId()) != 1) {
+            return false;
+        }
+        ticket.setHoldExpiresAt(null);
+        seatInventoryService.holdClaimed(ticket.getFlight().getId());
+        return true;
+    }
+
+    // Gives the seat held by a pending ticket back to the flight's inventory, when the ticket is removed from the cart or cancelled.
+    // Returns false if the ticket held no seat. The seat map is left to the caller, which frees the seat whatever the hold
+    public boolean release(Ticket ticket) {
+        if (!claim(ticket)) {
+            return false;
+        }
+        seatInventoryService.releaseSeat(ticket.getFlight().getId());
+        return true;
+    }
+
+    // Free and held seats of the given flights by flight id, in one query. Flights that do not exist are left out
+    public Map<Long, SeatAvailability> availability(Collection<Long> flightIds) {
+        Map<Long, SeatAvailability> availability = new HashMap<>();
+        if (flightIds.isEmpty()) {
+            return availability;
+        }
+        for (FlightRepository.SeatAvailability row : flightRepository.findSeatAvailability(flightIds)) {
+            availability.put(row.getFlightId(), new SeatAvailability(row.getRemainingTickets(), row.getHeldTickets()));
+        }
+        return availability;
+    }
+
+    // Releases every expired hold, one batch per transaction, and returns the number of released holds
+    @Scheduled(fixedDelayString = "${holds.sweep-interval-seconds:30}", initialDelayString = "${holds.sweep-interval-seconds:30}", timeUnit = TimeUnit.SECONDS)
+    public int releaseExpiredHolds() {
+        int released = 0;
+        List<TicketRepository.ExpiredHold> batch;
+        do {
+            Instant now = clock.instant();
+            batch = transactionOperations.execute(status -> releaseBatch(now));
+            // The seat maps are only updated once the batch is committed, a rolled back batch keeps its seats
+            for (TicketRepository.ExpiredHold hold : batch) {
+                Ticket.ClassType classType = hold.getClassType() == null ? null : Ticket.ClassType.valueOf(hold.getClassType());
+                seatMapService.releaseSeat(hold.getFlightId(), classType, hold.getSeatNumber());
+            }
+            released += batch.size();
+        } while (batch.size() == sweepBatchSize);
+        if (released > 0) {
+            log.info("Released {} expired seat holds", released);
+        }
+        return released;
+    }
+
+    private List<TicketRepository.ExpiredHold> releaseBatch(Instant now) {
+        List<TicketRepository.ExpiredHold> expired = ticketRepository.lockExpiredHolds(now, sweepBatchSize);
+        if (expired.isEmpty()) {
+            return expired;
+        }
+        ticketRepository.cancelHolds(expired.stream().map(TicketRepository.ExpiredHold::getTicketId).toList());
+        Map<Long, Long> seatsByFlight = expired.stream()
+                .collect(Collectors.groupingBy(TicketRepository.ExpiredHold::getFlightId, Collectors.counting()));
+        seatsByFlight.forEach((flightId, seats) -> seatInventoryService.releaseSeats(flightId, seats.intValue()));
+        return expired;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.SeatInventoryChangedEvent;
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import com.example.flightticketmanagement.repositories.TicketRepository;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Seat inventory of flights. Every change is a single conditional UPDATE on the flight row, so concurrent purchases on the same flight
+ * are serialized by the database row lock instead of a read-modify-write in Java, which used to lose updates and oversell. Every change
+ * is published as a SeatInventoryChangedEvent for the in-memory views that depend on the remaining tickets, such as the fares
+ */
+
+@Service
+public class SeatInventoryService {
+
+    private final FlightRepository flightRepository;
+    private final TicketRepository ticketRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public SeatInventoryService(FlightRepository flightRepository,
+                                TicketRepository ticketRepository,
+                                ApplicationEventPublisher eventPublisher) {
+        this.flightRepository = flightRepository;
+        this.ticketRepository = ticketRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    // Takes one seat out of the flight's inventory. Returns false if the flight is sold out, without reading the row first
+    public boolean reserveSeat(Long flightId) {
+        return reserveSeats(flightId, 1);
+    }
+
+    // Takes the given number of seats out of the flight's inventory, either all of them or none
+    public boolean reserveSeats(Long flightId, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        if (flightRepository.decrementRemainingTickets(flightId, quantity) != 1) {
+            return false;
+        }
+        eventPublisher.publishEvent(new SeatInventoryChangedEvent(this, flightId, -quantity));
+        return true;
+    }
+
+    // Takes a seat of the ticket's flight out of the inventory and saves the ticket in one transaction, so a ticket that cannot be
+    // inserted (a seat taken meanwhile) leaves the inventory as it was. Returns false, saving nothing, if the flight is sold out
+    @Transactional
+    public boolean sellTicket(Ticket ticket) {
+        if (!reserveSeat(ticket.getFlight().getId())) {
+            return false;
+        }
+        ticketRepository.saveAndFlush(ticket);
+        return true;
+    }
+
+    // Puts one seat back into the flight's inventory
+    public void releaseSeat(Long flightId) {
+        releaseSeats(flightId, 1);
+    }
+
+    // Puts the given number of seats back into the flight's inventory
+    public void releaseSeats(Long flightId, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        if (flightRepository.incrementRemainingTickets(flightId, quantity) == 1) {
+            eventPublisher.publishEvent(new SeatInventoryChangedEvent(this, flightId, quantity));
+        }
+    }
+
+    // Publishes that a seat held in a cart was taken over by a payment. The inventory does not change, the flight only has one seat
+    // less on hold, which the pages listing the held seats show
+    public void holdClaimed(Long flightId) {
+        eventPublisher.publishEvent(new SeatInventoryChangedEvent(this, flightId, 0));
+    }
+}
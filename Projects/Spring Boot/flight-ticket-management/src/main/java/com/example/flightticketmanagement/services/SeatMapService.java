@@ -0,0 +1,296 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.FlightChangedEvent;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import com.example.flightticketmanagement.repositories.TicketRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Seat map of every flight, stored as one occupancy bitmap per cabin (Ticket.ClassType). Seats are claimed and released with lock-free
+ * compare-and-set on the bitmap words, so checking or taking a seat is O(1) and finding the next free seat scans 64 seats per step.
+ * The cabins of a flight are sized from its seat capacity, and its bitmap is rebuilt from the ticket table the first time the flight is
+ * touched. The ticket table itself stays the source of truth, a partial unique index on (flight_id, seat_number) guards against other
+ * application instances
+ */
+
+@Slf4j
+@Service
+public class SeatMapService {
+
+    // Cabins of every flight, rows numbered across the aircraft from FIRST to ECONOMY and seats lettered from the left. FIRST takes rows 1
+    // and 2 and BUSINESS rows 3 to 7, ECONOMY fills the rest of the flight's seats from row 8, its last row possibly partly. Flights too
+    // small for the premium cabins are all ECONOMY from row 1
+    private static final CabinLayout FIRST_CABIN = new CabinLayout(1, 8, "ABCD");
+    private static final CabinLayout BUSINESS_CABIN = new CabinLayout(3, 20, "ABCD");
+    private static final int ECONOMY_FIRST_ROW = 8;
+    private static final String ECONOMY_LETTERS = "ABCDEF";
+    // Largest seat capacity a flight can be laid out with, the largest airliner seats 853
+    public static final int MAX_SEATS = 853;
+
+    private final TicketRepository ticketRepository;
+    private final FlightRepository flightRepository;
+
+    private final Map<Long, FlightSeatMap> seatMaps = new ConcurrentHashMap<>();
+
+    public SeatMapService(TicketRepository ticketRepository,
+                          FlightRepository flightRepository) {
+        this.ticketRepository = ticketRepository;
+        this.flightRepository = flightRepository;
+    }
+
+    // First row, number of seats and seat letters of a cabin
+    public record CabinLayout(int firstRow, int seats, String letters) {
+        public int capacity() {
+            return seats;
+        }
+
+        public int rows() {
+            return (seats + letters.length() - 1) / letters.length();
+        }
+
+        // Position of the seat in the cabin bitmap, or -1 if the seat is not part of this cabin
+        int indexOf(String seatNumber) {
+            if (seatNumber == null || seatNumber.length() < 2) {
+                return -1;
+            }
+            int letter = letters.indexOf(seatNumber.charAt(seatNumber.length() - 1));
+            String rowPart = seatNumber.substring(0, seatNumber.length() - 1);
+            if (letter < 0 || !rowPart.chars().allMatch(Character::isDigit) || rowPart.length() > 3) {
+                return -1;
+            }
+            int row = Integer.parseInt(rowPart) - firstRow;
+            int index = row * letters.length() + letter;
+            return row < 0 || index >= seats ? -1 : index;
+        }
+
+        String seatAt(int index) {
+            return (firstRow + index / letters.length()) + String.valueOf(letters.charAt(index % letters.length()));
+        }
+    }
+
+    // Cabins of a flight with the given seat capacity, their capacities add up to it
+    public static Map<Ticket.ClassType, CabinLayout> layoutOf(int seatCapacity) {
+        if (seatCapacity < 0 || seatCapacity > MAX_SEATS) {
+            throw new IllegalArgumentException("A flight has between 0 and " + MAX_SEATS + " seats");
+        }
+        Map<Ticket.ClassType, CabinLayout> layout = new EnumMap<>(Ticket.ClassType.class);
+        int premiumSeats = FIRST_CABIN.capacity() + BUSINESS_CABIN.capacity();
+        if (seatCapacity > premiumSeats) {
+            layout.put(Ticket.ClassType.FIRST, FIRST_CABIN);
+            layout.put(Ticket.ClassType.BUSINESS, BUSINESS_CABIN);
+            layout.put(Ticket.ClassType.ECONOMY, new CabinLayout(ECONOMY_FIRST_ROW, seatCapacity - premiumSeats, ECONOMY_LETTERS));
+        } else {
+            layout.put(Ticket.ClassType.FIRST, new CabinLayout(1, 0, FIRST_CABIN.letters()));
+            layout.put(Ticket.ClassType.BUSINESS, new CabinLayout(1, 0, BUSINESS_CABIN.letters()));
+            layout.put(Ticket.ClassType.ECONOMY, new CabinLayout(1, seatCapacity, ECONOMY_LETTERS));
+        }
+        return layout;
+    }
+
+    // Claims the requested seat, or the next free seat of the cabin when no seat is requested. Returns the claimed seat number, or null if
+    // the seat is already taken or the cabin is full. Throws IllegalArgumentException if the requested seat does not exist in the cabin
+    public String assignSeat(Long flightId, Ticket.ClassType classType, String requestedSeat) {
+        CabinBitmap cabin = seatMapOf(flightId).cabin(classType);
+        String seatNumber = normalize(requestedSeat);
+        if (seatNumber == null) {
+            int index = cabin.claimFirstFree();
+            return index < 0 ? null : cabin.layout.seatAt(index);
+        }
+        int index = cabin.layout.indexOf(seatNumber);
+        if (index < 0) {
+            throw new IllegalArgumentException("Seat " + seatNumber + " does not exist in " + classType + " class");
+        }
+        return cabin.claim(index) ? seatNumber : null;
+    }
+
+    // Moves a ticket to another seat (possibly on another flight or cabin). The new seat is claimed first and the old one released only on
+    // success, so the ticket never ends up without a seat. Returns the new seat number, or null if it is taken
+    public String reassignSeat(Long oldFlightId, Ticket.ClassType oldClassType, String oldSeat,
+                               Long newFlightId, Ticket.ClassType newClassType, String requestedSeat) {
+        String seatNumber = normalize(requestedSeat);
+        if (seatNumber != null && seatNumber.equals(normalize(oldSeat)) && newClassType == oldClassType && newFlightId.equals(oldFlightId)) {
+            return seatNumber; // Nothing changes
+        }
+        String assigned = assignSeat(newFlightId, newClassType, seatNumber);
+        if (assigned != null) {
+            releaseSeat(oldFlightId, oldClassType, oldSeat);
+        }
+        return assigned;
+    }
+
+    // Frees a seat. Seats that are not part of the layout (such as legacy free-text values) are ignored
+    public void releaseSeat(Long flightId, Ticket.ClassType classType, String seatNumber) {
+        if (flightId == null || classType == null) {
+            return;
+        }
+        FlightSeatMap seatMap = seatMaps.get(flightId);
+        if (seatMap == null) {
+            return; // Not loaded yet, it will be rebuilt from the ticket table which already reflects the release
+        }
+        CabinBitmap cabin = seatMap.cabin(classType);
+        int index = cabin.layout.indexOf(normalize(seatNumber));
+        if (index >= 0) {
+            cabin.release(index);
+        }
+    }
+
+    public boolean isSeatFree(Long flightId, Ticket.ClassType classType, String seatNumber) {
+        CabinBitmap cabin = seatMapOf(flightId).cabin(classType);
+        int index = cabin.layout.indexOf(normalize(seatNumber));
+        return index >= 0 && !cabin.isSet(index);
+    }
+
+    public int freeSeats(Long flightId, Ticket.ClassType classType) {
+        CabinBitmap cabin = seatMapOf(flightId).cabin(classType);
+        return cabin.layout.capacity() - cabin.occupied();
+    }
+
+    // Forgets the seat map of a flight, the next access rebuilds it from the ticket table
+    public void evict(Long flightId) {
+        seatMaps.remove(flightId);
+    }
+
+    // Seat maps are only kept for flights that can still be booked, and are laid out again when the seat capacity of the flight changes
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFlightChanged(FlightChangedEvent event) {
+        Flight flight = event.getFlight();
+        FlightSeatMap seatMap = seatMaps.get(event.getFlightId());
+        if (event.isRemoved() || flight.getFlightStatus() != Flight.FlightStatus.SCHEDULED
+                || (seatMap != null && seatMap.seatCapacity != flight.getSeatCapacity())) {
+            evict(event.getFlightId());
+        }
+    }
+
+    // The seat map is loaded outside the map and then offered to it, rather than in computeIfAbsent: that would run the queries while
+    // holding the synchronized lock of the map bin, blocking the other flights of the bin and pinning a virtual thread to its carrier.
+    // Two threads may both load a new flight, only the first map offered is kept
+    private FlightSeatMap seatMapOf(Long flightId) {
+        FlightSeatMap seatMap = seatMaps.get(flightId);
+        if (seatMap != null) {
+            return seatMap;
+        }
+        FlightSeatMap loaded = load(flightId);
+        seatMap = seatMaps.putIfAbsent(flightId, loaded);
+        return seatMap == null ? loaded : seatMap;
+    }
+
+    // Lays out the cabins of a flight from its seat capacity and fills the bitmaps from its active tickets. A flight that does not exist
+    // has no seats
+    private FlightSeatMap load(Long flightId) {
+        int seatCapacity = Math.min(flightRepository.findSeatCapacity(flightId).orElse(0), MAX_SEATS);
+        FlightSeatMap seatMap = new FlightSeatMap(seatCapacity);
+        for (TicketRepository.OccupiedSeat seat : ticketRepository.findOccupiedSeats(flightId)) {
+            if (seat.getClassType() == null) {
+                continue;
+            }
+            CabinBitmap cabin = seatMap.cabin(seat.getClassType());
+            int index = cabin.layout.indexOf(normalize(seat.getSeatNumber()));
+            if (index < 0) {
+                log.warn("Ignoring seat '{}' of flight {}, it is not part of the {} cabin", seat.getSeatNumber(), flightId, seat.getClassType());
+            } else if (!cabin.claim(index)) {
+                log.warn("Seat {} of flight {} is held by more than one ticket", seat.getSeatNumber(), flightId);
+            }
+        }
+        return seatMap;
+    }
+
+    private static String normalize(String seatNumber) {
+        if (seatNumber == null || seatNumber.isBlank()) {
+            return null;
+        }
+        return seatNumber.trim().toUpperCase();
+    }
+
+    // Bitmaps of all cabins of one flight, laid out for its seat capacity
+    private static class FlightSeatMap {
+        private final int seatCapacity;
+        private final Map<Ticket.ClassType, CabinBitmap> cabins = new EnumMap<>(Ticket.ClassType.class);
+
+        FlightSeatMap(int seatCapacity) {
+            this.seatCapacity = seatCapacity;
+            layoutOf(seatCapacity).forEach((classType, layout) -> cabins.put(classType, new CabinBitmap(layout)));
+        }
+
+        CabinBitmap cabin(Ticket.ClassType classType) {
+            return cabins.get(classType);
+        }
+    }
+
+    // Occupancy bitmap of one cabin, bit i is set when seat i is taken
+    private static class CabinBitmap {
+        private final CabinLayout layout;
+        private final AtomicLongArray words;
+
+        CabinBitmap(CabinLayout layout) {
+            this.layout = layout;
+            this.words = new AtomicLongArray((layout.capacity() + 63) / 64);
+        }
+
+        boolean isSet(int index) {
+            return (words.get(index >>> 6) & (1L << index)) != 0;
+        }
+
+        boolean claim(int index) {
+            int word = index >>> 6;
+            long bit = 1L << index; // Shift distance is taken modulo 64
+            while (true) {
+                long current = words.get(word);
+                if ((current & bit) != 0) {
+                    return false;
+                }
+                if (words.compareAndSet(word, current, current | bit)) {
+                    return true;
+                }
+            }
+        }
+
+        void release(int index) {
+            int word = index >>> 6;
+            long bit = 1L << index;
+            while (true) {
+                long current = words.get(word);
+                if ((current & bit) == 0 || words.compareAndSet(word, current, current & ~bit)) {
+                    return;
+                }
+            }
+        }
+
+        // Claims the lowest free seat, or returns -1 if the cabin is full
+        int claimFirstFree() {
+            int capacity = layout.capacity();
+            for (int word = 0; word < words.length(); word++) {
+                int seatsInWord = Math.min(64, capacity - word * 64);
+                long validMask = seatsInWord == 64 ? -1L : (1L << seatsInWord) - 1;
+                while (true) {
+                    long current = words.get(word);
+                    long free = ~current & validMask;
+                    if (free == 0) {
+                        break; // Word is full, move on to the next one
+                    }
+                    long bit = Long.lowestOneBit(free);
+                    if (words.compareAndSet(word, current, current | bit)) {
+                        return word * 64 + Long.numberOfTrailingZeros(bit);
+                    }
+                }
+            }
+            return -1;
+        }
+
+        int occupied() {
+            int count = 0;
+            for (int word = 0; word < words.length(); word++) {
+                count += Long.bitCount(words.get(word));
+            }
+            return count;
+        }
+    }
+}
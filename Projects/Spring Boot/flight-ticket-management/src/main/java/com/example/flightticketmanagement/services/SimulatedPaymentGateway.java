@@ -0,0 +1,89 @@
+package com.example.flightticketmanagement.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for a card payment provider, used until a real one is plugged in. Every authorization answers after a configurable
+ * latency (payments.simulated-gateway.latency-millis, plus up to payments.simulated-gateway.jitter-millis), like a provider reached over
+ * the network with a non-blocking client: the answer is scheduled on a timer thread, so thousands of authorizations can be waiting at
+ * once without a thread each. Cards are checked for form only, an expiry date in MM/YY format and a CVV of three or four digits. Outcomes
+ * are remembered for a day so they can be looked up or voided, like the authorizations of a real provider
+ */
+
+@Service
+public class SimulatedPaymentGateway implements PaymentGateway {
+
+    private static final Pattern EXPIRY_DATE = Pattern.compile("(0[1-9]|1[0-2])/\\d{2}");
+    private static final Pattern CVV = Pattern.compile("\\d{3,4}");
+    private static final Duration OUTCOME_TIME_TO_LIVE = Duration.ofDays(1);
+    private static final PaymentResult VOIDED = PaymentResult.declined("The authorization was voided.");
+    private static final PaymentResult NOT_RECEIVED = PaymentResult.declined("No authorization was received for this reference.");
+
+    private final Duration latency;
+    private final Duration jitter;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "simulated-payment-gateway");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Outcome of every authorization by reference, decided when it is received and answered after the latency unless voided meanwhile
+    private final Cache<String, PaymentResult> outcomes = Caffeine.newBuilder()
+            .expireAfterWrite(OUTCOME_TIME_TO_LIVE)
+            .build();
+
+    public SimulatedPaymentGateway(@Value("${payments.simulated-gateway.latency-millis:300}") long latencyMillis,
+                                   @Value("${payments.simulated-gateway.jitter-millis:0}") long jitterMillis) {
+        this.latency = Duration.ofMillis(latencyMillis);
+        this.jitter = Duration.ofMillis(jitterMillis);
+    }
+
+    @Override
+    public CompletableFuture<PaymentResult> authorize(PaymentRequest request) {
+        // A voided reference stays voided, a later authorization of it is refused
+        PaymentResult result = outcomes.asMap().computeIfAbsent(request.reference(), reference -> check(request));
+        long delayNanos = latency.toNanos() + (jitter.isZero() ? 0 : ThreadLocalRandom.current().nextLong(jitter.toNanos() + 1));
+        CompletableFuture<PaymentResult> answer = new CompletableFuture<>();
+        timer.schedule(() -> answer.complete(outcomes.asMap().getOrDefault(request.reference(), result)), delayNanos, TimeUnit.NANOSECONDS);
+        return answer;
+    }
+
+    @Override
+    public CompletableFuture<Void> voidAuthorization(String reference) {
+        outcomes.put(reference, VOIDED);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<PaymentResult> lookup(String reference) {
+        PaymentResult outcome = outcomes.getIfPresent(reference);
+        return CompletableFuture.completedFuture(outcome == null ? NOT_RECEIVED : outcome);
+    }
+
+    private static PaymentResult check(PaymentRequest request) {
+        if (request.expiryDate() == null || !EXPIRY_DATE.matcher(request.expiryDate().trim()).matches()) {
+            return PaymentResult.declined("The expiry date must be in MM/YY format.");
+        }
+        if (request.cvv() == null || !CVV.matcher(request.cvv().trim()).matches()) {
+            return PaymentResult.declined("The CVV must be 3 or 4 digits.");
+        }
+        return PaymentResult.approved(UUID.randomUUID().toString());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+}
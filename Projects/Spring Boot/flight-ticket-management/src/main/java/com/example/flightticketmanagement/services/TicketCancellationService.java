@@ -0,0 +1,62 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.repositories.TicketRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+/**
+ * Cancels single tickets at the customer's request. The status change is one conditional UPDATE on the status the ticket was read with,
+ * so of two cancellations at the same time, or a cancellation racing a payment, only the one that changes the row gives the seat back:
+ * its hold or its place in the inventory in the same transaction, and its place on the seat map once that transaction has committed
+ */
+
+@Slf4j
+@Service
+public class TicketCancellationService {
+
+    private final TicketRepository ticketRepository;
+    private final SeatInventoryService seatInventoryService;
+    private final SeatMapService seatMapService;
+    private final TransactionOperations transactionOperations;
+
+    public TicketCancellationService(TicketRepository ticketRepository,
+                                     SeatInventoryService seatInventoryService,
+                                     SeatMapService seatMapService,
+                                     TransactionOperations transactionOperations) {
+        this.ticketRepository = ticketRepository;
+        this.seatInventoryService = seatInventoryService;
+        this.seatMapService = seatMapService;
+        this.transactionOperations = transactionOperations;
+    }
+
+    // Cancels the ticket if its status is still the one it was read with and gives its seat back. Returns false, changing nothing, if the
+    // ticket is already cancelled or its status changed meanwhile
+    public boolean cancel(Ticket ticket) {
+        Ticket.BookingStatus seen = ticket.getBookingStatus();
+        if (seen == Ticket.BookingStatus.CANCELLED) {
+            return false;
+        }
+        Long flightId = ticket.getFlight().getId();
+        boolean cancelled = Boolean.TRUE.equals(transactionOperations.execute(status -> {
+            if (ticketRepository.cancelTicket(ticket.getTicketId(), seen) != 1) {
+                return false;
+            }
+            // The row is locked by the update until the commit. Pending tickets only hold a seat while their hold lasts, the other
+            // active tickets, paid for or being paid for, took one from the inventory
+            if (seen != Ticket.BookingStatus.PENDING || ticketRepository.endHold(ticket.getTicketId()) == 1) {
+                seatInventoryService.releaseSeat(flightId);
+            }
+            return true;
+        }));
+        if (!cancelled) {
+            log.info("Ticket {} was not cancelled, it is not {} anymore", ticket.getTicketId(), seen);
+            return false;
+        }
+        ticket.setBookingStatus(Ticket.BookingStatus.CANCELLED);
+        ticket.setHoldExpiresAt(null);
+        seatMapService.releaseSeat(flightId, ticket.getClassType(), ticket.getSeatNumber());
+        return true;
+    }
+}
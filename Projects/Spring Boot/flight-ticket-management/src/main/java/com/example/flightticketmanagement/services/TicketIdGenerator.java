@@ -0,0 +1,8 @@
+package com.example.flightticketmanagement.services;
+
+// Source of the ids of new tickets. The ticket id is the primary key, so every id handed out must be unique across all application
+// instances, otherwise saving the ticket would overwrite another one. The default implementation is TimeOrderedTicketIdGenerator,
+// declare a @Primary bean of this type to replace it
+public interface TicketIdGenerator {
+    String nextTicketId();
+}
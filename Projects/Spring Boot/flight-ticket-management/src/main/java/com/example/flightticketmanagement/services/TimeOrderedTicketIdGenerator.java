@@ -0,0 +1,83 @@
+package com.example.flightticketmanagement.services;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Ticket ids built from a 63 bit number: 41 bits of milliseconds since 2024-01-01, 10 bits of node number and a 12 bit sequence within
+ * the millisecond. Two instances with different node numbers can never produce the same id, and one instance never repeats a
+ * (millisecond, sequence) pair since both live in a single AtomicLong advanced with compare-and-set, so no locks are taken. When the
+ * 4096 ids of a millisecond are used up, or the clock goes backwards, the generator keeps counting into the next millisecond instead of
+ * waiting. The number is written as 13 base32 digits after the TCKT prefix, so ids sort by creation time and new rows land at the end
+ * of the primary key index
+ */
+
+public class TimeOrderedTicketIdGenerator implements TicketIdGenerator {
+
+    public static final String PREFIX = "TCKT";
+    public static final int NODE_BITS = 10;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+    static final long EPOCH_MILLIS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int DIGITS = 13; // 13 * 5 bits cover the 63 bit number
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray(); // Crockford base32, in ascending ASCII order
+
+    private final long node;
+    private final LongSupplier clock;
+    // Last handed out (millisecond << SEQUENCE_BITS | sequence)
+    private final AtomicLong state = new AtomicLong();
+
+    public TimeOrderedTicketIdGenerator(int node) {
+        this(node, System::currentTimeMillis);
+    }
+
+    TimeOrderedTicketIdGenerator(int node, LongSupplier clock) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node number must be between 0 and " + MAX_NODE + ", got " + node);
+        }
+        this.node = node;
+        this.clock = clock;
+    }
+
+    @Override
+    public String nextTicketId() {
+        return format(nextId());
+    }
+
+    // Returns the next id as a number
+    public long nextId() {
+        long now = clock.getAsLong() - EPOCH_MILLIS;
+        while (true) {
+            long current = state.get();
+            long next = (current >>> SEQUENCE_BITS) < now
+                    ? now << SEQUENCE_BITS // New millisecond, restart the sequence
+                    : current + 1; // Same (or earlier) millisecond, take the next sequence number, carrying into the next millisecond
+            if (state.compareAndSet(current, next)) {
+                long millis = next >>> SEQUENCE_BITS;
+                return millis << (NODE_BITS + SEQUENCE_BITS) | node << SEQUENCE_BITS | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    // Millisecond of the last id handed out, since the epoch of the clock. Can be ahead of the clock after a burst or a clock set back
+    public long lastMillis() {
+        return (state.get() >>> SEQUENCE_BITS) + EPOCH_MILLIS;
+    }
+
+    public static String format(long id) {
+        char[] chars = new char[PREFIX.length() + DIGITS];
+        PREFIX.getChars(0, PREFIX.length(), chars, 0);
+        for (int i = chars.length - 1; i >= PREFIX.length(); i--) {
+            chars[i] = ALPHABET[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    public static int nodeOf(long id) {
+        return (int) (id >>> SEQUENCE_BITS) & MAX_NODE;
+    }
+}
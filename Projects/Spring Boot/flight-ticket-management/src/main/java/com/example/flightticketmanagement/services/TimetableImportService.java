@@ -0,0 +1,413 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.FlightsImportedEvent;
+import com.example.flightticketmanagement.models.Airline;
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.repositories.AirlineRepository;
+import com.example.flightticketmanagement.repositories.AirportRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk import of an airline's timetable from a CSV file, one flight per row. The file is read as a stream and the valid rows are inserted
+ * in JDBC batches of imports.batch-size rows, each batch in its own short transaction, so a season of 100k flights goes in within
+ * seconds with only one batch in memory. A flight is identified by its airline, flight number and date: rows of flights already in the
+ * timetable are skipped, so a file can be imported again after a partial failure. A batch the database refuses is retried row by row, so
+ * only the refused rows are rejected. Airports and airlines are checked against their cached lists, loaded once per import. Imports
+ * run on the async executor; their progress and the first rejected rows are kept for a while for the import page to poll, and every
+ * rejected row is written to an error report that can be downloaded. The flights bypass the Flight entity, so a FlightsImportedEvent is
+ * published once the import is done for the in-memory views of the timetable to rebuild
+ */
+
+@Slf4j
+@Service
+public class TimetableImportService {
+
+    private static final Duration PROGRESS_TIME_TO_LIVE = Duration.ofHours(1);
+    // Inserts the flight unless the airline already has a flight with that number on that date
+    private static final String INSERT_FLIGHT = "INSERT INTO flight (flight_number, airline_iata_code, origin_airport_code, destination_airport_code, " +
+            "date, departure_time_local, landing_time_local, remaining_tickets, flight_status, seat_capacity) SELECT ?, ?, ?, ?, ?, ?, ?, ?, ?, ? " +
+            "WHERE NOT EXISTS (SELECT 1 FROM flight WHERE airline_iata_code = ? AND flight_number = ? AND date = ?)";
+    // Taken by every write of an import until its transaction ends, so two imports of the same airline, on any instance, never both
+    // find a flight missing and insert it twice
+    private static final String LOCK_AIRLINE_IMPORTS = "SELECT pg_advisory_xact_lock(hashtext('timetable-import-' || ?))";
+
+    // Columns of the file, found by name in its header row. The airline and status columns are optional
+    public static final List<String> REQUIRED_COLUMNS = List.of("flight_number", "origin", "destination", "date", "departure_time", "landing_time", "remaining_tickets");
+    static final String AIRLINE_COLUMN = "airline";
+    static final String STATUS_COLUMN = "flight_status";
+
+    private final AirportRepository airportRepository;
+    private final AirlineRepository airlineRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionOperations transactionOperations;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Executor executor;
+    private final int batchSize;
+    private final int maxReportedErrors;
+
+    // The error report of an import is deleted with its progress
+    private final Cache<String, ImportJob> jobs = Caffeine.newBuilder()
+            .expireAfterWrite(PROGRESS_TIME_TO_LIVE)
+            .<String, ImportJob>removalListener((jobId, job, cause) -> {
+                if (job != null && cause != RemovalCause.REPLACED) {
+                    job.deleteErrorReport();
+                }
+            })
+            .build();
+
+    public TimetableImportService(AirportRepository airportRepository,
+                                  AirlineRepository airlineRepository,
+                                  JdbcTemplate jdbcTemplate,
+                                  TransactionOperations transactionOperations,
+                                  ApplicationEventPublisher eventPublisher,
+                                  @Qualifier("applicationTaskExecutor") Executor executor,
+                                  @Value("${imports.batch-size:1000}") int batchSize,
+                                  @Value("${imports.max-reported-errors:100}") int maxReportedErrors) {
+        this.airportRepository = airportRepository;
+        this.airlineRepository = airlineRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionOperations = transactionOperations;
+        this.eventPublisher = eventPublisher;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    public enum State {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    // A rejected row, by its line number in the file
+    public record RowError(long line, String message) {
+    }
+
+    // Progress of an import as shown on the import page, with the first rejected rows and the reason when the whole import failed.
+    // Skipped rows are flights already in the timetable
+    public record ImportProgress(State state, long rowsRead, long rowsImported, long rowsSkipped, long rowsRejected, List<RowError> errors, String message) {
+    }
+
+    // Starts importing the uploaded file for the airline and returns the id of the import at once. The file is deleted once read
+    public String start(String airlineIataCode, Path upload) throws IOException {
+        String jobId = UUID.randomUUID().toString();
+        ImportJob job = new ImportJob(airlineIataCode, Files.createTempFile("timetable-errors-", ".csv"));
+        jobs.put(jobId, job);
+        executor.execute(() -> run(job, upload));
+        return jobId;
+    }
+
+    // Progress of an import of the airline. Throws NoSuchElementException if the airline has no such import
+    public ImportProgress progress(String jobId, String airlineIataCode) {
+        return job(jobId, airlineIataCode).progress();
+    }
+
+    // Copies the error report of an import of the airline, a CSV file with the line number and the reason of every rejected row
+    public void writeErrorReport(String jobId, String airlineIataCode, OutputStream out) throws IOException {
+        ImportJob job = job(jobId, airlineIataCode);
+        if (job.state != State.RUNNING) {
+            Files.copy(job.errorReport, out);
+        }
+    }
+
+    private ImportJob job(String jobId, String airlineIataCode) {
+        ImportJob job = jobId == null ? null : jobs.getIfPresent(jobId);
+        if (job == null || !job.airlineIataCode.equals(airlineIataCode)) {
+            throw new NoSuchElementException("Import not found");
+        }
+        return job;
+    }
+
+    private void run(ImportJob job, Path upload) {
+        try (BufferedReader reader = Files.newBufferedReader(upload, StandardCharsets.UTF_8);
+             BufferedWriter errorReport = Files.newBufferedWriter(job.errorReport, StandardCharsets.UTF_8)) {
+            errorReport.write("line,error\n");
+            String header = reader.readLine();
+            Map<String, Integer> columns = header == null ? Map.of() : columnsOf(header);
+            List<String> missingColumns = REQUIRED_COLUMNS.stream().filter(column -> !columns.containsKey(column)).toList();
+            if (!missingColumns.isEmpty()) {
+                job.fail("The header row must name the columns " + String.join(", ", REQUIRED_COLUMNS) + ", missing: " + String.join(", ", missingColumns));
+                return;
+            }
+            // One lookup of each list per import, both are served from the second-level cache
+            Set<String> airportCodes = airportRepository.findAll().stream().map(Airport::getAirportCode).collect(Collectors.toSet());
+            Set<String> airlineCodes = airlineRepository.findAll().stream().map(Airline::getIataCode).collect(Collectors.toSet());
+            RowParser parser = new RowParser(columns, job.airlineIataCode, airportCodes, airlineCodes);
+
+            List<Object[]> batch = new ArrayList<>(batchSize);
+            List<Long> batchLines = new ArrayList<>(batchSize);
+            long line = 1;
+            String row;
+            while ((row = reader.readLine()) != null) {
+                line++;
+                if (row.isBlank()) {
+                    continue;
+                }
+                job.rowsRead.incrementAndGet();
+                try {
+                    batch.add(parser.parse(row));
+                    batchLines.add(line);
+                } catch (IllegalArgumentException e) {
+                    job.reject(line, e.getMessage(), errorReport);
+                }
+                if (batch.size() == batchSize) {
+                    write(job, batch, batchLines, errorReport);
+                }
+            }
+            write(job, batch, batchLines, errorReport);
+            errorReport.flush(); // The report can be downloaded as soon as the import is shown as completed
+            job.state = State.COMPLETED;
+            log.info("Timetable import of airline {}: {} rows read, {} flights imported, {} already in the timetable, {} rows rejected",
+                    job.airlineIataCode, job.rowsRead.get(), job.rowsImported.get(), job.rowsSkipped.get(), job.rowsRejected.get());
+        } catch (IOException | RuntimeException e) {
+            log.error("Timetable import of airline {} failed", job.airlineIataCode, e);
+            job.fail("The import stopped after " + job.rowsRead.get() + " rows: " + e.getMessage());
+        } finally {
+            deleteQuietly(upload);
+            if (job.rowsImported.get() > 0) {
+                eventPublisher.publishEvent(new FlightsImportedEvent(this, job.airlineIataCode, job.rowsImported.get()));
+            }
+        }
+    }
+
+    // Inserts a batch in one statement round-trip and one transaction. When the database refuses a row the whole transaction is rolled
+    // back, so the batch is written again one row per transaction and only the refused rows are rejected
+    private void write(ImportJob job, List<Object[]> batch, List<Long> lines, BufferedWriter errorReport) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            int[] counts = transactionOperations.execute(status -> {
+                jdbcTemplate.queryForList(LOCK_AIRLINE_IMPORTS, job.airlineIataCode);
+                return jdbcTemplate.batchUpdate(INSERT_FLIGHT, batch);
+            });
+            for (int count : counts) {
+                job.count(count);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Timetable import of airline {} could not write lines {} to {} in one batch, writing them one by one: {}",
+                    job.airlineIataCode, lines.get(0), lines.get(lines.size() - 1), e.getMessage());
+            for (int i = 0; i < batch.size(); i++) {
+                Object[] row = batch.get(i);
+                try {
+                    job.count(transactionOperations.execute(status -> {
+                        jdbcTemplate.queryForList(LOCK_AIRLINE_IMPORTS, job.airlineIataCode);
+                        return jdbcTemplate.update(INSERT_FLIGHT, row);
+                    }));
+                } catch (DataAccessException rowException) {
+                    job.reject(lines.get(i), "Not imported, refused by the database: " + rowException.getMostSpecificCause().getMessage(), errorReport);
+                }
+            }
+        }
+        batch.clear();
+        lines.clear();
+    }
+
+    private static Map<String, Integer> columnsOf(String header) {
+        List<String> names = split(header.replace("\uFEFF", "")); // Spreadsheets often start UTF-8 files with a byte order mark
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            columns.putIfAbsent(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        return columns;
+    }
+
+    // Splits a CSV row on commas. Fields may be quoted, with "" standing for a quote inside a quoted field
+    static List<String> split(String row) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < row.length() && row.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete {}", file, e);
+        }
+    }
+
+    // Turns a row into the parameters of the insert, or throws IllegalArgumentException with the reason the row is rejected
+    private record RowParser(Map<String, Integer> columns, String airlineIataCode, Set<String> airportCodes, Set<String> airlineCodes) {
+
+        Object[] parse(String row) {
+            List<String> fields = split(row);
+            String airline = optional(fields, AIRLINE_COLUMN);
+            if (airline == null) {
+                airline = airlineIataCode;
+            } else if (!airlineCodes.contains(airline)) {
+                throw new IllegalArgumentException("Unknown airline " + airline);
+            } else if (!airline.equals(airlineIataCode)) {
+                throw new IllegalArgumentException("Flights of airline " + airline + " cannot be imported by airline " + airlineIataCode);
+            }
+            String flightNumber = required(fields, "flight_number");
+            String origin = airport(fields, "origin");
+            String destination = airport(fields, "destination");
+            if (origin.equals(destination)) {
+                throw new IllegalArgumentException("The origin and the destination are the same airport");
+            }
+            LocalDate date = parse(fields, "date", LocalDate::parse, "a date in YYYY-MM-DD format");
+            LocalTime departureTime = parse(fields, "departure_time", LocalTime::parse, "a time in HH:MM format");
+            LocalTime landingTime = parse(fields, "landing_time", LocalTime::parse, "a time in HH:MM format");
+            int remainingTickets = parse(fields, "remaining_tickets", Integer::parseInt, "a whole number");
+            if (remainingTickets < 0) {
+                throw new IllegalArgumentException("remaining_tickets cannot be negative");
+            }
+            if (remainingTickets > SeatMapService.MAX_SEATS) {
+                throw new IllegalArgumentException("remaining_tickets cannot be more than " + SeatMapService.MAX_SEATS + ", the seats of the largest seat layout");
+            }
+            String status = optional(fields, STATUS_COLUMN);
+            Flight.FlightStatus flightStatus;
+            try {
+                flightStatus = status == null ? Flight.FlightStatus.SCHEDULED : Flight.FlightStatus.valueOf(status.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("flight_status must be one of SCHEDULED, CANCELLED, COMPLETED");
+            }
+            return new Object[]{flightNumber, airline, origin, destination, date, departureTime, landingTime, remainingTickets, flightStatus.name(), remainingTickets,
+                    airline, flightNumber, date};
+        }
+
+        private String airport(List<String> fields, String column) {
+            String airportCode = required(fields, column).toUpperCase(Locale.ROOT);
+            if (!airportCodes.contains(airportCode)) {
+                throw new IllegalArgumentException("Unknown " + column + " airport " + airportCode);
+            }
+            return airportCode;
+        }
+
+        private <T> T parse(List<String> fields, String column, Function<String, T> parser, String expected) {
+            String value = required(fields, column);
+            try {
+                return parser.apply(value);
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new IllegalArgumentException(column + " must be " + expected + ", found " + value);
+            }
+        }
+
+        private String required(List<String> fields, String column) {
+            String value = optional(fields, column);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing " + column);
+            }
+            return value;
+        }
+
+        private String optional(List<String> fields, String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= fields.size() || fields.get(index).isBlank()) {
+                return null;
+            }
+            return fields.get(index).trim();
+        }
+    }
+
+    // An import in progress or done. The counters are written by the importing thread and read by the progress requests
+    private class ImportJob {
+
+        private final String airlineIataCode;
+        private final Path errorReport;
+        private final AtomicLong rowsRead = new AtomicLong();
+        private final AtomicLong rowsImported = new AtomicLong();
+        private final AtomicLong rowsSkipped = new AtomicLong();
+        private final AtomicLong rowsRejected = new AtomicLong();
+        private final List<RowError> firstErrors = new ArrayList<>();
+        private volatile State state = State.RUNNING;
+        private volatile String message;
+
+        ImportJob(String airlineIataCode, Path errorReport) {
+            this.airlineIataCode = airlineIataCode;
+            this.errorReport = errorReport;
+        }
+
+        // Counts a written row by the rows the insert changed, none when the flight was already in the timetable
+        void count(Integer rowsChanged) {
+            if (rowsChanged != null && rowsChanged == 0) {
+                rowsSkipped.incrementAndGet();
+            } else {
+                rowsImported.incrementAndGet();
+            }
+        }
+
+        void reject(long line, String reason, BufferedWriter report) throws IOException {
+            rowsRejected.incrementAndGet();
+            synchronized (firstErrors) {
+                if (firstErrors.size() < maxReportedErrors) {
+                    firstErrors.add(new RowError(line, reason));
+                }
+            }
+            report.write(line + ",\"" + reason.replace("\"", "\"\"") + "\"\n");
+        }
+
+        void fail(String reason) {
+            message = reason;
+            state = State.FAILED;
+        }
+
+        ImportProgress progress() {
+            List<RowError> errors;
+            synchronized (firstErrors) {
+                errors = List.copyOf(firstErrors);
+            }
+            return new ImportProgress(state, rowsRead.get(), rowsImported.get(), rowsSkipped.get(), rowsRejected.get(), errors, message);
+        }
+
+        void deleteErrorReport() {
+            deleteQuietly(errorReport);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.FlightChangedEvent;
+import com.example.flightticketmanagement.events.FlightsImportedEvent;
+import com.example.flightticketmanagement.events.SeatInventoryChangedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version of the timetable shown by the flight list and search pages, for HTTP conditional requests. The version moves on every change
+ * of a flight, every timetable import and every seat sold, released, held or claimed, once the change is committed, so a page rendered
+ * before a change never carries the validator of a later version. The pages turn it into an ETag and a Last-Modified date, and a
+ * browser or polling client sending them back gets 304 Not Modified while nothing changed, without any query or template rendering.
+ * Computing the validators costs a counter read instead of hashing the rendered page. The counter lives in this instance, like the
+ * in-memory timetable index, and the ETag carries the instance's start time so validators issued by another run never match
+ */
+
+@Service
+public class TimetableVersion {
+
+    private final Clock clock;
+    // Start of this instance in milliseconds, in base 36
+    private final String instance;
+    private final AtomicLong version = new AtomicLong();
+    private volatile Instant lastModified;
+
+    @Autowired
+    public TimetableVersion() {
+        this(Clock.systemDefaultZone());
+    }
+
+    // Clock of the last modification dates and of the day the fares are quoted for, replaced by tests
+    TimetableVersion(Clock clock) {
+        this.clock = clock;
+        this.lastModified = clock.instant().truncatedTo(ChronoUnit.SECONDS);
+        this.instance = Long.toString(lastModified.toEpochMilli(), 36);
+    }
+
+    // Weak ETag of a page rendered now for the given viewer. Fares move with the days left before departure, so the day is part of it
+    public String etag(String viewer) {
+        return "W/\"" + instance + "-" + version.get() + "-" + LocalDate.now(clock).toEpochDay() + "-" + viewer + "\"";
+    }
+
+    // Last modification of the pages in milliseconds, the last change of the timetable or the start of the day, whichever is later
+    public long lastModified() {
+        Instant startOfDay = LocalDate.now(clock).atStartOfDay(clock.getZone()).toInstant();
+        Instant changed = lastModified;
+        return (changed.isAfter(startOfDay) ? changed : startOfDay).toEpochMilli();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFlightChanged(FlightChangedEvent event) {
+        advance();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSeatInventoryChanged(SeatInventoryChangedEvent event) {
+        advance();
+    }
+
+    @EventListener(FlightsImportedEvent.class)
+    public void onFlightsImported() {
+        advance();
+    }
+
+    private void advance() {
+        // The date first, so a client reading the new version never gets the old date with it
+        lastModified = clock.instant();
+        version.incrementAndGet();
+    }
+}
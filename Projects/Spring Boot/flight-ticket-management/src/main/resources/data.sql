@@ -199,4 +199,8 @@ WHERE NOT EXISTS (SELECT 1 FROM ticket WHERE ticket_id = 'TCKT1A2B3C4D5');
 
 INSERT INTO ticket (ticket_id, customer_id, flight_id, class_type, seat_number, booking_status, price)
 SELECT 'TCKT6E7F8G9H0', (SELECT customer_id FROM customer WHERE username = 'tomhanks123'), (SELECT id FROM flight WHERE flight_number = 'LY073' AND date = '2024-07-01'), 'BUSINESS', '5B', 'BOOKED', 860.00
-WHERE NOT EXISTS (SELECT 1 FROM ticket WHERE ticket_id = 'TCKT6E7F8G9H0');
\ No newline at end of file
+WHERE NOT EXISTS (SELECT 1 FROM ticket WHERE ticket_id = 'TCKT6E7F8G9H0');
+
+-- Seat capacity of the flights above and of flights created before it was stored: the seats left plus the seats of the active tickets
+UPDATE flight f SET seat_capacity = f.remaining_tickets + (SELECT COUNT(*) FROM ticket t WHERE t.flight_id = f.id AND t.booking_status <> 'CANCELLED')
+WHERE f.seat_capacity IS NULL;
@@ -21,6 +21,32 @@ CREATE TABLE IF NOT EXISTS airline (
     password VARCHAR(255)
 );
 
+-- Logins are resolved by username across customers, airlines and administrators (see UserAccount), the other two tables index it through UNIQUE
+CREATE INDEX IF NOT EXISTS airline_username_idx ON airline (username);
+
+-- Create table for recurring flight schedules, their dated flights are created ahead of time (see FlightScheduleService)
+CREATE TABLE IF NOT EXISTS flight_schedule (
+    id SERIAL PRIMARY KEY,
+    flight_number VARCHAR(50),
+    airline_iata_code VARCHAR(10) REFERENCES airline(iata_code),
+    origin_airport_code VARCHAR(10) REFERENCES airport(airport_code),
+    destination_airport_code VARCHAR(10) REFERENCES airport(airport_code),
+    days_of_week VARCHAR(7),
+    valid_from DATE,
+    valid_to DATE,
+    departure_time_local TIME,
+    landing_time_local TIME,
+    seats_per_flight INT,
+    materialized_through DATE
+);
+
+-- Dates of a schedule beyond its materialized_through whose flights a search created early (see FlightScheduleService)
+CREATE TABLE IF NOT EXISTS flight_schedule_date (
+    schedule_id BIGINT NOT NULL REFERENCES flight_schedule(id) ON DELETE CASCADE,
+    flight_date DATE NOT NULL,
+    PRIMARY KEY (schedule_id, flight_date)
+);
+
 -- Create table for flights
 CREATE TABLE IF NOT EXISTS flight (
     id SERIAL PRIMARY KEY,
@@ -32,9 +58,24 @@ CREATE TABLE IF NOT EXISTS flight (
     departure_time_local TIME,
     landing_time_local TIME,
     remaining_tickets INT,
-    flight_status VARCHAR(50)
+    seat_capacity INT,
+    flight_status VARCHAR(50),
+    schedule_id BIGINT REFERENCES flight_schedule(id)
 );
 
+-- Added with the recurring schedules, for databases created before
+ALTER TABLE flight ADD COLUMN IF NOT EXISTS schedule_id BIGINT REFERENCES flight_schedule(id);
+
+-- Added with the seat maps sized from the flights, for databases created before. Filled in by data.sql
+ALTER TABLE flight ADD COLUMN IF NOT EXISTS seat_capacity INT;
+
+-- A schedule has at most one flight per date, so two application instances extending the same schedule cannot both create it
+CREATE UNIQUE INDEX IF NOT EXISTS flight_schedule_date_unique ON flight (schedule_id, date) WHERE schedule_id IS NOT NULL;
+
+-- Keyset pagination of the flight search API walks scheduled flights in (date, departure_time_local, id) order, on one route or all of them
+CREATE INDEX IF NOT EXISTS flight_route_departure_idx ON flight (origin_airport_code, destination_airport_code, date, departure_time_local, id) WHERE flight_status = 'SCHEDULED';
+CREATE INDEX IF NOT EXISTS flight_departure_idx ON flight (date, departure_time_local, id) WHERE flight_status = 'SCHEDULED';
+
 -- Create table for customers
 CREATE TABLE IF NOT EXISTS customer (
     customer_id SERIAL PRIMARY KEY,
@@ -55,8 +96,52 @@ CREATE TABLE IF NOT EXISTS ticket (
     class_type VARCHAR(50),
     seat_number VARCHAR(10),
     booking_status VARCHAR(50),
-    price DECIMAL(10, 2)
+    price DECIMAL(10, 2),
+    hold_expires_at TIMESTAMP WITH TIME ZONE,
+    payment_started_at TIMESTAMP WITH TIME ZONE
+);
+
+-- Added with the seat holds of pending tickets, for databases created before
+ALTER TABLE ticket ADD COLUMN IF NOT EXISTS hold_expires_at TIMESTAMP WITH TIME ZONE;
+
+-- Pending tickets by the end of their seat hold, so the expiry sweep reads only the expired holds (see SeatHoldService)
+CREATE INDEX IF NOT EXISTS ticket_hold_expiry ON ticket (hold_expires_at) WHERE booking_status = 'PENDING' AND hold_expires_at IS NOT NULL;
+
+-- Added with the reconciliation of payments left without an outcome, for databases created before
+ALTER TABLE ticket ADD COLUMN IF NOT EXISTS payment_started_at TIMESTAMP WITH TIME ZONE;
+
+-- Tickets waiting for their payment, and tickets cancelled during their payment whose authorization is not voided yet, by when the
+-- payment started, so the reconciliation reads only the payments it has to settle (see PaymentService)
+DROP INDEX IF EXISTS ticket_payment_started;
+CREATE INDEX IF NOT EXISTS ticket_payment_unsettled ON ticket (payment_started_at) WHERE booking_status = 'PAYMENT_PROCESSING' OR payment_started_at IS NOT NULL;
+
+-- Databases created before the index below may hold active tickets sharing a seat, from when seat numbers were free text. Before the
+-- index is built, one ticket of each shared seat keeps it, paid tickets before pending ones, and the others lose their seat number so
+-- they are given a free seat on their next change. Skipped once the index exists
+UPDATE ticket SET seat_number = NULL
+WHERE ticket_id IN (
+    SELECT ticket_id FROM (
+        SELECT ticket_id, ROW_NUMBER() OVER (PARTITION BY flight_id, seat_number ORDER BY booking_status = 'PENDING', ticket_id) AS seat_rank
+        FROM ticket WHERE booking_status <> 'CANCELLED' AND seat_number IS NOT NULL
+    ) AS seats WHERE seat_rank > 1)
+AND NOT EXISTS (SELECT 1 FROM pg_indexes WHERE indexname = 'ticket_flight_seat_unique');
+
+-- Two active tickets on the same flight can never hold the same seat. This backs the in-memory seat maps when several app instances run
+CREATE UNIQUE INDEX IF NOT EXISTS ticket_flight_seat_unique ON ticket (flight_id, seat_number) WHERE booking_status <> 'CANCELLED';
+
+-- Node numbers of the ticket id generators, each application instance leases a free one at startup and renews the lease while it runs.
+-- last_millis is the last millisecond the previous holders may have issued ids in (see LeasedTicketIdGenerator)
+CREATE TABLE IF NOT EXISTS ticket_id_node (
+    node INT PRIMARY KEY,
+    holder VARCHAR(200),
+    lease_expires_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    last_millis BIGINT NOT NULL
 );
+INSERT INTO ticket_id_node (node, lease_expires_at, last_millis)
+SELECT node, TIMESTAMP WITH TIME ZONE 'epoch', 0 FROM generate_series(0, 1023) AS node ON CONFLICT DO NOTHING;
+
+-- Replaced by ticket_id_node, its cycle handed out node numbers that running instances still used
+DROP SEQUENCE IF EXISTS ticket_id_node_seq;
 
 -- Create table for administrators
 CREATE TABLE IF NOT EXISTS administrator (
@@ -0,0 +1,197 @@
+package com.example.flightticketmanagement.benchmarks;
+
+import com.example.flightticketmanagement.models.Customer;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.repositories.TicketRepository;
+import com.example.flightticketmanagement.services.PaymentGateway;
+import com.example.flightticketmanagement.services.PaymentService;
+import com.example.flightticketmanagement.services.SeatHoldService;
+import com.example.flightticketmanagement.services.SeatInventoryService;
+import com.example.flightticketmanagement.services.SimulatedPaymentGateway;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// Open-loop load test of the payment pipeline against the simulated gateway, run for several gateway latencies. Payments arrive at a
+// fixed rate and the pipeline's completion rate is compared with the one of a blocking baseline, where a pool of the same number of
+// workers waits for every authorization as the old synchronous payment did. The pipeline keeps up with the arrival rate whatever the
+// latency (as long as rate x latency stays under payments.max-in-flight), the baseline tops out at workers / latency. The repositories are
+// stubs, so the figures measure the pipeline and not the database. Not part of the test run, start the main method, configured with
+// system properties:
+//   bench.latencies (0,50,200,1000 ms), bench.rate (500 payments/s), bench.durationSeconds (10), bench.maxInFlight (1000),
+//   bench.workers (4)
+public class PaymentPipelineBenchmark {
+
+    private final long[] gatewayLatencies = Arrays.stream(System.getProperty("bench.latencies", "0,50,200,1000").split(","))
+            .mapToLong(latency -> Long.parseLong(latency.trim()))
+            .toArray();
+    private final int rate = Integer.getInteger("bench.rate", 500);
+    private final int durationSeconds = Integer.getInteger("bench.durationSeconds", 10);
+    private final int maxInFlight = Integer.getInteger("bench.maxInFlight", 1000);
+    private final int workers = Integer.getInteger("bench.workers", 4);
+
+    public static void main(String[] args) throws Exception {
+        new PaymentPipelineBenchmark().run();
+    }
+
+    private void run() throws Exception {
+        System.out.printf("%d payments/s for %d s, %d workers, at most %d payments in flight%n", rate, durationSeconds, workers, maxInFlight);
+        System.out.printf("%-10s %-9s %12s %9s %14s %14s %14s%n",
+                "latency", "mode", "completed/s", "rejected", "submit p99 ms", "total p50 ms", "total p99 ms");
+        for (long latency : gatewayLatencies) {
+            report(latency, "pipeline", pipeline(latency));
+            report(latency, "blocking", blocking(latency));
+        }
+    }
+
+    private Result pipeline(long latencyMillis) throws Exception {
+        Map<String, Long> submittedAt = new ConcurrentHashMap<>();
+        Result result = new Result();
+
+        TicketRepository ticketRepository = mock(TicketRepository.class, withSettings().stubOnly());
+        when(ticketRepository.findById(anyString())).thenAnswer(invocation -> Optional.of(ticket(invocation.getArgument(0))));
+        when(ticketRepository.startPayment(anyString(), any())).thenReturn(1);
+        when(ticketRepository.completePayment(anyString(), any(), any())).thenAnswer(invocation -> {
+            result.completed(System.nanoTime() - submittedAt.remove(invocation.<String>getArgument(0)));
+            return 1;
+        });
+        SeatHoldService seatHoldService = mock(SeatHoldService.class, withSettings().stubOnly());
+        when(seatHoldService.claim(any())).thenReturn(true);
+        SimulatedPaymentGateway gateway = new SimulatedPaymentGateway(latencyMillis, 0);
+        PaymentService paymentService = new PaymentService(ticketRepository, seatHoldService,
+                mock(SeatInventoryService.class, withSettings().stubOnly()), gateway, TransactionOperations.withoutTransaction(),
+                maxInFlight, workers, 30, 300, 100);
+
+        try {
+            drive(ticketId -> {
+                long start = System.nanoTime();
+                submittedAt.put(ticketId, start);
+                PaymentService.PaymentStatus status = paymentService.submit(ticketId, 1L, "12/30", "123");
+                result.submitted(System.nanoTime() - start);
+                if (status.state() == PaymentService.State.DECLINED) {
+                    submittedAt.remove(ticketId);
+                    result.rejected.incrementAndGet();
+                }
+            });
+            // Let the payments of the last second finish before counting
+            awaitQuiet(paymentService::inFlight, latencyMillis);
+        } finally {
+            paymentService.shutdown();
+            gateway.shutdown();
+        }
+        return result;
+    }
+
+    private Result blocking(long latencyMillis) throws Exception {
+        Result result = new Result();
+        SimulatedPaymentGateway gateway = new SimulatedPaymentGateway(latencyMillis, 0);
+        // The queue is bounded like the pipeline's in-flight count, so both turn payments away once overloaded
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxInFlight), new ThreadPoolExecutor.AbortPolicy());
+        try {
+            drive(ticketId -> {
+                long start = System.nanoTime();
+                try {
+                    pool.execute(() -> {
+                        gateway.authorize(new PaymentGateway.PaymentRequest(ticketId, 500, "4111111111111111", "12/30", "123")).join();
+                        result.completed(System.nanoTime() - start);
+                    });
+                } catch (RejectedExecutionException e) {
+                    result.rejected.incrementAndGet();
+                }
+                result.submitted(System.nanoTime() - start);
+            });
+            // Payments still queued after the run are not counted, they would have kept their customers waiting
+            pool.shutdownNow();
+            pool.awaitTermination(latencyMillis + 1000, TimeUnit.MILLISECONDS);
+        } finally {
+            gateway.shutdown();
+        }
+        return result;
+    }
+
+    // Submits payments at the configured rate for the configured duration, a batch every millisecond
+    private void drive(Consumer<String> submit) throws InterruptedException {
+        long total = (long) rate * durationSeconds;
+        long start = System.nanoTime();
+        long sent = 0;
+        while (sent < total) {
+            long elapsedMicros = (System.nanoTime() - start) / 1000;
+            long due = Math.min(total, elapsedMicros * rate / 1_000_000);
+            for (; sent < due; sent++) {
+                submit.accept("TCKT" + sent);
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitQuiet(IntSupplier inFlight, long latencyMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(latencyMillis + 1000);
+        while (inFlight.getAsInt() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static Ticket ticket(String ticketId) {
+        Customer customer = new Customer();
+        customer.setCustomerId(1L);
+        customer.setCreditCardNumber("4111111111111111");
+        Flight flight = new Flight();
+        flight.setId(1L);
+        Ticket ticket = new Ticket(ticketId, customer, flight, Ticket.ClassType.ECONOMY, "10A", Ticket.BookingStatus.PENDING, 500);
+        ticket.setHoldExpiresAt(Instant.now().plusSeconds(900));
+        return ticket;
+    }
+
+    private void report(long latencyMillis, String mode, Result result) {
+        long[] submit = result.sorted(result.submitLatencies);
+        long[] total = result.sorted(result.totalLatencies);
+        System.out.printf("%-10s %-9s %12.0f %9d %14.2f %14.2f %14.2f%n",
+                latencyMillis + " ms", mode, total.length / (double) durationSeconds, result.rejected.get(),
+                percentile(submit, 0.99), percentile(total, 0.50), percentile(total, 0.99));
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+
+    private static class Result {
+
+        private final List<Long> submitLatencies = new ArrayList<>();
+        private final List<Long> totalLatencies = new ArrayList<>();
+        private final AtomicLong rejected = new AtomicLong();
+
+        synchronized void submitted(long nanos) {
+            submitLatencies.add(nanos);
+        }
+
+        synchronized void completed(long nanos) {
+            totalLatencies.add(nanos);
+        }
+
+        synchronized long[] sorted(List<Long> latencies) {
+            return latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.flightticketmanagement.benchmarks;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Closed-loop load driver for the search and purchase flows, used to compare the platform thread mode with the virtual thread mode
+// (see the README). Every simulated customer logs in once, then keeps searching a route and, for a share of its searches, buys a seat on
+// the first flight found and pays for it. Not part of the test run, start the application first and then the main method, configured
+// with system properties:
+//   load.baseUrl (http://localhost:8080), load.users (200), load.durationSeconds (60), load.origin (JFK), load.destination (LHR),
+//   load.date (2024-07-15), load.username (tomhanks123), load.password (1928374657483921), load.purchaseShare (0.1)
+public class SearchAndPurchaseLoadDriver {
+
+    private static final Pattern FLIGHT_ID = Pattern.compile("data-flight-id=\"(\\d+)\"");
+    private static final Pattern SESSION_COOKIE = Pattern.compile("JSESSIONID=([^;]+)");
+    private static final Pattern TICKET_ID = Pattern.compile("ticketId=([A-Z0-9]+)");
+
+    private final String baseUrl = System.getProperty("load.baseUrl", "http://localhost:8080");
+    private final int users = Integer.getInteger("load.users", 200);
+    private final int durationSeconds = Integer.getInteger("load.durationSeconds", 60);
+    private final String origin = System.getProperty("load.origin", "JFK");
+    private final String destination = System.getProperty("load.destination", "LHR");
+    private final String date = System.getProperty("load.date", "2024-07-15");
+    private final String username = System.getProperty("load.username", "tomhanks123");
+    private final String password = System.getProperty("load.password", "1928374657483921");
+    private final double purchaseShare = Double.parseDouble(System.getProperty("load.purchaseShare", "0.1"));
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .followRedirects(HttpClient.Redirect.NEVER) // Redirects carry the ticket id and the login session, they are read by hand
+            .build();
+    private final Map<String, List<Long>> latencies = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> errors = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) throws Exception {
+        new SearchAndPurchaseLoadDriver().run();
+    }
+
+    private void run() throws Exception {
+        System.out.printf("%d users for %d s against %s, searching %s-%s on %s, %.0f%% of searches purchase%n",
+                users, durationSeconds, baseUrl, origin, destination, date, purchaseShare * 100);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+        ExecutorService executor = Executors.newFixedThreadPool(users);
+        for (int i = 0; i < users; i++) {
+            executor.submit(() -> simulateCustomer(deadline));
+        }
+        executor.shutdown();
+        executor.awaitTermination(durationSeconds + 60L, TimeUnit.SECONDS);
+        report();
+    }
+
+    private void simulateCustomer(long deadline) {
+        String session = login();
+        while (session != null && System.nanoTime() < deadline) {
+            String flightId = search(session);
+            if (flightId != null && ThreadLocalRandom.current().nextDouble() < purchaseShare) {
+                purchase(session, flightId);
+            }
+        }
+    }
+
+    private String login() {
+        HttpResponse<String> response = send("login", form("/login", "username", username, "password", password), null);
+        String session = response == null ? null : response.headers().allValues("Set-Cookie").stream()
+                .map(SESSION_COOKIE::matcher).filter(Matcher::find).map(m -> m.group(1)).findFirst().orElse(null);
+        if (session == null || response.headers().firstValue("Location").orElse("").contains("error")) {
+            failed("login");
+            return null;
+        }
+        return session;
+    }
+
+    private String search(String session) {
+        HttpResponse<String> response = send("search", HttpRequest.newBuilder(URI.create(baseUrl + "/flights/search?originAirport="
+                + origin + "&destinationAirport=" + destination + "&date=" + date)).GET(), session);
+        Matcher matcher = response == null ? null : FLIGHT_ID.matcher(response.body());
+        return matcher != null && matcher.find() ? matcher.group(1) : null;
+    }
+
+    private void purchase(String session, String flightId) {
+        HttpResponse<String> response = send("purchase", form("/purchase", "flightId", flightId, "classType", "ECONOMY"), session);
+        Matcher ticketId = response == null ? null : TICKET_ID.matcher(response.headers().firstValue("Location").orElse(""));
+        if (ticketId == null || !ticketId.find()) {
+            failed("purchase"); // No seat left, or the request failed
+            return;
+        }
+        send("payment", form("/confirm-purchase", "expiryDate", "12/30", "cvv", "123", "ticketId", ticketId.group(1)), session);
+    }
+
+    // Sends a request and records its latency under the given step, returns null and counts an error on failure
+    private HttpResponse<String> send(String step, HttpRequest.Builder request, String session) {
+        if (session != null) {
+            request.header("Cookie", "JSESSIONID=" + session);
+        }
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(request.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+            List<Long> stepLatencies = latencies.computeIfAbsent(step, s -> new ArrayList<>());
+            synchronized (stepLatencies) {
+                stepLatencies.add(System.nanoTime() - start);
+            }
+            if (response.statusCode() >= 400) {
+                failed(step);
+                return null;
+            }
+            return response;
+        } catch (Exception e) {
+            failed(step);
+            return null;
+        }
+    }
+
+    private HttpRequest.Builder form(String path, String... fields) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < fields.length; i += 2) {
+            body.append(i == 0 ? "" : "&").append(fields[i]).append('=').append(URLEncoder.encode(fields[i + 1], StandardCharsets.UTF_8));
+        }
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()));
+    }
+
+    private void failed(String step) {
+        errors.computeIfAbsent(step, s -> new AtomicLong()).incrementAndGet();
+    }
+
+    private void report() {
+        System.out.printf("%-10s %10s %10s %10s %10s %10s %10s %8s%n", "step", "requests", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "errors");
+        for (String step : List.of("login", "search", "purchase", "payment")) {
+            long[] sorted = latencies.getOrDefault(step, List.of()).stream().mapToLong(Long::longValue).sorted().toArray();
+            System.out.printf("%-10s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %8d%n", step, sorted.length, (double) sorted.length / durationSeconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99), percentile(sorted, 1.0),
+                    errors.getOrDefault(step, new AtomicLong()).get());
+        }
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+}
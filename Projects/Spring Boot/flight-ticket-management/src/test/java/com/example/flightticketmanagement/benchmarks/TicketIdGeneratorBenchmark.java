@@ -0,0 +1,57 @@
+package com.example.flightticketmanagement.benchmarks;
+
+import com.example.flightticketmanagement.services.TimeOrderedTicketIdGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// JMH benchmark of ticket id generation, comparing the time-ordered generator with the former random one. Not part of the test run,
+// start it with the main method (from the IDE or with the test classpath) after mvn test-compile
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TicketIdGeneratorBenchmark {
+
+    private final TimeOrderedTicketIdGenerator generator = new TimeOrderedTicketIdGenerator(1);
+
+    @Benchmark
+    public String timeOrdered() {
+        return generator.nextTicketId();
+    }
+
+    // Same generator shared by four threads, shows the cost of contention on its compare-and-set
+    @Benchmark
+    @Threads(4)
+    public String timeOrderedContended() {
+        return generator.nextTicketId();
+    }
+
+    // The former generator: a new Random and a StringBuilder per id, and no uniqueness guarantee
+    @Benchmark
+    public String legacyRandom() {
+        StringBuilder ticketId = new StringBuilder("TCKT");
+        Random random = new Random();
+        for (int i = 0; i < 8; i++) {
+            if (i % 2 == 0) {
+                ticketId.append(random.nextInt(10));
+            } else {
+                ticketId.append((char) (random.nextInt(26) + 'A'));
+            }
+        }
+        return ticketId.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TicketIdGeneratorBenchmark.class.getSimpleName())
+                .addProfiler("gc") // Reports the bytes allocated per id
+                .build()).run();
+    }
+}
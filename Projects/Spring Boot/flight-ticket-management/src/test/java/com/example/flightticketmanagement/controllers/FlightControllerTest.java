@@ -1,5 +1,7 @@
 package com.example.flightticketmanagement.controllers;
 
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -83,4 +85,18 @@ public class FlightControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(view().name("flights"));
     }
-}
\ No newline at end of file
+
+    // Test case for conditional requests to /flights: a browser sending back the ETag of its copy gets 304 without reading the flights
+    @Test
+    public void testGetFlightsNotModified() throws Exception {
+        when(flightRepository.findByFlightStatus(Flight.FlightStatus.SCHEDULED)).thenReturn(List.of());
+        String etag = mockMvc.perform(get("/flights"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "private, no-cache"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/flights").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());  // Asserts that the HTTP status is Not Modified (304)
+        verify(flightRepository, times(1)).findByFlightStatus(Flight.FlightStatus.SCHEDULED);  // Asserts that the flights were read only once
+    }
+}
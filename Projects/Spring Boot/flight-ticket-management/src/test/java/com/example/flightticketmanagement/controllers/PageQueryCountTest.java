@@ -0,0 +1,127 @@
+package com.example.flightticketmanagement.controllers;
+
+import com.example.flightticketmanagement.models.Airline;
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.models.Customer;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.models.UserAccount;
+import com.example.flightticketmanagement.repositories.AirlineRepository;
+import com.example.flightticketmanagement.repositories.AirportRepository;
+import com.example.flightticketmanagement.repositories.CustomerRepository;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import com.example.flightticketmanagement.repositories.TicketRepository;
+import com.example.flightticketmanagement.security.SecurityConfig;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Guards the number of SQL statements the customer facing pages need, so a template touching a lazily loaded relation or a controller
+// falling back to entity lists shows up as a failing test instead of one extra query per row
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+public class PageQueryCountTest {
+
+    private static final String USERNAME = "querycount";
+    private static final int TICKETS = 5;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private AirportRepository airportRepository;
+    @Autowired
+    private AirlineRepository airlineRepository;
+    @Autowired
+    private FlightRepository flightRepository;
+    @Autowired
+    private CustomerRepository customerRepository;
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    private Statistics statistics;
+    private Customer customer;
+    private Flight flight;
+
+    @BeforeEach
+    public void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Airport origin = airportRepository.save(new Airport("QC1", "Query Count One", "City", "Country", 0, 0, "UTC+0"));
+        Airport destination = airportRepository.save(new Airport("QC2", "Query Count Two", "City", "Country", 1, 1, "UTC+0"));
+        Airline airline = airlineRepository.save(new Airline("QC", "Query Count Air", "QC1", "querycountair", "password"));
+        flight = flightRepository.save(new Flight(null, "QC100", airline, origin, destination, LocalDate.now().plusDays(10),
+                LocalTime.of(9, 0), LocalTime.of(11, 0), 100, Flight.FlightStatus.SCHEDULED));
+        customer = customerRepository.save(new Customer(null, "Query", "Count", "Street 1", "+12345678901",
+                "1234567890123", USERNAME, "password"));
+        for (int i = 0; i < TICKETS; i++) {
+            Ticket.BookingStatus bookingStatus = i % 2 == 0 ? Ticket.BookingStatus.PENDING : Ticket.BookingStatus.BOOKED;
+            ticketRepository.save(new Ticket("QCTICKET" + i, customer, flight, Ticket.ClassType.ECONOMY, (8 + i) + "A", bookingStatus, 500));
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ticketRepository.deleteAll(ticketRepository.findByCustomer(customer));
+        customerRepository.delete(customer);
+        flightRepository.delete(flight);
+        airlineRepository.deleteById("QC");
+        airportRepository.deleteAllById(List.of("QC1", "QC2"));
+    }
+
+    // Test that the account page loads the customer by its id and all of its tickets with their flights in two statements
+    @Test
+    public void testAccountPageStatementCount() throws Exception {
+        assertEquals(2, statementsFor("/account"));
+    }
+
+    // Test that the cart loads its tickets with their flights and airlines in one statement
+    @Test
+    public void testCartPageStatementCount() throws Exception {
+        assertEquals(1, statementsFor("/mycart"));
+    }
+
+    // Test that the flights page loads the flights with their airlines and airports in one statement, and the seats of all of them in one more
+    @Test
+    public void testFlightsPageStatementCount() throws Exception {
+        assertEquals(2, statementsFor("/flights"));
+    }
+
+    // Test that the page of all flights needs the same two statements
+    @Test
+    public void testShowAllPageStatementCount() throws Exception {
+        assertEquals(2, statementsFor("/flights/showAll"));
+    }
+
+    // Renders the page as the test customer and returns the number of statements it prepared
+    private long statementsFor(String url) throws Exception {
+        SecurityConfig.CustomUserDetails user = new SecurityConfig.CustomUserDetails(new UserAccount("USER:" + customer.getCustomerId(),
+                USERNAME, "password", "ROLE_USER", customer.getCustomerId().toString(), 1));
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY, new SecurityContextImpl(
+                new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities())));
+        statistics.clear();
+        mockMvc.perform(MockMvcRequestBuilders.get(url).session(session))
+                .andExpect(status().isOk());
+        return statistics.getPrepareStatementCount();
+    }
+}
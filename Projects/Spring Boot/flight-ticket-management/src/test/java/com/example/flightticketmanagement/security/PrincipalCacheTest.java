@@ -0,0 +1,45 @@
+package com.example.flightticketmanagement.security;
+
+import com.example.flightticketmanagement.models.UserAccount;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrincipalCacheTest {
+
+    private final PrincipalCache principalCache = new PrincipalCache();
+
+    // Test that erasing the credentials of the logged-in principal does not reach the cached copy
+    @Test
+    public void testCachedUserKeepsItsPassword() {
+        SecurityConfig.CustomUserDetails user = customer();
+        principalCache.putUserInCache(user);
+        user.eraseCredentials();
+
+        UserDetails cached = principalCache.getUserFromCache("jdoe");
+        assertEquals("secret", cached.getPassword());
+        assertEquals(42L, ((SecurityConfig.CustomUserDetails) cached).getCustomerId());
+
+        principalCache.removeUserFromCache("jdoe");
+        assertNull(principalCache.getUserFromCache("jdoe"));
+    }
+
+    // Test that the id of the logged-in user is read from the security context principal and checked against its role
+    @Test
+    public void testPrincipalIds() {
+        SecurityConfig.CustomUserDetails user = customer();
+        SecurityConfig.CustomUserDetails resolved = SecurityConfig.CustomUserDetails.of(
+                new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+
+        assertSame(user, resolved);
+        assertEquals(42L, resolved.getCustomerId());
+        assertThrows(IllegalStateException.class, resolved::getIataCode);
+        assertThrows(IllegalStateException.class, () -> SecurityConfig.CustomUserDetails.of(() -> "jdoe"));
+    }
+
+    private static SecurityConfig.CustomUserDetails customer() {
+        return new SecurityConfig.CustomUserDetails(new UserAccount("USER:42", "jdoe", "secret", "ROLE_USER", "42", 1));
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.repositories.AirportRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AirportAutocompleteIndexTest {
+
+    private final Airport jfkAirport = new Airport("JFK", "John F. Kennedy International Airport", "New York", "USA", 40.6413, -73.7781, "UTC-5");
+    private final Airport lgaAirport = new Airport("LGA", "LaGuardia Airport", "New York", "USA", 40.7769, -73.8740, "UTC-5");
+    private final Airport ewrAirport = new Airport("EWR", "Newark Liberty International Airport", "Newark", "USA", 40.6895, -74.1745, "UTC-5");
+    private final Airport lhrAirport = new Airport("LHR", "Heathrow Airport", "London", "United Kingdom", 51.4700, -0.4543, "UTC+0");
+    private final Airport lgbAirport = new Airport("LGB", "Long Beach Airport", "Long Beach", "USA", 33.8177, -118.1516, "UTC-8");
+    private final Airport gruAirport = new Airport("GRU", "São Paulo/Guarulhos International Airport", "São Paulo", "Brazil", -23.4356, -46.4731, "UTC-3");
+    private final Airport zrhAirport = new Airport("ZRH", "Zürich Airport", "Zürich", "Switzerland", 47.4582, 8.5555, "UTC+1");
+
+    private AirportRepository airportRepository;
+    private AirportAutocompleteIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        airportRepository = mock(AirportRepository.class);
+        when(airportRepository.findAll()).thenReturn(List.of(jfkAirport, lgaAirport, ewrAirport, lhrAirport, lgbAirport, gruAirport, zrhAirport));
+        index = new AirportAutocompleteIndex(airportRepository);
+        index.rebuild();
+    }
+
+    // Test that codes come before cities, cities before names and names before countries, whole words before partial ones
+    @Test
+    public void testRanking() {
+        assertEquals(List.of("LGB", "LHR"), codes(index.suggest("lon", 10)));
+        assertEquals(List.of("LHR"), codes(index.suggest("london", 10)));
+        assertEquals(List.of("LGA", "LGB"), codes(index.suggest("LG", 10)));
+        assertEquals(List.of("JFK", "LGA", "EWR"), codes(index.suggest("new", 10)));
+        assertEquals(List.of("JFK", "LGA"), codes(index.suggest("new york", 10)));
+        assertEquals(List.of("EWR", "JFK"), codes(index.suggest("international usa", 10)));
+        assertEquals(List.of("LHR"), codes(index.suggest("united k", 10)));
+        assertEquals(List.of("JFK"), codes(index.suggest("new", 1)));
+    }
+
+    // Test that case, accents and punctuation are ignored on both sides
+    @Test
+    public void testFolding() {
+        assertEquals(List.of("GRU"), codes(index.suggest("sao p", 10)));
+        assertEquals(List.of("GRU"), codes(index.suggest("SÃO", 10)));
+        assertEquals(List.of("ZRH"), codes(index.suggest("zurich", 10)));
+        assertEquals(List.of("GRU"), codes(index.suggest("guarulhos", 10)));
+        assertArrayEquals(new String[]{"zurich", "kloten"}, AirportAutocompleteIndex.split("Zürich-Kloten"));
+    }
+
+    // Test that empty and unknown text suggest nothing, that bad limits are refused and that a rebuild picks up renamed airports
+    @Test
+    public void testEmptyLimitsAndRebuild() {
+        assertTrue(index.suggest("  ", 10).isEmpty());
+        assertTrue(index.suggest(null, 10).isEmpty());
+        assertTrue(index.suggest("xyz", 10).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> index.suggest("lon", 0));
+        assertThrows(IllegalArgumentException.class, () -> index.suggest("lon", AirportAutocompleteIndex.MAX_SUGGESTIONS + 1));
+
+        Airport renamed = new Airport("LHR", "London Heathrow Airport", "Hounslow", "United Kingdom", 51.4700, -0.4543, "UTC+0");
+        when(airportRepository.findAll()).thenReturn(List.of(renamed));
+        index.rebuild();
+        assertEquals(List.of("LHR"), codes(index.suggest("houn", 10)));
+        assertEquals("London Heathrow Airport", index.suggest("lon", 10).get(0).airportName());
+    }
+
+    private static List<String> codes(List<AirportAutocompleteIndex.Suggestion> suggestions) {
+        return suggestions.stream().map(AirportAutocompleteIndex.Suggestion::airportCode).toList();
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.repositories.AirportRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AirportGeoIndexTest {
+
+    private final Airport jfkAirport = new Airport("JFK", "John F. Kennedy International Airport", "New York", "USA", 40.6413, -73.7781, "UTC-5");
+    private final Airport lgaAirport = new Airport("LGA", "LaGuardia Airport", "New York", "USA", 40.7769, -73.8740, "UTC-5");
+    private final Airport ewrAirport = new Airport("EWR", "Newark Liberty International Airport", "Newark", "USA", 40.6895, -74.1745, "UTC-5");
+    private final Airport bosAirport = new Airport("BOS", "Logan International Airport", "Boston", "USA", 42.3656, -71.0096, "UTC-5");
+    private final Airport lhrAirport = new Airport("LHR", "Heathrow Airport", "London", "United Kingdom", 51.4700, -0.4543, "UTC+0");
+    private final Airport lgwAirport = new Airport("LGW", "Gatwick Airport", "London", "United Kingdom", 51.1537, -0.1821, "UTC+0");
+
+    private AirportRepository airportRepository;
+    private AirportGeoIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        airportRepository = mock(AirportRepository.class);
+        index = new AirportGeoIndex(airportRepository, 150);
+    }
+
+    // Test that the airports of a city are found around each other, the requested airport first
+    @Test
+    public void testNearby() {
+        when(airportRepository.findAll()).thenReturn(List.of(jfkAirport, lgaAirport, ewrAirport, bosAirport, lhrAirport, lgwAirport));
+        index.rebuild();
+
+        assertEquals(List.of("JFK", "LGA", "EWR"), codes(index.nearby("JFK")));
+        assertEquals(0, index.nearby("JFK").get(0).distanceKm());
+        assertEquals(List.of("LHR", "LGW"), codes(index.nearby("LHR")));
+        assertEquals(List.of("JFK", "LGA", "EWR", "BOS"), codes(index.nearby("JFK", 400)));
+        assertTrue(index.nearby("XXX").isEmpty());
+        // JFK to Heathrow is about 5,540 km
+        assertEquals(5540, AirportGeoIndex.distanceKm(40.6413, -73.7781, 51.4700, -0.4543), 10);
+        assertEquals(List.of("LHR", "LGW"), codes(index.nearest(51.5074, -0.1278, 2))); // Central London
+    }
+
+    // Test that a rebuild picks up moved airports
+    @Test
+    public void testRebuildAfterMove() {
+        when(airportRepository.findAll()).thenReturn(List.of(jfkAirport, lgaAirport, bosAirport));
+        index.rebuild();
+        assertEquals(List.of("BOS"), codes(index.nearby("BOS")));
+
+        Airport movedBoston = new Airport("BOS", "Logan International Airport", "Boston", "USA", 40.70, -73.90, "UTC-5");
+        when(airportRepository.findAll()).thenReturn(List.of(jfkAirport, lgaAirport, movedBoston));
+        index.rebuild();
+        assertEquals(List.of("BOS", "LGA", "JFK"), codes(index.nearby("BOS")));
+    }
+
+    // Test that radius and nearest neighbour searches return exactly what a scan of every airport returns, including near the poles
+    // and across the antimeridian
+    @Test
+    public void testMatchesFullScan() {
+        Random random = new Random(42);
+        List<Airport> airports = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            double latitude = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1)); // Uniform over the sphere
+            airports.add(new Airport("A" + i, null, null, null, latitude, random.nextDouble() * 360 - 180, null));
+        }
+        when(airportRepository.findAll()).thenReturn(airports);
+        index.rebuild();
+
+        double[][] targets = {{0, 179.9}, {0, -179.9}, {89.5, 10}, {-89.5, -120}, {40.6, -73.8}, {51.5, -0.1}};
+        for (int t = 0; t < 200; t++) {
+            double[] target = t < targets.length ? targets[t] : new double[]{random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180};
+            List<Airport> byDistance = new ArrayList<>(airports);
+            byDistance.sort(Comparator.comparingDouble(a -> AirportGeoIndex.distanceKm(target[0], target[1], a.getLatitude(), a.getLongitude())));
+
+            List<String> expectedNearest = byDistance.subList(0, 7).stream().map(Airport::getAirportCode).toList();
+            assertEquals(expectedNearest, codes(index.nearest(target[0], target[1], 7)));
+
+            List<String> expectedWithin = byDistance.stream()
+                    .filter(a -> AirportGeoIndex.distanceKm(target[0], target[1], a.getLatitude(), a.getLongitude()) <= 400)
+                    .map(Airport::getAirportCode).toList();
+            List<AirportGeoIndex.NearbyAirport> within = index.withinRadius(target[0], target[1], 400);
+            assertEquals(expectedWithin, codes(within));
+            for (AirportGeoIndex.NearbyAirport nearbyAirport : within) {
+                Airport airport = nearbyAirport.airport();
+                assertEquals(AirportGeoIndex.distanceKm(target[0], target[1], airport.getLatitude(), airport.getLongitude()), nearbyAirport.distanceKm(), 0.001);
+            }
+        }
+    }
+
+    private static List<String> codes(List<AirportGeoIndex.NearbyAirport> airports) {
+        return airports.stream().map(nearbyAirport -> nearbyAirport.airport().getAirportCode()).toList();
+    }
+}
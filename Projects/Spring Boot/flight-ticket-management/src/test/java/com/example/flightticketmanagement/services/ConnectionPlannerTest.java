@@ -0,0 +1,156 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.FlightChangedEvent;
+import com.example.flightticketmanagement.events.SeatInventoryChangedEvent;
+import com.example.flightticketmanagement.models.Airline;
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConnectionPlannerTest {
+
+    private final Airline airline = new Airline("AA", "American Airlines", "DFW", "userAmerican", "passAmerican123");
+    private final Airport jfkAirport = new Airport("JFK", "John F. Kennedy International Airport", "New York", "USA", 40.6413, -73.7781, "UTC-5");
+    private final Airport lhrAirport = new Airport("LHR", "Heathrow Airport", "London", "United Kingdom", 51.4700, -0.4543, "UTC+0");
+    private final Airport cdgAirport = new Airport("CDG", "Charles de Gaulle Airport", "Paris", "France", 49.0097, 2.5479, "UTC+1");
+    private final Airport tlvAirport = new Airport("TLV", "Ben Gurion Airport", "Tel Aviv", "Israel", 32.0055, 34.8854, "UTC+2");
+    private final Airport bomAirport = new Airport("BOM", "Chhatrapati Shivaji Maharaj International Airport", "Mumbai", "India", 19.0896, 72.8656, "UTC+5:30");
+    private final LocalDate date = LocalDate.of(2024, 7, 10);
+
+    private FlightRepository flightRepository;
+    private ConnectionPlanner planner;
+    private final List<Flight> flights = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        flightRepository = mock(FlightRepository.class);
+        when(flightRepository.findWithRouteByFlightStatus(Flight.FlightStatus.SCHEDULED)).thenReturn(flights);
+        planner = new ConnectionPlanner(flightRepository, 45, 12, 1000, 10);
+    }
+
+    // Test that an overnight eastbound flight lands on the next day, in the time zone of its destination
+    @Test
+    public void testLegTimesUseAirportTimeZones() {
+        // JFK 18:00 (23:00 UTC) to LHR 06:00 (06:00 UTC) the next day: 7 hours in the air
+        flights.add(flight(1L, "AA100", jfkAirport, lhrAirport, date, LocalTime.of(18, 0), LocalTime.of(6, 0)));
+        flights.add(flight(2L, "AA200", lhrAirport, bomAirport, date.plusDays(1), LocalTime.of(9, 0), LocalTime.of(23, 0)));
+        planner.rebuild();
+
+        ConnectionPlanner.Itinerary itinerary = planner.plan("JFK", "BOM", date, 1).itineraries().get(0);
+        ConnectionPlanner.Leg first = itinerary.legs().get(0);
+        assertEquals(date.plusDays(1), first.arrival().toLocalDate());
+        assertEquals(ZoneOffset.UTC, first.arrival().getOffset());
+        assertEquals(Duration.ofHours(7), Duration.between(first.departure(), first.arrival()));
+        assertEquals(ZoneOffset.ofHoursMinutes(5, 30), itinerary.arrival().getOffset());
+        assertEquals(List.of(Duration.ofHours(3)), itinerary.layovers());
+    }
+
+    // Test that a connection shorter than the minimum connection time, or longer than the maximum layover, is not offered
+    @Test
+    public void testConnectionTimeLimits() {
+        flights.add(flight(1L, "AA100", jfkAirport, lhrAirport, date, LocalTime.of(8, 0), LocalTime.of(20, 0)));
+        flights.add(flight(2L, "AA201", lhrAirport, tlvAirport, date, LocalTime.of(20, 30), LocalTime.of(3, 30))); // 30 minutes
+        flights.add(flight(3L, "AA202", lhrAirport, tlvAirport, date, LocalTime.of(21, 0), LocalTime.of(4, 0)));   // 1 hour
+        flights.add(flight(4L, "AA203", lhrAirport, tlvAirport, date.plusDays(1), LocalTime.of(10, 0), LocalTime.of(17, 0))); // 14 hours
+        planner.rebuild();
+
+        ConnectionPlanner.Plan plan = planner.plan("JFK", "TLV", date, 1);
+        assertEquals(List.of("AA202"), secondLegs(plan));
+        assertFalse(plan.truncated());
+    }
+
+    // Test that two-stop itineraries are found only when asked for, and are ranked by arrival with direct flights left out
+    @Test
+    public void testTwoStopsAndRanking() {
+        flights.add(flight(1L, "AA100", jfkAirport, lhrAirport, date, LocalTime.of(8, 0), LocalTime.of(20, 0)));
+        flights.add(flight(2L, "AA300", lhrAirport, cdgAirport, date, LocalTime.of(21, 30), LocalTime.of(23, 45)));
+        flights.add(flight(3L, "AA400", cdgAirport, bomAirport, date.plusDays(1), LocalTime.of(1, 0), LocalTime.of(13, 0)));
+        flights.add(flight(4L, "AA500", lhrAirport, bomAirport, date.plusDays(1), LocalTime.of(7, 0), LocalTime.of(20, 0)));
+        flights.add(flight(5L, "AA999", jfkAirport, bomAirport, date, LocalTime.of(9, 0), LocalTime.of(8, 0)));
+        planner.rebuild();
+
+        assertEquals(List.of("AA100 AA500"), flightNumbers(planner.plan("JFK", "BOM", date, 1)));
+        assertEquals(List.of("AA100 AA300 AA400", "AA100 AA500"), flightNumbers(planner.plan("JFK", "BOM", date, 2)));
+        assertTrue(planner.plan("JFK", "BOM", date.plusDays(1), 2).itineraries().isEmpty());
+    }
+
+    // Test that edits, cancellations and new flights are applied without rebuilding the timetable
+    @Test
+    public void testIncrementalUpdates() {
+        Flight first = flight(1L, "AA100", jfkAirport, lhrAirport, date, LocalTime.of(8, 0), LocalTime.of(20, 0));
+        Flight second = flight(2L, "AA202", lhrAirport, tlvAirport, date, LocalTime.of(21, 0), LocalTime.of(4, 0));
+        planner.onFlightChanged(new FlightChangedEvent(this, first, false));
+        planner.onFlightChanged(new FlightChangedEvent(this, second, false));
+        assertEquals(List.of("AA100 AA202"), flightNumbers(planner.plan("JFK", "TLV", date, 1)));
+
+        second.setDepartureTimeLocal(LocalTime.of(20, 15)); // Now too short a connection
+        planner.onFlightChanged(new FlightChangedEvent(this, second, false));
+        assertTrue(planner.plan("JFK", "TLV", date, 1).itineraries().isEmpty());
+
+        second.setDepartureTimeLocal(LocalTime.of(22, 0));
+        planner.onFlightChanged(new FlightChangedEvent(this, second, false));
+        assertEquals(List.of("AA100 AA202"), flightNumbers(planner.plan("JFK", "TLV", date, 1)));
+
+        first.setFlightStatus(Flight.FlightStatus.CANCELLED);
+        planner.onFlightChanged(new FlightChangedEvent(this, first, false));
+        assertTrue(planner.plan("JFK", "TLV", date, 1).itineraries().isEmpty());
+        planner.onFlightChanged(new FlightChangedEvent(this, second, true));
+        assertEquals(0, planner.size());
+    }
+
+    // Test that sold-out flights are left out of the itineraries until seats are released, whichever leg they are
+    @Test
+    public void testSoldOutLegs() {
+        flights.add(flight(1L, "AA100", jfkAirport, lhrAirport, date, LocalTime.of(8, 0), LocalTime.of(20, 0)));
+        flights.add(flight(2L, "AA202", lhrAirport, tlvAirport, date, LocalTime.of(21, 0), LocalTime.of(4, 0)));
+        Flight soldOut = flight(3L, "AA204", lhrAirport, tlvAirport, date, LocalTime.of(22, 0), LocalTime.of(5, 0));
+        soldOut.setRemainingTickets(0);
+        flights.add(soldOut);
+        planner.rebuild();
+        assertEquals(List.of("AA100 AA202"), flightNumbers(planner.plan("JFK", "TLV", date, 1)));
+
+        planner.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 1L, -150));
+        assertTrue(planner.plan("JFK", "TLV", date, 1).itineraries().isEmpty());
+
+        planner.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 1L, 1));
+        planner.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 3L, 2));
+        assertEquals(List.of("AA100 AA202", "AA100 AA204"), flightNumbers(planner.plan("JFK", "TLV", date, 1)));
+    }
+
+    // Test that the time zones stored on airports are read, and unreadable ones are rejected
+    @Test
+    public void testZoneOf() {
+        assertEquals(ZoneOffset.ofHours(-5), ConnectionPlanner.zoneOf(jfkAirport));
+        assertEquals(ZoneOffset.ofHoursMinutes(5, 30), ConnectionPlanner.zoneOf(bomAirport));
+        assertEquals(ZoneOffset.UTC, ConnectionPlanner.zoneOf(lhrAirport));
+        assertEquals("Europe/Paris", ConnectionPlanner.zoneOf(new Airport("CDG", null, null, null, 0, 0, "Europe/Paris")).getId());
+        assertNull(ConnectionPlanner.zoneOf(new Airport("XXX", null, null, null, 0, 0, "somewhere")));
+    }
+
+    private Flight flight(Long id, String flightNumber, Airport origin, Airport destination, LocalDate flightDate, LocalTime departure, LocalTime landing) {
+        return new Flight(id, flightNumber, airline, origin, destination, flightDate, departure, landing, 150, Flight.FlightStatus.SCHEDULED);
+    }
+
+    private static List<String> flightNumbers(ConnectionPlanner.Plan plan) {
+        return plan.itineraries().stream()
+                .map(itinerary -> String.join(" ", itinerary.legs().stream().map(leg -> leg.flight().getFlightNumber()).toList()))
+                .toList();
+    }
+
+    private static List<String> secondLegs(ConnectionPlanner.Plan plan) {
+        return plan.itineraries().stream().map(itinerary -> itinerary.legs().get(1).flight().getFlightNumber()).toList();
+    }
+}
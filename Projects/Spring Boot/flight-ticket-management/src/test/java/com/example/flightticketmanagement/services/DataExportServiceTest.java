@@ -0,0 +1,139 @@
+package com.example.flightticketmanagement.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class DataExportServiceTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private PreparedStatement statement;
+    private DataExportService exportService;
+    // Rows returned by the test database, and the SQL of the last query
+    private final List<Object[]> rows = new ArrayList<>();
+    private String sql;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        statement = mock(PreparedStatement.class);
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString(), anyInt(), anyInt())).thenAnswer(invocation -> {
+            sql = invocation.getArgument(0);
+            return statement;
+        });
+        doAnswer(invocation -> {
+            invocation.<PreparedStatementCreator>getArgument(0).createPreparedStatement(connection);
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (Object[] row : rows) {
+                ResultSet resultSet = mock(ResultSet.class);
+                when(resultSet.getObject(anyInt())).thenAnswer(get -> row[get.<Integer>getArgument(0) - 1]);
+                handler.processRow(resultSet);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        exportService = new DataExportService(jdbcTemplate, TransactionOperations.withoutTransaction(), 500);
+    }
+
+    // Test that a filtered flight export reads from a cursor and writes the rows as CSV, text that looks like a formula written as text
+    @Test
+    public void testCsvExport() throws Exception {
+        rows.add(new Object[]{1L, "BA117", "BA", "JFK", "LHR", java.sql.Date.valueOf("2024-07-15"), java.sql.Time.valueOf("18:30:00"), java.sql.Time.valueOf("06:35:00"), 200, "SCHEDULED"});
+        rows.add(new Object[]{2L, "BA \"Red\", 2", "BA", "LHR", "JFK", java.sql.Date.valueOf("2024-07-16"), null, null, 0, "CANCELLED"});
+        rows.add(new Object[]{3L, "=HYPERLINK(\"http://x\",\"BA\")", "BA", "-JFK", "@LHR", null, null, null, -1, "+1"});
+
+        DataExportService.Export export = exportService.prepare(DataExportService.Dataset.FLIGHTS,
+                new DataExportService.Filter(LocalDate.of(2024, 7, 1), LocalDate.of(2024, 7, 31), "ba", "scheduled"), DataExportService.Format.CSV);
+        String csv = write(export);
+
+        assertEquals("flights.csv", export.getFileName());
+        assertEquals("SELECT id, flight_number, airline_iata_code, origin_airport_code, destination_airport_code, date, departure_time_local, landing_time_local, " +
+                "remaining_tickets, flight_status FROM flight WHERE date >= ? AND date <= ? AND airline_iata_code = ? AND flight_status = ? ORDER BY id", sql);
+        verify(statement).setFetchSize(500);
+        verify(statement).setObject(1, LocalDate.of(2024, 7, 1));
+        verify(statement).setObject(3, "BA");
+        verify(statement).setObject(4, "SCHEDULED");
+        assertEquals(List.of(
+                "id,flight_number,airline,origin,destination,date,departure_time,landing_time,remaining_tickets,flight_status",
+                "1,BA117,BA,JFK,LHR,2024-07-15,18:30,06:35,200,SCHEDULED",
+                "2,\"BA \"\"Red\"\", 2\",BA,LHR,JFK,2024-07-16,,,0,CANCELLED",
+                "3,\"'=HYPERLINK(\"\"http://x\"\",\"\"BA\"\")\",BA,'-JFK,'@LHR,,,,-1,'+1"), csv.lines().toList());
+    }
+
+    // Test that a ticket export is written as a JSON array of objects keyed by column
+    @Test
+    public void testJsonExport() throws Exception {
+        rows.add(new Object[]{"TCKT1", 7L, "tomhanks123", 1L, "BA117", "BA", java.sql.Date.valueOf("2024-07-15"), "ECONOMY", "10A", "BOOKED",
+                new BigDecimal("512.30"), null});
+
+        String json = write(exportService.prepare(DataExportService.Dataset.TICKETS,
+                new DataExportService.Filter(null, null, null, "BOOKED"), DataExportService.Format.JSON));
+
+        assertTrue(sql.endsWith("WHERE t.booking_status = ? ORDER BY t.ticket_id"));
+        JsonNode tickets = new ObjectMapper().readTree(json);
+        assertEquals(1, tickets.size());
+        assertEquals("TCKT1", tickets.get(0).get("ticket_id").asText());
+        assertEquals("2024-07-15", tickets.get(0).get("date").asText());
+        assertEquals(512.30, tickets.get(0).get("price").asDouble());
+        assertTrue(tickets.get(0).get("hold_expires_at").isNull());
+    }
+
+    // Test that customer exports leave out the passwords and card numbers, and that filters are checked before anything is written
+    @Test
+    public void testInvalidExports() throws Exception {
+        write(exportService.prepare(DataExportService.Dataset.CUSTOMERS, new DataExportService.Filter(null, null, null, null), DataExportService.Format.CSV));
+        assertFalse(sql.contains("password"));
+        assertFalse(sql.contains("credit_card"));
+
+        assertThrows(IllegalArgumentException.class, () -> exportService.prepare(DataExportService.Dataset.TICKETS,
+                new DataExportService.Filter(null, null, null, "LOST"), DataExportService.Format.CSV));
+        assertThrows(IllegalArgumentException.class, () -> exportService.prepare(DataExportService.Dataset.FLIGHTS,
+                new DataExportService.Filter(LocalDate.of(2024, 7, 31), LocalDate.of(2024, 7, 1), null, null), DataExportService.Format.CSV));
+        assertThrows(IllegalArgumentException.class, () -> exportService.prepare(DataExportService.Dataset.CUSTOMERS,
+                new DataExportService.Filter(null, null, "BA", null), DataExportService.Format.CSV));
+    }
+
+    // Test that a client going away stops the export with its IOException
+    @Test
+    public void testClientGone() {
+        for (int i = 0; i < 10_000; i++) {
+            rows.add(new Object[]{(long) i, "A", "B", "C", "D", "E"});
+        }
+        OutputStream closed = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        DataExportService.Export export = exportService.prepare(DataExportService.Dataset.CUSTOMERS,
+                new DataExportService.Filter(null, null, null, null), DataExportService.Format.CSV);
+        assertThrows(IOException.class, () -> export.writeTo(closed));
+    }
+
+    private static String write(DataExportService.Export export) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        export.writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.FlightChangedEvent;
+import com.example.flightticketmanagement.events.SeatInventoryChangedEvent;
+import com.example.flightticketmanagement.models.Airline;
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DynamicFareCalculatorTest {
+
+    private final Airline aaAirline = new Airline("AA", "American Airlines", "DFW", "userAmerican", "passAmerican123");
+    private final Airport jfkAirport = new Airport("JFK", "John F. Kennedy International Airport", "New York", "USA", 40.6413, -73.7781, "UTC-5");
+    private final Airport bosAirport = new Airport("BOS", "Logan International Airport", "Boston", "USA", 42.3656, -71.0096, "UTC-5");
+    private final Airport lhrAirport = new Airport("LHR", "Heathrow Airport", "London", "United Kingdom", 51.4700, -0.4543, "UTC+0");
+    private final LocalDate today = LocalDate.of(2024, 6, 1);
+
+    private final DynamicFareCalculator calculator =
+            new DynamicFareCalculator(Clock.fixed(today.atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+
+    // Test that fares grow with the route distance and the class
+    @Test
+    public void testDistanceAndClass() {
+        Flight longHaul = flight(1L, jfkAirport, lhrAirport, today.plusDays(30), 208);
+        Flight shortHaul = flight(2L, jfkAirport, bosAirport, today.plusDays(30), 208);
+
+        // Empty flight a month ahead: distance fare with the 15% empty flight discount
+        assertEquals(Math.round((60 + 0.085 * 5540) * 0.85 * 100) / 100.0, calculator.fareFor(longHaul, Ticket.ClassType.ECONOMY), 5);
+        assertTrue(calculator.fareFor(shortHaul, Ticket.ClassType.ECONOMY) < calculator.fareFor(longHaul, Ticket.ClassType.ECONOMY) / 3);
+        double economy = calculator.fareFor(longHaul, Ticket.ClassType.ECONOMY);
+        assertEquals(economy * 2.8, calculator.fareFor(longHaul, Ticket.ClassType.BUSINESS), 0.05);
+        assertEquals(economy * 4.5, calculator.fareFor(longHaul, Ticket.ClassType.FIRST), 0.05);
+        // Without coordinates the route is priced at the default fare
+        Flight unknownRoute = flight(3L, null, null, today.plusDays(30), 208);
+        assertEquals(DynamicFareCalculator.DEFAULT_DISTANCE_FARE * 0.85, calculator.fareFor(unknownRoute, Ticket.ClassType.ECONOMY), 0.01);
+    }
+
+    // Test that late bookings pay more than early ones
+    @Test
+    public void testDaysBeforeDeparture() {
+        double early = calculator.fareFor(flight(1L, jfkAirport, lhrAirport, today.plusDays(90), 208), Ticket.ClassType.ECONOMY);
+        double month = calculator.fareFor(flight(2L, jfkAirport, lhrAirport, today.plusDays(30), 208), Ticket.ClassType.ECONOMY);
+        double week = calculator.fareFor(flight(3L, jfkAirport, lhrAirport, today.plusDays(10), 208), Ticket.ClassType.ECONOMY);
+        double tomorrow = calculator.fareFor(flight(4L, jfkAirport, lhrAirport, today.plusDays(1), 208), Ticket.ClassType.ECONOMY);
+        assertTrue(early < month && month < week && week < tomorrow);
+        assertEquals(month * 1.5, tomorrow, 0.05);
+    }
+
+    // Test that seat sales and releases reprice the cached curve, and that a flight edit recomputes it
+    @Test
+    public void testRepricingWithInventory() {
+        Flight flight = flight(1L, jfkAirport, lhrAirport, today.plusDays(30), 208);
+        double empty = calculator.fareFor(flight, Ticket.ClassType.ECONOMY);
+
+        calculator.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 1L, -104));
+        double halfFull = calculator.fareFor(flight, Ticket.ClassType.ECONOMY);
+        assertEquals(empty / 0.85 * DynamicFareCalculator.loadMultiplier(0.5), halfFull, 0.05);
+        calculator.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 1L, -104));
+        assertEquals(empty / 0.85 * 1.75, calculator.fareFor(flight, Ticket.ClassType.ECONOMY), 0.05);
+        calculator.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 1L, 104));
+        assertEquals(halfFull, calculator.fareFor(flight, Ticket.ClassType.ECONOMY), 0.001);
+
+        // The cached curve is kept until the flight itself changes
+        flight.setDestinationAirport(bosAirport);
+        assertEquals(halfFull, calculator.fareFor(flight, Ticket.ClassType.ECONOMY), 0.001);
+        calculator.onFlightChanged(new FlightChangedEvent(this, flight, false));
+        assertTrue(calculator.fareFor(flight, Ticket.ClassType.ECONOMY) < halfFull / 3);
+    }
+
+    // Test that the share sold is taken from the flight's own seat capacity, so a small flight is not priced as partly sold
+    @Test
+    public void testSeatCapacity() {
+        double empty = calculator.fareFor(flight(1L, jfkAirport, lhrAirport, today.plusDays(30), 208), Ticket.ClassType.ECONOMY);
+        Flight small = flight(2L, jfkAirport, lhrAirport, today.plusDays(30), 150);
+        assertEquals(empty, calculator.fareFor(small, Ticket.ClassType.ECONOMY), 0.001);
+
+        Flight halfSold = flight(3L, jfkAirport, lhrAirport, today.plusDays(30), 75);
+        halfSold.setSeatCapacity(150);
+        assertEquals(empty / 0.85 * DynamicFareCalculator.loadMultiplier(0.5), calculator.fareFor(halfSold, Ticket.ClassType.ECONOMY), 0.05);
+    }
+
+    // Test that concurrent sales and releases on one flight leave the fare exactly where the inventory is
+    @Test
+    public void testConcurrentInventoryChanges() throws Exception {
+        Flight flight = flight(1L, jfkAirport, lhrAirport, today.plusDays(30), 208);
+        double initial = calculator.fareFor(flight, Ticket.ClassType.ECONOMY);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    calculator.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 1L, -1));
+                    calculator.fareFor(flight, Ticket.ClassType.ECONOMY);
+                    calculator.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 1L, 1));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertEquals(initial, calculator.fareFor(flight, Ticket.ClassType.ECONOMY));
+    }
+
+    private Flight flight(Long id, Airport origin, Airport destination, LocalDate date, int remainingTickets) {
+        return new Flight(id, "AA101", aaAirline, origin, destination, date, LocalTime.of(8, 0), LocalTime.of(20, 0), remainingTickets, Flight.FlightStatus.SCHEDULED);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Airline;
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FlexibleDateSearchServiceTest {
+
+    private final Airline aaAirline = new Airline("AA", "American Airlines", "DFW", "userAmerican", "passAmerican123");
+    private final Airport jfkAirport = new Airport("JFK", "John F. Kennedy International Airport", "New York", "USA", 40.6413, -73.7781, "UTC-5");
+    private final Airport lhrAirport = new Airport("LHR", "Heathrow Airport", "London", "United Kingdom", 51.4700, -0.4543, "UTC+0");
+    private final LocalDate date = LocalDate.of(2024, 7, 10);
+
+    // Fares by flight number, the AA103 evening flight is the cheapest of its day
+    private final Map<String, Double> fares = Map.of("AA101", 620.0, "AA103", 480.0, "AA105", 550.0, "AA107", 550.0);
+
+    private FlexibleDateSearchService service;
+
+    @BeforeEach
+    public void setUp() {
+        FlightRepository flightRepository = mock(FlightRepository.class);
+        when(flightRepository.findWithRouteByFlightStatus(Flight.FlightStatus.SCHEDULED)).thenReturn(List.of(
+                flight(1L, "AA101", date, LocalTime.of(8, 0)),
+                flight(2L, "AA103", date, LocalTime.of(18, 0)),
+                flight(3L, "AA105", date.plusDays(2), LocalTime.of(12, 0)),
+                flight(4L, "AA107", date.plusDays(2), LocalTime.of(9, 0)),
+                flight(5L, "AA109", date.plusDays(5), LocalTime.of(9, 0)))); // Outside of a three-day window
+        FlightSearchIndex index = new FlightSearchIndex(flightRepository);
+        index.rebuild();
+        service = new FlexibleDateSearchService(index, (flight, classType) -> fares.getOrDefault(flight.getFlightNumber(), 500.0));
+    }
+
+    // Test that a window returns the flights of every day in date and time order, with one summary per day including empty days
+    @Test
+    public void testWindowSearch() {
+        FlexibleDateSearchService.FlexibleDateResult result = service.search("JFK", "LHR", date.plusDays(1), 1);
+
+        assertEquals(List.of(1L, 2L, 4L, 3L), result.flights().stream().map(Flight::getId).toList());
+        assertEquals(List.of(date, date.plusDays(1), date.plusDays(2)), result.days().stream().map(FlexibleDateSearchService.DaySummary::date).toList());
+        FlexibleDateSearchService.DaySummary empty = result.days().get(1);
+        assertEquals(0, empty.flightCount());
+        assertNull(empty.cheapestFlight());
+        assertNull(empty.lowestFare());
+        assertNull(empty.earliestFlight());
+    }
+
+    // Test that every day names its cheapest and its earliest flight, and that a fare tie goes to the earlier flight
+    @Test
+    public void testDaySummaries() {
+        FlexibleDateSearchService.FlexibleDateResult result = service.search("JFK", "LHR", date.plusDays(1), 1);
+
+        FlexibleDateSearchService.DaySummary first = result.days().get(0);
+        assertEquals(2, first.flightCount());
+        assertEquals("AA103", first.cheapestFlight().getFlightNumber());
+        assertEquals(480.0, first.lowestFare(), 0.0001);
+        assertEquals("AA101", first.earliestFlight().getFlightNumber());
+
+        FlexibleDateSearchService.DaySummary third = result.days().get(2);
+        assertEquals("AA107", third.cheapestFlight().getFlightNumber());
+        assertEquals("AA107", third.earliestFlight().getFlightNumber());
+    }
+
+    // Test that the window is clamped to the widest allowed and that no flexibility searches the exact date only
+    @Test
+    public void testWindowBounds() {
+        assertEquals(2 * FlexibleDateSearchService.MAX_FLEX_DAYS + 1, service.search("JFK", "LHR", date, 30).days().size());
+        FlexibleDateSearchService.FlexibleDateResult exact = service.search("JFK", "LHR", date, 0);
+        assertEquals(1, exact.days().size());
+        assertEquals(List.of(1L, 2L), exact.flights().stream().map(Flight::getId).toList());
+        assertTrue(service.search("LHR", "JFK", date, 3).flights().isEmpty());
+    }
+
+    private Flight flight(Long id, String flightNumber, LocalDate flightDate, LocalTime departure) {
+        return new Flight(id, flightNumber, aaAirline, jfkAirport, lhrAirport, flightDate, departure, departure.plusHours(7), 150, Flight.FlightStatus.SCHEDULED);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.FlightCancelledEvent;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import com.example.flightticketmanagement.repositories.TicketRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class FlightCancellationServiceTest {
+
+    private FlightRepository flightRepository;
+    private TicketRepository ticketRepository;
+    private SeatInventoryService seatInventoryService;
+    private ApplicationEventPublisher eventPublisher;
+    private FlightCancellationService flightCancellationService;
+
+    @BeforeEach
+    public void setUp() {
+        flightRepository = mock(FlightRepository.class);
+        ticketRepository = mock(TicketRepository.class);
+        seatInventoryService = mock(SeatInventoryService.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        flightCancellationService = new FlightCancellationService(flightRepository, ticketRepository, seatInventoryService, eventPublisher);
+    }
+
+    // Test that the tickets are locked and cancelled with one statement each, and the follow-up event carries the paid and held seats only
+    // and refunds the paid tickets only
+    @Test
+    public void testCancelTicketsOfFlight() {
+        when(ticketRepository.lockActiveTickets(1L)).thenReturn(List.of(
+                activeTicket("TCKT1", Ticket.BookingStatus.BOOKED, false),
+                activeTicket("TCKT2", Ticket.BookingStatus.PENDING, false),
+                activeTicket("TCKT3", Ticket.BookingStatus.CONFIRMED, false),
+                activeTicket("TCKT4", Ticket.BookingStatus.PENDING, true),
+                activeTicket("TCKT5", Ticket.BookingStatus.PAYMENT_PROCESSING, false)));
+        when(ticketRepository.cancelTicketsOfFlight(1L)).thenReturn(5);
+
+        assertEquals(5, flightCancellationService.cancelTicketsOfFlight(1L));
+
+        InOrder inOrder = inOrder(ticketRepository);
+        inOrder.verify(ticketRepository).lockActiveTickets(1L);
+        inOrder.verify(ticketRepository).cancelTicketsOfFlight(1L);
+        verify(ticketRepository, never()).save(any());
+        ArgumentCaptor<FlightCancelledEvent> event = ArgumentCaptor.forClass(FlightCancelledEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(List.of("TCKT1", "TCKT2", "TCKT3", "TCKT4", "TCKT5"), event.getValue().getCancelledTicketIds());
+        assertEquals(List.of("TCKT1", "TCKT3"), event.getValue().getPaidTicketIds());
+        assertEquals(4, event.getValue().getReleasedSeats());
+    }
+
+    // Test that an edited flight keeps the remaining tickets of its locked row, and that cancelling it cancels its tickets in the same call
+    @Test
+    public void testUpdateFlight() {
+        Flight flight = new Flight(1L, "BA117", null, null, null, LocalDate.of(2024, 7, 15), LocalTime.of(18, 30), LocalTime.of(6, 35), 40, Flight.FlightStatus.SCHEDULED);
+        when(flightRepository.lockById(1L)).thenReturn(Optional.of(flight));
+        Flight details = new Flight(null, "BA118", null, null, null, LocalDate.of(2024, 7, 16), LocalTime.of(19, 0), LocalTime.of(7, 0), 200, Flight.FlightStatus.SCHEDULED);
+
+        flightCancellationService.updateFlight(1L, details);
+        assertEquals("BA118", flight.getFlightNumber());
+        assertEquals(40, flight.getRemainingTickets());
+        verify(ticketRepository, never()).cancelTicketsOfFlight(anyLong());
+
+        details.setFlightStatus(Flight.FlightStatus.CANCELLED);
+        flightCancellationService.updateFlight(1L, details);
+        assertEquals(Flight.FlightStatus.CANCELLED, flight.getFlightStatus());
+        assertEquals(40, flight.getRemainingTickets());
+        verify(ticketRepository).cancelTicketsOfFlight(1L);
+        verify(flightRepository, never()).findById(anyLong());
+    }
+
+    // Test that the follow-up work gives the paid seats back in one update
+    @Test
+    public void testFollowUpReleasesInventory() {
+        flightCancellationService.onFlightCancelled(new FlightCancelledEvent(this, 1L, List.of("TCKT1", "TCKT2", "TCKT3"), List.of("TCKT1", "TCKT3"), 2));
+        verify(seatInventoryService).releaseSeats(1L, 2);
+    }
+
+    private static TicketRepository.ActiveTicket activeTicket(String ticketId, Ticket.BookingStatus bookingStatus, boolean held) {
+        return new TicketRepository.ActiveTicket() {
+            @Override
+            public String getTicketId() {
+                return ticketId;
+            }
+
+            @Override
+            public String getBookingStatus() {
+                return bookingStatus.name();
+            }
+
+            @Override
+            public boolean isHeld() {
+                return held;
+            }
+        };
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Airline;
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.repository.query.FluentQuery;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class FlightQueryServiceTest {
+
+    private final Airline aaAirline = new Airline("AA", "American Airlines", "DFW", "userAmerican", "passAmerican123");
+    private final Airport jfkAirport = new Airport("JFK", "John F. Kennedy International Airport", "New York", "USA", 40.6413, -73.7781, "UTC-5");
+    private final Airport lhrAirport = new Airport("LHR", "Heathrow Airport", "London", "United Kingdom", 51.4700, -0.4543, "UTC+0");
+    private final Airport unknownZoneAirport = new Airport("XXX", "Unknown", "Nowhere", "Nowhere", 0, 0, "");
+    private final LocalDate date = LocalDate.of(2024, 7, 10);
+
+    // Fares by flight number
+    private final Map<String, Double> fares = Map.of("AA101", 620.0, "AA103", 480.0, "AA105", 550.0, "AA107", 550.0, "AA109", 390.0);
+
+    private final List<Flight> flights = List.of(
+            flight(1L, "AA101", date, LocalTime.of(8, 0), LocalTime.of(20, 0)), // 7 hours
+            flight(2L, "AA103", date, LocalTime.of(18, 0), LocalTime.of(6, 30)), // 7.5 hours, lands the next day
+            flight(3L, "AA105", date.plusDays(1), LocalTime.of(12, 0), LocalTime.of(23, 0)), // 6 hours
+            flight(4L, "AA107", date.plusDays(1), LocalTime.of(9, 0), LocalTime.of(21, 0)), // 7 hours
+            flight(5L, "AA109", date.plusDays(2), LocalTime.of(9, 0), LocalTime.of(22, 0))); // 8 hours
+
+    private FlightRepository flightRepository;
+    private FluentQuery.FetchableFluentQuery<Flight> fluentQuery;
+    private FlightQueryService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        flightRepository = mock(FlightRepository.class);
+        when(flightRepository.findWithRouteByFlightStatus(Flight.FlightStatus.SCHEDULED)).thenReturn(flights);
+        // The flight table holds the flights above, all of them on the searched route and dates
+        fluentQuery = mock(FluentQuery.FetchableFluentQuery.class);
+        when(fluentQuery.project(anyString(), anyString(), anyString())).thenReturn(fluentQuery);
+        when(fluentQuery.sortBy(any())).thenReturn(fluentQuery);
+        when(fluentQuery.limit(anyInt())).thenReturn(fluentQuery);
+        when(fluentQuery.all()).thenReturn(flights);
+        when(flightRepository.findBy(any(Specification.class), any(Function.class))).thenAnswer(invocation ->
+                invocation.<Function<FluentQuery.FetchableFluentQuery<Flight>, Object>>getArgument(1).apply(fluentQuery));
+        FlightSearchIndex index = new FlightSearchIndex(flightRepository);
+        index.rebuild();
+        service = new FlightQueryService(flightRepository, index, (flight, classType) -> fares.get(flight.getFlightNumber()));
+    }
+
+    // Test that following the cursors pages through every flight once in price order, ties broken by id
+    @Test
+    public void testPriceKeysetPagination() {
+        FlightQueryService.Query query = new FlightQueryService.Query("JFK", "LHR", date, date.plusDays(2), FlightQueryService.SortOrder.PRICE);
+
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            FlightQueryService.Page page = service.search(query, cursor, 2);
+            page.flights().forEach(flight -> ids.add(flight.id()));
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(List.of(5L, 2L, 3L, 4L, 1L), ids);
+        assertEquals(3, pages);
+    }
+
+    // Test that the price and duration orders read the same rows of the flight table as the departure order, so seats left and fares
+    // agree whatever the order
+    @Test
+    public void testSortOrdersShareTheFlightTable() {
+        flights.get(0).setRemainingTickets(3); // Sold since the timetable was loaded into memory
+        FlightQueryService.Page page = service.search(new FlightQueryService.Query("JFK", "LHR", date, date.plusDays(2), FlightQueryService.SortOrder.PRICE), null, 10);
+        assertEquals(3, page.flights().get(4).remainingTickets());
+        verify(fluentQuery).all();
+    }
+
+    // Test that the duration counts the time zones and the next-day landings, and that flights without a known duration come last
+    @Test
+    public void testDurationOrder() {
+        Flight unknown = flight(6L, "AA111", date, LocalTime.of(7, 0), LocalTime.of(9, 0));
+        unknown.setDestinationAirport(unknownZoneAirport);
+        assertNull(FlightQueryService.durationOf(unknown));
+
+        FlightQueryService.Page page = service.search(new FlightQueryService.Query("JFK", "LHR", date, date.plusDays(2), FlightQueryService.SortOrder.DURATION), null, 10);
+
+        assertEquals(List.of(3L, 1L, 4L, 2L, 5L), page.flights().stream().map(FlightQueryService.FlightSummary::id).toList());
+        assertEquals(450L, page.flights().get(3).durationMinutes());
+        assertEquals(390.0, page.flights().get(4).economyFare());
+        assertNull(page.nextCursor());
+    }
+
+    // Test that the departure order is read from the database with a keyset position built from the previous page's last flight
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDepartureKeysetPagination() {
+        List<ScrollPosition> positions = new ArrayList<>();
+        when(fluentQuery.scroll(any())).thenAnswer(invocation -> {
+            positions.add(invocation.getArgument(0));
+            List<Flight> content = List.of(flight(1L, "AA101", date, LocalTime.of(8, 0), LocalTime.of(20, 0)),
+                    flight(2L, "AA103", date, LocalTime.of(18, 0), LocalTime.of(6, 30)));
+            return Window.from(content, i -> ScrollPosition.forward(Map.of("date", content.get(i).getDate(),
+                    "departureTimeLocal", content.get(i).getDepartureTimeLocal(), "id", content.get(i).getId())), true);
+        });
+        FlightQueryService.Query query = new FlightQueryService.Query(null, null, date, null, FlightQueryService.SortOrder.DEPARTURE);
+
+        FlightQueryService.Page first = service.search(query, null, 2);
+        service.search(query, first.nextCursor(), 2);
+
+        assertEquals(List.of(1L, 2L), first.flights().stream().map(FlightQueryService.FlightSummary::id).toList());
+        assertTrue(positions.get(0).isInitial());
+        assertEquals(Map.of("date", date, "departureTimeLocal", LocalTime.of(18, 0), "id", 2L), ((KeysetScrollPosition) positions.get(1)).getKeys());
+        verify(fluentQuery, times(2)).limit(2);
+    }
+
+    // Test that a route without any flight answers an empty page without reading the flight table, in every sort order
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUnservedRoute() {
+        for (FlightQueryService.SortOrder sort : FlightQueryService.SortOrder.values()) {
+            FlightQueryService.Page page = service.search(new FlightQueryService.Query("LHR", "JFK", date, date.plusDays(2), sort), null, 10);
+            assertTrue(page.flights().isEmpty());
+            assertNull(page.nextCursor());
+        }
+        verify(flightRepository, never()).findBy(any(Specification.class), any(Function.class));
+    }
+
+    // Test that bad page sizes, windows and cursors are refused
+    @Test
+    public void testInvalidSearches() {
+        FlightQueryService.Query byPrice = new FlightQueryService.Query("JFK", "LHR", date, date.plusDays(2), FlightQueryService.SortOrder.PRICE);
+        String priceCursor = service.search(byPrice, null, 1).nextCursor();
+
+        assertThrows(IllegalArgumentException.class, () -> service.search(byPrice, null, 0));
+        assertThrows(IllegalArgumentException.class, () -> service.search(byPrice, "not a cursor", 10));
+        assertThrows(IllegalArgumentException.class, () -> service.search(
+                new FlightQueryService.Query("JFK", "LHR", date, date.plusDays(2), FlightQueryService.SortOrder.DURATION), priceCursor, 10));
+        assertThrows(IllegalArgumentException.class, () -> service.search(
+                new FlightQueryService.Query("JFK", null, date, date, FlightQueryService.SortOrder.PRICE), null, 10));
+        assertThrows(IllegalArgumentException.class, () -> service.search(
+                new FlightQueryService.Query("JFK", "LHR", date, date.plusDays(40), FlightQueryService.SortOrder.PRICE), null, 10));
+        assertThrows(IllegalArgumentException.class, () -> FlightQueryService.SortOrder.of("cheapest"));
+    }
+
+    private Flight flight(Long id, String flightNumber, LocalDate day, LocalTime departure, LocalTime landing) {
+        return new Flight(id, flightNumber, aaAirline, jfkAirport, lhrAirport, day, departure, landing, 100, Flight.FlightStatus.SCHEDULED);
+    }
+}
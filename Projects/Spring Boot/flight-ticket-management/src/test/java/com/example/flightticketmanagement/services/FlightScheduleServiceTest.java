@@ -0,0 +1,155 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Airline;
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.FlightSchedule;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import com.example.flightticketmanagement.repositories.FlightScheduleRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class FlightScheduleServiceTest {
+
+    // Monday
+    private final LocalDate today = LocalDate.of(2024, 7, 15);
+
+    private final Airline airline = new Airline("BA", "British Airways", "LHR", "britishairways", "password");
+    private final Airport jfk = new Airport("JFK", "John F. Kennedy International Airport", "New York", "United States", 40.64, -73.78, "UTC-5");
+    private final Airport lhr = new Airport("LHR", "Heathrow Airport", "London", "United Kingdom", 51.47, -0.45, "UTC+0");
+    private final Airport cdg = new Airport("CDG", "Charles de Gaulle Airport", "Paris", "France", 49.01, 2.55, "UTC+1");
+
+    private FlightScheduleRepository flightScheduleRepository;
+    private FlightRepository flightRepository;
+    private FlightScheduleService flightScheduleService;
+    // Schedules of the test database by id, and the flights created from them
+    private final Map<Long, FlightSchedule> schedules = new HashMap<>();
+    private final List<Flight> created = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        flightScheduleRepository = mock(FlightScheduleRepository.class);
+        flightRepository = mock(FlightRepository.class);
+        when(flightScheduleRepository.save(any(FlightSchedule.class))).thenAnswer(invocation -> {
+            FlightSchedule schedule = invocation.getArgument(0);
+            if (schedule.getId() == null) {
+                schedule.setId((long) schedules.size() + 1);
+            }
+            schedules.put(schedule.getId(), schedule);
+            return schedule;
+        });
+        when(flightScheduleRepository.lockById(anyLong())).thenAnswer(invocation -> Optional.ofNullable(schedules.get(invocation.<Long>getArgument(0))));
+        when(flightRepository.saveAll(any())).thenAnswer(invocation -> {
+            invocation.<Iterable<Flight>>getArgument(0).forEach(created::add);
+            return invocation.getArgument(0);
+        });
+        flightScheduleService = new FlightScheduleService(flightScheduleRepository, flightRepository, TransactionOperations.withoutTransaction(),
+                14, 60, 10, Clock.fixed(today.atTime(8, 0).toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+    }
+
+    // Test that a new schedule gets its flights up to the horizon, only on its days of the week and not in the past
+    @Test
+    public void testCreateUpToHorizon() {
+        int count = flightScheduleService.create(schedule("BA117", jfk, lhr, "531", today.minusDays(30), today.plusDays(100)));
+
+        assertEquals(7, count);
+        assertEquals(List.of(today, today.plusDays(2), today.plusDays(4), today.plusDays(7), today.plusDays(9), today.plusDays(11), today.plusDays(14)),
+                created.stream().map(Flight::getDate).toList());
+        Flight flight = created.get(0);
+        assertEquals("BA117", flight.getFlightNumber());
+        assertEquals(Flight.FlightStatus.SCHEDULED, flight.getFlightStatus());
+        assertEquals(200, flight.getRemainingTickets());
+        assertEquals(1L, flight.getScheduleId());
+        assertEquals("135", schedules.get(1L).getDaysOfWeek());
+        assertEquals(today.plusDays(14), schedules.get(1L).getMaterializedThrough());
+    }
+
+    // Test that flights already created are not created again, so later changes to them stay
+    @Test
+    public void testCreatedOnce() {
+        flightScheduleService.create(schedule("BA117", jfk, lhr, "1234567", today, today.plusDays(100)));
+        created.clear();
+
+        assertEquals(0, flightScheduleService.materialize(1L, today.plusDays(14)));
+        assertEquals(2, flightScheduleService.materialize(1L, today.plusDays(16)));
+        assertEquals(List.of(today.plusDays(15), today.plusDays(16)), created.stream().map(Flight::getDate).toList());
+    }
+
+    // Test that a search beyond the horizon creates the flights of the searched route on the searched dates only, not past the furthest
+    // date and on at most ten dates
+    @Test
+    public void testMaterializeForSearch() {
+        flightScheduleService.create(schedule("BA117", jfk, lhr, "1234567", today, today.plusDays(100)));
+        flightScheduleService.create(schedule("BA306", lhr, cdg, "1234567", today, today.plusDays(100)));
+        created.clear();
+
+        flightScheduleService.materializeForSearch(List.of("JFK"), List.of("LHR"), today.plusDays(3), today.plusDays(5));
+        assertTrue(created.isEmpty());
+
+        flightScheduleService.materializeForSearch(List.of("JFK"), List.of("LHR"), today.plusDays(30), today.plusDays(31));
+        assertEquals(List.of(today.plusDays(30), today.plusDays(31)), created.stream().map(Flight::getDate).toList());
+        assertTrue(created.stream().allMatch(flight -> flight.getFlightNumber().equals("BA117")));
+        assertEquals(today.plusDays(14), schedules.get(1L).getMaterializedThrough());
+
+        created.clear();
+        flightScheduleService.materializeForSearch(List.of("JFK"), List.of("LHR"), today.plusDays(57), today.plusDays(70));
+        assertEquals(List.of(today.plusDays(57), today.plusDays(58), today.plusDays(59), today.plusDays(60)),
+                created.stream().map(Flight::getDate).toList());
+        created.clear();
+        flightScheduleService.materializeForSearch(List.of("JFK"), List.of("LHR"), today.plusDays(30), today.plusDays(31));
+        flightScheduleService.materializeForSearch(List.of("JFK"), List.of("LHR"), today.plusDays(57), today.plusDays(70));
+        flightScheduleService.materializeForSearch(List.of("JFK"), List.of("LHR"), today.plusDays(90), today.plusDays(90));
+        assertTrue(created.isEmpty());
+        verify(flightScheduleRepository, times(2 + 2)).lockById(anyLong());
+
+        flightScheduleService.materializeForSearch(List.of("JFK"), List.of("LHR"), today.plusDays(35), today.plusDays(55));
+        assertEquals(10, created.size());
+        assertEquals(today.plusDays(44), created.get(created.size() - 1).getDate());
+    }
+
+    // Test that the horizon skips the dates a search created, and forgets them once it passed them
+    @Test
+    public void testHorizonSkipsSearchedDates() {
+        flightScheduleService.create(schedule("BA117", jfk, lhr, "1234567", today, today.plusDays(100)));
+        flightScheduleService.materializeForSearch(List.of("JFK"), List.of("LHR"), today.plusDays(20), today.plusDays(21));
+        flightScheduleService.materializeForSearch(List.of("JFK"), List.of("LHR"), today.plusDays(40), today.plusDays(40));
+        created.clear();
+
+        assertEquals(6, flightScheduleService.materialize(1L, today.plusDays(22)));
+        assertEquals(List.of(today.plusDays(15), today.plusDays(16), today.plusDays(17), today.plusDays(18), today.plusDays(19), today.plusDays(22)),
+                created.stream().map(Flight::getDate).toList());
+        assertEquals(Set.of(today.plusDays(40)), schedules.get(1L).getMaterializedDates());
+    }
+
+    // Test that incomplete schedules are refused before anything is saved
+    @Test
+    public void testInvalidSchedules() {
+        assertThrows(IllegalArgumentException.class, () -> flightScheduleService.create(schedule("BA117", jfk, jfk, "1", today, today.plusDays(10))));
+        assertThrows(IllegalArgumentException.class, () -> flightScheduleService.create(schedule("BA117", jfk, lhr, "", today, today.plusDays(10))));
+        assertThrows(IllegalArgumentException.class, () -> flightScheduleService.create(schedule("BA117", jfk, lhr, "89", today, today.plusDays(10))));
+        assertThrows(IllegalArgumentException.class, () -> flightScheduleService.create(schedule("BA117", jfk, lhr, "1", today, today.minusDays(1))));
+        verify(flightScheduleRepository, never()).save(any());
+    }
+
+    private FlightSchedule schedule(String flightNumber, Airport origin, Airport destination, String daysOfWeek, LocalDate validFrom, LocalDate validTo) {
+        return new FlightSchedule(null, flightNumber, airline, origin, destination, daysOfWeek, validFrom, validTo,
+                LocalTime.of(18, 30), LocalTime.of(6, 35), 200, null);
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.FlightChangedEvent;
+import com.example.flightticketmanagement.events.SeatInventoryChangedEvent;
+import com.example.flightticketmanagement.models.Airline;
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FlightSearchIndexTest {
+
+    private final Airline aaAirline = new Airline("AA", "American Airlines", "DFW", "userAmerican", "passAmerican123");
+    private final Airport jfkAirport = new Airport("JFK", "John F. Kennedy International Airport", "New York", "USA", 40.6413, -73.7781, "UTC-5");
+    private final Airport lhrAirport = new Airport("LHR", "Heathrow Airport", "London", "United Kingdom", 51.4700, -0.4543, "UTC+0");
+    private final LocalDate date = LocalDate.of(2024, 7, 10);
+
+    private FlightRepository flightRepository;
+    private FlightSearchIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        flightRepository = mock(FlightRepository.class);
+        index = new FlightSearchIndex(flightRepository);
+    }
+
+    // Test that the rebuilt index answers a search ordered by departure time
+    @Test
+    public void testRebuildAndFind() {
+        Flight late = new Flight(1L, "AA103", aaAirline, jfkAirport, lhrAirport, date, LocalTime.of(18, 0), LocalTime.of(6, 0), 150, Flight.FlightStatus.SCHEDULED);
+        Flight early = new Flight(2L, "AA101", aaAirline, jfkAirport, lhrAirport, date, LocalTime.of(8, 0), LocalTime.of(20, 0), 150, Flight.FlightStatus.SCHEDULED);
+        when(flightRepository.findWithRouteByFlightStatus(Flight.FlightStatus.SCHEDULED)).thenReturn(List.of(late, early));
+
+        index.rebuild();
+
+        List<Flight> flights = index.findFlights("JFK", "LHR", date);
+        assertEquals(List.of(2L, 1L), flights.stream().map(Flight::getId).toList());
+        assertTrue(index.findFlights("LHR", "JFK", date).isEmpty());
+    }
+
+    // Test that edits move a flight between buckets and cancellations remove it
+    @Test
+    public void testIncrementalUpdates() {
+        Flight flight = new Flight(1L, "AA101", aaAirline, jfkAirport, lhrAirport, date, LocalTime.of(8, 0), LocalTime.of(20, 0), 150, Flight.FlightStatus.SCHEDULED);
+        index.onFlightChanged(new FlightChangedEvent(this, flight, false));
+        assertEquals(1, index.findFlights("JFK", "LHR", date).size());
+
+        flight.setDate(date.plusDays(1));
+        index.onFlightChanged(new FlightChangedEvent(this, flight, false));
+        assertTrue(index.findFlights("JFK", "LHR", date).isEmpty());
+        assertEquals(1, index.findFlights("JFK", "LHR", date.plusDays(1)).size());
+
+        flight.setFlightStatus(Flight.FlightStatus.CANCELLED);
+        index.onFlightChanged(new FlightChangedEvent(this, flight, false));
+        assertTrue(index.findFlights("JFK", "LHR", date.plusDays(1)).isEmpty());
+        assertEquals(0, index.size());
+    }
+
+    // Test that seats sold and released move the remaining tickets of the indexed flight, and only of that flight
+    @Test
+    public void testSeatInventoryChanges() {
+        when(flightRepository.findWithRouteByFlightStatus(Flight.FlightStatus.SCHEDULED)).thenReturn(List.of(
+                new Flight(1L, "AA101", aaAirline, jfkAirport, lhrAirport, date, LocalTime.of(8, 0), LocalTime.of(20, 0), 150, Flight.FlightStatus.SCHEDULED),
+                new Flight(2L, "AA103", aaAirline, jfkAirport, lhrAirport, date, LocalTime.of(18, 0), LocalTime.of(6, 0), 150, Flight.FlightStatus.SCHEDULED)));
+        index.rebuild();
+
+        index.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 1L, -3));
+        index.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 1L, 1));
+        index.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 99L, -1)); // Unknown flight
+        List<Flight> flights = index.findFlights("JFK", "LHR", date);
+        assertEquals(List.of(1L, 2L), flights.stream().map(Flight::getId).toList());
+        assertEquals(List.of(148, 150), flights.stream().map(Flight::getRemainingTickets).toList());
+    }
+
+    // Test that a batch search over several origin and destination airports merges their flights by departure time
+    @Test
+    public void testFindAcrossAirports() {
+        Airport ewrAirport = new Airport("EWR", "Newark Liberty International Airport", "Newark", "USA", 40.6895, -74.1745, "UTC-5");
+        Airport lgwAirport = new Airport("LGW", "Gatwick Airport", "London", "United Kingdom", 51.1537, -0.1821, "UTC+0");
+        when(flightRepository.findWithRouteByFlightStatus(Flight.FlightStatus.SCHEDULED)).thenReturn(List.of(
+                new Flight(1L, "AA103", aaAirline, jfkAirport, lhrAirport, date, LocalTime.of(18, 0), LocalTime.of(6, 0), 150, Flight.FlightStatus.SCHEDULED),
+                new Flight(2L, "AA105", aaAirline, ewrAirport, lgwAirport, date, LocalTime.of(9, 0), LocalTime.of(21, 0), 150, Flight.FlightStatus.SCHEDULED),
+                new Flight(3L, "AA107", aaAirline, ewrAirport, lhrAirport, date, LocalTime.of(12, 0), LocalTime.of(0, 0), 150, Flight.FlightStatus.SCHEDULED),
+                new Flight(4L, "AA109", aaAirline, lhrAirport, ewrAirport, date, LocalTime.of(10, 0), LocalTime.of(13, 0), 150, Flight.FlightStatus.SCHEDULED)));
+        index.rebuild();
+
+        List<Flight> flights = index.findFlights(List.of("JFK", "EWR"), List.of("LHR", "LGW"), date, date).get(date);
+        assertEquals(List.of(2L, 3L, 1L), flights.stream().map(Flight::getId).toList());
+    }
+
+    // Test that a deleted flight is dropped from the index
+    @Test
+    public void testRemove() {
+        Flight flight = new Flight(1L, "AA101", aaAirline, jfkAirport, lhrAirport, date, LocalTime.of(8, 0), LocalTime.of(20, 0), 150, Flight.FlightStatus.SCHEDULED);
+        index.refresh(flight);
+        index.onFlightChanged(new FlightChangedEvent(this, flight, true));
+        assertTrue(index.findFlights("JFK", "LHR", date).isEmpty());
+    }
+
+    // Test that a route is served as long as one of its flights is scheduled on any date, and only in its own direction
+    @Test
+    public void testServedRoutes() {
+        Flight first = new Flight(1L, "AA101", aaAirline, jfkAirport, lhrAirport, date, LocalTime.of(8, 0), LocalTime.of(20, 0), 150, Flight.FlightStatus.SCHEDULED);
+        Flight second = new Flight(2L, "AA101", aaAirline, jfkAirport, lhrAirport, date.plusDays(7), LocalTime.of(8, 0), LocalTime.of(20, 0), 150, Flight.FlightStatus.SCHEDULED);
+        when(flightRepository.findWithRouteByFlightStatus(Flight.FlightStatus.SCHEDULED)).thenReturn(List.of(first, second));
+        index.rebuild();
+        assertTrue(index.servesRoute("JFK", "LHR"));
+        assertFalse(index.servesRoute("LHR", "JFK"));
+        assertTrue(index.servesAnyRoute(List.of("EWR", "JFK"), List.of("LHR")));
+        assertFalse(index.servesAnyRoute(List.of("EWR"), List.of("LHR", "JFK")));
+
+        first.setDate(date.plusDays(1)); // Moving a flight keeps its route served
+        index.onFlightChanged(new FlightChangedEvent(this, first, false));
+        index.onFlightChanged(new FlightChangedEvent(this, second, true));
+        assertTrue(index.servesRoute("JFK", "LHR"));
+
+        first.setFlightStatus(Flight.FlightStatus.CANCELLED);
+        index.onFlightChanged(new FlightChangedEvent(this, first, false));
+        assertFalse(index.servesRoute("JFK", "LHR"));
+    }
+}
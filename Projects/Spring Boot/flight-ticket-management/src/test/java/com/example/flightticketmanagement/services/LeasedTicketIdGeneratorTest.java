@@ -0,0 +1,81 @@
+package com.example.flightticketmanagement.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class LeasedTicketIdGeneratorTest {
+
+    private final long start = TimeOrderedTicketIdGenerator.EPOCH_MILLIS + 1_000_000;
+    private final AtomicLong clock = new AtomicLong(start);
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+    }
+
+    // Test that the leased node is used for the ids, and that the ids wait until the clock passed the previous holder's last millisecond
+    @Test
+    public void testLeasedNodeWaitsForLastMillis() {
+        leases(42, start + 5);
+        // Every read of the clock moves it one millisecond forward
+        LeasedTicketIdGenerator generator = new LeasedTicketIdGenerator(jdbcTemplate, "instance", Duration.ofMinutes(5), clock::incrementAndGet);
+
+        assertEquals(42, generator.getNode());
+        assertTrue(clock.get() > start + 5);
+        long id = decode(generator.nextTicketId());
+        assertEquals(42, TimeOrderedTicketIdGenerator.nodeOf(id));
+        assertTrue((id >>> 22) + TimeOrderedTicketIdGenerator.EPOCH_MILLIS > start + 5);
+    }
+
+    // Test that ids are refused once the lease may have run out and issued again after a renewal
+    @Test
+    public void testIdsStopWhenLeaseRunsOut() {
+        leases(7, 0);
+        LeasedTicketIdGenerator generator = new LeasedTicketIdGenerator(jdbcTemplate, "instance", Duration.ofMinutes(5), clock::get);
+        generator.nextTicketId();
+
+        clock.addAndGet(Duration.ofMinutes(5).toMillis());
+        assertThrows(IllegalStateException.class, generator::nextTicketId);
+
+        when(jdbcTemplate.update(anyString(), eq(300L), anyLong(), eq(7), eq("instance"))).thenReturn(1);
+        generator.renew();
+        generator.nextTicketId();
+
+        // Another instance took the node over
+        clock.addAndGet(Duration.ofMinutes(5).toMillis());
+        when(jdbcTemplate.update(anyString(), eq(300L), anyLong(), eq(7), eq("instance"))).thenReturn(0);
+        generator.renew();
+        assertThrows(IllegalStateException.class, generator::nextTicketId);
+    }
+
+    // Test that startup fails when every node number is leased
+    @Test
+    public void testAllNodesLeased() {
+        when(jdbcTemplate.queryForList(anyString(), eq("instance"), eq(300L))).thenReturn(List.of());
+        assertThrows(IllegalStateException.class, () -> new LeasedTicketIdGenerator(jdbcTemplate, "instance", Duration.ofMinutes(5), clock::get));
+    }
+
+    // Number of a ticket id, the base32 digits after the prefix
+    private static long decode(String ticketId) {
+        long id = 0;
+        for (char digit : ticketId.substring(TimeOrderedTicketIdGenerator.PREFIX.length()).toCharArray()) {
+            id = id << 5 | "0123456789ABCDEFGHJKMNPQRSTVWXYZ".indexOf(digit);
+        }
+        return id;
+    }
+
+    private void leases(int node, long lastMillis) {
+        when(jdbcTemplate.queryForList(anyString(), eq("instance"), eq(300L))).thenReturn(List.of(Map.of("node", node, "last_millis", lastMillis)));
+    }
+}
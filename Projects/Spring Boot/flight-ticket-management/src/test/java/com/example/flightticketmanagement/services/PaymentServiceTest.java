@@ -0,0 +1,297 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Customer;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.repositories.TicketRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class PaymentServiceTest {
+
+    private final Instant heldUntil = Instant.parse("2024-06-01T10:15:00Z");
+
+    private TicketRepository ticketRepository;
+    private SeatHoldService seatHoldService;
+    private SeatInventoryService seatInventoryService;
+    // Answers of the test gateway, completed by the tests
+    private final List<CompletableFuture<PaymentGateway.PaymentResult>> answers = new CopyOnWriteArrayList<>();
+    // References voided with the test gateway, and the outcome it recorded for each reference
+    private final List<String> voided = new CopyOnWriteArrayList<>();
+    private final Map<String, PaymentGateway.PaymentResult> outcomes = new ConcurrentHashMap<>();
+    private CompletableFuture<Void> voidAnswer = CompletableFuture.completedFuture(null);
+    private final Instant now = Instant.parse("2024-06-01T10:00:00Z");
+    private PaymentService paymentService;
+
+    @BeforeEach
+    public void setUp() {
+        ticketRepository = mock(TicketRepository.class);
+        seatHoldService = mock(SeatHoldService.class);
+        seatInventoryService = mock(SeatInventoryService.class);
+        PaymentGateway gateway = new PaymentGateway() {
+            @Override
+            public CompletableFuture<PaymentResult> authorize(PaymentRequest request) {
+                CompletableFuture<PaymentResult> answer = new CompletableFuture<>();
+                answers.add(answer);
+                return answer;
+            }
+
+            @Override
+            public CompletableFuture<Void> voidAuthorization(String reference) {
+                voided.add(reference);
+                return voidAnswer;
+            }
+
+            @Override
+            public CompletableFuture<PaymentResult> lookup(String reference) {
+                return CompletableFuture.completedFuture(outcomes.getOrDefault(reference, PaymentResult.declined("Not received.")));
+            }
+        };
+        paymentService = new PaymentService(ticketRepository, seatHoldService, seatInventoryService, gateway,
+                TransactionOperations.withoutTransaction(), 2, 2, Duration.ofSeconds(30), Duration.ofMinutes(5), 100,
+                Clock.fixed(now, ZoneOffset.UTC));
+        when(ticketRepository.startPayment(anyString(), any())).thenReturn(1);
+        when(ticketRepository.completePayment(anyString(), any(), any())).thenReturn(1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        paymentService.shutdown();
+    }
+
+    // Test that the payment of a held ticket returns before the provider answers and books the ticket once it approves
+    @Test
+    public void testApprovedPayment() throws Exception {
+        Ticket ticket = ticket("TCKT1", 7L, heldUntil);
+        when(seatHoldService.claim(ticket)).thenReturn(true);
+
+        assertEquals(PaymentService.State.PROCESSING, paymentService.submit("TCKT1", 7L, "12/30", "123").state());
+        verify(ticketRepository).startPayment("TCKT1", now);
+        verify(seatInventoryService, never()).reserveSeat(anyLong());
+        assertEquals(PaymentService.State.PROCESSING, paymentService.status("TCKT1", 7L).state());
+        assertEquals(1, paymentService.inFlight());
+
+        answers.get(0).complete(PaymentGateway.PaymentResult.approved("AUTH1"));
+        assertEquals(PaymentService.State.APPROVED, awaitOutcome("TCKT1", 7L).state());
+        verify(ticketRepository).completePayment("TCKT1", Ticket.BookingStatus.BOOKED, null);
+        assertEquals(0, paymentService.inFlight());
+    }
+
+    // Test that a declined payment puts the ticket back in the cart with the rest of its hold
+    @Test
+    public void testDeclinedPaymentKeepsHold() throws Exception {
+        Ticket ticket = ticket("TCKT1", 7L, heldUntil);
+        when(seatHoldService.claim(ticket)).thenReturn(true);
+
+        paymentService.submit("TCKT1", 7L, "12/30", "123");
+        answers.get(0).complete(PaymentGateway.PaymentResult.declined("Card refused."));
+
+        PaymentService.PaymentStatus status = awaitOutcome("TCKT1", 7L);
+        assertEquals(PaymentService.State.DECLINED, status.state());
+        assertEquals("Card refused.", status.message());
+        verify(ticketRepository).completePayment("TCKT1", Ticket.BookingStatus.PENDING, heldUntil);
+        verify(seatInventoryService, never()).releaseSeat(anyLong());
+    }
+
+    // Test that a ticket without a hold takes a seat for its payment and gives it back when the payment fails, once it is voided
+    @Test
+    public void testFailedPaymentReleasesSeat() throws Exception {
+        ticket("TCKT1", 7L, null);
+        when(seatInventoryService.reserveSeat(1L)).thenReturn(true);
+
+        paymentService.submit("TCKT1", 7L, "12/30", "123");
+        verify(seatInventoryService).reserveSeat(1L);
+        answers.get(0).completeExceptionally(new IllegalStateException("Provider unreachable"));
+
+        assertEquals(PaymentService.State.DECLINED, awaitOutcome("TCKT1", 7L).state());
+        assertEquals(List.of("TCKT1"), voided);
+        verify(ticketRepository).completePayment("TCKT1", Ticket.BookingStatus.PENDING, null);
+        verify(seatInventoryService).releaseSeat(1L);
+    }
+
+    // Test that a payment that could neither be confirmed nor voided keeps its ticket and seat until the reconciliation
+    @Test
+    public void testUnvoidedPaymentWaitsForReconciliation() throws Exception {
+        ticket("TCKT1", 7L, null);
+        when(seatInventoryService.reserveSeat(1L)).thenReturn(true);
+        voidAnswer = CompletableFuture.failedFuture(new IllegalStateException("Provider unreachable"));
+
+        paymentService.submit("TCKT1", 7L, "12/30", "123");
+        answers.get(0).completeExceptionally(new IllegalStateException("Provider unreachable"));
+        for (int i = 0; i < 500 && paymentService.inFlight() > 0; i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, paymentService.inFlight());
+        assertEquals(PaymentService.State.PROCESSING, paymentService.status("TCKT1", 7L).state());
+        verify(ticketRepository, never()).completePayment(anyString(), any(), any());
+        verify(seatInventoryService, never()).releaseSeat(anyLong());
+    }
+
+    // Test that a payment whose finalization failed is left to the reconciliation instead of being reported as declined
+    @Test
+    public void testFailedFinalizationWaitsForReconciliation() throws Exception {
+        when(seatHoldService.claim(ticket("TCKT1", 7L, heldUntil))).thenReturn(true);
+        when(ticketRepository.completePayment(anyString(), any(), any())).thenThrow(new IllegalStateException("Database unreachable"));
+
+        paymentService.submit("TCKT1", 7L, "12/30", "123");
+        answers.get(0).complete(PaymentGateway.PaymentResult.approved("AUTH1"));
+        for (int i = 0; i < 500 && paymentService.inFlight() > 0; i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, paymentService.inFlight());
+        assertEquals(PaymentService.State.PROCESSING, paymentService.status("TCKT1", 7L).state());
+    }
+
+    // Test that stale payments are booked when the provider approved them, and voided and put back in the cart without a seat otherwise,
+    // and that the payments of tickets cancelled during them are voided
+    @Test
+    public void testReconcileStalePayments() {
+        outcomes.put("TCKT1", PaymentGateway.PaymentResult.approved("AUTH1"));
+        when(ticketRepository.findStalePayments(eq(now.minus(Duration.ofMinutes(5))), any()))
+                .thenReturn(List.of(stalePayment("TCKT1", 1L, Ticket.BookingStatus.PAYMENT_PROCESSING),
+                        stalePayment("TCKT2", 2L, Ticket.BookingStatus.PAYMENT_PROCESSING),
+                        stalePayment("TCKT3", 1L, Ticket.BookingStatus.CANCELLED)));
+
+        assertEquals(3, paymentService.reconcileStalePayments());
+
+        verify(ticketRepository).completePayment("TCKT1", Ticket.BookingStatus.BOOKED, null);
+        verify(ticketRepository).completePayment("TCKT2", Ticket.BookingStatus.PENDING, null);
+        verify(ticketRepository, never()).completePayment(eq("TCKT3"), any(), any());
+        assertEquals(List.of("TCKT2", "TCKT3"), voided);
+        verify(ticketRepository).clearPaymentStart("TCKT3");
+        verify(seatInventoryService).releaseSeat(2L);
+        verify(seatInventoryService, never()).releaseSeat(1L);
+    }
+
+    // Test that an approval arriving for a ticket cancelled during its payment is voided, and left to the reconciliation if that fails
+    @Test
+    public void testApprovalOfCancelledTicketIsVoided() throws Exception {
+        when(seatHoldService.claim(any())).thenReturn(true);
+        when(ticketRepository.completePayment(anyString(), eq(Ticket.BookingStatus.BOOKED), any())).thenReturn(0);
+        ticket("TCKT1", 7L, heldUntil);
+        paymentService.submit("TCKT1", 7L, "12/30", "123");
+        answers.get(0).complete(PaymentGateway.PaymentResult.approved("AUTH1"));
+
+        assertEquals(PaymentService.State.DECLINED, awaitOutcome("TCKT1", 7L).state());
+        awaitNoneInFlight();
+        assertEquals(List.of("TCKT1"), voided);
+        verify(ticketRepository).clearPaymentStart("TCKT1");
+
+        voidAnswer = CompletableFuture.failedFuture(new IllegalStateException("Provider unreachable"));
+        ticket("TCKT2", 7L, heldUntil);
+        paymentService.submit("TCKT2", 7L, "12/30", "123");
+        answers.get(1).complete(PaymentGateway.PaymentResult.approved("AUTH2"));
+
+        awaitOutcome("TCKT2", 7L);
+        awaitNoneInFlight();
+        assertEquals(List.of("TCKT1", "TCKT2"), voided);
+        verify(ticketRepository, never()).clearPaymentStart("TCKT2");
+        verify(seatInventoryService, never()).releaseSeat(anyLong());
+    }
+
+    // Test that payments that cannot be started are declined at once, without calling the provider
+    @Test
+    public void testDeclinedBeforeProvider() {
+        ticket("TCKT1", 7L, null);
+        when(seatInventoryService.reserveSeat(1L)).thenReturn(false);
+        assertEquals("Sorry, this flight is sold out.", paymentService.submit("TCKT1", 7L, "12/30", "123").message());
+
+        // The hold expired and the sweep cancelled the ticket
+        ticket("TCKT2", 7L, heldUntil);
+        assertEquals(PaymentService.State.DECLINED, paymentService.submit("TCKT2", 7L, "12/30", "123").state());
+
+        // Another customer's ticket
+        assertThrows(NoSuchElementException.class, () -> paymentService.submit("TCKT1", 8L, "12/30", "123"));
+
+        assertTrue(answers.isEmpty());
+        assertEquals(0, paymentService.inFlight());
+    }
+
+    // Test that payments beyond the in-flight limit are turned away until an answer frees a place
+    @Test
+    public void testInFlightLimit() throws Exception {
+        for (String ticketId : List.of("TCKT1", "TCKT2", "TCKT3")) {
+            when(seatHoldService.claim(ticket(ticketId, 7L, heldUntil))).thenReturn(true);
+        }
+        paymentService.submit("TCKT1", 7L, "12/30", "123");
+        paymentService.submit("TCKT2", 7L, "12/30", "123");
+
+        PaymentService.PaymentStatus busy = paymentService.submit("TCKT3", 7L, "12/30", "123");
+        assertEquals(PaymentService.State.DECLINED, busy.state());
+        verify(ticketRepository, never()).startPayment(eq("TCKT3"), any());
+
+        answers.get(0).complete(PaymentGateway.PaymentResult.approved("AUTH1"));
+        awaitOutcome("TCKT1", 7L);
+        assertEquals(PaymentService.State.PROCESSING, paymentService.submit("TCKT3", 7L, "12/30", "123").state());
+    }
+
+    private Ticket ticket(String ticketId, Long customerId, Instant holdExpiresAt) {
+        Customer customer = new Customer();
+        customer.setCustomerId(customerId);
+        customer.setCreditCardNumber("4111111111111111");
+        Flight flight = new Flight();
+        flight.setId(1L);
+        Ticket ticket = new Ticket(ticketId, customer, flight, Ticket.ClassType.ECONOMY, "10A", Ticket.BookingStatus.PENDING, 500);
+        ticket.setHoldExpiresAt(holdExpiresAt);
+        when(ticketRepository.findById(ticketId)).thenReturn(Optional.of(ticket));
+        return ticket;
+    }
+
+    private static TicketRepository.StalePayment stalePayment(String ticketId, Long flightId, Ticket.BookingStatus bookingStatus) {
+        return new TicketRepository.StalePayment() {
+            @Override
+            public String getTicketId() {
+                return ticketId;
+            }
+
+            @Override
+            public Long getFlightId() {
+                return flightId;
+            }
+
+            @Override
+            public Ticket.BookingStatus getBookingStatus() {
+                return bookingStatus;
+            }
+        };
+    }
+
+    private void awaitNoneInFlight() throws InterruptedException {
+        for (int i = 0; i < 500 && paymentService.inFlight() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, paymentService.inFlight());
+    }
+
+    private PaymentService.PaymentStatus awaitOutcome(String ticketId, Long customerId) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            PaymentService.PaymentStatus status = paymentService.status(ticketId, customerId);
+            if (status.state() != PaymentService.State.PROCESSING) {
+                return status;
+            }
+            Thread.sleep(10);
+        }
+        fail("The payment of " + ticketId + " was not finalized");
+        return null;
+    }
+}
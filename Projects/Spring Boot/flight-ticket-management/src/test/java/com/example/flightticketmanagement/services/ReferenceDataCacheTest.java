@@ -0,0 +1,70 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.repositories.AirportRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs against the configured database so the second-level cache sits in front of real queries
+@SpringBootTest
+public class ReferenceDataCacheTest {
+
+    @Autowired
+    private AirportRepository airportRepository;
+    @Autowired
+    private ReferenceDataCache referenceDataCache;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        airportRepository.save(new Airport("RDC", "Reference Data", "City", "Country", 0, 0, "UTC+0"));
+        referenceDataCache.evictAirport("RDC");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        airportRepository.deleteById("RDC");
+    }
+
+    // Test that the airport list and single airports are served from the cache once loaded
+    @Test
+    public void testReferenceDataIsServedFromCache() {
+        airportRepository.findAll();
+        airportRepository.findById("RDC");
+        statistics.clear();
+
+        airportRepository.findAll();
+        assertEquals("Reference Data", airportRepository.findById("RDC").orElseThrow().getAirportName());
+
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertTrue(statistics.getQueryCacheHitCount() > 0);
+        assertTrue(statistics.getSecondLevelCacheHitCount() > 0);
+    }
+
+    // Test that an edit followed by an explicit eviction is visible on the next read
+    @Test
+    public void testEvictionAfterUpdate() {
+        airportRepository.findAll();
+        Airport airport = airportRepository.findById("RDC").orElseThrow();
+        airport.setAirportName("Renamed");
+        airportRepository.save(airport);
+        referenceDataCache.evictAirport("RDC");
+        statistics.clear();
+
+        assertTrue(airportRepository.findAll().stream().anyMatch(a -> a.getAirportName().equals("Renamed")));
+        assertEquals(1, statistics.getQueryCacheMissCount());
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.FlightChangedEvent;
+import com.example.flightticketmanagement.events.SeatInventoryChangedEvent;
+import com.example.flightticketmanagement.models.Airline;
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.transaction.event.TransactionalEventListenerFactory;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RouteCalendarTest {
+
+    private final Airline aaAirline = new Airline("AA", "American Airlines", "DFW", "userAmerican", "passAmerican123");
+    private final Airport jfkAirport = new Airport("JFK", "John F. Kennedy International Airport", "New York", "USA", 40.6413, -73.7781, "UTC-5");
+    private final Airport lhrAirport = new Airport("LHR", "Heathrow Airport", "London", "United Kingdom", 51.4700, -0.4543, "UTC+0");
+    private final YearMonth july = YearMonth.of(2024, 7);
+    private final LocalDate date = july.atDay(10);
+
+    private final Flight morning = flight(1L, "AA101", date, LocalTime.of(8, 0), 40);
+    private final Flight evening = flight(2L, "AA103", date, LocalTime.of(18, 0), 60);
+    private final Flight nextDay = flight(3L, "AA105", date.plusDays(1), LocalTime.of(12, 0), 100);
+
+    // Fares quoted so far, each fare is 1000 minus the remaining tickets of the flight
+    private final AtomicInteger quotes = new AtomicInteger();
+    private RouteCalendar calendar;
+
+    @BeforeEach
+    public void setUp() {
+        FlightRepository flightRepository = mock(FlightRepository.class);
+        when(flightRepository.findWithRouteByFlightStatus(Flight.FlightStatus.SCHEDULED)).thenReturn(List.of(morning, evening, nextDay));
+        calendar = new RouteCalendar(flightRepository, (flight, classType) -> {
+            quotes.incrementAndGet();
+            return 1000.0 - flight.getRemainingTickets();
+        }, Clock.fixed(july.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+        calendar.rebuild();
+    }
+
+    // Test that every day of the month is listed with its flights, seats and lowest fare, and that reading it quotes no fare
+    @Test
+    public void testMonth() {
+        quotes.set(0);
+        RouteCalendar.MonthCalendar month = calendar.month("JFK", "LHR", july);
+
+        assertEquals(31, month.days().size());
+        assertEquals(new RouteCalendar.DayAvailability(date, 2, 100, 940.0), month.days().get(9));
+        assertEquals(new RouteCalendar.DayAvailability(date.plusDays(1), 1, 100, 900.0), month.days().get(10));
+        assertEquals(new RouteCalendar.DayAvailability(july.atDay(1), 0, 0, null), month.days().get(0));
+        assertEquals(0, quotes.get());
+        assertTrue(calendar.month("LHR", "JFK", july).days().stream().allMatch(day -> day.flightCount() == 0));
+
+        // July 2024 starts on a Monday and spans 5 weeks
+        List<List<RouteCalendar.DayAvailability>> weeks = month.weeks();
+        assertEquals(5, weeks.size());
+        assertEquals(july.atDay(1), weeks.get(0).get(0).date());
+        assertNull(weeks.get(4).get(6));
+    }
+
+    // Test that sales and releases move the seats and the fare of their own day, and that a sold-out flight has no fare
+    @Test
+    public void testSeatInventoryChanges() {
+        calendar.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 2L, -60));
+        assertEquals(new RouteCalendar.DayAvailability(date, 2, 40, 960.0), calendar.month("JFK", "LHR", july).days().get(9));
+
+        calendar.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 1L, -40));
+        assertEquals(new RouteCalendar.DayAvailability(date, 2, 0, null), calendar.month("JFK", "LHR", july).days().get(9));
+
+        calendar.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 1L, 5));
+        calendar.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 99L, -1)); // Unknown flight
+        assertEquals(new RouteCalendar.DayAvailability(date, 2, 5, 995.0), calendar.month("JFK", "LHR", july).days().get(9));
+    }
+
+    // Test that the flights quoted after a sale keep the seat capacity they were put on sale with, so their fares see the seats sold
+    @Test
+    public void testQuotesKeepSeatCapacity() {
+        List<Integer> capacities = new ArrayList<>();
+        FlightRepository flightRepository = mock(FlightRepository.class);
+        when(flightRepository.findWithRouteByFlightStatus(Flight.FlightStatus.SCHEDULED)).thenReturn(List.of(morning));
+        RouteCalendar capacityCalendar = new RouteCalendar(flightRepository, (flight, classType) -> {
+            capacities.add(flight.getSeatCapacity());
+            return 100.0;
+        }, Clock.fixed(july.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+        capacityCalendar.rebuild();
+        capacityCalendar.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 1L, -10));
+        assertEquals(List.of(40, 40), capacities);
+    }
+
+    // Test that the calendar hears of a sale after the fare calculator, whichever bean is registered first, so the day is priced from
+    // the seats left after the sale rather than from the calculator's count before it
+    @Test
+    public void testPricedAfterFareCalculator() {
+        FlightRepository flightRepository = mock(FlightRepository.class);
+        when(flightRepository.findWithRouteByFlightStatus(Flight.FlightStatus.SCHEDULED)).thenReturn(List.of(morning));
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.registerBean(FlightRepository.class, () -> flightRepository);
+            context.registerBean(RouteCalendar.class);
+            context.registerBean(DynamicFareCalculator.class);
+            context.registerBean(TransactionalEventListenerFactory.class);
+            context.refresh();
+            RouteCalendar springCalendar = context.getBean(RouteCalendar.class);
+            springCalendar.rebuild();
+
+            context.publishEvent(new SeatInventoryChangedEvent(this, 1L, -30));
+
+            Flight sold = flight(1L, "AA101", date, LocalTime.of(8, 0), 40);
+            sold.setRemainingTickets(10);
+            double expected = new DynamicFareCalculator().fareFor(sold, Ticket.ClassType.ECONOMY);
+            assertEquals(new RouteCalendar.DayAvailability(date, 1, 10, expected), springCalendar.month("JFK", "LHR", july).days().get(9));
+        }
+    }
+
+    // Test that a flight moved to another day leaves its old day, and that cancelled and deleted flights are dropped
+    @Test
+    public void testFlightChanges() {
+        Flight moved = flight(1L, "AA101", date.plusDays(1), LocalTime.of(8, 0), 40);
+        calendar.onFlightChanged(new FlightChangedEvent(this, moved, false));
+        List<RouteCalendar.DayAvailability> days = calendar.month("JFK", "LHR", july).days();
+        assertEquals(new RouteCalendar.DayAvailability(date, 1, 60, 940.0), days.get(9));
+        assertEquals(new RouteCalendar.DayAvailability(date.plusDays(1), 2, 140, 900.0), days.get(10));
+
+        Flight cancelled = flight(3L, "AA105", date.plusDays(1), LocalTime.of(12, 0), 100);
+        cancelled.setFlightStatus(Flight.FlightStatus.CANCELLED);
+        calendar.onFlightChanged(new FlightChangedEvent(this, cancelled, false));
+        calendar.onFlightChanged(new FlightChangedEvent(this, evening, true));
+        days = calendar.month("JFK", "LHR", july).days();
+        assertEquals(0, days.get(9).flightCount());
+        assertEquals(new RouteCalendar.DayAvailability(date.plusDays(1), 1, 40, 960.0), days.get(10));
+    }
+
+    private Flight flight(Long id, String flightNumber, LocalDate day, LocalTime departure, int remainingTickets) {
+        return new Flight(id, flightNumber, aaAirline, jfkAirport, lhrAirport, day, departure, departure.plusHours(7), remainingTickets, Flight.FlightStatus.SCHEDULED);
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.FlightChangedEvent;
+import com.example.flightticketmanagement.events.SeatInventoryChangedEvent;
+import com.example.flightticketmanagement.models.Airline;
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+public class SearchResultCacheTest {
+
+    private final Airline aaAirline = new Airline("AA", "American Airlines", "DFW", "userAmerican", "passAmerican123");
+    private final Airport jfkAirport = new Airport("JFK", "John F. Kennedy International Airport", "New York", "USA", 40.6413, -73.7781, "UTC-5");
+    private final Airport lhrAirport = new Airport("LHR", "Heathrow Airport", "London", "United Kingdom", 51.4700, -0.4543, "UTC+0");
+    private final LocalDate date = LocalDate.of(2024, 7, 10);
+
+    private final Flight morning = flight(1L, "AA101", date, LocalTime.of(8, 0));
+    private final Flight evening = flight(2L, "AA103", date, LocalTime.of(18, 0));
+    private final Flight nextDay = flight(3L, "AA105", date.plusDays(1), LocalTime.of(12, 0));
+
+    private final AtomicLong nanos = new AtomicLong();
+    private FlightSearchIndex index;
+    private SeatHoldService seatHoldService;
+    private SimpleMeterRegistry meterRegistry;
+    private SearchResultCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        FlightRepository flightRepository = mock(FlightRepository.class);
+        when(flightRepository.findWithRouteByFlightStatus(Flight.FlightStatus.SCHEDULED)).thenReturn(List.of(morning, evening, nextDay));
+        index = new FlightSearchIndex(flightRepository);
+        index.rebuild();
+        seatHoldService = mock(SeatHoldService.class);
+        when(seatHoldService.availability(anyCollection())).thenAnswer(invocation -> seats(invocation.getArgument(0)));
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new SearchResultCache(index, seatHoldService, meterRegistry, Duration.ofSeconds(5), 100, 1, nanos::get);
+    }
+
+    // Test that a route and date is read once for all the searches within the time to live, and that several missing dates share a query
+    @Test
+    public void testHitsAndExpiry() {
+        Map<Long, SeatHoldService.SeatAvailability> first = cache.availability(List.of(morning, evening, nextDay));
+        cache.availability(List.of(evening));
+        cache.availability(List.of(morning, evening));
+
+        assertEquals(new SeatHoldService.SeatAvailability(91, 1), first.get(1L));
+        assertEquals(3, first.size());
+        verify(seatHoldService, times(1)).availability(anyCollection());
+        assertEquals(2, count("JFK-LHR", "miss"));
+        assertEquals(2, count("JFK-LHR", "hit"));
+
+        nanos.addAndGet(Duration.ofSeconds(6).toNanos());
+        cache.availability(List.of(evening));
+        verify(seatHoldService, times(2)).availability(anyCollection());
+    }
+
+    // Test that a sale or a flight change drops the cached route and date, and that a flight added after caching forces a reload
+    @Test
+    public void testInvalidation() {
+        cache.availability(List.of(morning, nextDay));
+
+        cache.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 1L, -1));
+        cache.availability(List.of(morning, nextDay));
+        verify(seatHoldService, times(2)).availability(anyCollection());
+
+        cache.onFlightChanged(new FlightChangedEvent(this, nextDay, false));
+        cache.availability(List.of(morning, nextDay));
+        verify(seatHoldService, times(3)).availability(anyCollection());
+
+        Flight added = flight(4L, "AA107", date, LocalTime.of(21, 0));
+        Map<Long, SeatHoldService.SeatAvailability> withAdded = cache.availability(List.of(morning, added));
+        assertTrue(withAdded.containsKey(4L));
+        verify(seatHoldService, times(4)).availability(anyCollection());
+    }
+
+    // Test that concurrent misses of one route and date wait for a single query
+    @Test
+    public void testSingleFlight() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(seatHoldService.availability(anyCollection())).thenAnswer(invocation -> {
+            loading.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return seats(invocation.getArgument(0));
+        });
+
+        CompletableFuture<Map<Long, SeatHoldService.SeatAvailability>> loader = CompletableFuture.supplyAsync(() -> cache.availability(List.of(morning)));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Map<Long, SeatHoldService.SeatAvailability>> waiter = CompletableFuture.supplyAsync(() -> cache.availability(List.of(evening)));
+        while (count("JFK-LHR", "coalesced") == 0) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        assertEquals(new SeatHoldService.SeatAvailability(91, 1), loader.get(5, TimeUnit.SECONDS).get(1L));
+        assertEquals(new SeatHoldService.SeatAvailability(92, 2), waiter.get(5, TimeUnit.SECONDS).get(2L));
+        verify(seatHoldService, times(1)).availability(anyCollection());
+    }
+
+    // Test that a failed load is not cached, and that routes beyond the tagged ones share the "other" counters
+    @Test
+    public void testFailureAndOtherRoutes() {
+        when(seatHoldService.availability(anyCollection())).thenThrow(new IllegalStateException("Database down"))
+                .thenAnswer(invocation -> seats(invocation.getArgument(0)));
+
+        assertThrows(IllegalStateException.class, () -> cache.availability(List.of(morning)));
+        assertEquals(new SeatHoldService.SeatAvailability(91, 1), cache.availability(List.of(morning)).get(1L));
+
+        Flight returnFlight = flight(5L, "AA100", date, LocalTime.of(9, 0));
+        returnFlight.setOriginAirport(lhrAirport);
+        returnFlight.setDestinationAirport(jfkAirport);
+        cache.availability(List.of(returnFlight));
+        assertEquals(1, count(SearchResultCache.OTHER_ROUTES, "miss"));
+    }
+
+    private double count(String route, String result) {
+        return meterRegistry.counter("flight.search.cache", "route", route, "result", result).count();
+    }
+
+    // Flight n has 90 + n free seats and n held ones
+    private static Map<Long, SeatHoldService.SeatAvailability> seats(Collection<Long> flightIds) {
+        Map<Long, SeatHoldService.SeatAvailability> seats = new HashMap<>();
+        flightIds.forEach(flightId -> seats.put(flightId, new SeatHoldService.SeatAvailability(90 + flightId.intValue(), flightId)));
+        return seats;
+    }
+
+    private Flight flight(Long id, String flightNumber, LocalDate day, LocalTime departure) {
+        return new Flight(id, flightNumber, aaAirline, jfkAirport, lhrAirport, day, departure, departure.plusHours(7), 100, Flight.FlightStatus.SCHEDULED);
+    }
+}
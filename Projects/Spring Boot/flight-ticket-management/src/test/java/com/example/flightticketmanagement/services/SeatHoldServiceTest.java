@@ -0,0 +1,166 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import com.example.flightticketmanagement.repositories.TicketRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class SeatHoldServiceTest {
+
+    private final Instant now = Instant.parse("2024-06-01T10:00:00Z");
+
+    private TicketRepository ticketRepository;
+    private FlightRepository flightRepository;
+    private SeatInventoryService seatInventoryService;
+    private SeatMapService seatMapService;
+    private SeatHoldService seatHoldService;
+
+    @BeforeEach
+    public void setUp() {
+        ticketRepository = mock(TicketRepository.class);
+        flightRepository = mock(FlightRepository.class);
+        seatInventoryService = mock(SeatInventoryService.class);
+        seatMapService = mock(SeatMapService.class);
+        seatHoldService = new SeatHoldService(ticketRepository, flightRepository, seatInventoryService, seatMapService,
+                TransactionOperations.withoutTransaction(), Duration.ofMinutes(15), 2, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    // Test that a hold takes the seat out of the inventory until the end of the time to live, and fails on a sold out flight
+    @Test
+    public void testHold() {
+        when(seatInventoryService.reserveSeat(1L)).thenReturn(true);
+        when(seatInventoryService.reserveSeat(2L)).thenReturn(false);
+
+        assertEquals(now.plus(Duration.ofMinutes(15)), seatHoldService.hold(1L));
+        assertNull(seatHoldService.hold(2L));
+    }
+
+    // Test that a held seat is handed over once, whether to a payment or back to the inventory
+    @Test
+    public void testClaimAndReleaseOnce() {
+        Ticket ticket = pendingTicket("TCKT1", 1L, now.plusSeconds(60));
+        when(ticketRepository.clearHold("TCKT1")).thenReturn(1, 0);
+
+        assertTrue(seatHoldService.release(ticket));
+        assertNull(ticket.getHoldExpiresAt());
+        verify(seatInventoryService).releaseSeat(1L);
+
+        // The sweep got there first: nothing is given back twice
+        Ticket sameTicket = pendingTicket("TCKT1", 1L, now.plusSeconds(60));
+        assertFalse(seatHoldService.claim(sameTicket));
+        assertFalse(seatHoldService.release(sameTicket));
+        verify(seatInventoryService, times(1)).releaseSeat(anyLong());
+
+        // Pending tickets without a hold do not touch the database
+        assertFalse(seatHoldService.release(pendingTicket("TCKT2", 1L, null)));
+        verify(ticketRepository, never()).clearHold("TCKT2");
+    }
+
+    // Test that expired holds are released batch after batch, with one inventory update per flight and batch
+    @Test
+    public void testReleaseExpiredHolds() {
+        when(ticketRepository.lockExpiredHolds(now, 2)).thenReturn(
+                List.of(expiredHold("TCKT1", 1L, "10A"), expiredHold("TCKT2", 1L, "10B")),
+                List.of(expiredHold("TCKT3", 2L, "11A")));
+
+        assertEquals(3, seatHoldService.releaseExpiredHolds());
+
+        verify(ticketRepository).cancelHolds(List.of("TCKT1", "TCKT2"));
+        verify(ticketRepository).cancelHolds(List.of("TCKT3"));
+        verify(seatInventoryService).releaseSeats(1L, 2);
+        verify(seatInventoryService).releaseSeats(2L, 1);
+        verify(seatMapService).releaseSeat(1L, Ticket.ClassType.ECONOMY, "10A");
+        verify(seatMapService).releaseSeat(1L, Ticket.ClassType.ECONOMY, "10B");
+        verify(seatMapService).releaseSeat(2L, Ticket.ClassType.ECONOMY, "11A");
+    }
+
+    // Test that a sweep with nothing expired does not write anything
+    @Test
+    public void testNothingExpired() {
+        when(ticketRepository.lockExpiredHolds(now, 2)).thenReturn(List.of());
+
+        assertEquals(0, seatHoldService.releaseExpiredHolds());
+        verify(ticketRepository, never()).cancelHolds(any());
+        verify(seatInventoryService, never()).releaseSeats(anyLong(), anyInt());
+        verify(seatMapService, never()).releaseSeat(anyLong(), any(), anyString());
+    }
+
+    // Test that the availability of flights comes from one query
+    @Test
+    public void testAvailability() {
+        when(flightRepository.findSeatAvailability(List.of(1L, 2L))).thenReturn(List.of(availability(1L, 5, 2), availability(2L, 0, 0)));
+
+        Map<Long, SeatHoldService.SeatAvailability> availability = seatHoldService.availability(List.of(1L, 2L));
+        assertEquals(new SeatHoldService.SeatAvailability(5, 2), availability.get(1L));
+        assertEquals(new SeatHoldService.SeatAvailability(0, 0), availability.get(2L));
+        assertTrue(seatHoldService.availability(List.of()).isEmpty());
+        verify(flightRepository, times(1)).findSeatAvailability(any());
+    }
+
+    private static Ticket pendingTicket(String ticketId, Long flightId, Instant holdExpiresAt) {
+        Flight flight = new Flight();
+        flight.setId(flightId);
+        Ticket ticket = new Ticket(ticketId, null, flight, Ticket.ClassType.ECONOMY, "10A", Ticket.BookingStatus.PENDING, 500);
+        ticket.setHoldExpiresAt(holdExpiresAt);
+        return ticket;
+    }
+
+    private static TicketRepository.ExpiredHold expiredHold(String ticketId, Long flightId, String seatNumber) {
+        return new TicketRepository.ExpiredHold() {
+            @Override
+            public String getTicketId() {
+                return ticketId;
+            }
+
+            @Override
+            public Long getFlightId() {
+                return flightId;
+            }
+
+            @Override
+            public String getClassType() {
+                return "ECONOMY";
+            }
+
+            @Override
+            public String getSeatNumber() {
+                return seatNumber;
+            }
+        };
+    }
+
+    private static FlightRepository.SeatAvailability availability(Long flightId, int remainingTickets, long heldTickets) {
+        return new FlightRepository.SeatAvailability() {
+            @Override
+            public Long getFlightId() {
+                return flightId;
+            }
+
+            @Override
+            public int getRemainingTickets() {
+                return remainingTickets;
+            }
+
+            @Override
+            public long getHeldTickets() {
+                return heldTickets;
+            }
+        };
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Airline;
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.repositories.AirlineRepository;
+import com.example.flightticketmanagement.repositories.AirportRepository;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import com.example.flightticketmanagement.repositories.TicketRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Stress test for the seat inventory, runs against the configured database so the row-level locking is the real one
+@SpringBootTest
+public class SeatInventoryServiceTest {
+
+    private static final int SEATS = 200;
+    private static final int BUYERS = 300;
+
+    @Autowired
+    private SeatInventoryService seatInventoryService;
+    @Autowired
+    private FlightRepository flightRepository;
+    @Autowired
+    private AirportRepository airportRepository;
+    @Autowired
+    private AirlineRepository airlineRepository;
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    private Flight flight;
+
+    @BeforeEach
+    public void setUp() {
+        Airport origin = airportRepository.save(new Airport("ST1", "Stress One", "City", "Country", 0, 0, "UTC+0"));
+        Airport destination = airportRepository.save(new Airport("ST2", "Stress Two", "City", "Country", 1, 1, "UTC+0"));
+        Airline airline = airlineRepository.save(new Airline("SX", "Stress Air", "ST1", "stressair", "password"));
+        flight = flightRepository.save(new Flight(null, "STRESS001", airline, origin, destination, LocalDate.now().plusDays(30),
+                LocalTime.of(8, 0), LocalTime.of(12, 0), SEATS, Flight.FlightStatus.SCHEDULED));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ticketRepository.deleteAll(ticketRepository.findByFlight(flight));
+        flightRepository.deleteById(flight.getId());
+        airlineRepository.deleteById("SX");
+        airportRepository.deleteAllById(List.of("ST1", "ST2"));
+    }
+
+    // Test that a ticket whose insert fails gives its seat back with the rollback of the sale
+    @Test
+    public void testSellTicketRollsBackWithTheInsert() {
+        assertTrue(seatInventoryService.sellTicket(new Ticket("STRESSTICKET1", null, flight, Ticket.ClassType.ECONOMY, "10A", Ticket.BookingStatus.BOOKED, 500)));
+        assertThrows(DataIntegrityViolationException.class, () -> seatInventoryService.sellTicket(
+                new Ticket("STRESSTICKET2", null, flight, Ticket.ClassType.ECONOMY, "10A", Ticket.BookingStatus.BOOKED, 500)));
+
+        assertEquals(SEATS - 1, flightRepository.findById(flight.getId()).orElseThrow().getRemainingTickets());
+        assertFalse(ticketRepository.existsById("STRESSTICKET2"));
+    }
+
+    // Test that concurrent buyers take exactly the available seats, no lost updates and no oversell
+    @Test
+    public void testConcurrentReservationsDoNotOversell() throws Exception {
+        AtomicInteger sold = new AtomicInteger();
+        runConcurrently(BUYERS, () -> {
+            if (seatInventoryService.reserveSeat(flight.getId())) {
+                sold.incrementAndGet();
+            }
+        });
+
+        assertEquals(SEATS, sold.get());
+        assertEquals(0, flightRepository.findById(flight.getId()).orElseThrow().getRemainingTickets());
+        assertFalse(seatInventoryService.reserveSeat(flight.getId())); // Sold out is reported by the update itself
+    }
+
+    // Test that concurrent buys and cancellations net out exactly: every buyer who gets a seat gives it back and tries again, so a seat
+    // is only left free if nobody could take it, and a lost update would leave the flight with more or fewer seats than it sold
+    @Test
+    public void testConcurrentReserveAndReleaseNetOut() throws Exception {
+        AtomicInteger sold = new AtomicInteger();
+        runConcurrently(BUYERS, () -> {
+            if (seatInventoryService.reserveSeat(flight.getId())) {
+                seatInventoryService.releaseSeat(flight.getId());
+                if (seatInventoryService.reserveSeat(flight.getId())) {
+                    sold.incrementAndGet();
+                }
+            }
+        });
+
+        assertEquals(SEATS, sold.get());
+        assertEquals(0, flightRepository.findById(flight.getId()).orElseThrow().getRemainingTickets());
+    }
+
+    // Starts all tasks at the same moment to maximize contention on the flight row
+    private void runConcurrently(int threads, Runnable task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                task.run();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.repositories.FlightRepository;
+import com.example.flightticketmanagement.repositories.TicketRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SeatMapServiceTest {
+
+    private static final Long FLIGHT_ID = 1L;
+    private static final Long SMALL_FLIGHT_ID = 2L;
+    private static final int SEAT_CAPACITY = 150;
+
+    private TicketRepository ticketRepository;
+    private SeatMapService seatMapService;
+
+    @BeforeEach
+    public void setUp() {
+        ticketRepository = mock(TicketRepository.class);
+        when(ticketRepository.findOccupiedSeats(FLIGHT_ID)).thenReturn(List.of(
+                occupiedSeat(Ticket.ClassType.ECONOMY, "8A"),
+                occupiedSeat(Ticket.ClassType.BUSINESS, "5B"),
+                occupiedSeat(Ticket.ClassType.ECONOMY, "window please"))); // Legacy free-text value, ignored
+        FlightRepository flightRepository = mock(FlightRepository.class);
+        when(flightRepository.findSeatCapacity(FLIGHT_ID)).thenReturn(Optional.of(SEAT_CAPACITY));
+        when(flightRepository.findSeatCapacity(SMALL_FLIGHT_ID)).thenReturn(Optional.of(20));
+        seatMapService = new SeatMapService(ticketRepository, flightRepository);
+    }
+
+    // Test that the cabins add up to the seat capacity of the flight, economy ending with a partial row, and that small flights are all economy
+    @Test
+    public void testLayout() {
+        Map<Ticket.ClassType, SeatMapService.CabinLayout> layout = SeatMapService.layoutOf(SEAT_CAPACITY);
+        assertEquals(SEAT_CAPACITY, layout.values().stream().mapToInt(SeatMapService.CabinLayout::capacity).sum());
+        assertEquals(21, layout.get(Ticket.ClassType.ECONOMY).rows()); // 122 seats from row 8 to row 28, which has the seats A and B
+        assertTrue(seatMapService.isSeatFree(FLIGHT_ID, Ticket.ClassType.ECONOMY, "28B"));
+        assertFalse(seatMapService.isSeatFree(FLIGHT_ID, Ticket.ClassType.ECONOMY, "28C"));
+        assertThrows(IllegalArgumentException.class, () -> seatMapService.assignSeat(FLIGHT_ID, Ticket.ClassType.ECONOMY, "29A"));
+
+        assertEquals(20, seatMapService.freeSeats(SMALL_FLIGHT_ID, Ticket.ClassType.ECONOMY));
+        assertEquals("1A", seatMapService.assignSeat(SMALL_FLIGHT_ID, Ticket.ClassType.ECONOMY, null));
+        assertNull(seatMapService.assignSeat(SMALL_FLIGHT_ID, Ticket.ClassType.FIRST, null));
+        assertEquals(0, seatMapService.freeSeats(99L, Ticket.ClassType.ECONOMY)); // Unknown flight
+        assertThrows(IllegalArgumentException.class, () -> SeatMapService.layoutOf(SeatMapService.MAX_SEATS + 1));
+    }
+
+    // Test that the seat map is rebuilt from the ticket table and taken seats are rejected
+    @Test
+    public void testRebuildAndClaim() {
+        assertFalse(seatMapService.isSeatFree(FLIGHT_ID, Ticket.ClassType.ECONOMY, "8A"));
+        assertNull(seatMapService.assignSeat(FLIGHT_ID, Ticket.ClassType.BUSINESS, "5b"));
+        assertEquals("12C", seatMapService.assignSeat(FLIGHT_ID, Ticket.ClassType.ECONOMY, "12c"));
+        assertNull(seatMapService.assignSeat(FLIGHT_ID, Ticket.ClassType.ECONOMY, "12C"));
+        assertThrows(IllegalArgumentException.class, () -> seatMapService.assignSeat(FLIGHT_ID, Ticket.ClassType.FIRST, "12C"));
+    }
+
+    // Test that auto-assignment hands out the next free seat and a released seat can be taken again
+    @Test
+    public void testNextFreeSeatAndRelease() {
+        assertEquals("8B", seatMapService.assignSeat(FLIGHT_ID, Ticket.ClassType.ECONOMY, null));
+        assertEquals("8C", seatMapService.assignSeat(FLIGHT_ID, Ticket.ClassType.ECONOMY, ""));
+        seatMapService.releaseSeat(FLIGHT_ID, Ticket.ClassType.ECONOMY, "8B");
+        assertEquals("8B", seatMapService.assignSeat(FLIGHT_ID, Ticket.ClassType.ECONOMY, null));
+    }
+
+    // Test that a full cabin is reported
+    @Test
+    public void testFullCabin() {
+        int capacity = SeatMapService.layoutOf(SEAT_CAPACITY).get(Ticket.ClassType.FIRST).capacity();
+        for (int i = 0; i < capacity; i++) {
+            assertNotNull(seatMapService.assignSeat(FLIGHT_ID, Ticket.ClassType.FIRST, null));
+        }
+        assertNull(seatMapService.assignSeat(FLIGHT_ID, Ticket.ClassType.FIRST, null));
+        assertEquals(0, seatMapService.freeSeats(FLIGHT_ID, Ticket.ClassType.FIRST));
+    }
+
+    // Test that moving a ticket frees the old seat only when the new one could be claimed
+    @Test
+    public void testReassignSeat() {
+        assertNull(seatMapService.reassignSeat(FLIGHT_ID, Ticket.ClassType.ECONOMY, "8A", FLIGHT_ID, Ticket.ClassType.BUSINESS, "5B"));
+        assertFalse(seatMapService.isSeatFree(FLIGHT_ID, Ticket.ClassType.ECONOMY, "8A"));
+        assertEquals("3A", seatMapService.reassignSeat(FLIGHT_ID, Ticket.ClassType.ECONOMY, "8A", FLIGHT_ID, Ticket.ClassType.BUSINESS, "3A"));
+        assertTrue(seatMapService.isSeatFree(FLIGHT_ID, Ticket.ClassType.ECONOMY, "8A"));
+    }
+
+    // Test that thousands of concurrent seat picks never hand out the same seat twice
+    @Test
+    public void testConcurrentPicksAreUnique() throws Exception {
+        int capacity = SeatMapService.layoutOf(SEAT_CAPACITY).get(Ticket.ClassType.ECONOMY).capacity();
+        int pickers = 2000;
+        Set<String> assigned = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < pickers; i++) {
+            executor.submit(() -> {
+                start.await();
+                String seat = seatMapService.assignSeat(FLIGHT_ID, Ticket.ClassType.ECONOMY, null);
+                if (seat != null) {
+                    assertTrue(assigned.add(seat), "Seat " + seat + " assigned twice");
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(capacity - 1, assigned.size()); // Every seat except the one already held by 8A
+        assertFalse(assigned.contains("8A"));
+    }
+
+    private static TicketRepository.OccupiedSeat occupiedSeat(Ticket.ClassType classType, String seatNumber) {
+        return new TicketRepository.OccupiedSeat() {
+            @Override
+            public Ticket.ClassType getClassType() {
+                return classType;
+            }
+
+            @Override
+            public String getSeatNumber() {
+                return seatNumber;
+            }
+        };
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.models.Flight;
+import com.example.flightticketmanagement.models.Ticket;
+import com.example.flightticketmanagement.repositories.TicketRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class TicketCancellationServiceTest {
+
+    private TicketRepository ticketRepository;
+    private SeatInventoryService seatInventoryService;
+    private SeatMapService seatMapService;
+    private TicketCancellationService cancellationService;
+
+    @BeforeEach
+    public void setUp() {
+        ticketRepository = mock(TicketRepository.class);
+        seatInventoryService = mock(SeatInventoryService.class);
+        seatMapService = mock(SeatMapService.class);
+        cancellationService = new TicketCancellationService(ticketRepository, seatInventoryService, seatMapService,
+                TransactionOperations.withoutTransaction());
+    }
+
+    // Test that a paid ticket, or one being paid for, gives its seat back to the inventory and the seat map
+    @Test
+    public void testCancelPaidTicket() {
+        Ticket ticket = ticket("TCKT1", Ticket.BookingStatus.PAYMENT_PROCESSING, null);
+        when(ticketRepository.cancelTicket("TCKT1", Ticket.BookingStatus.PAYMENT_PROCESSING)).thenReturn(1);
+
+        assertTrue(cancellationService.cancel(ticket));
+        assertEquals(Ticket.BookingStatus.CANCELLED, ticket.getBookingStatus());
+        verify(seatInventoryService).releaseSeat(1L);
+        verify(seatMapService).releaseSeat(1L, Ticket.ClassType.ECONOMY, "10A");
+        verify(ticketRepository, never()).endHold(anyString());
+    }
+
+    // Test that a pending ticket gives a seat back to the inventory only if it still held one
+    @Test
+    public void testCancelPendingTickets() {
+        when(ticketRepository.cancelTicket(anyString(), eq(Ticket.BookingStatus.PENDING))).thenReturn(1);
+        when(ticketRepository.endHold("TCKT1")).thenReturn(1);
+
+        assertTrue(cancellationService.cancel(ticket("TCKT1", Ticket.BookingStatus.PENDING, Instant.now())));
+        assertTrue(cancellationService.cancel(ticket("TCKT2", Ticket.BookingStatus.PENDING, null)));
+        verify(seatInventoryService, times(1)).releaseSeat(1L);
+        verify(seatMapService, times(2)).releaseSeat(1L, Ticket.ClassType.ECONOMY, "10A");
+    }
+
+    // Test that a ticket whose status changed since it was read, or that is already cancelled, gives nothing back
+    @Test
+    public void testStatusChangedMeanwhile() {
+        when(ticketRepository.cancelTicket("TCKT1", Ticket.BookingStatus.PENDING)).thenReturn(0);
+
+        Ticket ticket = ticket("TCKT1", Ticket.BookingStatus.PENDING, Instant.now());
+        assertFalse(cancellationService.cancel(ticket));
+        assertEquals(Ticket.BookingStatus.PENDING, ticket.getBookingStatus());
+        assertFalse(cancellationService.cancel(ticket("TCKT2", Ticket.BookingStatus.CANCELLED, null)));
+        verify(ticketRepository, never()).cancelTicket("TCKT2", Ticket.BookingStatus.CANCELLED);
+        verify(ticketRepository, never()).endHold(anyString());
+        verify(seatInventoryService, never()).releaseSeat(anyLong());
+        verify(seatMapService, never()).releaseSeat(anyLong(), any(), anyString());
+    }
+
+    private static Ticket ticket(String ticketId, Ticket.BookingStatus bookingStatus, Instant holdExpiresAt) {
+        Flight flight = new Flight();
+        flight.setId(1L);
+        Ticket ticket = new Ticket(ticketId, null, flight, Ticket.ClassType.ECONOMY, "10A", bookingStatus, 500);
+        ticket.setHoldExpiresAt(holdExpiresAt);
+        return ticket;
+    }
+}
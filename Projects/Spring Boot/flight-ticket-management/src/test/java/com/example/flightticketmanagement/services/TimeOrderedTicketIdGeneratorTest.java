@@ -0,0 +1,127 @@
+package com.example.flightticketmanagement.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeOrderedTicketIdGeneratorTest {
+
+    // Number of ids of the multi-threaded uniqueness test, can be raised with -DticketIdUniqueness.ids=...
+    private static final long UNIQUENESS_IDS = Long.getLong("ticketIdUniqueness.ids", 200_000_000L);
+    private static final int THREADS = 8;
+    // Longest run the uniqueness bitmap is sized for, each millisecond can add up to 4096 positions besides the ids themselves
+    private static final long MAX_RUN_MILLIS = 180_000;
+
+    // Test that ids have a fixed width and sort the same way as text as they do as numbers
+    @Test
+    public void testFormatIsFixedWidthAndOrdered() {
+        TimeOrderedTicketIdGenerator generator = new TimeOrderedTicketIdGenerator(5);
+        String previous = "";
+        for (int i = 0; i < 10_000; i++) {
+            String ticketId = generator.nextTicketId();
+            assertEquals(17, ticketId.length());
+            assertTrue(ticketId.startsWith("TCKT"));
+            assertTrue(ticketId.compareTo(previous) > 0, ticketId + " does not sort after " + previous);
+            previous = ticketId;
+        }
+        assertEquals("TCKT0000000000000", TimeOrderedTicketIdGenerator.format(0));
+        assertEquals("TCKT7ZZZZZZZZZZZZ", TimeOrderedTicketIdGenerator.format(Long.MAX_VALUE));
+    }
+
+    // Test that ids keep increasing when a millisecond runs out of sequence numbers or the clock goes backwards
+    @Test
+    public void testSequenceOverflowAndClockGoingBackwards() {
+        AtomicLong clock = new AtomicLong(TimeOrderedTicketIdGenerator.EPOCH_MILLIS + 1_000);
+        TimeOrderedTicketIdGenerator generator = new TimeOrderedTicketIdGenerator(3, clock::get);
+        long previous = -1;
+        for (int i = 0; i < 10_000; i++) { // More than the 4096 ids of one millisecond
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            assertEquals(3, TimeOrderedTicketIdGenerator.nodeOf(id));
+            previous = id;
+        }
+        clock.addAndGet(-500); // Clock set back by an NTP correction
+        assertTrue(generator.nextId() > previous);
+    }
+
+    // Test that two instances with different node numbers never produce the same id, even in the same millisecond
+    @Test
+    public void testInstancesDoNotCollide() {
+        long now = System.currentTimeMillis();
+        TimeOrderedTicketIdGenerator first = new TimeOrderedTicketIdGenerator(1, () -> now);
+        TimeOrderedTicketIdGenerator second = new TimeOrderedTicketIdGenerator(2, () -> now);
+        Set<String> ticketIds = new HashSet<>();
+        for (int i = 0; i < 500_000; i++) {
+            assertTrue(ticketIds.add(first.nextTicketId()));
+            assertTrue(ticketIds.add(second.nextTicketId()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new TimeOrderedTicketIdGenerator(TimeOrderedTicketIdGenerator.MAX_NODE + 1));
+    }
+
+    // Test that hundreds of millions of ids taken concurrently by several threads are all different. Every id is marked in a bitmap
+    // indexed by its (millisecond, sequence) part, a bit that is already set means the id was handed out twice
+    @Test
+    public void testConcurrentIdsAreUnique() throws Exception {
+        TimeOrderedTicketIdGenerator generator = new TimeOrderedTicketIdGenerator(7);
+        long firstKey = (System.currentTimeMillis() - TimeOrderedTicketIdGenerator.EPOCH_MILLIS) << 12;
+        long capacity = UNIQUENESS_IDS + MAX_RUN_MILLIS * 4096;
+        // One bit per position, indexed by a long: the array holds up to 2^31 words, which is 2^37 positions
+        long words = (capacity + 63) / 64;
+        assertTrue(words <= Integer.MAX_VALUE, "ticketIdUniqueness.ids is too large for the bitmap");
+        AtomicLongArray seen = new AtomicLongArray((int) words);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (long i = 0; i < UNIQUENESS_IDS / THREADS; i++) {
+                    long id = generator.nextId();
+                    long index = ((id >>> 22) << 12 | (id & 4095)) - firstKey;
+                    assertTrue(index >= 0 && index < capacity, "Id " + id + " is outside of the expected range");
+                    assertTrue(mark(seen, index), "Id " + id + " was handed out twice");
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        long marked = 0;
+        for (int i = 0; i < seen.length(); i++) {
+            marked += Long.bitCount(seen.get(i));
+        }
+        assertEquals(UNIQUENESS_IDS / THREADS * THREADS, marked);
+    }
+
+    // Sets a bit, returns false if it was already set
+    private static boolean mark(AtomicLongArray bits, long index) {
+        int word = (int) (index >>> 6);
+        long bit = 1L << index;
+        while (true) {
+            long current = bits.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+            if (bits.compareAndSet(word, current, current | bit)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.FlightsImportedEvent;
+import com.example.flightticketmanagement.models.Airline;
+import com.example.flightticketmanagement.models.Airport;
+import com.example.flightticketmanagement.repositories.AirlineRepository;
+import com.example.flightticketmanagement.repositories.AirportRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class TimetableImportServiceTest {
+
+    private static final String HEADER = "flight_number,origin,destination,date,departure_time,landing_time,remaining_tickets\n";
+
+    @TempDir
+    private Path directory;
+
+    private JdbcTemplate jdbcTemplate;
+    private ApplicationEventPublisher eventPublisher;
+    private TimetableImportService importService;
+    // Rows of every batch sent to the database, copied since the service reuses its batch list
+    private final List<List<Object[]>> batches = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        AirportRepository airportRepository = mock(AirportRepository.class);
+        when(airportRepository.findAll()).thenReturn(List.of(airport("JFK"), airport("LHR"), airport("CDG")));
+        AirlineRepository airlineRepository = mock(AirlineRepository.class);
+        when(airlineRepository.findAll()).thenReturn(List.of(airline("BA"), airline("AF")));
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            List<Object[]> batch = invocation.getArgument(1);
+            batches.add(new ArrayList<>(batch));
+            int[] counts = new int[batch.size()];
+            Arrays.fill(counts, 1);
+            return counts;
+        });
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        // Imports run on the calling thread, so they are done when start returns
+        importService = new TimetableImportService(airportRepository, airlineRepository, jdbcTemplate,
+                TransactionOperations.withoutTransaction(), eventPublisher, Runnable::run, 2, 10);
+    }
+
+    // Test that valid rows are inserted in batches and the in-memory timetables are told to rebuild
+    @Test
+    public void testImport() throws Exception {
+        String jobId = importService.start("BA", upload(HEADER +
+                "BA117,JFK,LHR,2024-07-15,18:30,06:35,200\n" +
+                "BA178,lhr,jfk,2024-07-16,10:05,13:10,180\n" +
+                "\n" +
+                "\"BA303\",LHR,CDG,2024-07-16,07:15,09:30,150\n"));
+
+        TimetableImportService.ImportProgress progress = importService.progress(jobId, "BA");
+        assertEquals(TimetableImportService.State.COMPLETED, progress.state());
+        assertEquals(3, progress.rowsRead());
+        assertEquals(3, progress.rowsImported());
+        assertEquals(0, progress.rowsRejected());
+        assertEquals(2, batches.size());
+        assertArrayEquals(new Object[]{"BA117", "BA", "JFK", "LHR", LocalDate.of(2024, 7, 15), LocalTime.of(18, 30), LocalTime.of(6, 35), 200, "SCHEDULED", 200,
+                "BA", "BA117", LocalDate.of(2024, 7, 15)}, batches.get(0).get(0));
+        assertEquals("LHR", batches.get(0).get(1)[2]);
+        assertEquals("BA303", batches.get(1).get(0)[0]);
+        verify(eventPublisher).publishEvent(any(FlightsImportedEvent.class));
+    }
+
+    // Test that invalid rows are rejected with their line number while the other rows are imported
+    @Test
+    public void testRejectedRows() throws Exception {
+        String jobId = importService.start("BA", upload("flight_number,airline,origin,destination,date,departure_time,landing_time,remaining_tickets,flight_status\n" +
+                "BA117,BA,JFK,LHR,2024-07-15,18:30,06:35,200,\n" +
+                "BA118,BA,JFK,XXX,2024-07-15,18:30,06:35,200,\n" +
+                "AF001,AF,CDG,JFK,2024-07-15,10:00,12:00,200,\n" +
+                "BA119,BA,JFK,LHR,15/07/2024,18:30,06:35,200,\n" +
+                "BA120,BA,JFK,LHR,2024-07-15,18:30,06:35,200,DELAYED\n" +
+                "BA121,BA,JFK,LHR,2024-07-15,18:30\n" +
+                "BA122,BA,JFK,LHR,2024-07-15,18:30,06:35,200,cancelled\n" +
+                "BA123,BA,JFK,LHR,2024-07-15,18:30,06:35,900,\n"));
+
+        TimetableImportService.ImportProgress progress = importService.progress(jobId, "BA");
+        assertEquals(8, progress.rowsRead());
+        assertEquals(2, progress.rowsImported());
+        assertEquals(6, progress.rowsRejected());
+        assertEquals(List.of(3L, 4L, 5L, 6L, 7L, 9L), progress.errors().stream().map(TimetableImportService.RowError::line).toList());
+        assertEquals("Unknown destination airport XXX", progress.errors().get(0).message());
+        assertTrue(progress.errors().get(5).message().contains("more than " + SeatMapService.MAX_SEATS));
+        assertEquals("CANCELLED", batches.get(0).get(1)[8]);
+
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        importService.writeErrorReport(jobId, "BA", report);
+        List<String> lines = report.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(7, lines.size());
+        assertEquals("3,\"Unknown destination airport XXX\"", lines.get(1));
+    }
+
+    // Test that a batch refused by the database is written again row by row, rejecting only the refused row, without stopping the import
+    @Test
+    public void testRefusedBatch() throws Exception {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataIntegrityViolationException("violates foreign key constraint"))
+                .thenReturn(new int[]{1});
+        when(jdbcTemplate.update(anyString(), any(Object[].class)))
+                .thenThrow(new DataIntegrityViolationException("violates foreign key constraint"))
+                .thenReturn(1);
+        String jobId = importService.start("BA", upload(HEADER +
+                "BA117,JFK,LHR,2024-07-15,18:30,06:35,200\n" +
+                "BA178,LHR,JFK,2024-07-16,10:05,13:10,180\n" +
+                "BA303,LHR,CDG,2024-07-16,07:15,09:30,150\n"));
+
+        TimetableImportService.ImportProgress progress = importService.progress(jobId, "BA");
+        assertEquals(TimetableImportService.State.COMPLETED, progress.state());
+        assertEquals(2, progress.rowsImported());
+        assertEquals(1, progress.rowsRejected());
+        assertEquals(List.of(2L), progress.errors().stream().map(TimetableImportService.RowError::line).toList());
+        verify(jdbcTemplate, times(2)).update(anyString(), any(Object[].class));
+    }
+
+    // Test that rows of flights already in the timetable are skipped rather than imported twice
+    @Test
+    public void testAlreadyImportedRows() throws Exception {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{0, 1});
+        String jobId = importService.start("BA", upload(HEADER +
+                "BA117,JFK,LHR,2024-07-15,18:30,06:35,200\n" +
+                "BA178,LHR,JFK,2024-07-16,10:05,13:10,180\n"));
+
+        TimetableImportService.ImportProgress progress = importService.progress(jobId, "BA");
+        assertEquals(1, progress.rowsImported());
+        assertEquals(1, progress.rowsSkipped());
+        assertEquals(0, progress.rowsRejected());
+        verify(jdbcTemplate).queryForList(anyString(), eq("BA"));
+    }
+
+    // Test that a file without the required columns fails as a whole and that imports are only visible to their airline
+    @Test
+    public void testInvalidFile() throws Exception {
+        String jobId = importService.start("BA", upload("flight,from,to\nBA117,JFK,LHR\n"));
+
+        TimetableImportService.ImportProgress progress = importService.progress(jobId, "BA");
+        assertEquals(TimetableImportService.State.FAILED, progress.state());
+        assertTrue(progress.message().contains("missing: flight_number, origin, destination"));
+        verifyNoInteractions(jdbcTemplate, eventPublisher);
+        assertThrows(NoSuchElementException.class, () -> importService.progress(jobId, "AF"));
+    }
+
+    private Path upload(String content) throws Exception {
+        Path upload = Files.createTempFile(directory, "timetable-", ".csv");
+        Files.writeString(upload, content);
+        return upload;
+    }
+
+    private static Airport airport(String airportCode) {
+        Airport airport = new Airport();
+        airport.setAirportCode(airportCode);
+        return airport;
+    }
+
+    private static Airline airline(String iataCode) {
+        Airline airline = new Airline();
+        airline.setIataCode(iataCode);
+        return airline;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.flightticketmanagement.services;
+
+import com.example.flightticketmanagement.events.SeatInventoryChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimetableVersionTest {
+
+    private final Instant start = LocalDate.of(2024, 7, 10).atTime(10, 0).toInstant(ZoneOffset.UTC);
+
+    private MovingClock clock;
+    private TimetableVersion timetableVersion;
+
+    @BeforeEach
+    public void setUp() {
+        clock = new MovingClock(start);
+        timetableVersion = new TimetableVersion(clock);
+    }
+
+    // Test that the ETag only changes with the timetable, and that the last modification date follows the changes
+    @Test
+    public void testChanges() {
+        String etag = timetableVersion.etag("anonymous");
+        clock.now = start.plusSeconds(30);
+        assertEquals(etag, timetableVersion.etag("anonymous"));
+        assertEquals(start.toEpochMilli(), timetableVersion.lastModified());
+
+        timetableVersion.onSeatInventoryChanged(new SeatInventoryChangedEvent(this, 1L, -1));
+
+        assertNotEquals(etag, timetableVersion.etag("anonymous"));
+        assertEquals(start.plusSeconds(30).toEpochMilli(), timetableVersion.lastModified());
+        assertTrue(etag.startsWith("W/\""));
+    }
+
+    // Test that the ETag differs between viewers and days, and that a new day counts as a modification
+    @Test
+    public void testViewersAndDays() {
+        String etag = timetableVersion.etag("anonymous");
+        assertNotEquals(etag, timetableVersion.etag("ROLE_USER"));
+
+        clock.now = start.plus(Duration.ofHours(15));
+
+        assertNotEquals(etag, timetableVersion.etag("anonymous"));
+        assertEquals(LocalDate.of(2024, 7, 11).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli(), timetableVersion.lastModified());
+    }
+
+    // Test that validators issued before a restart never match
+    @Test
+    public void testRestart() {
+        String etag = timetableVersion.etag("anonymous");
+        clock.now = start.plusSeconds(60);
+
+        assertNotEquals(etag, new TimetableVersion(clock).etag("anonymous"));
+    }
+
+    private static class MovingClock extends Clock {
+        private Instant now;
+
+        MovingClock(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}